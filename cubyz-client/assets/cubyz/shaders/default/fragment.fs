@@ -9,6 +9,7 @@ in vec3 mvVertexNormal;
 in vec3 mvVertexPos;
 in float outSelected;
 in vec4 mlightviewVertexPos;
+flat in int outFace;
 
 out vec4 fragColor;
 
@@ -66,6 +67,8 @@ uniform SpotLight spotLights[MAX_SPOT_LIGHTS];
 uniform DirectionalLight directionalLight;
 uniform Fog fog;
 uniform int shadowEnabled;
+uniform int isInstanced;
+uniform vec2 faceUV[18]; // origin and derivatives of the texture coordinates on each face of a chunk mesh block
 
 vec4 ambientC;
 vec4 diffuseC;
@@ -168,7 +171,13 @@ float calcShadow(vec4 position) {
 
 void main()
 {
-    setupColours(material, outTexCoord);
+    vec2 texCoord = outTexCoord;
+    if (isInstanced == 2) {
+        // Chunk meshes repeat the texture every block:
+        vec2 inBlock = fract(outTexCoord);
+        texCoord = faceUV[outFace*3] + inBlock.x*faceUV[outFace*3 + 1] + inBlock.y*faceUV[outFace*3 + 2];
+    }
+    setupColours(material, texCoord);
 
     vec4 diffuseSpecularComp = calcDirectionalLight(directionalLight, mvVertexPos, mvVertexNormal);
 
@@ -14,6 +14,7 @@ out vec3 mvVertexPos;
 out float outSelected;
 out vec4 mlightviewVertexPos;
 out vec3 outColor;
+flat out int outFace;
 
 uniform mat4 projectionMatrix;
 uniform mat4 orthoProjectionMatrix;
@@ -30,14 +31,29 @@ void main()
 	vec4 initPos = vec4(position, 1);
 	vec4 initNormal = vec4(vertexNormal, 0.0);
 	mat4 modelViewMatrix;
-	if (isInstanced == 1) {
+	outFace = 0;
+	if (isInstanced == 2) { // chunk mesh
+		modelViewMatrix = modelViewNonInstancedMatrix;
+		outSelected = 0;
+		// Same face order as in the ChunkMesher:
+		if (vertexNormal.x < -0.5) outFace = 0;
+		else if (vertexNormal.x > 0.5) outFace = 1;
+		else if (vertexNormal.z > 0.5) outFace = 2;
+		else if (vertexNormal.z < -0.5) outFace = 3;
+		else if (vertexNormal.y < -0.5) outFace = 4;
+		else outFace = 5;
+	} else if (isInstanced == 1) {
 		modelViewMatrix = viewMatrixInstanced * modelViewInstancedMatrix;
 		outSelected = selectedInstanced;
 	} else {
 		outSelected = selectedNonInstanced;
 		modelViewMatrix = modelViewNonInstancedMatrix;
 	}
-	if (cheapLighting == 1) {
+	if (isInstanced == 2 && cheapLighting == 1) {
+		// Each vertex of a chunk mesh has its own light value, the sun light still needs to be applied:
+		int light = easyLight[0];
+		outColor = max(vec3((light >> 16) & 255, (light >> 8) & 255, light & 255), float((light >> 24) & 255)*ambientLight)/255.0;
+	} else if (cheapLighting == 1) {
 		outColor = 0.003890625*(
 							(0.5-position.x)*(
 								(0.5-position.y)*(
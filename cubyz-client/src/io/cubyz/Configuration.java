@@ -10,6 +10,7 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 
 import io.cubyz.client.Cubyz;
+import io.cubyz.client.GameLauncher;
 import io.cubyz.translate.LanguageLoader;
 import io.cubyz.utils.DiscordIntegration;
 
@@ -32,6 +33,8 @@ public class Configuration {
 		obj.add("keybindings", kb);
 		obj.addProperty("language", Cubyz.lang.getLocale());
 		obj.addProperty("discordIntegration", DiscordIntegration.isEnabled());
+		obj.addProperty("vsync", GameLauncher.instance.isVSync());
+		obj.addProperty("fpsLimit", GameLauncher.instance.getTargetFps());
 		
 		try {
 			FileWriter writer = new FileWriter("configuration.json");
@@ -68,6 +71,11 @@ public class Configuration {
 			obj.addProperty("language", "en_US");
 		Cubyz.lang = LanguageLoader.load(obj.get("language").getAsString());
 		
+		if (obj.has("vsync"))
+			GameLauncher.instance.setVSync(obj.get("vsync").getAsBoolean());
+		if (obj.has("fpsLimit"))
+			GameLauncher.instance.setTargetFps(obj.get("fpsLimit").getAsInt());
+		
 		if (obj.has("discordIntegration")) {
 			if (obj.get("discordIntegration").getAsBoolean()) {
 				DiscordIntegration.startRPC();
@@ -0,0 +1,117 @@
+package io.cubyz.benchmark;
+
+import java.nio.FloatBuffer;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import io.cubyz.AllocationCounter;
+import io.cubyz.ClientOnly;
+import io.cubyz.api.Side;
+import io.cubyz.base.BaseMod;
+import io.cubyz.blocks.Block;
+import io.cubyz.client.ChunkCuller;
+import io.cubyz.client.RenderList;
+import io.cubyz.math.Vector3fi;
+import io.cubyz.modding.ModLoader;
+import io.cubyz.world.BlockSpatial;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.ChunkMesher;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.LocalWorld;
+import io.cubyz.world.generator.LifelandGenerator;
+import io.jungle.InstancedMesh;
+import io.jungle.Spatial;
+import io.jungle.renderers.Transformation;
+
+/**
+ * Runs the per-frame culling and instance data creation of the renderer without a window and measures the time and the bytes allocated per frame.<br>
+ * Once with one instance per visible block and once with chunk meshes.
+ * Creates a world called "benchmark" in the saves folder.
+ */
+
+public class CullingBenchmark {
+
+	private static final int SIZE = 12; // Culls SIZE×SIZE chunks.
+	private static final int FRAMES = 200;
+
+	public static void main(String[] args) throws InterruptedException {
+		BaseMod mod = new BaseMod();
+		ModLoader.preInit(mod, Side.SERVER);
+		ModLoader.init(mod);
+		ModLoader.postInit(mod);
+		LifelandGenerator.init(); // Usually done by the client after loading.
+		ClientOnly.createBlockSpatial = BlockSpatial::new;
+
+		LocalWorld world = new LocalWorld("benchmark");
+		world.setCurrentTorusID(12345);
+		world.generate();
+		LocalTorusSurface surface = world.getCurrentTorus();
+		int offset = 32;
+		Vector3fi position = new Vector3fi((offset + SIZE/2) << 4, 100, (offset + SIZE/2) << 4);
+		world.getLocalPlayer().setPosition(position);
+		for(int x = -1; x <= SIZE; x++) {
+			for(int z = -1; z <= SIZE; z++) {
+				surface.synchronousGenerate(surface._getChunk(x + offset, z + offset));
+			}
+		}
+		Chunk[] chunks = new Chunk[SIZE*SIZE];
+		for(int x = 0; x < SIZE; x++) {
+			for(int z = 0; z < SIZE; z++) {
+				Chunk ch = surface._getChunk(x + offset, z + offset);
+				ch.load();
+				chunks[x*SIZE + z] = ch;
+			}
+		}
+		Block[] blocks = world.getBlocks();
+
+		run("instanced", new ChunkCuller(null, b -> false), chunks, blocks, position, surface.getAnd());
+
+		ChunkMesher mesher = new ChunkMesher(2);
+		ChunkCuller culler = new ChunkCuller(mesher, b -> !b.isTransparent());
+		for(Chunk ch : chunks) {
+			mesher.queue(ch);
+		}
+		for(Chunk ch : chunks) {
+			while(ch.getMesh() == null) {
+				Thread.sleep(10);
+			}
+		}
+		mesher.stop();
+		run("chunk meshes", culler, chunks, blocks, position, surface.getAnd());
+		System.exit(0);
+	}
+
+	private static void run(String name, ChunkCuller culler, Chunk[] chunks, Block[] blocks, Vector3fi position, int worldAnd) {
+		Transformation transformation = new Transformation();
+		Vector3f ambientLight = new Vector3f(1, 1, 1);
+		Vector3f camera = new Vector3f();
+		Matrix4f projectionView = new Matrix4f();
+		FloatBuffer buffer = FloatBuffer.allocate(256*InstancedMesh.getInstanceSizeFloats());
+		AllocationCounter counter = new AllocationCounter();
+		// The first half only warms up the JIT and fills the lists:
+		long time = 0, bytes = 0;
+		int instances = 0;
+		for(int frame = 0; frame < 2*FRAMES; frame++) {
+			// Turn around a bit every frame:
+			projectionView.identity().perspective((float)Math.toRadians(70), 4/3.0f, 0.01f, 1000).rotateX(0.3f).rotateY(frame*0.05f);
+			counter.next();
+			long t = System.nanoTime();
+			culler.cull(projectionView, camera, chunks, blocks, position, worldAnd, ambientLight, null);
+			int frameInstances = 0;
+			for(RenderList<Spatial> list : culler.map) {
+				for(int i = 0; i < list.size(); i += 256) {
+					int end = Math.min(list.size(), i + 256);
+					InstancedMesh.fillInstanceData(buffer, list.array, i, end, transformation);
+				}
+				frameInstances += list.size();
+			}
+			if(frame >= FRAMES) {
+				time += System.nanoTime() - t;
+				bytes += counter.next();
+				instances += frameInstances;
+			}
+		}
+		System.out.printf("%s: %.3f ms per frame, %d bytes allocated per frame, %d instances, %d chunk meshes%n", name, time/1e6/FRAMES, bytes/FRAMES, instances/FRAMES, culler.meshes.size());
+	}
+}
@@ -0,0 +1,180 @@
+package io.cubyz.client;
+
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import io.cubyz.blocks.Block;
+import io.cubyz.blocks.BlockInstance;
+import io.cubyz.math.CubyzMath;
+import io.cubyz.math.Vector3fi;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.ChunkMesh;
+import io.cubyz.world.ChunkMesher;
+import io.cubyz.world.World;
+import io.jungle.Spatial;
+
+/**
+ * Finds the chunk meshes and block instances that need to be drawn in a frame.<br>
+ * Doesn't make any OpenGL calls and reuses all of its lists between frames, so it doesn't create any garbage once the lists are big enough.
+ */
+
+@SuppressWarnings("unchecked")
+public class ChunkCuller {
+	private final FrustumIntersection frustum = new FrustumIntersection();
+	private final Vector3f min = new Vector3f(), max = new Vector3f();
+	private final Vector3f cameraPosition = new Vector3f();
+	private final ChunkMesher mesher;
+	private final Predicate<Block> meshable;
+
+	// Sorts by the distance to the camera.
+	private final Comparator<Spatial> distanceComparator = (a, b) -> {
+		Vector3f pa = a.getPosition(), pb = b.getPosition();
+		float dx = cameraPosition.x - pa.x, dy = cameraPosition.y - pa.y, dz = cameraPosition.z - pa.z;
+		float lenA = dx*dx + dy*dy + dz*dz;
+		dx = cameraPosition.x - pb.x;
+		dy = cameraPosition.y - pb.y;
+		dz = cameraPosition.z - pb.z;
+		return Float.compare(lenA, dx*dx + dy*dy + dz*dz);
+	};
+
+	/** The spatials of the visible block instances, by block ID. The selected one isn't included. */
+	public RenderList<Spatial>[] map = (RenderList<Spatial>[]) new RenderList[0];
+	/** The visible chunk meshes. Their positions are in meshOffsets. */
+	public final RenderList<ChunkMesh> meshes = new RenderList<>(256);
+	/** Position of the lower corner of each mesh relative to the camera, 3 floats per mesh. */
+	public float[] meshOffsets = new float[3*256];
+	public Spatial selected;
+	public int selectedBlock = -1;
+
+	/**
+	 * @param mesher gets the visible chunks that need a new mesh. If it is null, chunk meshes aren't used.
+	 * @param meshable the blocks that are part of the chunk meshes.
+	 */
+	public ChunkCuller(ChunkMesher mesher, Predicate<Block> meshable) {
+		this.mesher = mesher;
+		this.meshable = meshable;
+	}
+
+	/**
+	 * @param projectionView projection matrix times view matrix
+	 * @param camera position of the camera, relative to the player, used to sort the transparent blocks.
+	 * @param selectedInstance block instance that gets selected, even if it is part of a chunk mesh. Can be null.
+	 */
+	public void cull(Matrix4f projectionView, Vector3f camera, Chunk[] chunks, Block[] blocks, Vector3fi playerPosition, int worldAnd, Vector3f ambientLight, BlockInstance selectedInstance) {
+		clear(blocks);
+		frustum.set(projectionView);
+		cameraPosition.set(camera);
+
+		// Store the position locally to prevent glitches when the updateThread changes the position.
+		int x0 = playerPosition.x;
+		float relX = playerPosition.relX;
+		int z0 = playerPosition.z;
+		float relZ = playerPosition.relZ;
+		float y0 = playerPosition.y+1.5f;
+		for(Chunk ch : chunks) {
+			// Block positions are the block centers, the chunk starts half a block lower:
+			float chunkX = CubyzMath.matchSign(((ch.getX() << 4) - x0) & worldAnd, worldAnd) - relX - 0.5f;
+			float chunkZ = CubyzMath.matchSign(((ch.getZ() << 4) - z0) & worldAnd, worldAnd) - relZ - 0.5f;
+			float chunkY = -y0 - 0.5f;
+			min.set(chunkX, chunkY, chunkZ);
+			max.set(chunkX + 16, chunkY + World.WORLD_HEIGHT, chunkZ + 16);
+			if(!frustum.testAab(min, max))
+				continue;
+			ChunkMesh mesh = null;
+			if(mesher != null) {
+				mesher.queue(ch);
+				mesh = ch.getMesh();
+			}
+			BlockInstance[] vis;
+			if(mesh != null) {
+				addMesh(mesh, chunkX, chunkY, chunkZ);
+				// Only the blocks that aren't part of the mesh need to be drawn one by one.
+				vis = mesh.others;
+				BlockInstance bi = selectedInstance;
+				if(bi != null && bi.getX() >> 4 == ch.getX() && bi.getZ() >> 4 == ch.getZ() && meshable.test(bi.getBlock())) {
+					// Drawn on top of the mesh, so the selection is visible:
+					Spatial tmp = (Spatial) bi.getSpatial();
+					tmp.setPosition(CubyzMath.matchSign((bi.getX() - x0) & worldAnd, worldAnd) - relX, bi.getY() - y0, CubyzMath.matchSign((bi.getZ() - z0) & worldAnd, worldAnd) - relZ);
+					if(Chunk.easyLighting)
+						ch.getCornerLight(bi.getX() & 15, bi.getY(), bi.getZ() & 15, ambientLight, tmp.light);
+					selected = tmp;
+					selectedBlock = bi.getID();
+				}
+			} else {
+				vis = ch.getVisibles();
+			}
+			for(int i = 0; i < vis.length && vis[i] != null; i++) {
+				BlockInstance bi = vis[i];
+				float x = CubyzMath.matchSign((bi.getX() - x0) & worldAnd, worldAnd) - relX;
+				float y = bi.getY() - y0;
+				float z = CubyzMath.matchSign((bi.getZ() - z0) & worldAnd, worldAnd) - relZ;
+				// Do the frustum culling directly here.
+				if(frustum.testSphere(x, y, z, 0.866025f)) {
+					// Only draw blocks that have at least one face facing the player.
+					if(bi.getBlock().isTransparent() || // Ignore transparent blocks in the process, so the surface of water can still be seen from below.
+							(x > 0.5001f && !bi.neighborEast) ||
+							(x < -0.5001f && !bi.neighborWest) ||
+							(y > 0.5001f && !bi.neighborDown) ||
+							(y < -0.5001f && !bi.neighborUp) ||
+							(z > 0.5001f && !bi.neighborSouth) ||
+							(z < -0.5001f && !bi.neighborNorth)) {
+						Spatial tmp = (Spatial) bi.getSpatial();
+						tmp.setPosition(x, y, z);
+						if(Chunk.easyLighting)
+							ch.getCornerLight(bi.getX() & 15, bi.getY(), bi.getZ() & 15, ambientLight, tmp.light);
+						if(tmp.isSelected()) {
+							selected = tmp;
+							selectedBlock = bi.getID();
+							continue;
+						}
+						map[bi.getID()].add(tmp);
+					}
+				}
+			}
+		}
+
+		// sort distances for correct render of transparent blocks
+		for(int i = 0; i < blocks.length; i++) {
+			Block b = blocks[i];
+			if(b != null && b.isTransparent()) {
+				map[b.ID].sort(distanceComparator);
+			}
+		}
+	}
+
+	/**
+	 * Empties the lists, without culling anything.
+	 */
+	public void clear(Block[] blocks) {
+		// Don't create new lists every time to reduce re-allocations:
+		if(blocks.length != map.length) {
+			map = (RenderList<Spatial>[]) new RenderList[blocks.length];
+			for(int i = 0; i < map.length; i++) {
+				map[i] = new RenderList<Spatial>(10);
+			}
+		}
+		for(int i = 0; i < map.length; i++) {
+			map[i].clear();
+		}
+		meshes.clear();
+		selected = null;
+		selectedBlock = -1;
+	}
+
+	private void addMesh(ChunkMesh mesh, float x, float y, float z) {
+		int i = meshes.size();
+		if(meshOffsets.length < 3*(i + 1)) {
+			float[] newOffsets = new float[meshOffsets.length*2];
+			System.arraycopy(meshOffsets, 0, newOffsets, 0, meshOffsets.length);
+			meshOffsets = newOffsets;
+		}
+		meshOffsets[3*i] = x;
+		meshOffsets[3*i + 1] = y;
+		meshOffsets[3*i + 2] = z;
+		meshes.add(mesh);
+	}
+}
@@ -0,0 +1,243 @@
+package io.cubyz.client;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import io.cubyz.blocks.Block;
+import io.cubyz.world.ChunkMesh;
+import io.cubyz.world.ChunkMesher;
+import io.jungle.InstancedMesh;
+import io.jungle.Mesh;
+import io.jungle.Texture;
+import io.jungle.util.ShaderProgram;
+
+/**
+ * Uploads the ChunkMeshes to the GPU and draws them.<br>
+ * The chunk meshes use the textures of the normal block models. For every block and face the texture coordinates of the model are turned into an affine map, which the fragment shader applies to the repeating texture coordinates of the mesh.
+ * Blocks whose model isn't a cube are left to the instanced renderer.
+ */
+
+public class ChunkMeshRenderer {
+	private static final float[] NOT_MESHABLE = new float[0];
+	// Axes along the mesher's u and v coordinates and the plane of each face. Same order as in ChunkMesher: -x, +x, +z, -z, down, up
+	private static final int[] AXIS = {0, 0, 2, 2, 1, 1};
+	private static final int[] U_AXIS = {2, 2, 0, 0, 0, 0};
+	private static final int[] V_AXIS = {1, 1, 1, 1, 2, 2};
+	private static final float[] PLANE = {-0.5f, 0.5f, 0.5f, -0.5f, -0.5f, 0.5f};
+
+	private final ChunkMesher mesher;
+	private final ConcurrentHashMap<Block, float[]> faceUVs = new ConcurrentHashMap<>();
+	private final ArrayList<ChunkMesh> uploaded = new ArrayList<>();
+	private final Matrix4f modelViewMatrix = new Matrix4f();
+
+	// The GPU buffers of one mesh.
+	private static class Buffers {
+		int vao;
+		int[] vbos;
+	}
+
+	public ChunkMeshRenderer() {
+		mesher = new ChunkMesher(Math.max(1, Runtime.getRuntime().availableProcessors()/2), this::isMeshable);
+	}
+
+	/**
+	 * Blocks are meshed if they aren't transparent and have a cube model.
+	 * Thread-safe, the mesher calls it from its own threads.
+	 */
+	public boolean isMeshable(Block b) {
+		return !b.isTransparent() && getFaceUV(b) != null;
+	}
+
+	public ChunkMesher getMesher() {
+		return mesher;
+	}
+
+	/**
+	 * Draws the meshes, uploads the new ones and frees the ones that are outdated.
+	 * The shader needs to be bound.
+	 * @param offsets position of the lower corner of each mesh relative to the camera, 3 floats per mesh.
+	 */
+	public void render(ShaderProgram shader, Matrix4f viewMatrix, RenderList<ChunkMesh> meshes, float[] offsets) {
+		if(!meshes.isEmpty()) {
+			draw(shader, viewMatrix, meshes, offsets);
+		}
+		// Freed after drawing, because the meshes in the list might have been replaced in the meantime.
+		freeOld();
+	}
+
+	private void draw(ShaderProgram shader, Matrix4f viewMatrix, RenderList<ChunkMesh> meshes, float[] offsets) {
+		shader.setUniform("isInstanced", 2);
+		shader.setUniform("selectedNonInstanced", 0f);
+		glActiveTexture(GL_TEXTURE0);
+		for(int i = 0; i < meshes.size(); i++) {
+			ChunkMesh mesh = (ChunkMesh)meshes.array[i];
+			if(mesh.renderData == null) {
+				upload(mesh);
+			}
+			glBindVertexArray(((Buffers)mesh.renderData).vao);
+			modelViewMatrix.set(viewMatrix).translate(offsets[3*i], offsets[3*i + 1], offsets[3*i + 2]);
+			shader.setUniform("modelViewNonInstancedMatrix", modelViewMatrix);
+			for(int g = 0; g < mesh.blocks.length; g++) {
+				Mesh blockMesh = Meshes.blockMeshes.get(mesh.blocks[g]);
+				float[] faceUV = getFaceUV(mesh.blocks[g]);
+				if(blockMesh == null || faceUV == null) continue;
+				shader.setUniform("material", blockMesh.getMaterial());
+				shader.setVec2ArrayUniform("faceUV", faceUV);
+				Texture texture = blockMesh.getMaterial().getTexture();
+				glBindTexture(GL_TEXTURE_2D, texture == null ? 0 : texture.getId());
+				int start = mesh.groupStart[g];
+				int quads = mesh.groupStart[g + 1] - start;
+				glDrawElements(GL_TRIANGLES, quads*6, GL_UNSIGNED_INT, start*6L*4);
+			}
+		}
+		glBindVertexArray(0);
+		glBindTexture(GL_TEXTURE_2D, 0);
+	}
+
+	public void cleanup() {
+		mesher.stop();
+		for(ChunkMesh mesh : uploaded) {
+			free(mesh);
+		}
+		uploaded.clear();
+	}
+
+	// Returns null if the block can't be meshed.
+	private float[] getFaceUV(Block b) {
+		float[] faceUV = faceUVs.get(b);
+		if(faceUV == null) {
+			Mesh mesh = Meshes.blockMeshes.get(b);
+			if(mesh == null) return null; // Not loaded yet.
+			faceUV = mesh instanceof InstancedMesh ? createFaceUV((InstancedMesh)mesh) : null;
+			if(faceUV == null) faceUV = NOT_MESHABLE;
+			faceUVs.put(b, faceUV);
+		}
+		return faceUV == NOT_MESHABLE ? null : faceUV;
+	}
+
+	/**
+	 * Finds a triangle on every face of the cube and solves for the texture coordinates as an affine function of the position on the face.
+	 * @return origin, derivative along u and derivative along v for each face. null if the model doesn't cover all faces of the cube.
+	 */
+	private static float[] createFaceUV(InstancedMesh mesh) {
+		float[] positions = mesh.getPositions();
+		float[] textCoords = mesh.getTextCoords();
+		int[] indices = mesh.getIndices();
+		float[] result = new float[6*6];
+		boolean[] found = new boolean[6];
+		for(int t = 0; t + 2 < indices.length; t += 3) {
+			int a = indices[t], b = indices[t + 1], c = indices[t + 2];
+			for(int d = 0; d < 6; d++) {
+				if(found[d]) continue;
+				int axis = AXIS[d];
+				if(positions[3*a + axis] != PLANE[d] || positions[3*b + axis] != PLANE[d] || positions[3*c + axis] != PLANE[d]) continue;
+				// Position on the face in [0, 1]:
+				float sa = positions[3*a + U_AXIS[d]] + 0.5f, ta = positions[3*a + V_AXIS[d]] + 0.5f;
+				float sb = positions[3*b + U_AXIS[d]] + 0.5f - sa, tb = positions[3*b + V_AXIS[d]] + 0.5f - ta;
+				float sc = positions[3*c + U_AXIS[d]] + 0.5f - sa, tc = positions[3*c + V_AXIS[d]] + 0.5f - ta;
+				float det = sb*tc - sc*tb;
+				if(Math.abs(det) < 1e-6f) continue;
+				for(int k = 0; k < 2; k++) {
+					float uva = textCoords[2*a + k];
+					float uvb = textCoords[2*b + k] - uva;
+					float uvc = textCoords[2*c + k] - uva;
+					float du = (uvb*tc - uvc*tb)/det;
+					float dv = (sb*uvc - sc*uvb)/det;
+					result[6*d + k] = uva - sa*du - ta*dv;
+					result[6*d + 2 + k] = du;
+					result[6*d + 4 + k] = dv;
+				}
+				found[d] = true;
+			}
+		}
+		for(int d = 0; d < 6; d++) {
+			if(!found[d]) return null;
+		}
+		return result;
+	}
+
+	private void upload(ChunkMesh mesh) {
+		Buffers buffers = new Buffers();
+		buffers.vao = glGenVertexArrays();
+		buffers.vbos = new int[5];
+		glBindVertexArray(buffers.vao);
+		buffers.vbos[0] = createBuffer(0, 3, mesh.positions);
+		buffers.vbos[1] = createBuffer(1, 2, mesh.texCoords);
+		buffers.vbos[2] = createBuffer(2, 3, mesh.normals);
+
+		// The light uses the first slot of the instanced light attribute.
+		IntBuffer buffer = MemoryUtil.memAllocInt(mesh.light.length);
+		try {
+			buffer.put(mesh.light).flip();
+			buffers.vbos[3] = glGenBuffers();
+			glBindBuffer(GL_ARRAY_BUFFER, buffers.vbos[3]);
+			glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+			glVertexAttribIPointer(7, 1, GL_INT, 0, 0);
+			glEnableVertexAttribArray(7);
+		} finally {
+			MemoryUtil.memFree(buffer);
+		}
+
+		int[] indices = ChunkMesh.createIndices(mesh.getQuadCount());
+		buffer = MemoryUtil.memAllocInt(indices.length);
+		try {
+			buffer.put(indices).flip();
+			buffers.vbos[4] = glGenBuffers();
+			glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffers.vbos[4]);
+			glBufferData(GL_ELEMENT_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+		} finally {
+			MemoryUtil.memFree(buffer);
+		}
+
+		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		glBindVertexArray(0);
+		mesh.renderData = buffers;
+		uploaded.add(mesh);
+	}
+
+	private static int createBuffer(int attribute, int size, float[] data) {
+		FloatBuffer buffer = MemoryUtil.memAllocFloat(data.length);
+		try {
+			buffer.put(data).flip();
+			int vbo = glGenBuffers();
+			glBindBuffer(GL_ARRAY_BUFFER, vbo);
+			glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+			glVertexAttribPointer(attribute, size, GL_FLOAT, false, 0, 0);
+			glEnableVertexAttribArray(attribute);
+			return vbo;
+		} finally {
+			MemoryUtil.memFree(buffer);
+		}
+	}
+
+	// Frees the meshes that got replaced or belong to unloaded chunks.
+	private void freeOld() {
+		for(int i = uploaded.size() - 1; i >= 0; i--) {
+			ChunkMesh mesh = uploaded.get(i);
+			if(mesh.chunk.isLoaded() && mesh.chunk.getMesh() == mesh) continue;
+			free(mesh);
+			uploaded.set(i, uploaded.get(uploaded.size() - 1));
+			uploaded.remove(uploaded.size() - 1);
+		}
+	}
+
+	private static void free(ChunkMesh mesh) {
+		Buffers buffers = (Buffers)mesh.renderData;
+		for(int vbo : buffers.vbos) {
+			glDeleteBuffers(vbo);
+		}
+		glDeleteVertexArrays(buffers.vao);
+		mesh.renderData = null;
+	}
+}
@@ -11,6 +11,7 @@ import java.util.logging.*;
 import javax.imageio.ImageIO;
 import javax.swing.JOptionPane;
 
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
 import org.joml.Vector4f;
@@ -97,6 +98,7 @@ public class Cubyz implements IGameLogic {
 	public static boolean isOnlineServerOpened = false;
 
 	public static boolean clientShowDebug = false;
+	public static final AllocationCounter renderAllocations = new AllocationCounter(); // Bytes allocated by the render thread per frame.
 
 	public static Cubyz instance;
 	
@@ -106,6 +108,14 @@ public class Cubyz implements IGameLogic {
 	private static HashMap<String, MenuGUI> userGUIs = new HashMap<>();
 	
 	public boolean screenshot;
+	
+	// The state of the update thread that is handed to the renderer:
+	private final StateBuffer<RenderState> renderStates = new StateBuffer<>(RenderState::new);
+	private final Vector3fi lastPlayerPosition = new Vector3fi();
+	private final Vector3f lastCameraRotation = new Vector3f();
+	private boolean hasLastState;
+	private final Vector3fi renderPosition = new Vector3fi(); // Interpolated player position, only used by the render thread.
+	private final Matrix4f directionMatrix = new Matrix4f();
 
 	public Cubyz() {
 		instance = this;
@@ -266,6 +276,9 @@ public class Cubyz implements IGameLogic {
 	public static void requestJoin(String host, int port) {
 		if (mpClient != null) {
 			mpClient.connect(host, port);
+			if (mpClient.getLocalServer().error != null) {
+				return; // The handshake handler already told the player.
+			}
 			mpClient.join(profile);
 			serverIP = host;
 			serverPort = port;
@@ -281,9 +294,11 @@ public class Cubyz implements IGameLogic {
 	public static PingResponse pingServer(String host, int port) {
 		requestJoin(host, port);
 		PingResponse resp = mpClient.ping();
-		System.out.println("Ping response:");
-		System.out.println("\tMOTD: " + resp.motd);
-		System.out.println("\tPlayers: " + resp.onlinePlayers + "/" + resp.maxPlayers);
+		if (resp != null) {
+			System.out.println("Ping response:");
+			System.out.println("\tMOTD: " + resp.motd);
+			System.out.println("\tPlayers: " + resp.onlinePlayers + "/" + resp.maxPlayers);
+		}
 		mpClient.disconnect();
 		return resp;
 	}
@@ -630,10 +645,16 @@ public class Cubyz implements IGameLogic {
 				Keyboard.setKeyPressed(GLFW.GLFW_KEY_EQUAL, false);
 				System.gc();
 			}
-			msd.selectSpatial(world.getCurrentTorus().getVisibleChunks(), world.getLocalPlayer().getPosition(), ctx.getCamera().getViewMatrix().positiveZ(dir).negate());
+			msd.selectSpatial(world.getCurrentTorus().getVisibleChunks(), world.getLocalPlayer().getPosition(), getViewDirection());
 		}
 		mouse.clearScroll();
 	}
+	
+	// The view matrix belongs to the render thread, so the update thread calculates the direction from the rotation itself.
+	private Vector3f getViewDirection() {
+		Vector3f rot = ctx.getCamera().getRotation();
+		return directionMatrix.identity().rotateX(rot.x).rotateY(rot.y).positiveZ(dir).negate();
+	}
 
 	public static final Chunk[] EMPTY_CHUNK_LIST = new Chunk[0];
 	public static final Block[] EMPTY_BLOCK_LIST = new Block[0];
@@ -653,10 +674,9 @@ public class Cubyz implements IGameLogic {
 		ck.createBlocksForOverlay();
 		ck.rawAddBlock(0, 0, 0, binst);
 		ck.revealBlock(binst);
-		Vector3fi pos = world.getLocalPlayer().getPosition();
-		Vector3f rot = ctx.getCamera().getRotation();
-		world.getLocalPlayer().setPosition(new Vector3fi(0, -1, 1));
-		ctx.getCamera().setRotation(0, 0, 0);
+		Camera camera = renderer.getCamera();
+		Vector3f rot = new Vector3f(camera.getRotation());
+		camera.setRotation(0, 0, 0);
 		
 		FrameBuffer buf = new FrameBuffer();
 		buf.genColorTexture(128, 128);
@@ -668,7 +688,7 @@ public class Cubyz implements IGameLogic {
 		ctx.setHud(null);
 		//renderer.orthogonal = true;
 		window.setResized(true); // update projection matrix
-		renderer.render(window, ctx, new Vector3f(1, 1, 1), light, new Chunk[] {ck}, world.getBlocks(), EMPTY_ENTITY_LIST, EMPTY_SPATIAL_LIST, world.getLocalPlayer(), world.getCurrentTorus().getAnd());
+		renderer.render(window, ctx, new Vector3f(1, 1, 1), light, new Chunk[] {ck}, world.getBlocks(), EMPTY_ENTITY_LIST, EMPTY_SPATIAL_LIST, world.getLocalPlayer(), new Vector3fi(0, -1, 1), world.getCurrentTorus().getAnd());
 		//renderer.orthogonal = false;
 		window.setResized(true); // update projection matrix for next render
 		ctx.setHud(gameUI);
@@ -676,8 +696,7 @@ public class Cubyz implements IGameLogic {
 		GL11.glViewport(0, 0, window.getWidth(), window.getHeight());
 		window.setRenderTarget(null);
 		
-		world.getLocalPlayer().setPosition(pos);
-		ctx.getCamera().setRotation(rot.x, rot.y, rot.z);
+		camera.setRotation(rot.x, rot.y, rot.z);
 		return buf;
 	}
 	
@@ -766,10 +785,20 @@ public class Cubyz implements IGameLogic {
 	
 	@Override
 	public void render(Window window) {
+		renderAllocations.next();
 		if (window.shouldClose()) {
 			game.exit();
 		}
 		
+		RenderState state = renderStates.getFront();
+		if (world != null) {
+			if (state.hasPlayer) {
+				state.interpolate(game.getInterpolation(state.tickTime), world.getCurrentTorus().getAnd(), renderPosition, renderer.getCamera().getRotation());
+			} else { // The update thread didn't see the world yet.
+				renderPosition.set(world.getLocalPlayer().getPosition());
+			}
+		}
+		
 		if (world != null) {
 			if (playerInc.x != 0 || playerInc.z != 0) { // while walking
 				if (bobbingUp) {
@@ -790,7 +819,7 @@ public class Cubyz implements IGameLogic {
 			if (playerInc.x != 0) {
 				world.getLocalPlayer().vx = playerInc.x;
 			}
-			ctx.getCamera().setPosition(0, playerBobbing, 0);
+			renderer.getCamera().setPosition(0, playerBobbing, 0);
 		}
 		
 		if (!renderDeque.isEmpty()) {
@@ -810,8 +839,7 @@ public class Cubyz implements IGameLogic {
 			clearColor = world.getCurrentTorus().getClearColor();
 			ctx.getFog().setColor(clearColor);
 			ctx.getFog().setDensity(1 / (world.getRenderDistance()*10f));
-			Player player = world.getLocalPlayer();
-			Block bi = world.getCurrentTorus().getBlock(player.getPosition().x+Math.round(player.getPosition().relX), (int)(player.getPosition().y)+3, player.getPosition().z+Math.round(player.getPosition().relZ));
+			Block bi = world.getCurrentTorus().getBlock(renderPosition.x+Math.round(renderPosition.relX), (int)(renderPosition.y)+3, renderPosition.z+Math.round(renderPosition.relZ));
 			if(bi != null && !bi.isSolid()) {
 				Vector3f lightingAdjust = bi.getLightAdjust();
 				ambient.x *= lightingAdjust.x;
@@ -823,7 +851,12 @@ public class Cubyz implements IGameLogic {
 			float lightX = (((float)world.getGameTime() % world.getCurrentTorus().getStellarTorus().getDayCycle()) / (float) (world.getCurrentTorus().getStellarTorus().getDayCycle()/2)) - 1f;
 			light.getDirection().set(lightY, 0, lightX);
 			window.setClearColor(clearColor);
-			renderer.render(window, ctx, ambient, light, world.getCurrentTorus().getVisibleChunks(), world.getBlocks(), world.getCurrentTorus().getEntities(), worldSpatialList, world.getLocalPlayer(), world.getCurrentTorus().getAnd());
+			renderer.selectedInstance = msd.getSelectedBlockInstance();
+			if (mpClient != null && mpClient.isConnected() && mpClient.getHandler().getWorld() != null) {
+				// The server only sends positions every tick:
+				mpClient.getHandler().getWorld().getRemoteEntities().interpolate(System.nanoTime()/1000000);
+			}
+			renderer.render(window, ctx, ambient, light, world.getCurrentTorus().getVisibleChunks(), world.getBlocks(), world.getCurrentTorus().getEntities(), worldSpatialList, world.getLocalPlayer(), renderPosition, world.getCurrentTorus().getAnd());
 		} else {
 			clearColor.y = clearColor.z = 0.7f;
 			clearColor.x = 0.1f;
@@ -837,7 +870,7 @@ public class Cubyz implements IGameLogic {
 				window.setRenderTarget(buf);
 			}
 			
-			renderer.render(window, ctx, brightAmbient, light, EMPTY_CHUNK_LIST, EMPTY_BLOCK_LIST, EMPTY_ENTITY_LIST, EMPTY_SPATIAL_LIST, null, -1);
+			renderer.render(window, ctx, brightAmbient, light, EMPTY_CHUNK_LIST, EMPTY_BLOCK_LIST, EMPTY_ENTITY_LIST, EMPTY_SPATIAL_LIST, null, null, -1);
 			
 			if (screenshot) {
 				/*FrameBuffer buf = window.getRenderTarget();
@@ -887,7 +920,7 @@ public class Cubyz implements IGameLogic {
 					if(msd.getSelectedBlockInstance().getBlock().onClick(world, msd.getSelectedBlockInstance().getPosition())) {
 						// potentially do a hand animation, in the future
 					} else {
-						Vector3i pos = msd.getEmptyPlace(world.getLocalPlayer().getPosition(), ctx.getCamera().getViewMatrix().positiveZ(dir).negate());
+						Vector3i pos = msd.getEmptyPlace(world.getLocalPlayer().getPosition(), getViewDirection());
 						Block b = world.getLocalPlayer().getInventory().getBlock(inventorySelection);
 						if (b != null && pos != null) {
 							world.getCurrentTorus().placeBlock(pos.x, pos.y, pos.z, b);
@@ -898,7 +931,12 @@ public class Cubyz implements IGameLogic {
 			}
 			playerInc.x = playerInc.y = playerInc.z = 0.0F; // Reset positions
 			world.update();
+			lp.getRotation().set(ctx.getCamera().getRotation()); // The chunk generation prefers chunks in view direction.
 			world.getCurrentTorus().seek(lp.getPosition().x, lp.getPosition().z);
+			if (mpClient != null && mpClient.isConnected() && mpClient.getHandler().getWorld() != null) {
+				// The server streams the chunks around the position it knows:
+				mpClient.getHandler().updatePosition(lp.getPosition().x, (int)Math.floor(lp.getPosition().y), lp.getPosition().z);
+			}
 			float lightAngle = (float)Math.PI/2 + (float)Math.PI*(((float)world.getGameTime() % world.getCurrentTorus().getStellarTorus().getDayCycle())/(world.getCurrentTorus().getStellarTorus().getDayCycle()/2));
 			skySun.setPosition((float)Math.cos(lightAngle)*500, (float)Math.sin(lightAngle)*500, 0);
 			skySun.setRotation(0, 0, -lightAngle);
@@ -909,6 +947,32 @@ public class Cubyz implements IGameLogic {
 				ctx.getCamera().setRotation(-Camera.piHalf, ctx.getCamera().getRotation().y, ctx.getCamera().getRotation().z);
 			}
 		}
+		publishRenderState();
+	}
+	
+	// Hands the player position and camera rotation of this update to the render thread.
+	private void publishRenderState() {
+		RenderState state = renderStates.getBack();
+		state.tickTime = game.getTickTime();
+		state.hasPlayer = world != null;
+		if (world != null) {
+			Vector3fi position = world.getLocalPlayer().getPosition();
+			Vector3f rotation = ctx.getCamera().getRotation();
+			if (!hasLastState) {
+				lastPlayerPosition.set(position);
+				lastCameraRotation.set(rotation);
+				hasLastState = true;
+			}
+			state.lastPosition.set(lastPlayerPosition);
+			state.position.set(position);
+			state.lastRotation.set(lastCameraRotation);
+			state.rotation.set(rotation);
+			lastPlayerPosition.set(position);
+			lastCameraRotation.set(rotation);
+		} else {
+			hasLastState = false;
+		}
+		renderStates.publish();
 	}
 
 	public static int getFPS() {
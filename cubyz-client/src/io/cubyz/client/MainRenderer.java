@@ -3,7 +3,6 @@ package io.cubyz.client;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL13.glActiveTexture;
 
-import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
@@ -13,9 +12,9 @@ import io.cubyz.blocks.Block;
 import io.cubyz.blocks.BlockInstance;
 import io.cubyz.entity.Entity;
 import io.cubyz.entity.Player;
-import io.cubyz.math.CubyzMath;
 import io.cubyz.math.Vector3fi;
 import io.cubyz.world.Chunk;
+import io.jungle.Camera;
 import io.jungle.FrameBuffer;
 import io.jungle.InstancedMesh;
 import io.jungle.Mesh;
@@ -46,8 +45,16 @@ public class MainRenderer implements IRenderer {
 	private Transformation transformation;
 	private String shaders = "";
 	private Matrix4f prjViewMatrix = new Matrix4f();
-	private FrustumIntersection frustumInt = new FrustumIntersection();
 	public static ShadowMap shadowMap;
+	private ChunkMeshRenderer chunkMeshRenderer;
+	private ChunkCuller culler;
+	// Reused every frame:
+	private final Vector3f lightPosition = new Vector3f(), lightRotation = new Vector3f();
+	private final Vector4f tmpVector = new Vector4f();
+	private final DirectionalLight viewDirectionalLight = new DirectionalLight(new Vector3f(), new Vector3f(), 0);
+	/** The block the player is looking at. Needs to be set from outside, because blocks in a chunk mesh don't have their own spatial. */
+	public BlockInstance selectedInstance;
+	private final Camera camera = new Camera(); // Only used by the render thread, the update thread has its own one in the Context.
 
 	public static final int MAX_POINT_LIGHTS = 0;
 	public static final int MAX_SPOT_LIGHTS = 0;
@@ -100,6 +107,7 @@ public class MainRenderer implements IRenderer {
 		shaderProgram.createFogUniform("fog");
 		shaderProgram.createUniform("shadowMap");
 		shaderProgram.createUniform("cheapLighting");
+		shaderProgram.createUniform("faceUV");
 		
 		depthShaderProgram = new ShaderProgram();
 		depthShaderProgram.createVertexShader(Utils.loadResource(shaders + "/depth_vertex.vs"));
@@ -121,6 +129,8 @@ public class MainRenderer implements IRenderer {
 		window.setProjectionMatrix(transformation.getProjectionMatrix((float) Math.toRadians(70.0f), window.getWidth(),
 				window.getHeight(), Z_NEAR, Z_FAR));
 		loadShaders();
+		chunkMeshRenderer = new ChunkMeshRenderer();
+		culler = new ChunkCuller(chunkMeshRenderer.getMesher(), chunkMeshRenderer::isMeshable);
 
 		inited = true;
 	}
@@ -129,9 +139,6 @@ public class MainRenderer implements IRenderer {
 		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT | GL_STENCIL_BUFFER_BIT);
 	}
 
-	RenderList<Spatial>[] map = (RenderList<Spatial>[]) new RenderList[0];
-	
-	
 	/**
 	 * Renders a Cubyz world.
 	 * @param window the window to render in
@@ -143,9 +150,10 @@ public class MainRenderer implements IRenderer {
 	 * @param entities the entities to render
 	 * @param spatials the special objects to render (that are neither entity, neither blocks, like sun and moon, or rain)
 	 * @param localPlayer The world's local player
+	 * @param playerPosition the position of the local player at the time of this frame
 	 */
 	public void render(Window window, Context ctx, Vector3f ambientLight, DirectionalLight directionalLight,
-			Chunk[] chunks, Block[] blocks, Entity[] entities, Spatial[] spatials, Player localPlayer, int worldAnd) {
+			Chunk[] chunks, Block[] blocks, Entity[] entities, Spatial[] spatials, Player localPlayer, Vector3fi playerPosition, int worldAnd) {
 		if (window.isResized()) {
 			glViewport(0, 0, window.getWidth(), window.getHeight());
 			window.setResized(false);
@@ -153,114 +161,42 @@ public class MainRenderer implements IRenderer {
 			if (orthogonal) {
 				window.setProjectionMatrix(transformation.getOrthoProjectionMatrix(1f, -1f, -1f, 1f, Z_NEAR, Z_FAR));
 			} else {
-				window.setProjectionMatrix(transformation.getProjectionMatrix(ctx.getCamera().getFov(), window.getWidth(),
+				window.setProjectionMatrix(transformation.getProjectionMatrix(camera.getFov(), window.getWidth(),
 						window.getHeight(), Z_NEAR, Z_FAR));
 			}
 		}
 		if (!doRender)
 			return;
 		clear();
-		ctx.getCamera().setViewMatrix(transformation.getViewMatrix(ctx.getCamera()));
-		
-		Spatial selected = null;
-		int selectedBlock = -1;
-		if (blocks.length != map.length) {
-			map = (RenderList<Spatial>[]) new RenderList[blocks.length];
-			int arrayListCapacity = 10;
-			for (int i = 0; i < map.length; i++) {
-				map[i] = new RenderList<Spatial>(arrayListCapacity);
-			}
-		}
-		// Don't create a new ArrayList every time to reduce re-allocations:
-		for (int i = 0; i < map.length; i++) {
-			map[i].clear();
-		}
-		
+		camera.setViewMatrix(transformation.getViewMatrix(camera));
 		
 		// Uses FrustumCulling on the chunks.
 		prjViewMatrix.set(window.getProjectionMatrix());
-		prjViewMatrix.mul(ctx.getCamera().getViewMatrix());
+		prjViewMatrix.mul(camera.getViewMatrix());
 		// TODO: RayAabIntersection
 		
-		frustumInt.set(prjViewMatrix);
-		if(localPlayer != null) {
-			// Store the position locally to prevent glitches when the updateThread changes the position.
-			Vector3fi pos = localPlayer.getPosition();
-			int x0 = pos.x;
-			float relX = pos.relX;
-			int z0 = pos.z;
-			float relZ = pos.relZ;
-			float y0 = pos.y+1.5f;
-			for (Chunk ch : chunks) {
-				if (!frustumInt.testAab(ch.getMin(localPlayer, worldAnd), ch.getMax(localPlayer, worldAnd)))
-					continue;
-				BlockInstance[] vis = ch.getVisibles();
-				for (int i = 0; vis[i] != null; i++) {
-					BlockInstance bi = vis[i];
-					float x = CubyzMath.matchSign((bi.getX() - x0) & worldAnd, worldAnd) - relX;
-					float y = bi.getY() - y0;
-					float z = CubyzMath.matchSign((bi.getZ() - z0) & worldAnd, worldAnd) - relZ;
-					// Do the frustum culling directly here.
-					if(frustumInt.testSphere(x, y, z, 0.866025f)) {
-						// Only draw blocks that have at least one face facing the player.
-						if(bi.getBlock().isTransparent() || // Ignore transparent blocks in the process, so the surface of water can still be seen from below.
-								(x > 0.5001f && !bi.neighborEast) ||
-								(x < -0.5001f && !bi.neighborWest) ||
-								(y > 0.5001f && !bi.neighborDown) ||
-								(y < -0.5001f && !bi.neighborUp) ||
-								(z > 0.5001f && !bi.neighborSouth) ||
-								(z < -0.5001f && !bi.neighborNorth)) {
-							Spatial tmp = (Spatial) bi.getSpatial();
-							tmp.setPosition(x, y, z);
-							if(Chunk.easyLighting)
-								ch.getCornerLight(bi.getX() & 15, bi.getY(), bi.getZ() & 15, ambientLight, tmp.light);
-							if (tmp.isSelected()) {
-								selected = tmp;
-								selectedBlock = bi.getID();
-								continue;
-							}
-							map[bi.getID()].add(tmp);
-						}
-					}
-				}
-			}
-		}
-		
-		// sort distances for correct render of transparent blocks
-		Vector3f tmpa = new Vector3f();
-		Vector3f tmpb = new Vector3f();
-		for (int i = 0; i < blocks.length; i++) {
-			Block b = blocks[i];
-			if (b != null && b.isTransparent()) {
-				map[b.ID].sort((sa, sb) -> {
-					ctx.getCamera().getPosition().sub(sa.getPosition(), tmpa);
-					ctx.getCamera().getPosition().sub(sb.getPosition(), tmpb);
-					float lenA = tmpa.lengthSquared();
-					float lenB = tmpb.lengthSquared();
-					if (lenA > lenB) {
-						return 1;
-					} else if (lenA == lenB) {
-						return 0;
-					} else {
-						return -1;
-					}
-				});
-			}
+		if (localPlayer != null) {
+			culler.cull(prjViewMatrix, camera.getPosition(), chunks, blocks, playerPosition, worldAnd, ambientLight, selectedInstance);
+		} else {
+			culler.clear(blocks);
 		}
+		RenderList<Spatial>[] map = culler.map;
+		Spatial selected = culler.selected;
+		int selectedBlock = culler.selectedBlock;
 		
 		if (shadowMap != null) { // remember it will be disableable
-			renderDepthMap(directionalLight, blocks, selected, selectedBlock);
+			renderDepthMap(directionalLight, map, blocks, selected, selectedBlock);
 			glViewport(0, 0, window.getWidth(), window.getHeight()); // reset viewport
 			if (orthogonal) {
 				window.setProjectionMatrix(transformation.getOrthoProjectionMatrix(1f, -1f, -1f, 1f, Z_NEAR, Z_FAR));
 			} else {
-				window.setProjectionMatrix(transformation.getProjectionMatrix(ctx.getCamera().getFov(), window.getWidth(),
+				window.setProjectionMatrix(transformation.getProjectionMatrix(camera.getFov(), window.getWidth(),
 						window.getHeight(), Z_NEAR, Z_FAR));
 			}
-			ctx.getCamera().setViewMatrix(transformation.getViewMatrix(ctx.getCamera()));
+			camera.setViewMatrix(transformation.getViewMatrix(camera));
 		}
 		renderScene(ctx, ambientLight, null /* point light */, null /* spot light */, directionalLight, map, blocks, entities, spatials,
-				localPlayer, selected, selectedBlock);
+				localPlayer, playerPosition, selected, selectedBlock);
 		if (ctx.getHud() != null) {
 			ctx.getHud().render(window);
 		}
@@ -271,8 +207,8 @@ public class MainRenderer implements IRenderer {
 		float lightAngleY = (float) Math.asin(light.getDirection().x);
 		float lightAngleZ = 0f;
 		return transformation.getLightViewMatrix(
-				new Vector3f(light.getDirection()).mul(5f),
-				new Vector3f(lightAngleX, lightAngleY, lightAngleZ));
+				lightPosition.set(light.getDirection()).mul(5f),
+				lightRotation.set(lightAngleX, lightAngleY, lightAngleZ));
 	}
 	
 	public Matrix4f getShadowProjectionMatrix() {
@@ -280,7 +216,11 @@ public class MainRenderer implements IRenderer {
 	}
 	
 	// for shadow map
-	public void renderDepthMap(DirectionalLight light, Block[] blocks, Spatial selected, int selectedBlock) {
+	public Camera getCamera() {
+		return camera;
+	}
+	
+	public void renderDepthMap(DirectionalLight light, RenderList<Spatial>[] map, Block[] blocks, Spatial selected, int selectedBlock) {
 		FrameBuffer fbo = shadowMap.getDepthMapFBO();
 		fbo.bind();
 		Texture depthTexture = fbo.getDepthTexture();
@@ -326,7 +266,7 @@ public class MainRenderer implements IRenderer {
 	}
 	
 	public void renderScene(Context ctx, Vector3f ambientLight, PointLight[] pointLightList, SpotLight[] spotLightList,
-			DirectionalLight directionalLight, RenderList<Spatial>[] map, Block[] blocks, Entity[] entities, Spatial[] spatials, Player p, Spatial selected,
+			DirectionalLight directionalLight, RenderList<Spatial>[] map, Block[] blocks, Entity[] entities, Spatial[] spatials, Player p, Vector3fi playerPosition, Spatial selected,
 			int selectedBlock) {
 		shaderProgram.bind();
 		
@@ -345,11 +285,17 @@ public class MainRenderer implements IRenderer {
 			}
 		}
 		
-		Matrix4f viewMatrix = ctx.getCamera().getViewMatrix();
+		Matrix4f viewMatrix = camera.getViewMatrix();
 		shaderProgram.setUniform("viewMatrixInstanced", viewMatrix);
 		
 		renderLights(viewMatrix, ambientLight, pointLightList, spotLightList, directionalLight);
 		
+		if (shadowMap != null) {
+			glActiveTexture(GL13C.GL_TEXTURE1);
+			glBindTexture(GL_TEXTURE_2D, shadowMap.getDepthMapFBO().getDepthTexture().getId());
+		}
+		chunkMeshRenderer.render(shaderProgram, viewMatrix, culler.meshes, culler.meshOffsets);
+		
 		for (int i = 0; i < blocks.length; i++) {
 			if (map[i] == null)
 				continue;
@@ -393,7 +339,7 @@ public class MainRenderer implements IRenderer {
 				shaderProgram.setUniform("material", mesh.getMaterial());
 				
 				mesh.renderOne(() -> {
-					Vector3f position = ent.getRenderPosition(p.getPosition());
+					Vector3f position = ent.getRenderPosition(playerPosition);
 					Matrix4f modelViewMatrix = transformation.getModelViewMatrix(transformation.getModelMatrix(position, ent.getRotation(), 1f), viewMatrix);
 					shaderProgram.setUniform("isInstanced", 0);
 					shaderProgram.setUniform("selectedNonInstanced", 0f);
@@ -463,11 +409,12 @@ public class MainRenderer implements IRenderer {
 			}
 			// Get a copy of the directional light object and transform its position to view
 			// coordinates
-			DirectionalLight currDirLight = new DirectionalLight(directionalLight);
-			Vector4f dir = new Vector4f(currDirLight.getDirection(), 0);
+			viewDirectionalLight.getColor().set(directionalLight.getColor());
+			viewDirectionalLight.setIntensity(directionalLight.getIntensity());
+			Vector4f dir = tmpVector.set(directionalLight.getDirection(), 0);
 			dir.mul(viewMatrix);
-			currDirLight.setDirection(new Vector3f(dir.x, dir.y, dir.z));
-			shaderProgram.setUniform("directionalLight", currDirLight);
+			viewDirectionalLight.getDirection().set(dir.x, dir.y, dir.z);
+			shaderProgram.setUniform("directionalLight", viewDirectionalLight);
 		}
 	}
 
@@ -479,6 +426,9 @@ public class MainRenderer implements IRenderer {
 		if (depthShaderProgram != null) {
 			depthShaderProgram.cleanup();
 		}
+		if (chunkMeshRenderer != null) {
+			chunkMeshRenderer.cleanup();
+		}
 		if (shadowMap != null) {
 			shadowMap.getDepthMapFBO().cleanup();
 		}
@@ -0,0 +1,39 @@
+package io.cubyz.client;
+
+import org.joml.Vector3f;
+
+import io.cubyz.math.CubyzMath;
+import io.cubyz.math.Vector3fi;
+
+/**
+ * The player and camera state after one update, handed from the update thread to the renderer.<br>
+ * Also contains the state of the update before, so the renderer can interpolate between them.
+ */
+
+public class RenderState {
+	private static final float MAX_INTERPOLATION_DISTANCE = 16; // Bigger movements are teleports, which shouldn't be interpolated.
+
+	public final Vector3fi lastPosition = new Vector3fi(), position = new Vector3fi();
+	public final Vector3f lastRotation = new Vector3f(), rotation = new Vector3f();
+	public long tickTime; // Game.getTickTime of the update.
+	public boolean hasPlayer;
+
+	/**
+	 * @param alpha 0 gives the state of the update before, 1 the state of this update.
+	 */
+	public void interpolate(float alpha, int worldAnd, Vector3fi positionDest, Vector3f rotationDest) {
+		float dx = CubyzMath.matchSign((position.x - lastPosition.x) & worldAnd, worldAnd) + position.relX - lastPosition.relX;
+		float dy = position.y - lastPosition.y;
+		float dz = CubyzMath.matchSign((position.z - lastPosition.z) & worldAnd, worldAnd) + position.relZ - lastPosition.relZ;
+		if (Math.abs(dx) + Math.abs(dy) + Math.abs(dz) > MAX_INTERPOLATION_DISTANCE) {
+			positionDest.set(position);
+			rotationDest.set(rotation);
+			return;
+		}
+		positionDest.set(lastPosition);
+		positionDest.add(dx*alpha, dy*alpha, dz*alpha);
+		positionDest.x &= worldAnd;
+		positionDest.z &= worldAnd;
+		lastRotation.lerp(rotation, alpha, rotationDest);
+	}
+}
@@ -21,6 +21,7 @@ import io.cubyz.base.BaseMod;
 import io.cubyz.blocks.Block;
 import io.cubyz.client.Cubyz;
 import io.cubyz.entity.EntityType;
+import io.cubyz.metrics.Metrics;
 import io.cubyz.modding.ModLoader;
 import io.cubyz.ui.LoadingGUI;
 import io.cubyz.utils.ResourceContext;
@@ -82,11 +83,11 @@ public class LoadThread extends Thread {
 		//} catch (IOException e1) {
 		//	e1.printStackTrace();
 		//}
-		long start = System.currentTimeMillis();
+		long start = System.nanoTime();
 		Reflections reflections = new Reflections("", loader); // load all mods
 		Set<Class<?>> allClasses = reflections.getTypesAnnotatedWith(Mod.class);
-		long end = System.currentTimeMillis();
-		log.info("Took " + (end - start) + "ms for reflection");
+		long end = Metrics.timer("load.reflection").stop(start);
+		log.info("Took " + (end - start)/1000000 + "ms for reflection");
 		if (!allClasses.contains(BaseMod.class)) {
 			allClasses.add(BaseMod.class);
 			log.info("Manually adding BaseMod (probably on distributed JAR)");
@@ -1,6 +1,8 @@
 package io.cubyz.multiplayer.client;
 
+import io.cubyz.metrics.Metrics;
 import io.cubyz.multiplayer.GameProfile;
+import io.cubyz.multiplayer.protocol.Protocol;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
@@ -30,6 +32,8 @@ public class MPClient {
 		public String brand;
 		public String version;
 		public volatile PingResponse lastPingResponse;
+		public volatile String error; // Why the server refused the connection.
+		public volatile int worldAnd = -1; // From the handshake.
 	}
 
 	/**
@@ -60,11 +64,14 @@ public class MPClient {
 		return cch;
 	}
 
+	/**
+	 * @return null if the connection was closed before the server answered.
+	 */
 	public PingResponse ping() {
 		ls.lastPingResponse = null;
 		checkConnection();
 		cch.ping();
-		while (ls.lastPingResponse == null) {
+		while (ls.lastPingResponse == null && !cch.channelClosed) {
 			try {
 				Thread.sleep(1);
 			} catch (InterruptedException e) {
@@ -111,6 +118,7 @@ public class MPClient {
 						public void initChannel(SocketChannel ch) throws Exception {
 							ChannelPipeline p = ch.pipeline();
 							p.addLast(new LoggingHandler(LogLevel.INFO)); // debugging info
+							Protocol.addCodec(p, Metrics.histogram("net.client.packetBytes"));
 							p.addLast(cch);
 						}
 					});
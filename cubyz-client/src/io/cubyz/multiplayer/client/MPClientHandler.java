@@ -1,17 +1,35 @@
 package io.cubyz.multiplayer.client;
 
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 
-import io.cubyz.Constants;
 import io.cubyz.CubyzLogger;
 import io.cubyz.client.Cubyz;
+import io.cubyz.metrics.Counter;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.metrics.Timer;
 import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.packets.BlockChangesPacket;
+import io.cubyz.multiplayer.packets.ChatPacket;
+import io.cubyz.multiplayer.packets.ChunkPacket;
+import io.cubyz.multiplayer.packets.EntityDespawnPacket;
+import io.cubyz.multiplayer.packets.EntityMovesPacket;
+import io.cubyz.multiplayer.packets.EntitySpawnPacket;
+import io.cubyz.multiplayer.packets.HandshakePacket;
+import io.cubyz.multiplayer.packets.ListenPacket;
+import io.cubyz.multiplayer.packets.MovePacket;
+import io.cubyz.multiplayer.packets.PingDataPacket;
+import io.cubyz.multiplayer.packets.PingPongPacket;
+import io.cubyz.multiplayer.packets.VersionPacket;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.PacketDispatcher;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.cubyz.ui.ToastManager;
+import io.cubyz.ui.ToastManager.Toast;
 import io.cubyz.world.Chunk;
 import io.cubyz.world.RemoteWorld;
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
 
 @SuppressWarnings("unused")
 public class MPClientHandler extends ChannelInboundHandlerAdapter {
@@ -25,8 +43,14 @@ public class MPClientHandler extends ChannelInboundHandlerAdapter {
 	private RemoteWorld world;
 
 	private boolean hasPinged;
-	public boolean channelActive;
+	public volatile boolean channelActive;
+	public volatile boolean channelClosed;
 	private boolean worldInited;
+	private boolean hasMoved;
+	private int lastChunkX, lastChunkY, lastChunkZ;
+	private final PacketDispatcher dispatcher = new PacketDispatcher();
+	private static final Counter packetCounter = Metrics.counter("net.client.packets");
+	private static final Timer packetTimer = Metrics.timer("net.client.handle");
 	
 	public ChatHandler getChatHandler() {
 		if (chHandler == null) {
@@ -39,11 +63,7 @@ public class MPClientHandler extends ChannelInboundHandlerAdapter {
 
 				@Override
 				public void send(String msg) {
-					ByteBuf buf = ctx.alloc().buffer(1 + msg.length());
-					buf.writeByte(Packet.PACKET_CHATMSG);
-					buf.writeShort(msg.length());
-					buf.writeCharSequence(msg, Charset.forName("UTF-8"));
-					ctx.writeAndFlush(buf);
+					ctx.writeAndFlush(new ChatPacket(msg));
 				}
 				
 			};
@@ -53,23 +73,36 @@ public class MPClientHandler extends ChannelInboundHandlerAdapter {
 	
 	public MPClientHandler(MPClient cl, boolean doPing) {
 		this.cl = cl;
+		registerHandlers();
 	}
 	
 	public void ping() {
-		ByteBuf buf = ctx.alloc().buffer(1);
-		buf.writeByte(Packet.PACKET_PINGDATA);
-		ctx.writeAndFlush(buf);
+		ctx.writeAndFlush(new PingDataPacket());
 	}
 	
 	public void connect() {
-		ByteBuf buf = ctx.alloc().buffer(1);
-		buf.writeByte(Packet.PACKET_LISTEN);
-		buf.writeCharSequence(Cubyz.profile.getUUID().toString(), Constants.CHARSET);
-		String username = Cubyz.profile.getUsername();
-		buf.writeShort(username.length());
-		buf.writeCharSequence(username, Constants.CHARSET);
-		ctx.writeAndFlush(buf);
-		world = new RemoteWorld();
+		world = new RemoteWorld(cl.getLocalServer().worldAnd);
+		ctx.writeAndFlush(new ListenPacket(Cubyz.profile.getUUID(), Cubyz.profile.getUsername()));
+	}
+	
+	/**
+	 * Tells the server where the player is, so it can send the chunks around it.
+	 */
+	public void move(int x, int y, int z) {
+		ctx.writeAndFlush(new MovePacket(x, y, z));
+	}
+	
+	/**
+	 * Calls {@link #move(int, int, int)} if the player is in another chunk than at the last call.
+	 */
+	public void updatePosition(int x, int y, int z) {
+		if (hasMoved && x >> 4 == lastChunkX && y >> 4 == lastChunkY && z >> 4 == lastChunkZ)
+			return;
+		hasMoved = true;
+		lastChunkX = x >> 4;
+		lastChunkY = y >> 4;
+		lastChunkZ = z >> 4;
+		move(x, y, z);
 	}
 	
 	public RemoteWorld getWorld() {
@@ -80,63 +113,80 @@ public class MPClientHandler extends ChannelInboundHandlerAdapter {
 	public void channelActive(ChannelHandlerContext ctx) {
 		this.ctx = ctx;
 		messages = new ArrayList<>();
-		ByteBuf buf = ctx.alloc().buffer(1);
-		buf.writeByte(Packet.PACKET_GETVERSION);
-		ctx.writeAndFlush(buf);
+		ctx.writeAndFlush(new HandshakePacket(true));
 		channelActive = true;
 	}
-
+	
 	@Override
-	public void channelRead(ChannelHandlerContext ctx, Object msg) {
-		ByteBuf buf = (ByteBuf) msg;
-		while (buf.isReadable()) {
-			byte responseType = buf.readByte();
-			
-			if (responseType == Packet.PACKET_GETVERSION) {
-				int length = buf.readUnsignedByte();
-				String raw = buf.readCharSequence(length, Constants.CHARSET).toString();
-				cl.getLocalServer().brand = raw.split(";")[0];
-				cl.getLocalServer().version = raw.split(";")[1];
-				CubyzLogger.instance.fine("[MPClientHandler] Raw version + brand: " + raw);
-			}
-			
-			if (responseType == Packet.PACKET_PINGDATA) {
-				PingResponse pr = new PingResponse();
-				pr.motd = buf.readCharSequence(buf.readShort(), Constants.CHARSET).toString();
-				pr.onlinePlayers = buf.readInt();
-				pr.maxPlayers = buf.readInt();
-				cl.getLocalServer().lastPingResponse = pr;
-			}
-			
-			if (responseType == Packet.PACKET_PINGPONG) {
-				ByteBuf b = ctx.alloc().buffer(37);
-				b.writeByte(Packet.PACKET_PINGPONG);
-				b.writeCharSequence(Cubyz.profile.getUUID().toString(), Constants.CHARSET);
-				ctx.write(b);
+	public void channelInactive(ChannelHandlerContext ctx) {
+		channelClosed = true;
+	}
+	
+	private void registerHandlers() {
+		dispatcher.register(Packet.PACKET_HANDSHAKE, (ChannelHandlerContext ctx, HandshakePacket packet) -> {
+			cl.getLocalServer().brand = packet.brand;
+			cl.getLocalServer().version = packet.version;
+			cl.getLocalServer().worldAnd = packet.worldAnd;
+			if (!packet.accepted) {
+				String error = "The server uses protocol version " + packet.protocolVersion + " instead of " + Protocol.VERSION;
+				CubyzLogger.instance.severe("[MPClientHandler] " + error);
+				cl.getLocalServer().error = error;
+				ToastManager.queuedToasts.push(new Toast("Can't join the server", error));
+				ctx.close();
 			}
-			
-			if (responseType == Packet.PACKET_CHATMSG) {
-				short len = buf.readShort();
-				String chat = buf.readCharSequence(len, Constants.CHARSET).toString();
-				messages.add(chat);
+		});
+		dispatcher.register(Packet.PACKET_GETVERSION, (ChannelHandlerContext ctx, VersionPacket packet) -> {
+			cl.getLocalServer().brand = packet.info.split(";")[0];
+			cl.getLocalServer().version = packet.info.split(";")[1];
+			CubyzLogger.instance.fine("[MPClientHandler] Raw version + brand: " + packet.info);
+		});
+		dispatcher.register(Packet.PACKET_PINGDATA, (ChannelHandlerContext ctx, PingDataPacket packet) -> {
+			PingResponse pr = new PingResponse();
+			pr.motd = packet.motd;
+			pr.onlinePlayers = packet.onlinePlayers;
+			pr.maxPlayers = packet.maxPlayers;
+			cl.getLocalServer().lastPingResponse = pr;
+		});
+		dispatcher.register(Packet.PACKET_PINGPONG, (ChannelHandlerContext ctx, PingPongPacket packet) -> {
+			ctx.write(new PingPongPacket(Cubyz.profile.getUUID()));
+		});
+		dispatcher.register(Packet.PACKET_CHATMSG, (ChannelHandlerContext ctx, ChatPacket packet) -> {
+			messages.add(packet.message);
+		});
+		dispatcher.register(Packet.PACKET_CHUNK, (ChannelHandlerContext ctx, ChunkPacket packet) -> {
+			if (!worldInited) {
+				world.worldData(packet.seed);
+				worldInited = true;
 			}
-			
-			if (responseType == Packet.PACKET_CHUNK) {
-				int x = buf.readInt();
-				int z = buf.readInt();
-				int seed = buf.readInt();
-				int len = buf.readInt();
-				byte[] data = new byte[len];
-				buf.readBytes(data);
-				System.out.println("Got " + x + ", " + z);
-				if (!worldInited) {
-					world.worldData(seed);
-					worldInited = true;
-				}
-				world.submit(x, z, data);
+			world.submit(packet.x, packet.z, packet.content().nioBuffer());
+		});
+		dispatcher.register(Packet.PACKET_BLOCKCHANGES, (ChannelHandlerContext ctx, BlockChangesPacket packet) -> {
+			world.changeBlocks(packet);
+		});
+		dispatcher.register(Packet.PACKET_ENTITYSPAWN, (ChannelHandlerContext ctx, EntitySpawnPacket packet) -> {
+			world.getRemoteEntities().spawn(packet);
+		});
+		dispatcher.register(Packet.PACKET_ENTITYDESPAWN, (ChannelHandlerContext ctx, EntityDespawnPacket packet) -> {
+			world.getRemoteEntities().despawn(packet);
+		});
+		dispatcher.register(Packet.PACKET_ENTITYMOVES, (ChannelHandlerContext ctx, EntityMovesPacket packet) -> {
+			world.getRemoteEntities().move(packet);
+		});
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) {
+		long t = System.nanoTime();
+		IPacket packet = (IPacket) msg;
+		packetCounter.increment();
+		try {
+			if (!dispatcher.dispatch(ctx, packet)) {
+				CubyzLogger.instance.warning("[MPClientHandler] Unhandled packet type: " + packet.getID());
 			}
+		} finally {
+			ReferenceCountUtil.release(msg);
 		}
-		buf.release();
+		packetTimer.stop(t);
 	}
 
 	@Override
@@ -1,13 +1,19 @@
 package io.cubyz.ui;
 
+import java.util.Map;
+
 import io.cubyz.Constants;
 import io.cubyz.client.Cubyz;
 import io.cubyz.entity.Player;
 import io.cubyz.entity.PlayerEntity.PlayerImpl;
+import io.cubyz.metrics.Metric;
+import io.cubyz.metrics.Metrics;
 import io.cubyz.world.LocalTorusSurface;
 import io.cubyz.world.LocalWorld;
 import io.cubyz.world.World;
 import io.jungle.Window;
+import io.jungle.game.FrameTimes;
+import io.jungle.game.Game;
 
 /**
  * Note: This is the F3 debug menu
@@ -26,13 +32,18 @@ public class DebugOverlay extends MenuGUI {
 		if (Cubyz.clientShowDebug) {
 			NGraphics.setFont("Default", 12.0F);
 			NGraphics.setColor(255, 255, 255);
-			NGraphics.drawText(0, 0, Cubyz.getFPS() + " fps (vsync)");
-			NGraphics.drawText(100, 0, Cubyz.instance.game.getUPS() + " ups");
+			Game game = Cubyz.instance.game;
+			NGraphics.drawText(0, 0, Cubyz.getFPS() + " fps (" + (game.isVSync() ? "vsync" : game.getTargetFps() == 0 ? "uncapped" : "max " + game.getTargetFps()) + ")");
+			NGraphics.drawText(100, 0, game.getUPS() + " ups");
 			NGraphics.drawText(0, 12, "Branded \"" + Constants.GAME_BRAND + "\", version " + Constants.GAME_VERSION);
 			NGraphics.drawText(0, 24, "Windowed (" + win.getWidth() + "x" + win.getHeight() + ")");
 			NGraphics.drawText(0, 36, "Java " + javaVersion);
 			NGraphics.drawText(0, 108, "Memory: " + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory())/1024/1024
 					+ "/" + (Runtime.getRuntime().totalMemory()/1024/1024) + "MiB (max " + (Runtime.getRuntime().maxMemory()/1024/1024) + "MiB)");
+			FrameTimes frameTimes = game.getFrameTimes();
+			NGraphics.drawText(0, 144, String.format("Frame time: %.1f ms median, %.1f ms 99%%, %.1f ms max", frameTimes.getPercentile(0.5)/1e6, frameTimes.getPercentile(0.99)/1e6, frameTimes.getPercentile(1)/1e6));
+			long allocations = Cubyz.renderAllocations.getAverage();
+			NGraphics.drawText(0, 120, "Allocations: " + (allocations < 0 ? "unknown" : allocations/1024 + " KiB/frame"));
 			
 			if (Cubyz.world != null) {
 				World world = Cubyz.world;
@@ -42,21 +53,29 @@ public class DebugOverlay extends MenuGUI {
 				float z = p.getPosition().z + p.getPosition().relZ;
 				
 				NGraphics.drawText(0, 48, "XYZ: " + x + ", " + y + ", " + z);
-				NGraphics.drawText(0, 60, "Loaded Chunks: " + world.getCurrentTorus().getVisibleChunks().length + "/" + world.getCurrentTorus().getChunks().size());
+				NGraphics.drawText(0, 60, "Loaded Chunks: " + world.getCurrentTorus().getVisibleChunks().length + "/" + world.getCurrentTorus().getChunkCount());
 				NGraphics.drawText(0, 72, "Render Distance: " + world.getRenderDistance());
 				NGraphics.drawText(0, 84, "Game Time: " + world.getGameTime());
 				if (world instanceof LocalWorld) {
-					NGraphics.drawText(0, 96, "Chunk Queue Size: " + ((LocalTorusSurface) world.getCurrentTorus()).getChunkQueueSize());
+					LocalTorusSurface surface = (LocalTorusSurface) world.getCurrentTorus();
+					NGraphics.drawText(0, 96, "Chunk Queue Size: " + surface.getChunkQueueSize() + " Save Queue: " + surface.getSaveService().getQueueDepth() + " (last flush " + surface.getSaveService().getLastFlushTime()/1000000 + " ms)");
 				}
 				
 				if (p instanceof PlayerImpl) { // player on local world
 					PlayerImpl pi = (PlayerImpl) p;
 					if (pi.getRemainingBreakTime() > 0) {
-						NGraphics.drawText(0, 120, "Remaining Breaking Time: " + pi.getRemainingBreakTime());
+						NGraphics.drawText(0, 132, "Remaining Breaking Time: " + pi.getRemainingBreakTime());
 					}
 				}
 			}
 			
+			// All counters and timers on the right side:
+			int y = 0;
+			for (Map.Entry<String, Metric> entry : Metrics.getAll().entrySet()) {
+				NGraphics.drawText(win.getWidth() - 480, y, entry.getKey() + ": " + entry.getValue().describe());
+				y += 12;
+			}
+			
 			int h = win.getHeight();
 			NGraphics.drawText(0, h - 12, "0  fps -");
 			NGraphics.drawText(0, h - 42, "30 fps -");
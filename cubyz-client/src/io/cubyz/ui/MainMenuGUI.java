@@ -1,5 +1,7 @@
 package io.cubyz.ui;
 
+import io.cubyz.ClientOnly;
+import io.cubyz.blocks.Block;
 import io.cubyz.client.Cubyz;
 import io.cubyz.multiplayer.server.CubyzServer;
 import io.cubyz.translate.TextKey;
@@ -7,6 +9,8 @@ import io.cubyz.ui.components.Button;
 import io.cubyz.ui.components.Label;
 import io.cubyz.ui.options.OptionsGUI;
 import io.cubyz.utils.DiscordIntegration;
+import io.cubyz.world.CustomObject;
+import io.cubyz.world.LocalWorld;
 import io.jungle.Window;
 import io.jungle.hud.Font;
 
@@ -42,15 +46,23 @@ public class MainMenuGUI extends MenuGUI {
 		});
 		
 		mpPlay.setOnAction(() -> {
+			// The player hosts the world and plays in it directly, the integrated server shares it with the others.
+			LocalWorld world = new LocalWorld("multiplayer");
+			Block[] blocks = world.generate();
+			for(Block bl : blocks) {
+				if (bl instanceof CustomObject) {
+					ClientOnly.createBlockMesh.accept(bl);
+				}
+			}
+			Cubyz.gameUI.setMenu(null, false);
+			Cubyz.loadWorld(world.getCurrentTorus());
 			CubyzServer server = new CubyzServer(Cubyz.serverPort);
 			try {
-				server.start(true);
+				server.start(true, world.getCurrentTorus());
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 			Cubyz.requestJoin("localhost");
-			Cubyz.gameUI.setMenu(null, false);
-			Cubyz.loadWorld(Cubyz.mpClient.getHandler().getWorld().getCurrentTorus());
 		});
 		
 		exit.setOnAction(() -> {
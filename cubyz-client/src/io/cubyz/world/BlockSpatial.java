@@ -24,4 +24,11 @@ public class BlockSpatial extends Spatial implements IBlockSpatial {
 		return owner;
 	}
 	
+	@Override
+	public void setSelected(boolean selected) {
+		super.setSelected(selected);
+		// Slightly bigger, so it isn't hidden by the chunk mesh:
+		setScale(selected ? 1.002f : 1);
+	}
+	
 }
@@ -0,0 +1,248 @@
+package io.cubyz.world;
+
+import java.util.HashMap;
+
+import io.cubyz.CubyzLogger;
+import io.cubyz.api.CubyzRegistries;
+import io.cubyz.entity.Entity;
+import io.cubyz.entity.EntityType;
+import io.cubyz.math.CubyzMath;
+import io.cubyz.math.Vector3fi;
+import io.cubyz.multiplayer.packets.EntityDespawnPacket;
+import io.cubyz.multiplayer.packets.EntityMovesPacket;
+import io.cubyz.multiplayer.packets.EntitySpawnPacket;
+
+import static io.cubyz.multiplayer.packets.EntityMovesPacket.*;
+
+/**
+ * The entities the server sends, with a short history of their positions.<br>
+ * The server only sends positions 20 times per second, which would look choppy if they were used directly.
+ * Instead the entities are shown INTERPOLATION_DELAY in the past, between the two received positions around that time.
+ * The positions are timed by the server tick they belong to instead of their arrival, so network jitter below the delay doesn't make the movement uneven.
+ */
+
+public class RemoteEntities {
+	private static final int TICK_TIME = 50; // ms, same as EntityTracker.TICK_TIME on the server.
+	private static final int INTERPOLATION_DELAY = 2*TICK_TIME; // ms
+	private static final int BUFFER_SIZE = 8; // positions per entity
+	private static final int CLOCK_SAMPLES = 40;
+	private static final float MAX_INTERPOLATION_DISTANCE = 16; // Bigger movements are teleports, which shouldn't be interpolated.
+	private static final Entity[] EMPTY = new Entity[0];
+
+	private final int worldAnd;
+	private final HashMap<Integer, RemoteEntity> entities = new HashMap<>(); // Guarded by this.
+	private volatile Entity[] snapshot = EMPTY;
+	private long clockOffset; // Local time in ms at which tick 0 would have arrived.
+	private boolean hasClock;
+	private final long[] clockSamples = new long[CLOCK_SAMPLES];
+	private int sampleCount;
+
+	private static class RemoteEntity {
+		final Entity entity;
+		// The latest position as the server sent it, the movements are relative to it:
+		int x, fx, y, z, fz;
+		short rotX, rotY, rotZ;
+		// Ring buffer of the received positions:
+		final int[] ticks = new int[BUFFER_SIZE];
+		final Vector3fi[] positions = new Vector3fi[BUFFER_SIZE];
+		final short[] rotations = new short[3*BUFFER_SIZE];
+		final boolean[] teleported = new boolean[BUFFER_SIZE]; // Don't interpolate towards this position.
+		int newest = -1;
+		int count;
+
+		RemoteEntity(Entity entity) {
+			this.entity = entity;
+			for (int i = 0; i < BUFFER_SIZE; i++) {
+				positions[i] = new Vector3fi();
+			}
+		}
+
+		void push(int tick, boolean teleport) {
+			if (count != 0 && tick <= ticks[newest]) { // Several changes in one tick.
+				count--;
+				newest = (newest + BUFFER_SIZE - 1) % BUFFER_SIZE;
+			}
+			if (count != 0 && ticks[newest] < tick - 1) {
+				// Nothing gets sent while the entity stands still, so it stood at the last position until the tick before:
+				int last = newest;
+				add(tick - 1);
+				positions[newest].set(positions[last]);
+				System.arraycopy(rotations, 3*last, rotations, 3*newest, 3);
+			}
+			add(tick);
+			teleported[newest] = teleport;
+			Vector3fi pos = positions[newest];
+			pos.x = x;
+			pos.relX = (float)fx/POSITION_SCALE;
+			pos.y = (float)y/POSITION_SCALE;
+			pos.z = z;
+			pos.relZ = (float)fz/POSITION_SCALE;
+			rotations[3*newest] = rotX;
+			rotations[3*newest + 1] = rotY;
+			rotations[3*newest + 2] = rotZ;
+		}
+
+		private void add(int tick) {
+			newest = (newest + 1) % BUFFER_SIZE;
+			ticks[newest] = tick;
+			teleported[newest] = false;
+			count = Math.min(count + 1, BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * @param worldAnd -1 if the world doesn't wrap around.
+	 */
+	public RemoteEntities(int worldAnd) {
+		this.worldAnd = worldAnd;
+	}
+
+	/**
+	 * @return all entities. The array must not be changed.
+	 */
+	public Entity[] getEntities() {
+		return snapshot;
+	}
+
+	// Packets are sent right after each server tick, so the earliest recent arrival is the best guess for the time of a tick.
+	private void updateClock(int tick) {
+		long sample = System.nanoTime()/1000000 - (long)tick*TICK_TIME;
+		clockSamples[sampleCount++ % CLOCK_SAMPLES] = sample;
+		long min = sample;
+		for (int i = 0; i < Math.min(sampleCount, CLOCK_SAMPLES); i++) {
+			min = Math.min(min, clockSamples[i]);
+		}
+		if (!hasClock || Math.abs(min - clockOffset) > INTERPOLATION_DELAY) {
+			clockOffset = min;
+			hasClock = true;
+		} else {
+			clockOffset += Long.signum(min - clockOffset); // 1 ms per packet, so the entities don't visibly speed up or slow down.
+		}
+	}
+
+	/**
+	 * Called from the network thread.
+	 */
+	public synchronized void spawn(EntitySpawnPacket packet) {
+		updateClock(packet.tick);
+		EntityType type = CubyzRegistries.ENTITY_REGISTRY.getByID(packet.type);
+		if (type == null) {
+			CubyzLogger.instance.warning("[RemoteEntities] Unknown entity type " + packet.type);
+			return;
+		}
+		RemoteEntity ent = new RemoteEntity(type.newEntity());
+		ent.x = packet.x;
+		ent.fx = packet.fx;
+		ent.y = packet.y;
+		ent.z = packet.z;
+		ent.fz = packet.fz;
+		ent.rotX = packet.rotX;
+		ent.rotY = packet.rotY;
+		ent.rotZ = packet.rotZ;
+		ent.push(packet.tick, true);
+		setState(ent, ent.newest);
+		entities.put(packet.id, ent);
+		snapshot = toArray();
+	}
+
+	/**
+	 * Called from the network thread.
+	 */
+	public synchronized void despawn(EntityDespawnPacket packet) {
+		for (int i = 0; i < packet.size; i++) {
+			entities.remove(packet.ids[i]);
+		}
+		snapshot = toArray();
+	}
+
+	/**
+	 * Called from the network thread.
+	 */
+	public synchronized void move(EntityMovesPacket packet) {
+		updateClock(packet.tick);
+		for (int i = 0; i < packet.size; i++) {
+			RemoteEntity ent = entities.get(packet.ids[i]);
+			if (ent == null) continue; // Unknown type.
+			int flags = packet.flags[i];
+			int[] pos = packet.positions;
+			if ((flags & TELEPORTED) != 0) {
+				ent.x = pos[5*i];
+				ent.fx = pos[5*i + 1];
+				ent.y = pos[5*i + 2];
+				ent.z = pos[5*i + 3];
+				ent.fz = pos[5*i + 4];
+			} else if ((flags & MOVED) != 0) {
+				int fx = ent.fx + pos[5*i];
+				int fz = ent.fz + pos[5*i + 2];
+				ent.x = (ent.x + Math.floorDiv(fx, POSITION_SCALE)) & worldAnd;
+				ent.fx = Math.floorMod(fx, POSITION_SCALE);
+				ent.y += pos[5*i + 1];
+				ent.z = (ent.z + Math.floorDiv(fz, POSITION_SCALE)) & worldAnd;
+				ent.fz = Math.floorMod(fz, POSITION_SCALE);
+			}
+			if ((flags & ROTATED) != 0) {
+				ent.rotX = packet.rotations[3*i];
+				ent.rotY = packet.rotations[3*i + 1];
+				ent.rotZ = packet.rotations[3*i + 2];
+			}
+			ent.push(packet.tick, (flags & TELEPORTED) != 0);
+		}
+	}
+
+	private Entity[] toArray() {
+		Entity[] result = new Entity[entities.size()];
+		int i = 0;
+		for (RemoteEntity ent : entities.values()) {
+			result[i++] = ent.entity;
+		}
+		return result;
+	}
+
+	private static void setState(RemoteEntity ent, int index) {
+		ent.entity.getPosition().set(ent.positions[index]);
+		ent.entity.getRotation().set(getAngle(ent.rotations[3*index]), getAngle(ent.rotations[3*index + 1]), getAngle(ent.rotations[3*index + 2]));
+	}
+
+	/**
+	 * Moves all entities to their interpolated position. Should be called once per frame.
+	 * @param time System.nanoTime()/1000000
+	 */
+	public synchronized void interpolate(long time) {
+		if (!hasClock) return;
+		double tick = (double)(time - clockOffset - INTERPOLATION_DELAY)/TICK_TIME;
+		for (RemoteEntity ent : entities.values()) {
+			// Find the last position before that time:
+			int a = ent.newest;
+			int i = 0;
+			while (i < ent.count - 1 && ent.ticks[a] > tick) {
+				a = (a + BUFFER_SIZE - 1) % BUFFER_SIZE;
+				i++;
+			}
+			int b = (a + 1) % BUFFER_SIZE;
+			if (a == ent.newest || ent.ticks[a] > tick || ent.teleported[b]) { // No extrapolation.
+				setState(ent, a);
+				continue;
+			}
+			float alpha = (float)((tick - ent.ticks[a])/(ent.ticks[b] - ent.ticks[a]));
+			Vector3fi from = ent.positions[a];
+			Vector3fi to = ent.positions[b];
+			float dx = CubyzMath.matchSign((to.x - from.x) & worldAnd, worldAnd) + to.relX - from.relX;
+			float dy = to.y - from.y;
+			float dz = CubyzMath.matchSign((to.z - from.z) & worldAnd, worldAnd) + to.relZ - from.relZ;
+			if (Math.abs(dx) + Math.abs(dy) + Math.abs(dz) > MAX_INTERPOLATION_DISTANCE) {
+				setState(ent, a);
+				continue;
+			}
+			Vector3fi pos = ent.entity.getPosition();
+			pos.set(from);
+			pos.add(dx*alpha, dy*alpha, dz*alpha);
+			pos.x &= worldAnd;
+			pos.z &= worldAnd;
+			// The difference of the shorts takes the shorter way around the circle:
+			ent.entity.getRotation().set(
+					getAngle(ent.rotations[3*a]) + getAngle((short)(ent.rotations[3*b] - ent.rotations[3*a]))*alpha,
+					getAngle(ent.rotations[3*a + 1]) + getAngle((short)(ent.rotations[3*b + 1] - ent.rotations[3*a + 1]))*alpha,
+					getAngle(ent.rotations[3*a + 2]) + getAngle((short)(ent.rotations[3*b + 2] - ent.rotations[3*a + 2]))*alpha);
+		}
+	}
+}
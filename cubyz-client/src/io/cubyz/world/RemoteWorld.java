@@ -1,5 +1,6 @@
 package io.cubyz.world;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,6 +15,7 @@ import io.cubyz.entity.Entity;
 import io.cubyz.entity.Player;
 import io.cubyz.math.Bits;
 import io.cubyz.multiplayer.GameProfile;
+import io.cubyz.multiplayer.packets.BlockChangesPacket;
 import io.cubyz.save.BlockChange;
 import io.cubyz.world.generator.LifelandGenerator;
 
@@ -24,6 +26,7 @@ public class RemoteWorld extends World {
 	private Player localPlayer;
 	private GameProfile localGameProfile;
 	private ArrayList<Entity> entities;
+	private RemoteEntities remoteEntities;
 	
 	private ArrayList<Chunk> chunks;
 	private Block[] blocks;
@@ -31,7 +34,11 @@ public class RemoteWorld extends World {
 	private LifelandGenerator gen = new LifelandGenerator();
 	private long gameTime;
 	
-	public RemoteWorld() {
+	/**
+	 * @param worldAnd size of the world of the server - 1, as sent in the handshake.
+	 */
+	public RemoteWorld(int worldAnd) {
+		remoteEntities = new RemoteEntities(worldAnd);
 		localPlayer = (Player) CubyzRegistries.ENTITY_REGISTRY.getByID("cubyz:player").newEntity();
 		//localPlayer.setStellarTorus(this.getCurrentTorus()); TODO!
 		localPlayer.getPosition().add(10, 200, 10);
@@ -68,6 +75,10 @@ public class RemoteWorld extends World {
 		}
 	}
 
+	public RemoteEntities getRemoteEntities() {
+		return remoteEntities;
+	}
+
 	public Block[] getBlocks() {
 		return blocks;
 	}
@@ -100,21 +111,55 @@ public class RemoteWorld extends World {
 		this.setSeed(seed);
 	}
 	
-	public void submit(int x, int z, byte[] data) {
-		/*Chunk ck = new Chunk(x, z, this, transformData(data)); TODO!
-		for (int i = 0; i < chunks.size(); i++) {
-			if (chunks.get(i).getX() == x && chunks.get(i).getZ() == z) {
-				chunks.remove(i);
+	/**
+	 * Called from the network thread.
+	 * @param data all blocks of the chunk, see ChunkCodec
+	 */
+	public void submit(int x, int z, ByteBuffer data) {
+		Chunk ck = new Chunk(x, z, getCurrentTorus(), new ArrayList<>());
+		ChunkCodec.decode(data, ck, blocks);
+		synchronized (chunks) {
+			for (int i = 0; i < chunks.size(); i++) {
+				if (chunks.get(i).getX() == x && chunks.get(i).getZ() == z) {
+					chunks.remove(i);
+					break;
+				}
 			}
+			chunks.add(0, ck);
 		}
-		chunks.add(0, ck);
-		ck.generateFrom(gen);
-		ck.load();
+		/*ck.load(); TODO!
 		if (getCurrentTorus().getHighestBlock(localPlayer.getPosition().x, localPlayer.getPosition().z) != -1)
-			localPlayer.getPosition().y = getCurrentTorus().getHighestBlock(localPlayer.getPosition().x, localPlayer.getPosition().z)+1;
-		ck.applyBlockChanges();*/
+			localPlayer.getPosition().y = getCurrentTorus().getHighestBlock(localPlayer.getPosition().x, localPlayer.getPosition().z)+1;*/
 	}
 
+	/**
+	 * Called from the network thread.
+	 */
+	public void changeBlocks(BlockChangesPacket packet) {
+		Chunk ck = null;
+		synchronized (chunks) {
+			for (int i = 0; i < chunks.size(); i++) {
+				if (chunks.get(i).getX() == packet.x && chunks.get(i).getZ() == packet.z) {
+					ck = chunks.get(i);
+					break;
+				}
+			}
+		}
+		if (ck == null) return; // The chunk was already unloaded.
+		// Same as a local change, so the visible blocks and the light get updated and the mesh is marked as outdated. The server already saves it, so it isn't registered as a change.
+		for (int i = 0; i < packet.size; i++) {
+			int index = packet.positions[i];
+			int x = index >> 4 & 15;
+			int y = packet.sectionY << 4 | index >> 8 & 15;
+			int z = index & 15;
+			if (packet.blocks[i] == -1) {
+				ck.removeBlockAt(x, y, z, false);
+			} else {
+				ck.addBlockAt(x, y, z, blocks[packet.blocks[i]], false);
+			}
+		}
+	}
+	
 	@Override
 	public TorusSurface getCurrentTorus() {
 		// TODO Auto-generated method stub
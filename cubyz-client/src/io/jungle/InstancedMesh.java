@@ -103,6 +103,22 @@ public class InstancedMesh extends Mesh {
 		initInstances(numInstances);
 	}
 	
+	public float[] getPositions() {
+		return positions;
+	}
+	
+	public float[] getTextCoords() {
+		return textCoords;
+	}
+	
+	public float[] getNormals() {
+		return normals;
+	}
+	
+	public int[] getIndices() {
+		return indices;
+	}
+	
 	public int getInstances() {
 		return numInstances;
 	}
@@ -232,26 +248,37 @@ public class InstancedMesh extends Mesh {
 	
 	public void uploadData(Object[] spatials, int startIndex, int endIndex, Transformation transformation) {
 		this.instanceDataBuffer.clear();
-		
+		fillInstanceData(instanceDataBuffer, spatials, startIndex, endIndex, transformation);
+		glBufferData(GL_ARRAY_BUFFER, instanceDataBuffer, GL_DYNAMIC_DRAW);
+	}
+	
+	/**
+	 * Writes the instance data of the spatials into the buffer, using absolute puts. Doesn't call OpenGL.
+	 * @return the number of floats written.
+	 */
+	public static int fillInstanceData(FloatBuffer buffer, Object[] spatials, int startIndex, int endIndex, Transformation transformation) {
 		int size = endIndex-startIndex;
 		boolean doShadow = MainRenderer.shadowMap != null;
 		for (int i = 0; i < size; i++) {
 			Spatial spatial = (Spatial)spatials[i+startIndex];
 			Matrix4f modelMatrix = transformation.getModelMatrix(spatial);
-			modelMatrix.get(INSTANCE_SIZE_FLOATS * i, instanceDataBuffer);
+			modelMatrix.get(INSTANCE_SIZE_FLOATS * i, buffer);
 			if (Chunk.easyLighting) {
 				for(int j = 0; j < 8; j++) {
-					instanceDataBuffer.put(INSTANCE_SIZE_FLOATS * i + 16 + j, Float.intBitsToFloat(spatial.light[j]));
+					buffer.put(INSTANCE_SIZE_FLOATS * i + 16 + j, Float.intBitsToFloat(spatial.light[j]));
 				}
 			}
-			instanceDataBuffer.put(INSTANCE_SIZE_FLOATS * i + 24, spatial.isSelected() ? 1 : 0);
+			buffer.put(INSTANCE_SIZE_FLOATS * i + 24, spatial.isSelected() ? 1 : 0);
 			
 			if (doShadow) {
-				modelMatrix.get(INSTANCE_SIZE_FLOATS * i + 25, instanceDataBuffer);
+				modelMatrix.get(INSTANCE_SIZE_FLOATS * i + 25, buffer);
 			}
 		}
-
-		glBufferData(GL_ARRAY_BUFFER, instanceDataBuffer, GL_DYNAMIC_DRAW);
+		return size*INSTANCE_SIZE_FLOATS;
+	}
+	
+	public static int getInstanceSizeFloats() {
+		return INSTANCE_SIZE_FLOATS;
 	}
 	
 	private void renderChunkInstanced(int size, Transformation transformation) {
@@ -316,6 +316,14 @@ public class Window {
 	public void show() {
 		glfwShowWindow(handle);
 	}
+
+	/**
+	 * Needs to be called from the thread that renders.
+	 */
+	public void setVSync(boolean vsync) {
+		glfwMakeContextCurrent(handle);
+		glfwSwapInterval(vsync ? 1 : 0);
+	}
 	
 	public void update() {
 		
@@ -0,0 +1,41 @@
+package io.jungle.game;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the durations of the last frames, so percentiles can be shown instead of only the average fps.<br>
+ * Not thread-safe, it should only be used by the render thread.
+ */
+
+public class FrameTimes {
+	private static final int SIZE = 256;
+
+	private final long[] times = new long[SIZE]; // ns
+	private final long[] sorted = new long[SIZE];
+	private int next;
+	private int count;
+	private boolean sortedValid;
+
+	public void add(long nanos) {
+		times[next] = nanos;
+		next = (next + 1) % SIZE;
+		count = Math.min(count + 1, SIZE);
+		sortedValid = false;
+	}
+
+	/**
+	 * @param p between 0 and 1, for example 0.99 for the time that 99% of the last frames were faster than.
+	 * @return the frame time in ns or 0 if there were no frames yet.
+	 */
+	public long getPercentile(double p) {
+		if (count == 0)
+			return 0;
+		if (!sortedValid) {
+			System.arraycopy(times, 0, sorted, 0, count);
+			Arrays.sort(sorted, 0, count);
+			sortedValid = true;
+		}
+		int index = (int)Math.ceil(p*count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, index))];
+	}
+}
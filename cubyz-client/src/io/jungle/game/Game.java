@@ -1,59 +1,113 @@
 package io.jungle.game;
 
+import java.util.concurrent.locks.LockSupport;
+
 import io.jungle.Window;
 
+/**
+ * Runs the updates with a fixed timestep on their own thread and renders as often as allowed on the main thread.<br>
+ * The renderer can interpolate between the last two updates using getInterpolation.
+ */
+
 public class Game {
+	private static final long SPIN_NANOS = 1000000; // parkNanos often oversleeps, so the last millisecond before a deadline is spent yielding.
+	private static final int MAX_LAG = 5; // Updates that are further behind are dropped instead of being done all at once.
 
 	protected volatile boolean running;
 	protected Window win;
 	protected IGameLogic logic;
 	private GameOptions opt;
 	private Thread updateThread;
-	double secsPerUpdate = 1d / 30d;
-	private int targetFps = 60;
-	
+	private volatile long updateNanos = 1000000000L/30;
+	private volatile int targetFps = 60; // 0 means uncapped.
+	private volatile boolean vsync;
+	private volatile long tickTime; // The time the current update was scheduled for.
+	private final FrameTimes frameTimes = new FrameTimes();
+
 	private int fps;
 	private int ups;
-	
+
 	public int getFPS() {
 		return fps;
 	}
-	
+
 	public int getUPS() {
 		return ups;
 	}
-	
+
+	/**
+	 * @param target 0 for no limit.
+	 */
 	public void setTargetFps(int target) {
 		targetFps = target;
 	}
-	
+
 	public void setTargetUps(int target) {
-		secsPerUpdate = 1.d / (double) target;
+		updateNanos = 1000000000L/target;
 	}
-	
+
 	public int getTargetFps() {
 		return targetFps;
 	}
-	
+
+	/**
+	 * With vsync the swapping of buffers waits for the monitor, so the fps limit isn't used.
+	 */
+	public void setVSync(boolean vsync) {
+		this.vsync = vsync;
+	}
+
+	public boolean isVSync() {
+		return vsync;
+	}
+
+	/**
+	 * The times between the last frames. Should only be used on the render thread.
+	 */
+	public FrameTimes getFrameTimes() {
+		return frameTimes;
+	}
+
+	/**
+	 * @return System.nanoTime() at which the current or last update was scheduled. The updates are exactly one update interval apart.
+	 */
+	public long getTickTime() {
+		return tickTime;
+	}
+
+	/**
+	 * @param tickTime the tick time of the update whose state is rendered.
+	 * @return how far the render time is between that update and the next one, between 0 and 1.
+	 */
+	public float getInterpolation(long tickTime) {
+		float alpha = (System.nanoTime() - tickTime)/(float)updateNanos;
+		return Math.max(0, Math.min(1, alpha));
+	}
+
 	public Window getWindow() {
 		return win;
 	}
-	
+
 	public void updateLoop() {
-		double previous = getTime() + 1;
-		double loopStartTime = getTime();
+		long next = System.nanoTime();
+		long previous = next + 1000000000L;
 		int updates = 0;
 		while (running) {
-			loopStartTime = getTime();
+			tickTime = next;
 			handleInput();
 			update();
 			updates++;
-			if (getTime() > previous) {
-				previous = getTime() + 1;
+			long now = System.nanoTime();
+			if (now > previous) {
+				previous = now + 1000000000L;
 				ups = updates;
 				updates = 0;
 			}
-			sync(loopStartTime, secsPerUpdate);
+			next += updateNanos;
+			if (now - next > MAX_LAG*updateNanos) {
+				next = now;
+			}
+			sleepUntil(next);
 		}
 	}
 
@@ -77,40 +131,61 @@ public class Game {
 		loop();
 		logic.cleanup();
 	}
-	
+
 	public void exit() {
 		running = false;
 	}
-	
+
 	public double getTime() {
         return System.nanoTime() / 1000000000d;
 	}
 
 	public void loop() {
-		double previous = getTime();
-		double loopStartTime = getTime();
+		long previous = System.nanoTime();
+		long lastFrame = previous;
+		long next = previous;
+		boolean vsyncEnabled = !vsync;
 		int frames = 0;
 		while (running) {
-			loopStartTime = getTime();
+			if (vsync != vsyncEnabled) {
+				vsyncEnabled = vsync;
+				win.setVSync(vsyncEnabled);
+			}
 
-			if (previous < getTime() - 1) {
-				previous = getTime();
+			render();
+			++frames;
+			long now = System.nanoTime();
+			frameTimes.add(now - lastFrame);
+			lastFrame = now;
+			if (now - previous > 1000000000L) {
+				previous = now;
 				fps = frames;
 				frames = 0;
 			}
-			
-			render();
-			++frames;
-			sync(loopStartTime, 1 / 60);
+
+			int target = targetFps;
+			if (!vsyncEnabled && target > 0) {
+				long frameNanos = 1000000000L/target;
+				next += frameNanos;
+				if (now - next > frameNanos) { // Too slow for the target, start again from now.
+					next = now;
+				}
+				sleepUntil(next);
+			} else {
+				next = now;
+			}
 		}
 	}
 
-	private void sync(double loopStartTime, double loopSlot) {
-		double endTime = loopStartTime + loopSlot;
-		while (getTime() < endTime) {
-			try {
-				Thread.sleep(1);
-			} catch (InterruptedException ie) {
+	private static void sleepUntil(long deadline) {
+		while (true) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return;
+			if (remaining > SPIN_NANOS) {
+				LockSupport.parkNanos(remaining - SPIN_NANOS);
+			} else {
+				Thread.yield();
 			}
 		}
 	}
@@ -121,7 +196,7 @@ public class Game {
 
 	public void update() {
 		win.update();
-		logic.update(1.0f);
+		logic.update(updateNanos/1e9f);
 	}
 
 	public void render() {
@@ -0,0 +1,49 @@
+package io.jungle.game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands the state of the update thread to the render thread without locks and without either thread seeing a half written state.<br>
+ * The update thread writes into its own copy and publishes it, the render thread always reads the newest published copy.
+ * A third copy is needed, so the update thread can already write the next state while the render thread is still reading.
+ * Only one thread may write and only one thread may read.
+ */
+
+public class StateBuffer<T> {
+	private static final int FRESH = 4; // Set if the ready state wasn't taken by the reader yet.
+
+	private final T[] states;
+	private final AtomicInteger ready = new AtomicInteger(2); // Index of the published state, plus FRESH.
+	private int back = 0; // Only used by the writer.
+	private int front = 1; // Only used by the reader.
+
+	@SuppressWarnings("unchecked")
+	public StateBuffer(Supplier<T> constructor) {
+		states = (T[]) new Object[] {constructor.get(), constructor.get(), constructor.get()};
+	}
+
+	/**
+	 * @return the state the writer can change until it calls publish.
+	 */
+	public T getBack() {
+		return states[back];
+	}
+
+	/**
+	 * Makes the back state visible to the reader. After this getBack returns a different state with older content.
+	 */
+	public void publish() {
+		back = ready.getAndSet(back | FRESH) & 3;
+	}
+
+	/**
+	 * @return the newest published state. It doesn't change until the next call of this method.
+	 */
+	public T getFront() {
+		if ((ready.get() & FRESH) != 0) {
+			front = ready.getAndSet(front) & 3;
+		}
+		return states[front];
+	}
+}
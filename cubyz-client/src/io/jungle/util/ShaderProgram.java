@@ -120,6 +120,11 @@ public class ShaderProgram {
 		glUniform4f(uniforms.get(uniformName), value.x, value.y, value.z, value.w);
 	}
 
+	// Sets an array of vec2. Two floats per element.
+	public void setVec2ArrayUniform(String uniformName, float[] values) {
+		glUniform2fv(uniforms.get(uniformName), values);
+	}
+
 	public void setUniform(String uniformName, PointLight[] pointLights) {
 		int numLights = pointLights != null ? pointLights.length : 0;
 		for (int i = 0; i < numLights; i++) {
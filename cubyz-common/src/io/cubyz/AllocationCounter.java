@@ -0,0 +1,70 @@
+package io.cubyz;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures how many bytes the current thread allocates between calls, for example per frame.<br>
+ * Uses the allocation counter of the HotSpot JVM. On other JVMs nothing is measured and the result is always -1.
+ */
+
+public class AllocationCounter {
+	private static final com.sun.management.ThreadMXBean bean;
+	static {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean sunBean = null;
+		try {
+			if(threadBean instanceof com.sun.management.ThreadMXBean) {
+				sunBean = (com.sun.management.ThreadMXBean)threadBean;
+				if(sunBean.isThreadAllocatedMemorySupported()) {
+					sunBean.setThreadAllocatedMemoryEnabled(true);
+				} else {
+					sunBean = null;
+				}
+			}
+		} catch(UnsupportedOperationException | LinkageError e) {
+			sunBean = null;
+		}
+		bean = sunBean;
+	}
+
+	private long last = -1;
+	private long lastDelta = -1;
+	private double average = -1;
+
+	/**
+	 * @return bytes allocated by the current thread since the JVM started or -1 if it can't be measured.
+	 */
+	public static long getAllocatedBytes() {
+		if(bean == null) return -1;
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Should be called once per frame from the same thread.
+	 * @return bytes allocated since the last call or -1 if unknown.
+	 */
+	public long next() {
+		long now = getAllocatedBytes();
+		if(now < 0 || last < 0) {
+			last = now;
+			return -1;
+		}
+		lastDelta = now - last;
+		last = now;
+		// Smoothed, so the value in the debug overlay stays readable:
+		average = average < 0 ? lastDelta : average*0.95 + lastDelta*0.05;
+		return lastDelta;
+	}
+
+	public long getLast() {
+		return lastDelta;
+	}
+
+	/**
+	 * @return the moving average of the bytes per call or -1 if unknown.
+	 */
+	public long getAverage() {
+		return (long)average;
+	}
+}
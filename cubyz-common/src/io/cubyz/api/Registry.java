@@ -67,6 +67,10 @@ public class Registry<T extends IRegistryElement> {
 	public T getByID(String id) {
 		return hashMap.get(id);
 	}
+	
+	public int size() {
+		return hashMap.size();
+	}
 
 	
 }
@@ -0,0 +1,135 @@
+package io.cubyz.benchmark;
+
+import io.cubyz.api.Side;
+import io.cubyz.base.BaseMod;
+import io.cubyz.modding.ModLoader;
+import io.cubyz.world.MetaChunk;
+import io.cubyz.world.Noise;
+import io.cubyz.world.cubyzgenerators.biomes.Biome;
+import io.cubyz.world.cubyzgenerators.biomes.BiomeTable;
+
+/**
+ * Compares the biome lookups of the MetaChunk with the old lookup code from before the BiomeTable.<br>
+ * Checks that both give the same biomes and heights and measures how many MetaChunks per second can be created from already generated noise maps.
+ * Exits with status 1 if a biome differs or a height differs by more than TOLERANCE.
+ */
+
+public class BiomeBenchmark {
+
+	private static final int METACHUNKS = 16;
+	private static final float TOLERANCE = 1e-6f;
+
+	public static void main(String[] args) {
+		BaseMod mod = new BaseMod();
+		ModLoader.preInit(mod, Side.SERVER);
+		ModLoader.init(mod);
+		ModLoader.postInit(mod);
+
+		// The noise isn't part of the measurement:
+		float[][][] heightMaps = new float[METACHUNKS][][];
+		float[][][] heatMaps = new float[METACHUNKS][][];
+		for(int i = 0; i < METACHUNKS; i++) {
+			int x = (i & 3) << 8, y = (i >> 2) << 8;
+			heightMaps[i] = Noise.generateFractalTerrain(x, y, 256, 256, 512, 12345, 65535);
+			heatMaps[i] = Noise.generateFractalTerrain(x, y, 256, 256, 512, 12345 ^ 123456789, 65535);
+		}
+
+		// Correctness:
+		int wrongBiomes = 0;
+		float maxError = 0;
+		for(int i = 0; i < METACHUNKS; i++) {
+			MetaChunk ch = new MetaChunk(0, 0, copy(heightMaps[i]), heatMaps[i], null);
+			for(int x = 0; x < 256; x++) {
+				for(int y = 0; y < 256; y++) {
+					float height = heightMaps[i][x][y], heat = heatMaps[i][x][y];
+					if(ch.biomeMap[x][y] != referenceBiome(height, heat)) wrongBiomes++;
+					maxError = Math.max(maxError, Math.abs(ch.heightMap[x][y] - referencePolynomial(height, heat, height)));
+				}
+			}
+		}
+		boolean correct = wrongBiomes == 0 && maxError <= TOLERANCE;
+		System.out.println("different biomes: " + wrongBiomes + ", maximum height difference: " + maxError + (correct ? "" : ", expected at most " + TOLERANCE + "!"));
+
+		// The first runs only warm up the JIT:
+		for(int run = 0; run < 5; run++) {
+			long reference = 0, table = 0;
+			for(int i = 0; i < METACHUNKS; i++) {
+				float[][] heightMap = copy(heightMaps[i]);
+				long t = System.nanoTime();
+				referenceMetaChunk(heightMap, heatMaps[i]);
+				reference += System.nanoTime() - t;
+				heightMap = copy(heightMaps[i]);
+				t = System.nanoTime();
+				new MetaChunk(0, 0, heightMap, heatMaps[i], null);
+				table += System.nanoTime() - t;
+			}
+			if(run == 4) {
+				System.out.printf("old lookup: %.1f MetaChunks/s%n", METACHUNKS/(reference/1e9));
+				System.out.printf("biome table: %.1f MetaChunks/s%n", METACHUNKS/(table/1e9));
+			}
+		}
+		System.exit(correct ? 0 : 1);
+	}
+
+	private static float[][] copy(float[][] map) {
+		float[][] result = new float[map.length][];
+		for(int i = 0; i < map.length; i++) {
+			result[i] = map[i].clone();
+		}
+		return result;
+	}
+
+	// The MetaChunk constructor as it was before the BiomeTable.
+	private static Biome[][] referenceMetaChunk(float[][] heightMap, float[][] heatMap) {
+		Biome[][] biomeMap = new Biome[256][256];
+		for(int i = 0; i < 256; i++) {
+			for(int j = 0; j < 256; j++) {
+				biomeMap[i][j] = referenceBiome(heightMap[i][j], heatMap[i][j]);
+			}
+		}
+		for(int i = 0; i < 256; i++) {
+			for(int j = 0; j < 256; j++) {
+				heightMap[i][j] = referencePolynomial(heightMap[i][j], heatMap[i][j], heightMap[i][j]);
+			}
+		}
+		return biomeMap;
+	}
+
+	// The old Biome.getBiome:
+	private static Biome referenceBiome(float height, float heat) {
+		float closest = Float.MAX_VALUE;
+		Biome c = null;
+		BiomeTable table = BiomeTable.getInstance(); // Only used to read the fields of the biomes, in registry order.
+		for(int i = 0; i < table.size(); i++) {
+			float bHeat = table.getHeat(i), bHeight = table.getHeight(i), bMin = table.getMinHeight(i), bMax = table.getMaxHeight(i);
+			if(bMin <= height && bMax >= height) {
+				float heightFactor;
+				if(height >= bHeight) {
+					heightFactor = (height-bHeight)/(bMax-bHeight);
+				} else {
+					heightFactor = (height-bHeight)/(bMin-bHeight);
+				}
+				float dist = 2*(bHeat-heat)*(bHeat-heat) + heightFactor*heightFactor;
+				if(dist < closest) {
+					c = table.get(i);
+					closest = dist;
+				}
+			}
+		}
+		return c;
+	}
+
+	// The old Biome.evaluatePolynomial:
+	private static float referencePolynomial(double height, double heat, double x) {
+		double res = 0;
+		double weight = 0;
+		BiomeTable table = BiomeTable.getInstance();
+		for(int i = 0; i < table.size(); i++) {
+			double dist = 2*(table.getHeat(i)-heat)*(table.getHeat(i)-heat) + (table.getHeight(i)-height)*(table.getHeight(i)-height);
+			dist = Math.pow(dist, -8);
+			res += table.get(i).evaluatePolynomial(x)*dist;
+			weight += dist;
+		}
+		return (float)(res/weight);
+	}
+}
@@ -0,0 +1,121 @@
+package io.cubyz.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import io.cubyz.api.Side;
+import io.cubyz.base.BaseMod;
+import io.cubyz.blocks.Block;
+import io.cubyz.modding.ModLoader;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.ChunkCodec;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.LocalWorld;
+import io.cubyz.world.World;
+import io.cubyz.world.generator.LifelandGenerator;
+
+/**
+ * Sends generated Lifeland chunks and a few artificial ones through the ChunkCodec and checks that the decoded chunks contain the same blocks.<br>
+ * Measures the bytes per chunk and the encoding and decoding time for different compression levels.
+ * Exits with status 1 if a chunk changed on the way.
+ * Creates a world called "benchmark" in the saves folder.
+ */
+
+public class ChunkCodecBenchmark {
+
+	private static final int SIZE = 8; // Uses SIZE×SIZE generated chunks.
+	private static final int[] LEVELS = {0, 1, 6, 9};
+
+	public static void main(String[] args) {
+		BaseMod mod = new BaseMod();
+		ModLoader.preInit(mod, Side.SERVER);
+		ModLoader.init(mod);
+		ModLoader.postInit(mod);
+		LifelandGenerator.init(); // Usually done by the client after loading.
+		LocalWorld world = new LocalWorld("benchmark");
+		world.setCurrentTorusID(12345);
+		world.generate();
+		LocalTorusSurface surface = world.getCurrentTorus();
+		Block[] blocks = world.getBlocks(); // by ID
+
+		ArrayList<Chunk> chunks = new ArrayList<>();
+		for(int x = 0; x < SIZE; x++) {
+			for(int z = 0; z < SIZE; z++) {
+				Chunk ch = new Chunk(x, z, surface, new ArrayList<>());
+				ch.generateFrom(surface.getGenerator());
+				chunks.add(ch);
+			}
+		}
+
+		// Correctness, including some chunks the generator doesn't produce:
+		ArrayList<Chunk> special = new ArrayList<>();
+		special.add(new Chunk(0, 0, surface, new ArrayList<>())); // only air
+		Chunk full = new Chunk(1, 0, surface, new ArrayList<>());
+		Chunk mixed = new Chunk(2, 0, surface, new ArrayList<>());
+		for(int x = 0; x < 16; x++) {
+			for(int y = 0; y < World.WORLD_HEIGHT; y++) {
+				for(int z = 0; z < 16; z++) {
+					full.rawAddBlock(x, y, z, blocks[1]);
+					int index = (x*31 + y*17 + z*7) % (blocks.length + 1); // Every block and air in every section.
+					if(index != blocks.length && !blocks[index].hasBlockEntity())
+						mixed.rawAddBlock(x, y, z, blocks[index]);
+				}
+			}
+		}
+		special.add(full);
+		special.add(mixed);
+		int wrong = 0;
+		for(int level : LEVELS) {
+			for(Chunk ch : chunks) {
+				if(!equal(ch, roundTrip(ch, level, surface, blocks))) wrong++;
+			}
+			for(Chunk ch : special) {
+				if(!equal(ch, roundTrip(ch, level, surface, blocks))) wrong++;
+			}
+		}
+		System.out.println("chunks that changed in the round trip: " + wrong);
+
+		long saveBytes = 0;
+		for(Chunk ch : chunks) {
+			saveBytes += ch.save().length;
+		}
+		System.out.println("For comparison: 2 bytes per block would need " + 2*16*16*World.WORLD_HEIGHT + " bytes per chunk, the save data(only block changes, the client would need to generate the rest) " + saveBytes/chunks.size() + " bytes.");
+		// The first runs only warm up the JIT:
+		for(int run = 0; run < 5; run++) {
+			boolean print = run == 4;
+			for(int level : LEVELS) {
+				long bytes = 0, encode = 0, decode = 0;
+				for(Chunk ch : chunks) {
+					long t = System.nanoTime();
+					byte[] data = ChunkCodec.encode(ch, level);
+					long t2 = System.nanoTime();
+					ChunkCodec.decode(ByteBuffer.wrap(data), new Chunk(ch.getX(), ch.getZ(), surface, new ArrayList<>()), blocks);
+					long t3 = System.nanoTime();
+					bytes += data.length;
+					encode += t2 - t;
+					decode += t3 - t2;
+				}
+				if(print)
+					System.out.println("level " + level + ": " + bytes/chunks.size() + " bytes per chunk, encoding " + encode/1000/chunks.size() + " us, decoding " + decode/1000/chunks.size() + " us (decoding includes the creation of the chunk)");
+			}
+		}
+		System.exit(wrong == 0 ? 0 : 1);
+	}
+
+	private static Chunk roundTrip(Chunk ch, int level, LocalTorusSurface surface, Block[] blocks) {
+		Chunk result = new Chunk(ch.getX(), ch.getZ(), surface, new ArrayList<>());
+		ChunkCodec.decode(ByteBuffer.wrap(ChunkCodec.encode(ch, level)), result, blocks);
+		return result;
+	}
+
+	private static boolean equal(Chunk a, Chunk b) {
+		for(int x = 0; x < 16; x++) {
+			for(int y = 0; y < World.WORLD_HEIGHT; y++) {
+				for(int z = 0; z < 16; z++) {
+					if(a.getBlockAt(x, y, z) != b.getBlockAt(x, y, z)) return false;
+				}
+			}
+		}
+		return true;
+	}
+}
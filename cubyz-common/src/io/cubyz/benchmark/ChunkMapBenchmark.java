@@ -0,0 +1,86 @@
+package io.cubyz.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import io.cubyz.world.ChunkMap;
+
+/**
+ * Compares chunk lookups in the ChunkMap with the linear list search LocalTorusSurface used before.<br>
+ * Run it with the main method, optional arguments are the render distances to test.
+ */
+
+public class ChunkMapBenchmark {
+
+	// Stand-in for a Chunk. Real chunks are way too big to create thousands of them just for a benchmark.
+	private static class Entry {
+		final int x, z;
+		Entry(int x, int z) {
+			this.x = x;
+			this.z = z;
+		}
+	}
+
+	private static final int LOOKUPS = 1 << 20;
+	private static final int RUNS = 5;
+
+	static long sink; // Prevents the JIT from removing the lookups.
+
+	public static void main(String[] args) {
+		int[] renderDistances = {4, 8, 16, 24, 32};
+		if(args.length != 0) {
+			renderDistances = new int[args.length];
+			for(int i = 0; i < args.length; i++) {
+				renderDistances[i] = Integer.parseInt(args[i]);
+			}
+		}
+		System.out.println("render distance | chunks | list ns/lookup | map ns/lookup");
+		for(int rd : renderDistances) {
+			// The chunk list also contains the never loaded chunks around the visible area, so it is 2 chunks bigger in each direction.
+			int size = 2*rd + 4;
+			ArrayList<Entry> list = new ArrayList<>();
+			ChunkMap<Entry> map = new ChunkMap<>();
+			for(int x = 0; x < size; x++) {
+				for(int z = 0; z < size; z++) {
+					Entry e = new Entry(x + 1000, z - 1000);
+					list.add(e);
+					map.put(e.x, e.z, e);
+				}
+			}
+			// Lookups are mostly neighbors of random chunks, like they happen in lighting and block updates.
+			Random rand = new Random(rd);
+			int[] xs = new int[LOOKUPS];
+			int[] zs = new int[LOOKUPS];
+			for(int i = 0; i < LOOKUPS; i++) {
+				xs[i] = rand.nextInt(size) + 1000;
+				zs[i] = rand.nextInt(size) - 1000;
+			}
+			// The list gets way too slow at high render distances, so it only does a fraction of the lookups.
+			int listLookups = Math.max(1024, LOOKUPS/(size*size/64));
+			double listTime = Double.MAX_VALUE, mapTime = Double.MAX_VALUE;
+			for(int run = 0; run < RUNS; run++) {
+				long t = System.nanoTime();
+				for(int i = 0; i < listLookups; i++) {
+					sink += listGet(list, xs[i], zs[i]).x;
+				}
+				listTime = Math.min(listTime, (double)(System.nanoTime() - t)/listLookups);
+				t = System.nanoTime();
+				for(int i = 0; i < LOOKUPS; i++) {
+					sink += map.get(xs[i], zs[i]).x;
+				}
+				mapTime = Math.min(mapTime, (double)(System.nanoTime() - t)/LOOKUPS);
+			}
+			System.out.printf("%15d | %6d | %14.1f | %13.1f%n", rd, size*size, listTime, mapTime);
+		}
+		if(sink == 42) System.out.println();
+	}
+
+	private static Entry listGet(ArrayList<Entry> list, int x, int z) {
+		for(int i = 0; i < list.size(); i++) {
+			Entry e = list.get(i);
+			if(e.x == x && e.z == z)
+				return e;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,97 @@
+package io.cubyz.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cubyz.api.Side;
+import io.cubyz.base.BaseMod;
+import io.cubyz.blocks.Block;
+import io.cubyz.modding.ModLoader;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.LocalWorld;
+import io.cubyz.world.World;
+import io.cubyz.world.generator.LifelandGenerator;
+import io.cubyz.world.generator.StageExecutor;
+import io.cubyz.world.generator.StellarTorusGenerator;
+
+/**
+ * Checks that the world generator gives exactly the same chunks, no matter if the generator stages are split into parallel parts and how many threads generate chunks at the same time.<br>
+ * Hashes the blocks of every chunk and exits with status 1 if the hashes differ.
+ * Creates a world called "benchmark" in the saves folder.
+ */
+
+public class DeterminismCheck {
+
+	private static final int SIZE = 8; // Generates SIZE×SIZE chunks per run.
+
+	public static void main(String[] args) throws InterruptedException {
+		BaseMod mod = new BaseMod();
+		ModLoader.preInit(mod, Side.SERVER);
+		ModLoader.init(mod);
+		ModLoader.postInit(mod);
+		LifelandGenerator.init(); // Usually done by the client after loading.
+		LocalWorld world = new LocalWorld("benchmark");
+		world.setCurrentTorusID(12345);
+		world.generate();
+		LocalTorusSurface surface = world.getCurrentTorus();
+
+		StageExecutor.split = StageExecutor.Split.NEVER;
+		long[] sequential = generate(surface, 1);
+		StageExecutor.split = StageExecutor.Split.ALWAYS;
+		long[] split = generate(surface, 1);
+		StageExecutor.split = StageExecutor.Split.AUTO;
+		long[] threaded = generate(surface, 4);
+
+		int wrongSplit = compare(sequential, split);
+		int wrongThreaded = compare(sequential, threaded);
+		System.out.println("different chunks with split stages: " + wrongSplit + ", with 4 threads: " + wrongThreaded);
+		System.exit(wrongSplit == 0 && wrongThreaded == 0 ? 0 : 1);
+	}
+
+	// Generates new chunk objects, so the chunks of the surface aren't touched.
+	private static long[] generate(LocalTorusSurface surface, int threadCount) throws InterruptedException {
+		StellarTorusGenerator generator = surface.getGenerator();
+		long[] hashes = new long[SIZE*SIZE];
+		AtomicInteger next = new AtomicInteger();
+		Thread[] threads = new Thread[threadCount];
+		for(int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread(() -> {
+				int index;
+				while((index = next.getAndIncrement()) < hashes.length) {
+					Chunk ch = new Chunk(index/SIZE, index%SIZE, surface, new ArrayList<>());
+					ch.generateFrom(generator);
+					hashes[index] = hash(ch);
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		return hashes;
+	}
+
+	private static long hash(Chunk ch) {
+		long hash = 0;
+		int liquids = 0;
+		for(int x = 0; x < 16; x++) {
+			for(int y = 0; y < World.WORLD_HEIGHT; y++) {
+				for(int z = 0; z < 16; z++) {
+					Block b = ch.getBlockAt(x, y, z);
+					hash = hash*31 + (b == null ? -1 : b.getRegistryID().toString().hashCode());
+					if(b != null && b.getBlockClass() == Block.BlockClass.FLUID) liquids++;
+				}
+			}
+		}
+		return hash*31 + liquids;
+	}
+
+	private static int compare(long[] a, long[] b) {
+		int wrong = 0;
+		for(int i = 0; i < a.length; i++) {
+			if(a[i] != b[i]) wrong++;
+		}
+		return wrong;
+	}
+}
@@ -0,0 +1,92 @@
+package io.cubyz.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cubyz.api.Side;
+import io.cubyz.base.BaseMod;
+import io.cubyz.math.Vector3fi;
+import io.cubyz.modding.ModLoader;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.LocalWorld;
+import io.cubyz.world.generator.LifelandGenerator;
+import io.cubyz.world.generator.StellarTorusGenerator;
+
+/**
+ * Measures how many chunks per second the world generator manages with different amounts of threads.<br>
+ * Run it with the main method, optional arguments are the thread counts to test.
+ * Creates a world called "benchmark" in the saves folder.
+ */
+
+public class GenerationBenchmark {
+
+	private static final int SIZE = 16; // Generates SIZE×SIZE chunks per run.
+
+	public static void main(String[] args) throws InterruptedException {
+		int cores = Runtime.getRuntime().availableProcessors();
+		int[] threadCounts = {1, 2, 4, cores};
+		if(args.length != 0) {
+			threadCounts = new int[args.length];
+			for(int i = 0; i < args.length; i++) {
+				threadCounts[i] = Integer.parseInt(args[i]);
+			}
+		}
+		BaseMod mod = new BaseMod();
+		ModLoader.preInit(mod, Side.SERVER);
+		ModLoader.init(mod);
+		ModLoader.postInit(mod);
+		LifelandGenerator.init(); // Usually done by the client after loading.
+		LocalWorld world = new LocalWorld("benchmark");
+		world.setCurrentTorusID(12345);
+		world.generate();
+		LocalTorusSurface surface = world.getCurrentTorus();
+		StellarTorusGenerator generator = surface.getGenerator();
+
+		// Warm up the JIT and the MetaChunks around the origin:
+		movePlayer(world, 0);
+		run(surface, generator, 0, cores);
+
+		System.out.println("threads | chunks/s");
+		int offset = 0;
+		for(int threads : threadCounts) {
+			// Use a different area every time, so all runs have to generate the same amount of new MetaChunks.
+			offset += 64;
+			movePlayer(world, offset);
+			long t = System.nanoTime();
+			run(surface, generator, offset, threads);
+			double seconds = (System.nanoTime() - t)/1e9;
+			System.out.printf("%7d | %8.1f%n", threads, SIZE*SIZE/seconds);
+		}
+		System.exit(0);
+	}
+
+	// The MetaChunks that are farthest from the player get removed, so the player needs to be close to the generated area.
+	private static void movePlayer(LocalWorld world, int offset) {
+		int center = (offset + SIZE/2) << 4;
+		world.getLocalPlayer().setPosition(new Vector3fi(center, 128, center));
+	}
+
+	private static void run(LocalTorusSurface surface, StellarTorusGenerator generator, int offset, int threadCount) throws InterruptedException {
+		ArrayList<Chunk> chunks = new ArrayList<>();
+		for(int x = 0; x < SIZE; x++) {
+			for(int z = 0; z < SIZE; z++) {
+				chunks.add(new Chunk(x + offset, z + offset, surface, new ArrayList<>()));
+			}
+		}
+		AtomicInteger next = new AtomicInteger();
+		Thread[] threads = new Thread[threadCount];
+		for(int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread(() -> {
+				int index;
+				while((index = next.getAndIncrement()) < chunks.size()) {
+					chunks.get(index).generateFrom(generator);
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package io.cubyz.benchmark;
+
+import io.cubyz.api.Side;
+import io.cubyz.base.BaseMod;
+import io.cubyz.base.init.BlockInit;
+import io.cubyz.math.Vector3fi;
+import io.cubyz.modding.ModLoader;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.LocalWorld;
+import io.cubyz.world.generator.LifelandGenerator;
+
+/**
+ * Measures how much time the light engine needs when chunks get loaded and when blocks get placed or removed.<br>
+ * Chunk loads are timed with and without lighting, the difference is the light time.
+ * Run it with the main method. Creates a world called "benchmark" in the saves folder.
+ */
+
+public class LightBenchmark {
+
+	private static final int SIZE = 6; // Loads SIZE×SIZE chunks per run.
+	private static final int EDITS = 200;
+
+	public static void main(String[] args) {
+		BaseMod mod = new BaseMod();
+		ModLoader.preInit(mod, Side.SERVER);
+		ModLoader.init(mod);
+		ModLoader.postInit(mod);
+		LifelandGenerator.init(); // Usually done by the client after loading.
+		LocalWorld world = new LocalWorld("benchmark");
+		world.setCurrentTorusID(12345);
+		world.generate();
+		LocalTorusSurface surface = world.getCurrentTorus();
+
+		// The first runs only warm up the JIT:
+		int offset = 0;
+		for(int run = 0; run < 3; run++) {
+			offset += 64;
+			Chunk.easyLighting = false;
+			double withoutLight = loadChunks(world, surface, offset);
+			offset += 64;
+			Chunk.easyLighting = true;
+			double withLight = loadChunks(world, surface, offset);
+			double editTime = editBlocks(surface, offset);
+			if(run == 2) {
+				System.out.printf("chunk load: %.2f ms, without light: %.2f ms, light: %.2f ms%n", withLight, withoutLight, withLight - withoutLight);
+				System.out.printf("block placement/removal: %.1f us%n", editTime);
+			}
+		}
+		System.exit(0);
+	}
+
+	// Returns the average load time in ms.
+	private static double loadChunks(LocalWorld world, LocalTorusSurface surface, int offset) {
+		int center = (offset + SIZE/2) << 4;
+		world.getLocalPlayer().setPosition(new Vector3fi(center, 128, center));
+		// Generate one more chunk around the loaded area, so the neighbors exist like they do ingame:
+		for(int x = -1; x <= SIZE; x++) {
+			for(int z = -1; z <= SIZE; z++) {
+				surface.synchronousGenerate(surface._getChunk(x + offset, z + offset));
+			}
+		}
+		long time = 0;
+		for(int x = 0; x < SIZE; x++) {
+			for(int z = 0; z < SIZE; z++) {
+				Chunk ch = surface._getChunk(x + offset, z + offset);
+				long t = System.nanoTime();
+				ch.load();
+				time += System.nanoTime() - t;
+			}
+		}
+		return time/1e6/(SIZE*SIZE);
+	}
+
+	// Places and removes blocks on the surface of the center chunk. Returns the average time per edit in us.
+	private static double editBlocks(LocalTorusSurface surface, int offset) {
+		Chunk ch = surface._getChunk(offset + SIZE/2, offset + SIZE/2);
+		long time = 0;
+		for(int i = 0; i < EDITS; i++) {
+			int x = i & 15;
+			int z = (i >> 4) & 15;
+			int y = 254;
+			while(y > 0 && ch.getBlockAt(x, y, z) == null) {
+				y--;
+			}
+			long t = System.nanoTime();
+			ch.addBlockAt(x, y + 1, z, BlockInit.stone, false);
+			ch.removeBlockAt(x, y + 1, z, false);
+			time += System.nanoTime() - t;
+		}
+		return time/1e3/(2*EDITS);
+	}
+}
@@ -0,0 +1,123 @@
+package io.cubyz.benchmark;
+
+import java.util.ArrayList;
+
+import io.cubyz.api.Side;
+import io.cubyz.base.BaseMod;
+import io.cubyz.base.init.BlockInit;
+import io.cubyz.blocks.Block;
+import io.cubyz.math.Vector3fi;
+import io.cubyz.modding.ModLoader;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.ChunkMesh;
+import io.cubyz.world.ChunkMesher;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.LocalWorld;
+import io.cubyz.world.generator.LifelandGenerator;
+
+/**
+ * Checks the greedy mesher on a simple chunk and measures how long meshing generated chunks takes and how many quads get saved.<br>
+ * Runs without a window. Creates a world called "benchmark" in the saves folder.
+ * Exits with status 1 if the simple chunk doesn't get the expected quads.
+ */
+
+public class MeshBenchmark {
+
+	private static final int SIZE = 6; // Meshes SIZE×SIZE chunks.
+
+	public static void main(String[] args) {
+		BaseMod mod = new BaseMod();
+		ModLoader.preInit(mod, Side.SERVER);
+		ModLoader.init(mod);
+		ModLoader.postInit(mod);
+		LifelandGenerator.init(); // Usually done by the client after loading.
+
+		boolean correct = checkSimpleChunk();
+
+		LocalWorld world = new LocalWorld("benchmark");
+		world.setCurrentTorusID(12345);
+		world.generate();
+		LocalTorusSurface surface = world.getCurrentTorus();
+		int offset = 32;
+		world.getLocalPlayer().setPosition(new Vector3fi((offset + SIZE/2) << 4, 128, (offset + SIZE/2) << 4));
+		for(int x = -1; x <= SIZE; x++) {
+			for(int z = -1; z <= SIZE; z++) {
+				surface.synchronousGenerate(surface._getChunk(x + offset, z + offset));
+			}
+		}
+		for(int x = 0; x < SIZE; x++) {
+			for(int z = 0; z < SIZE; z++) {
+				surface._getChunk(x + offset, z + offset).load();
+			}
+		}
+		// The first runs only warm up the JIT:
+		for(int run = 0; run < 5; run++) {
+			long time = 0;
+			int quads = 0, faces = 0;
+			for(int x = 0; x < SIZE; x++) {
+				for(int z = 0; z < SIZE; z++) {
+					Chunk ch = surface._getChunk(x + offset, z + offset);
+					long t = System.nanoTime();
+					ChunkMesh mesh = ChunkMesher.generateMesh(ch, b -> !b.isTransparent());
+					time += System.nanoTime() - t;
+					quads += mesh.getQuadCount();
+					faces += countFaces(ch);
+				}
+			}
+			if(run == 4) {
+				System.out.printf("meshing: %.2f ms per chunk%n", time/1e6/(SIZE*SIZE));
+				System.out.printf("quads: %d per chunk, visible faces: %d per chunk%n", quads/(SIZE*SIZE), faces/(SIZE*SIZE));
+			}
+		}
+		System.exit(correct ? 0 : 1);
+	}
+
+	// A stone floor with a 2×2 pillar on it. The floor top has a hole, which needs 4 quads. The pillar needs one quad on top and one on each side.
+	private static boolean checkSimpleChunk() {
+		Chunk ch = new Chunk(0, 0, null, new ArrayList<>());
+		for(int x = 0; x < 16; x++) {
+			for(int z = 0; z < 16; z++) {
+				ch.rawAddBlock(x, 0, z, BlockInit.stone);
+			}
+		}
+		for(int x = 7; x <= 8; x++) {
+			for(int z = 7; z <= 8; z++) {
+				for(int y = 1; y <= 3; y++) {
+					ch.rawAddBlock(x, y, z, BlockInit.stone);
+				}
+			}
+		}
+		ChunkMesh mesh = ChunkMesher.generateMesh(ch, b -> !b.isTransparent());
+		int expected = 9;
+		System.out.println("simple chunk: " + mesh.getQuadCount() + " quads, " + mesh.getVertexCount() + " vertices" + (mesh.getQuadCount() == expected ? "" : ", expected " + expected + " quads!"));
+		return mesh.getQuadCount() == expected;
+	}
+
+	// Counts the faces that would be drawn without merging.
+	private static int countFaces(Chunk ch) {
+		int faces = 0;
+		for(int x = 0; x < 16; x++) {
+			for(int y = 0; y < 256; y++) {
+				for(int z = 0; z < 16; z++) {
+					Block b = ch.getBlockAt(x, y, z);
+					if(b == null || b.isTransparent()) continue;
+					if(isOpen(ch, x-1, y, z)) faces++;
+					if(isOpen(ch, x+1, y, z)) faces++;
+					if(isOpen(ch, x, y-1, z)) faces++;
+					if(isOpen(ch, x, y+1, z)) faces++;
+					if(isOpen(ch, x, y, z-1)) faces++;
+					if(isOpen(ch, x, y, z+1)) faces++;
+				}
+			}
+		}
+		return faces;
+	}
+
+	// Only counts faces inside of the chunk.
+	private static boolean isOpen(Chunk ch, int x, int y, int z) {
+		if(x < 0 || x > 15 || z < 0 || z > 15 || y < 0) return false;
+		if(y > 255) return true;
+		Block b = ch.getBlockAt(x, y, z);
+		return b == null || b.isTransparent();
+	}
+}
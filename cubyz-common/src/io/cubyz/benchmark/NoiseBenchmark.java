@@ -0,0 +1,164 @@
+package io.cubyz.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cubyz.world.Noise;
+
+/**
+ * Compares the noise maps with the old implementation, that reseeded a java.util.Random for every value and returned new 2D arrays.<br>
+ * Checks that the maps are the same and measures the samples per second of both, with one thread and with all cores.
+ * Exits with status 1 if any value differs, because existing worlds would get different terrain.
+ */
+
+public class NoiseBenchmark {
+
+	private static final int MAPS = 32;
+	private static final long SEED = 12345;
+
+	public static void main(String[] args) throws InterruptedException {
+		Noise noise = new Noise(SEED, 65535);
+		float[] map = new float[256*256];
+
+		// Correctness:
+		int wrong = 0;
+		for(int i = 0; i < MAPS; i++) {
+			int x = i << 8, y = (i*7 & 15) << 8;
+			noise.generateFractalTerrain(x, y, 256, 256, 512, map);
+			float[][] reference = referenceFractalTerrain(x, y, 256, 256, 512, SEED, 65535);
+			wrong += compare(map, reference);
+			noise.generateRandomMap(x, y, 32, 32, map);
+			reference = referenceRandomMap(x, y, 32, 32, SEED);
+			wrong += compare(map, reference);
+		}
+		System.out.println("different values: " + wrong + (wrong == 0 ? "" : ", expected 0!"));
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(int threads : new int[] {1, cores}) {
+			// The first runs only warm up the JIT:
+			for(int run = 0; run < 3; run++) {
+				double reference = measure(threads, (x, y, buffer) -> referenceFractalTerrain(x, y, 256, 256, 512, SEED, 65535));
+				double fractal = measure(threads, (x, y, buffer) -> noise.generateFractalTerrain(x, y, 256, 256, 512, buffer));
+				if(run == 2) {
+					System.out.printf("fractal terrain, %d threads: %.1f million samples/s before, %.1f million samples/s now%n", threads, reference/1e6, fractal/1e6);
+				}
+			}
+			for(int run = 0; run < 3; run++) {
+				double reference = measure(threads, (x, y, buffer) -> referenceRandomMap(x, y, 256, 256, SEED));
+				double random = measure(threads, (x, y, buffer) -> noise.generateRandomMap(x, y, 256, 256, buffer));
+				if(run == 2) {
+					System.out.printf("random map, %d threads: %.1f million samples/s before, %.1f million samples/s now%n", threads, reference/1e6, random/1e6);
+				}
+			}
+		}
+		System.exit(wrong == 0 ? 0 : 1);
+	}
+
+	private interface MapGenerator {
+		void generate(int x, int y, float[] buffer);
+	}
+
+	// Every thread generates MAPS maps of 256×256. Returns the samples per second.
+	private static double measure(int threads, MapGenerator generator) throws InterruptedException {
+		AtomicLong samples = new AtomicLong();
+		Thread[] workers = new Thread[threads];
+		long t = System.nanoTime();
+		for(int i = 0; i < threads; i++) {
+			int id = i;
+			workers[i] = new Thread(() -> {
+				float[] buffer = new float[256*256];
+				for(int j = 0; j < MAPS; j++) {
+					generator.generate(j << 8, id << 8, buffer);
+					samples.addAndGet(256*256);
+				}
+			});
+			workers[i].start();
+		}
+		for(Thread worker : workers) {
+			worker.join();
+		}
+		return samples.get()/((System.nanoTime() - t)/1e9);
+	}
+
+	private static int compare(float[] map, float[][] reference) {
+		int wrong = 0;
+		int height = reference[0].length;
+		for(int x = 0; x < reference.length; x++) {
+			for(int y = 0; y < height; y++) {
+				if(map[x*height + y] != reference[x][y]) wrong++;
+			}
+		}
+		return wrong;
+	}
+
+	private static long getSeed(int x, int y, int offsetX, int offsetY, int worldAnd, long seed) {
+		return (((long)((offsetX+x) & worldAnd)) << 16)^seed^(((long)((offsetY+y) & worldAnd)) << 32);
+	}
+
+	// The old Noise.generateFractalTerrain:
+	private static float[][] referenceFractalTerrain(int x, int y, int width, int height, int scale, long seed, int worldAnd) {
+		float[][] map = new float[width][height];
+		int max =scale+1;
+		int and = scale-1;
+		float[][] bigMap = new float[max][max];
+		int offsetX = x&(~and);
+		int offsetY = y&(~and);
+		Random rand = new Random();
+		rand.setSeed(getSeed(0, 0, offsetX, offsetY, worldAnd, seed));
+		bigMap[0][0] = rand.nextFloat();
+		rand.setSeed(getSeed(0, scale, offsetX, offsetY, worldAnd, seed));
+		bigMap[0][scale] = rand.nextFloat();
+		rand.setSeed(getSeed(scale, 0, offsetX, offsetY, worldAnd, seed));
+		bigMap[scale][0] = rand.nextFloat();
+		rand.setSeed(getSeed(scale, scale, offsetX, offsetY, worldAnd, seed));
+		bigMap[scale][scale] = rand.nextFloat();
+		for(int res = scale*2; res > 0; res >>>= 1) {
+			for(int px = 0; px < max; px += res<<1) {
+				for(int py = res; py+res < max; py += res<<1) {
+					if(px == 0 || px == scale) rand.setSeed(getSeed(px, py, offsetX, offsetY, worldAnd, seed));
+					bigMap[px][py] = (bigMap[px][py-res]+bigMap[px][py+res])/2 + (rand.nextFloat()-0.5f)*res/scale;
+					if(bigMap[px][py] > 1.0f) bigMap[px][py] = 1.0f;
+					if(bigMap[px][py] < 0.0f) bigMap[px][py] = 0.0f;
+				}
+			}
+			for(int px = res; px+res < max; px += res<<1) {
+				for(int py = 0; py < max; py += res<<1) {
+					if(py == 0 || py == scale) rand.setSeed(getSeed(px, py, offsetX, offsetY, worldAnd, seed));
+					bigMap[px][py] = (bigMap[px-res][py]+bigMap[px+res][py])/2 + (rand.nextFloat()-0.5f)*res/scale;
+					if(bigMap[px][py] > 1.0f) bigMap[px][py] = 1.0f;
+					if(bigMap[px][py] < 0.0f) bigMap[px][py] = 0.0f;
+				}
+			}
+			for(int px = res; px+res < max; px += res<<1) {
+				for(int py = res; py+res < max; py += res<<1) {
+					bigMap[px][py] = (bigMap[px-res][py-res]+bigMap[px+res][py-res]+bigMap[px-res][py+res]+bigMap[px+res][py+res])/4 + (rand.nextFloat()-0.5f)*res/scale;
+					if(bigMap[px][py] > 1.0f) bigMap[px][py] = 1.0f;
+					if(bigMap[px][py] < 0.0f) bigMap[px][py] = 0.0f;
+				}
+			}
+		}
+		for(int px = 0; px < width; px++) {
+			for(int py = 0; py < height; py++) {
+				map[px][py] = bigMap[(x&and)+px][(y&and)+py];
+				if(map[px][py] >= 1.0f)
+					map[px][py] = 0.9999f;
+			}
+		}
+		return map;
+	}
+
+	// The old Noise.generateRandomMap:
+	private static float[][] referenceRandomMap(int x, int y, int width, int height, long seed) {
+		float[][] map = new float[width][height];
+		Random r = new Random(seed);
+		long l1 = r.nextLong();
+		long l2 = r.nextLong();
+		for (int x1 = x; x1-x < width; x1++) {
+			for (int y1 = y; y1-y < height; y1++) {
+				r.setSeed(x1*l1^y1*l2^seed);
+				map[x1 - x][y1 - y] = r.nextFloat();
+			}
+		}
+		return map;
+	}
+}
@@ -0,0 +1,203 @@
+package io.cubyz.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import io.cubyz.multiplayer.packets.BlockChangesPacket;
+import io.cubyz.multiplayer.packets.ChatPacket;
+import io.cubyz.multiplayer.packets.ChunkPacket;
+import io.cubyz.multiplayer.packets.EntityDespawnPacket;
+import io.cubyz.multiplayer.packets.EntityMovesPacket;
+import io.cubyz.multiplayer.packets.EntitySpawnPacket;
+import io.cubyz.multiplayer.packets.HandshakePacket;
+import io.cubyz.multiplayer.packets.ListenPacket;
+import io.cubyz.multiplayer.packets.MovePacket;
+import io.cubyz.multiplayer.packets.PingDataPacket;
+import io.cubyz.multiplayer.packets.PingPongPacket;
+import io.cubyz.multiplayer.packets.VersionPacket;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.PacketDecoder;
+import io.cubyz.multiplayer.protocol.PacketEncoder;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.cubyz.multiplayer.server.ServerHandshakeHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * Sends packets through the codec and the server handshake in embedded channels, without any network.<br>
+ * Checks that every packet survives the round trip, also when TCP splits or merges frames, and that broken frames and wrong protocol versions get rejected.
+ * Exits with status 1 if a check fails.
+ */
+
+public class ProtocolCheck {
+
+	private static int failed;
+
+	public static void main(String[] args) {
+		roundTrip();
+		splitAndMerged();
+		chunkData();
+		brokenFrames();
+		handshake();
+		System.out.println(failed == 0 ? "All checks passed." : failed + " checks failed!");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	private static void check(String name, boolean success) {
+		System.out.println((success ? "passed: " : "FAILED: ") + name);
+		if (!success)
+			failed++;
+	}
+
+	private static ByteBuf encode(IPacket... packets) {
+		EmbeddedChannel channel = new EmbeddedChannel(new PacketEncoder());
+		channel.writeOutbound((Object[])packets);
+		ByteBuf result = Unpooled.buffer();
+		ByteBuf buf;
+		while ((buf = channel.readOutbound()) != null) {
+			result.writeBytes(buf);
+			buf.release();
+		}
+		channel.finish();
+		return result;
+	}
+
+	private static List<IPacket> decode(ByteBuf... parts) {
+		EmbeddedChannel channel = new EmbeddedChannel(new PacketDecoder(Protocol.REGISTRY, null));
+		for (ByteBuf part : parts) {
+			channel.writeInbound(part);
+		}
+		List<IPacket> result = new ArrayList<>();
+		IPacket packet;
+		while ((packet = channel.readInbound()) != null) {
+			result.add(packet);
+		}
+		channel.finish();
+		return result;
+	}
+
+	private static IPacket roundTrip(IPacket packet) {
+		List<IPacket> result = decode(encode(packet));
+		return result.size() == 1 ? result.get(0) : null;
+	}
+
+	private static void roundTrip() {
+		HandshakePacket handshake = (HandshakePacket) roundTrip(new HandshakePacket(Protocol.VERSION + 5, true, 65535));
+		check("handshake", handshake.protocolVersion == Protocol.VERSION + 5 && handshake.accepted && handshake.brand.equals(new HandshakePacket(true).brand) && handshake.worldAnd == 65535);
+		check("version request", ((VersionPacket) roundTrip(new VersionPacket())).info == null);
+		check("version answer", ((VersionPacket) roundTrip(new VersionPacket("cubyz;1.0"))).info.equals("cubyz;1.0"));
+		check("ping data request", ((PingDataPacket) roundTrip(new PingDataPacket())).motd == null);
+		PingDataPacket pingData = (PingDataPacket) roundTrip(new PingDataPacket("A Cubyz server", 3, 20));
+		check("ping data answer", pingData.motd.equals("A Cubyz server") && pingData.onlinePlayers == 3 && pingData.maxPlayers == 20);
+		UUID uuid = UUID.randomUUID();
+		check("ping pong", ((PingPongPacket) roundTrip(new PingPongPacket())).uuid == null && ((PingPongPacket) roundTrip(new PingPongPacket(uuid))).uuid.equals(uuid));
+		String text = "Non-ASCII text: \u00e4\u00f6\u00fc \u4e16\u754c"; // More bytes than chars in UTF-8.
+		check("chat", ((ChatPacket) roundTrip(new ChatPacket(text))).message.equals(text));
+		ListenPacket listen = (ListenPacket) roundTrip(new ListenPacket(uuid, "player"));
+		check("listen", listen.uuid.equals(uuid) && listen.username.equals("player"));
+		MovePacket move = (MovePacket) roundTrip(new MovePacket(-5, 100, 70000));
+		check("move", move.x == -5 && move.y == 100 && move.z == 70000);
+		BlockChangesPacket changes = (BlockChangesPacket) roundTrip(new BlockChangesPacket(3, 4, 15, 2, new short[] {0, 4095, 7}, new int[] {-1, 300, 5}));
+		check("block changes", changes.x == 3 && changes.z == 4 && changes.sectionY == 15 && changes.size == 2
+				&& changes.positions[0] == 0 && changes.blocks[0] == -1 && changes.positions[1] == 4095 && changes.blocks[1] == 300);
+		EntitySpawnPacket spawn = (EntitySpawnPacket) roundTrip(new EntitySpawnPacket(7, 100, "cubyz:pig", -3, 4095, 60*EntityMovesPacket.POSITION_SCALE, 70000, 1, (short)-1, EntityMovesPacket.quantizeAngle(3), (short)0));
+		check("entity spawn", spawn.id == 7 && spawn.tick == 100 && spawn.type.equals("cubyz:pig") && spawn.x == -3 && spawn.fx == 4095 && spawn.y == 60*EntityMovesPacket.POSITION_SCALE
+				&& spawn.z == 70000 && spawn.fz == 1 && spawn.rotX == -1 && Math.abs(EntityMovesPacket.getAngle(spawn.rotY) - 3) < 0.001f && spawn.rotZ == 0);
+		EntityDespawnPacket despawn = (EntityDespawnPacket) roundTrip(new EntityDespawnPacket(2, new int[] {5, 1 << 30, 9}));
+		check("entity despawn", despawn.size == 2 && despawn.ids[0] == 5 && despawn.ids[1] == 1 << 30);
+		EntityMovesPacket moves = (EntityMovesPacket) roundTrip(new EntityMovesPacket(101, 3, new int[] {1, 2, 3},
+				new byte[] {EntityMovesPacket.MOVED, EntityMovesPacket.ROTATED, EntityMovesPacket.TELEPORTED | EntityMovesPacket.ROTATED},
+				new int[] {-32768, 0, 32767, 0, 0, 0, 0, 0, 0, 0, -100000, 4000, 1 << 20, 5, 0},
+				new short[] {0, 0, 0, 1, 2, 3, -4, -5, -6}));
+		check("entity moves", moves.tick == 101 && moves.size == 3 && moves.ids[2] == 3
+				&& moves.positions[0] == -32768 && moves.positions[1] == 0 && moves.positions[2] == 32767
+				&& moves.rotations[3] == 1 && moves.rotations[5] == 3
+				&& moves.positions[10] == -100000 && moves.positions[11] == 4000 && moves.positions[12] == 1 << 20 && moves.positions[13] == 5 && moves.rotations[8] == -6);
+		check("entity packet sizes", encode(spawn).readableBytes() == 5 + spawn.getSize() && encode(despawn).readableBytes() == 5 + despawn.getSize()
+				&& encode(moves).readableBytes() == 5 + moves.getSize());
+	}
+
+	private static void splitAndMerged() {
+		ByteBuf data = encode(new ChatPacket("first"), new MovePacket(1, 2, 3), new ChatPacket("third"));
+		// Every byte arrives on its own:
+		ByteBuf[] parts = new ByteBuf[data.readableBytes()];
+		for (int i = 0; i < parts.length; i++) {
+			parts[i] = data.retainedSlice(i, 1);
+		}
+		checkSplitAndMerged("frames split into single bytes", decode(parts));
+		checkSplitAndMerged("multiple frames in one buffer", decode(data));
+	}
+
+	private static void checkSplitAndMerged(String name, List<IPacket> result) {
+		check(name, result.size() == 3
+				&& ((ChatPacket) result.get(0)).message.equals("first")
+				&& ((MovePacket) result.get(1)).z == 3
+				&& ((ChatPacket) result.get(2)).message.equals("third"));
+	}
+
+	private static void chunkData() {
+		byte[] bytes = new byte[100000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte)(i*31);
+		}
+		ChunkPacket chunk = (ChunkPacket) roundTrip(new ChunkPacket(7, -3, 42, Unpooled.wrappedBuffer(bytes)));
+		check("chunk", chunk.x == 7 && chunk.z == -3 && chunk.seed == 42 && ByteBufUtil.equals(chunk.content(), Unpooled.wrappedBuffer(bytes)));
+		chunk.release();
+		check("chunk data released", chunk.refCnt() == 0);
+	}
+
+	private static void brokenFrames() {
+		ByteBuf unknown = Unpooled.buffer();
+		unknown.writeInt(1);
+		unknown.writeByte(99);
+		try {
+			decode(unknown);
+			check("unknown packet ID", false);
+		} catch (CorruptedFrameException e) {
+			check("unknown packet ID", true);
+		}
+		ByteBuf tooLong = Unpooled.buffer();
+		tooLong.writeInt(Protocol.MAX_FRAME_LENGTH + 1);
+		tooLong.writeByte(0);
+		try {
+			decode(tooLong);
+			check("too long frame", false);
+		} catch (TooLongFrameException e) {
+			check("too long frame", true);
+		}
+		ByteBuf trailing = encode(new MovePacket(1, 2, 3));
+		trailing.setInt(0, trailing.getInt(0) + 1);
+		trailing.writeByte(0);
+		try {
+			decode(trailing);
+			check("bytes after the packet", false);
+		} catch (CorruptedFrameException e) {
+			check("bytes after the packet", true);
+		}
+	}
+
+	private static void handshake() {
+		EmbeddedChannel channel = new EmbeddedChannel(new ServerHandshakeHandler(65535));
+		channel.writeInbound(new HandshakePacket(true));
+		HandshakePacket answer = channel.readOutbound();
+		channel.writeInbound(new ChatPacket("after handshake"));
+		ChatPacket chat = channel.readInbound();
+		check("handshake accepted", answer.accepted && answer.worldAnd == 65535 && channel.isOpen() && chat != null);
+
+		channel = new EmbeddedChannel(new ServerHandshakeHandler(65535));
+		channel.writeInbound(new HandshakePacket(Protocol.VERSION + 1, true, 0));
+		answer = channel.readOutbound();
+		channel.runPendingTasks();
+		check("wrong protocol version rejected", !answer.accepted && !channel.isOpen());
+
+		channel = new EmbeddedChannel(new ServerHandshakeHandler(65535));
+		channel.writeInbound(new ChatPacket("no handshake"));
+		channel.runPendingTasks();
+		check("packets before the handshake rejected", !channel.isOpen() && channel.readInbound() == null);
+	}
+}
@@ -5,4 +5,11 @@ public interface IUpdateable {
 	public boolean randomUpdates();
 	public void update(boolean randomUpdate);
 	
+	/**
+	 * @return the number of ticks between two regular updates. 0 if only random updates are needed.
+	 */
+	public default int getUpdateInterval() {
+		return 1;
+	}
+	
 }
@@ -7,7 +7,10 @@ import io.cubyz.blocks.Block;
 import io.cubyz.math.FloatingInteger;
 import io.cubyz.math.Vector3fi;
 import io.cubyz.ndt.NDTContainer;
+import io.cubyz.world.Chunk;
 import io.cubyz.world.StellarTorus;
+import io.cubyz.world.TorusSurface;
+import io.cubyz.world.World;
 
 public class Entity {
 
@@ -22,6 +25,9 @@ public class Entity {
 	
 	protected int width = 1, height = 2, depth = 1;
 	
+	private Chunk chunk; // The chunk the entity is in. Only set during updatePosition, so the block checks don't need to look it up every time.
+	private int chunkAnd;
+	
 	public Entity(EntityType type) {
 		this.type = type;
 	}
@@ -74,49 +80,53 @@ public class Entity {
 	 */
 	protected void updateVY() {
 		if (vy < 0) {
-			Vector3i bp = new Vector3i(position.x + (int) Math.round(position.relX), (int) Math.floor(position.y), position.z + (int) Math.round(position.relZ));
+			int bpx = position.x + (int) Math.round(position.relX);
+			int bpy = (int) Math.floor(position.y);
+			int bpz = position.z + (int) Math.round(position.relZ);
 			float relX = position.relX +0.5F - Math.round(position.relX);
 			float relZ = position.relZ + 0.5F- Math.round(position.relZ);
 			if(isOnGround()) {
 				vy = 0;
 			}
 			else if (relX < 0.3) {
-				if (checkBlock(bp.x - 1, bp.y, bp.z)) {
+				if (checkBlock(bpx - 1, bpy, bpz)) {
 					vy = 0;
 				}
-				else if (relZ < 0.3 && checkBlock(bp.x - 1, bp.y, bp.z - 1)) {
+				else if (relZ < 0.3 && checkBlock(bpx - 1, bpy, bpz - 1)) {
 					vy = 0;
 				}
-				else if (relZ > 0.7 && checkBlock(bp.x - 1, bp.y, bp.z + 1)) {
+				else if (relZ > 0.7 && checkBlock(bpx - 1, bpy, bpz + 1)) {
 					vy = 0;
 				}
 			}
 			else if (relX > 0.7) {
-				if (checkBlock(bp.x + 1, bp.y, bp.z)) {
+				if (checkBlock(bpx + 1, bpy, bpz)) {
 					vy = 0;
 				}
-				else if (relZ < 0.3 && checkBlock(bp.x + 1, bp.y, bp.z - 1)) {
+				else if (relZ < 0.3 && checkBlock(bpx + 1, bpy, bpz - 1)) {
 					vy = 0;
 				}
-				else if (relZ > 0.7 && checkBlock(bp.x + 1, bp.y, bp.z + 1)) {
+				else if (relZ > 0.7 && checkBlock(bpx + 1, bpy, bpz + 1)) {
 					vy = 0;
 				}
 			}
-			if (relZ < 0.3 && checkBlock(bp.x, bp.y, bp.z - 1)) {
+			if (relZ < 0.3 && checkBlock(bpx, bpy, bpz - 1)) {
 				vy = 0;
 			}
-			else if (relZ > 0.7 && checkBlock(bp.x, bp.y, bp.z + 1)) {
+			else if (relZ > 0.7 && checkBlock(bpx, bpy, bpz + 1)) {
 				vy = 0;
 			}
 			
 			// I'm really annoyed by falling into the void and needing ages to get back up.
-			if(bp.y < -100) {
+			if(bpy < -100) {
 				position.y = -100;
 				vy = 0;
 			}
 		} else if (vy > 0) {
-			Vector3i bp = new Vector3i(position.x + (int) Math.round(position.relX), (int) Math.floor(position.y), position.z + (int) Math.round(position.relZ));
-			if(checkBlock(bp.x, bp.y + height, bp.z)) {
+			int bpx = position.x + (int) Math.round(position.relX);
+			int bpy = (int) Math.floor(position.y);
+			int bpz = position.z + (int) Math.round(position.relZ);
+			if(checkBlock(bpx, bpy + height, bpz)) {
 				vy = 0;
 			}
 		}
@@ -260,7 +270,13 @@ public class Entity {
 	}
 	
 	public boolean checkBlock(int x, int y, int z) {
-		Block bi = stellarTorus.getWorld().getCurrentTorus().getBlock(x, y, z);
+		Block bi;
+		Chunk ch = chunk;
+		if(ch != null && (x >> 4 & chunkAnd) == ch.getX() && (z >> 4 & chunkAnd) == ch.getZ()) {
+			bi = y < 0 || y >= World.WORLD_HEIGHT ? null : ch.getBlockAt(x & 15, y, z & 15);
+		} else {
+			bi = stellarTorus.getWorld().getCurrentTorus().getBlock(x, y, z);
+		}
 		if(bi != null && bi.isSolid()) {
 			return true;
 		}
@@ -268,8 +284,7 @@ public class Entity {
 	}
 	
 	public boolean isOnGround() {
-		Vector3i bp = new Vector3i(position.x + (int) Math.round(position.relX), (int) Math.floor(position.y), position.z + (int) Math.round(position.relZ));
-		return checkBlock(bp.x, bp.y, bp.z);
+		return checkBlock(position.x + (int) Math.round(position.relX), (int) Math.floor(position.y), position.z + (int) Math.round(position.relZ));
 	}
 	
 	public void update() {
@@ -279,8 +294,14 @@ public class Entity {
 	}
 	
 	protected void updatePosition() {
+		TorusSurface surface = stellarTorus.getWorld().getCurrentTorus();
+		chunkAnd = surface.getAnd() >>> 4;
+		chunk = surface._getNoGenerateChunk(position.x + (int) Math.round(position.relX) >> 4, position.z + (int) Math.round(position.relZ) >> 4);
+		if(chunk != null && !chunk.isGenerated())
+			chunk = null;
 		updateVY();
 		position.add(_getX(vx), vy, _getZ(vz));
+		chunk = null;
 	}
 	
 	// NDT related
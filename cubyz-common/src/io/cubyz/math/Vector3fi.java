@@ -45,6 +45,14 @@ public class Vector3fi implements Cloneable {
 		}
 	}
 	
+	public void set(Vector3fi other) {
+		x = other.x;
+		y = other.y;
+		z = other.z;
+		relX = other.relX;
+		relZ = other.relZ;
+	}
+	
 	public Vector3fi clone() {
 		return new Vector3fi(new FloatingInteger(x, relX), y, new FloatingInteger(z, relZ));
 	}
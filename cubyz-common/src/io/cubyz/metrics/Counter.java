@@ -0,0 +1,34 @@
+package io.cubyz.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A number that only goes up, for example the number of received packets.<br>
+ * Can be increased by many threads at the same time without locking.
+ */
+
+public class Counter implements Metric {
+	private final LongAdder value = new LongAdder();
+
+	public void increment() {
+		value.increment();
+	}
+
+	public void add(long amount) {
+		value.add(amount);
+	}
+
+	public long get() {
+		return value.sum();
+	}
+
+	@Override
+	public String describe() {
+		return Long.toString(get());
+	}
+
+	@Override
+	public void reset() {
+		value.reset();
+	}
+}
@@ -0,0 +1,73 @@
+package io.cubyz.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of a value, for example the size of packets.<br>
+ * The values are sorted into buckets of powers of two, so recording is just a few atomic additions and the percentiles are accurate up to a factor of 2.
+ * Negative values are treated as 0.
+ */
+
+public class Histogram implements Metric {
+	private final AtomicLongArray buckets = new AtomicLongArray(64); // Bucket i contains the values < 2^i and >= 2^(i-1).
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public void record(long value) {
+		if(value < 0) value = 0;
+		buckets.incrementAndGet(Math.min(63, 64 - Long.numberOfLeadingZeros(value)));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getAverage() {
+		long count = getCount();
+		return count == 0 ? 0 : getSum()/(double)count;
+	}
+
+	/**
+	 * @param p between 0 and 1
+	 * @return an upper bound of the value that is bigger than p of all recorded values, at most twice as big as the real one.
+	 */
+	public long getPercentile(double p) {
+		long target = (long)Math.ceil(getCount()*p);
+		long seen = 0;
+		for(int i = 0; i < 64; i++) {
+			seen += buckets.get(i);
+			if(seen >= target && seen != 0)
+				return Math.min((1L << i) - 1, getMax());
+		}
+		return getMax();
+	}
+
+	@Override
+	public String describe() {
+		return String.format("n=%d avg=%.1f p99<=%d max=%d", getCount(), getAverage(), getPercentile(0.99), getMax());
+	}
+
+	@Override
+	public void reset() {
+		for(int i = 0; i < 64; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+}
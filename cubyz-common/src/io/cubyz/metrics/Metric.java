@@ -0,0 +1,13 @@
+package io.cubyz.metrics;
+
+/**
+ * Something that is measured and stored in the Metrics registry.
+ */
+
+public interface Metric {
+	/**
+	 * @return a short human readable summary of the current value.
+	 */
+	public String describe();
+	public void reset();
+}
@@ -0,0 +1,77 @@
+package io.cubyz.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Global registry of all counters, histograms and timers, found by their name.<br>
+ * Names are separated by dots, for example "generator.cubyz:lifeland_terrain" or "tick.liquids".
+ * Looking up a metric is a hash map access, so code that runs very often should store the metric in a field.
+ */
+
+public class Metrics {
+	private static final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+	public static Counter counter(String name) {
+		return get(name, Counter.class, Counter::new);
+	}
+
+	public static Histogram histogram(String name) {
+		return get(name, Histogram.class, Histogram::new);
+	}
+
+	public static Timer timer(String name) {
+		return get(name, Timer.class, Timer::new);
+	}
+
+	private static <T extends Metric> T get(String name, Class<T> type, Supplier<T> constructor) {
+		Metric metric = metrics.get(name);
+		if(metric == null) {
+			metric = metrics.computeIfAbsent(name, n -> constructor.get());
+		}
+		if(metric.getClass() != type)
+			throw new IllegalArgumentException("Metric " + name + " is a " + metric.getClass().getSimpleName() + ", not a " + type.getSimpleName());
+		return type.cast(metric);
+	}
+
+	/**
+	 * @return all metrics, sorted by name.
+	 */
+	public static Map<String, Metric> getAll() {
+		return new TreeMap<>(metrics);
+	}
+
+	/**
+	 * @return all metrics whose name starts with prefix, sorted by name.
+	 */
+	public static Map<String, Metric> getAll(String prefix) {
+		Map<String, Metric> result = new TreeMap<>();
+		for(Map.Entry<String, Metric> entry : metrics.entrySet()) {
+			if(entry.getKey().startsWith(prefix))
+				result.put(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	public static void resetAll() {
+		for(Metric metric : metrics.values()) {
+			metric.reset();
+		}
+	}
+
+	/**
+	 * Writes one line per metric.
+	 */
+	public static void dump(File file) throws IOException {
+		try(PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			for(Map.Entry<String, Metric> entry : getAll().entrySet()) {
+				out.println(entry.getKey() + ": " + entry.getValue().describe());
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package io.cubyz.metrics;
+
+/**
+ * Histogram of durations in ns.<br>
+ * Usage: long t = System.nanoTime(); ... timer.stop(t);
+ */
+
+public class Timer extends Histogram {
+
+	/**
+	 * Records the time since start.
+	 * @param start System.nanoTime() at the start of the measured code.
+	 * @return System.nanoTime() at the end, so it can be used as start of the next measurement.
+	 */
+	public long stop(long start) {
+		long end = System.nanoTime();
+		record(end - start);
+		return end;
+	}
+
+	@Override
+	public String describe() {
+		return String.format("n=%d total=%.1fms avg=%.3fms p99<=%.3fms max=%.3fms", getCount(), getSum()/1e6, getAverage()/1e6, getPercentile(0.99)/1e6, getMax()/1e6);
+	}
+}
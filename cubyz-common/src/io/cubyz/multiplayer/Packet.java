@@ -2,6 +2,9 @@ package io.cubyz.multiplayer;
 
 public class Packet {
 
+	// connection related
+	public static final byte PACKET_HANDSHAKE = 1; // Has to be the first packet of each connection.
+	
 	// server info related
 	public static final byte PACKET_GETVERSION = 15;
 	public static final byte PACKET_PINGPONG = 16;
@@ -17,5 +20,11 @@ public class Packet {
 	public static final byte PACKET_PLACE = 17;
 	public static final byte PACKET_DESTROY = 18;
 	public static final byte PACKET_CHUNK = 20;
+	public static final byte PACKET_BLOCKCHANGES = 21; // All changes of one chunk section during a tick.
+	
+	// entity related
+	public static final byte PACKET_ENTITYSPAWN = 22;
+	public static final byte PACKET_ENTITYDESPAWN = 23;
+	public static final byte PACKET_ENTITYMOVES = 24; // All entity movements of a tick that one player can see.
 	
 }
@@ -0,0 +1,58 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * All block changes of one chunk section during a server tick.
+ */
+
+public class BlockChangesPacket implements IPacket {
+	
+	public final int x, z; // chunk coordinates
+	public final int sectionY;
+	public final int size;
+	public final short[] positions; // (x << 4) | (y << 8) | z inside the section, like in ChunkSection.
+	public final int[] blocks; // Block IDs, -1 for air.
+	
+	public BlockChangesPacket(int x, int z, int sectionY, int size, short[] positions, int[] blocks) {
+		this.x = x;
+		this.z = z;
+		this.sectionY = sectionY;
+		this.size = size;
+		this.positions = positions;
+		this.blocks = blocks;
+	}
+	
+	public BlockChangesPacket(ByteBuf in) {
+		x = in.readInt();
+		z = in.readInt();
+		sectionY = in.readUnsignedByte();
+		size = in.readUnsignedShort();
+		positions = new short[size];
+		blocks = new int[size];
+		for (int i = 0; i < size; i++) {
+			positions[i] = in.readShort();
+			blocks[i] = in.readUnsignedShort() - 1;
+		}
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_BLOCKCHANGES;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		out.writeInt(x);
+		out.writeInt(z);
+		out.writeByte(sectionY);
+		out.writeShort(size);
+		for (int i = 0; i < size; i++) {
+			out.writeShort(positions[i]);
+			out.writeShort(blocks[i] + 1);
+		}
+	}
+	
+}
@@ -0,0 +1,30 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.netty.buffer.ByteBuf;
+
+public class ChatPacket implements IPacket {
+	
+	public final String message;
+	
+	public ChatPacket(String message) {
+		this.message = message;
+	}
+	
+	public ChatPacket(ByteBuf in) {
+		message = Protocol.readString(in);
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_CHATMSG;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		Protocol.writeString(out, message);
+	}
+	
+}
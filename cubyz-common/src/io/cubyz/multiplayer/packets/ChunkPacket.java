@@ -0,0 +1,43 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * The data is a slice of the received frame, so it needs to be released after use like any other ByteBuf.
+ */
+
+public class ChunkPacket extends DefaultByteBufHolder implements IPacket {
+	
+	public final int x, z;
+	public final int seed;
+	
+	public ChunkPacket(int x, int z, int seed, ByteBuf data) {
+		super(data);
+		this.x = x;
+		this.z = z;
+		this.seed = seed;
+	}
+	
+	public ChunkPacket(ByteBuf in) {
+		this(in.readInt(), in.readInt(), in.readInt(), in.readRetainedSlice(in.readInt()));
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_CHUNK;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		ByteBuf data = content();
+		out.writeInt(x);
+		out.writeInt(z);
+		out.writeInt(seed);
+		out.writeInt(data.readableBytes());
+		out.writeBytes(data, data.readerIndex(), data.readableBytes());
+	}
+	
+}
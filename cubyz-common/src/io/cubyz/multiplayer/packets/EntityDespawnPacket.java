@@ -0,0 +1,49 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * The entities left the view of the player or were removed from the world.
+ */
+
+public class EntityDespawnPacket implements IPacket {
+	
+	public final int size;
+	public final int[] ids;
+	
+	public EntityDespawnPacket(int size, int[] ids) {
+		this.size = size;
+		this.ids = ids;
+	}
+	
+	public EntityDespawnPacket(ByteBuf in) {
+		size = in.readUnsignedShort();
+		ids = new int[size];
+		for (int i = 0; i < size; i++) {
+			ids[i] = in.readInt();
+		}
+	}
+	
+	/**
+	 * @return the number of bytes write produces
+	 */
+	public int getSize() {
+		return 2 + 4*size;
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_ENTITYDESPAWN;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		out.writeShort(size);
+		for (int i = 0; i < size; i++) {
+			out.writeInt(ids[i]);
+		}
+	}
+	
+}
@@ -0,0 +1,134 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * The movements of all entities a player can see, during one server tick. Entities that didn't move or turn aren't in it.<br>
+ * Positions are quantized to 1/POSITION_SCALE of a block. x and z are split into the block coordinate and the fraction, like in Vector3fi.
+ * Usually an entry only contains the difference to the position of the last tick as three shorts.
+ * If that doesn't fit, the entry contains the full position instead and the client should treat it as a teleport.
+ * The rotation is only sent when it changed.
+ */
+
+public class EntityMovesPacket implements IPacket {
+	
+	public static final int MAX_SIZE = 65535;
+	public static final int POSITION_SCALE = 4096;
+	// Flags of an entry:
+	public static final int MOVED = 1, ROTATED = 2, TELEPORTED = 4;
+	
+	public final int tick;
+	public final int size;
+	public final int[] ids;
+	public final byte[] flags;
+	public final int[] positions; // 5 per entry: dx, dy, dz, 0, 0 if MOVED, x, fx, y, z, fz if TELEPORTED.
+	public final short[] rotations; // 3 per entry, only used if ROTATED.
+	
+	public EntityMovesPacket(int tick, int size, int[] ids, byte[] flags, int[] positions, short[] rotations) {
+		this.tick = tick;
+		this.size = size;
+		this.ids = ids;
+		this.flags = flags;
+		this.positions = positions;
+		this.rotations = rotations;
+	}
+	
+	public EntityMovesPacket(ByteBuf in) {
+		tick = in.readInt();
+		size = in.readUnsignedShort();
+		ids = new int[size];
+		flags = new byte[size];
+		positions = new int[5*size];
+		rotations = new short[3*size];
+		for (int i = 0; i < size; i++) {
+			ids[i] = in.readInt();
+			flags[i] = in.readByte();
+			if ((flags[i] & TELEPORTED) != 0) {
+				positions[5*i] = in.readInt();
+				positions[5*i + 1] = in.readUnsignedShort();
+				positions[5*i + 2] = in.readInt();
+				positions[5*i + 3] = in.readInt();
+				positions[5*i + 4] = in.readUnsignedShort();
+			} else if ((flags[i] & MOVED) != 0) {
+				positions[5*i] = in.readShort();
+				positions[5*i + 1] = in.readShort();
+				positions[5*i + 2] = in.readShort();
+			}
+			if ((flags[i] & ROTATED) != 0) {
+				rotations[3*i] = in.readShort();
+				rotations[3*i + 1] = in.readShort();
+				rotations[3*i + 2] = in.readShort();
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of bytes an entry with these flags needs
+	 */
+	public static int getEntrySize(int flags) {
+		int size = 5;
+		if ((flags & TELEPORTED) != 0)
+			size += 16;
+		else if ((flags & MOVED) != 0)
+			size += 6;
+		if ((flags & ROTATED) != 0)
+			size += 6;
+		return size;
+	}
+	
+	/**
+	 * Maps an angle in radians to a short, so that a full turn covers the whole range of the short.
+	 */
+	public static short quantizeAngle(float angle) {
+		return (short)Math.round(angle*(32768/Math.PI));
+	}
+	
+	public static float getAngle(short quantized) {
+		return (float)(quantized*(Math.PI/32768));
+	}
+	
+	/**
+	 * @return the number of bytes write produces
+	 */
+	public int getSize() {
+		int bytes = 6;
+		for (int i = 0; i < size; i++) {
+			bytes += getEntrySize(flags[i]);
+		}
+		return bytes;
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_ENTITYMOVES;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		out.writeInt(tick);
+		out.writeShort(size);
+		for (int i = 0; i < size; i++) {
+			out.writeInt(ids[i]);
+			out.writeByte(flags[i]);
+			if ((flags[i] & TELEPORTED) != 0) {
+				out.writeInt(positions[5*i]);
+				out.writeShort(positions[5*i + 1]);
+				out.writeInt(positions[5*i + 2]);
+				out.writeInt(positions[5*i + 3]);
+				out.writeShort(positions[5*i + 4]);
+			} else if ((flags[i] & MOVED) != 0) {
+				out.writeShort(positions[5*i]);
+				out.writeShort(positions[5*i + 1]);
+				out.writeShort(positions[5*i + 2]);
+			}
+			if ((flags[i] & ROTATED) != 0) {
+				out.writeShort(rotations[3*i]);
+				out.writeShort(rotations[3*i + 1]);
+				out.writeShort(rotations[3*i + 2]);
+			}
+		}
+	}
+	
+}
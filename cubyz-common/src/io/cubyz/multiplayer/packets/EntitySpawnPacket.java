@@ -0,0 +1,78 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * An entity came into the view of the player. Contains the full position, all following movements are relative to it.
+ * The position is quantized like in {@link EntityMovesPacket}.
+ */
+
+public class EntitySpawnPacket implements IPacket {
+	
+	public final int id;
+	public final int tick; // server tick in which the entity had this position
+	public final String type; // registry ID of the EntityType
+	public final int x, y, z;
+	public final int fx, fz; // fraction of the block in 1/POSITION_SCALE
+	public final short rotX, rotY, rotZ;
+	
+	public EntitySpawnPacket(int id, int tick, String type, int x, int fx, int y, int z, int fz, short rotX, short rotY, short rotZ) {
+		this.id = id;
+		this.tick = tick;
+		this.type = type;
+		this.x = x;
+		this.fx = fx;
+		this.y = y;
+		this.z = z;
+		this.fz = fz;
+		this.rotX = rotX;
+		this.rotY = rotY;
+		this.rotZ = rotZ;
+	}
+	
+	public EntitySpawnPacket(ByteBuf in) {
+		id = in.readInt();
+		tick = in.readInt();
+		type = Protocol.readString(in);
+		x = in.readInt();
+		fx = in.readUnsignedShort();
+		y = in.readInt();
+		z = in.readInt();
+		fz = in.readUnsignedShort();
+		rotX = in.readShort();
+		rotY = in.readShort();
+		rotZ = in.readShort();
+	}
+	
+	/**
+	 * @return the number of bytes write produces
+	 */
+	public int getSize() {
+		return 32 + ByteBufUtil.utf8Bytes(type);
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_ENTITYSPAWN;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		out.writeInt(id);
+		out.writeInt(tick);
+		Protocol.writeString(out, type);
+		out.writeInt(x);
+		out.writeShort(fx);
+		out.writeInt(y);
+		out.writeInt(z);
+		out.writeShort(fz);
+		out.writeShort(rotX);
+		out.writeShort(rotY);
+		out.writeShort(rotZ);
+	}
+	
+}
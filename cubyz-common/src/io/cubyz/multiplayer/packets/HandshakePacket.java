@@ -0,0 +1,58 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.Constants;
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Sent by the client when connecting and answered by the server, which closes the connection if the protocol versions don't match.
+ */
+
+public class HandshakePacket implements IPacket {
+	
+	public final int protocolVersion;
+	public final boolean accepted; // Only used in the answer of the server.
+	public final String brand, version;
+	public final int worldAnd; // Only used in the answer of the server. Needed to wrap the positions of the entities.
+	
+	public HandshakePacket(boolean accepted) {
+		this(Protocol.VERSION, accepted, 0);
+	}
+	
+	public HandshakePacket(boolean accepted, int worldAnd) {
+		this(Protocol.VERSION, accepted, worldAnd);
+	}
+	
+	public HandshakePacket(int protocolVersion, boolean accepted, int worldAnd) {
+		this.protocolVersion = protocolVersion;
+		this.accepted = accepted;
+		this.worldAnd = worldAnd;
+		brand = Constants.GAME_BRAND;
+		version = Constants.GAME_VERSION;
+	}
+	
+	public HandshakePacket(ByteBuf in) {
+		protocolVersion = in.readInt();
+		accepted = in.readBoolean();
+		brand = Protocol.readString(in);
+		version = Protocol.readString(in);
+		worldAnd = in.readInt();
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_HANDSHAKE;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		out.writeInt(protocolVersion);
+		out.writeBoolean(accepted);
+		Protocol.writeString(out, brand);
+		Protocol.writeString(out, version);
+		out.writeInt(worldAnd);
+	}
+	
+}
@@ -0,0 +1,41 @@
+package io.cubyz.multiplayer.packets;
+
+import java.util.UUID;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Sent by the client to join the game and receive updates.
+ */
+
+public class ListenPacket implements IPacket {
+	
+	public final UUID uuid;
+	public final String username;
+	
+	public ListenPacket(UUID uuid, String username) {
+		this.uuid = uuid;
+		this.username = username;
+	}
+	
+	public ListenPacket(ByteBuf in) {
+		uuid = new UUID(in.readLong(), in.readLong());
+		username = Protocol.readString(in);
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_LISTEN;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+		Protocol.writeString(out, username);
+	}
+	
+}
@@ -0,0 +1,33 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.netty.buffer.ByteBuf;
+
+public class MovePacket implements IPacket {
+	
+	public final int x, y, z;
+	
+	public MovePacket(int x, int y, int z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+	
+	public MovePacket(ByteBuf in) {
+		this(in.readInt(), in.readInt(), in.readInt());
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_MOVE;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		out.writeInt(x);
+		out.writeInt(y);
+		out.writeInt(z);
+	}
+	
+}
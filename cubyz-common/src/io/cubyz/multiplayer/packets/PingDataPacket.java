@@ -0,0 +1,48 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.netty.buffer.ByteBuf;
+
+public class PingDataPacket implements IPacket {
+	
+	public final String motd; // null in the request.
+	public final int onlinePlayers, maxPlayers;
+	
+	public PingDataPacket() {
+		this(null, 0, 0);
+	}
+	
+	public PingDataPacket(String motd, int onlinePlayers, int maxPlayers) {
+		this.motd = motd;
+		this.onlinePlayers = onlinePlayers;
+		this.maxPlayers = maxPlayers;
+	}
+	
+	public PingDataPacket(ByteBuf in) {
+		if (in.isReadable()) {
+			motd = Protocol.readString(in);
+			onlinePlayers = in.readInt();
+			maxPlayers = in.readInt();
+		} else {
+			motd = null;
+			onlinePlayers = maxPlayers = 0;
+		}
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_PINGDATA;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		if (motd != null) {
+			Protocol.writeString(out, motd);
+			out.writeInt(onlinePlayers);
+			out.writeInt(maxPlayers);
+		}
+	}
+	
+}
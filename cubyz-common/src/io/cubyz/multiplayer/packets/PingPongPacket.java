@@ -0,0 +1,42 @@
+package io.cubyz.multiplayer.packets;
+
+import java.util.UUID;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Sent by the server to check if the client is still there. The client answers with its UUID.
+ */
+
+public class PingPongPacket implements IPacket {
+	
+	public final UUID uuid; // null when sent by the server.
+	
+	public PingPongPacket() {
+		uuid = null;
+	}
+	
+	public PingPongPacket(UUID uuid) {
+		this.uuid = uuid;
+	}
+	
+	public PingPongPacket(ByteBuf in) {
+		uuid = in.isReadable() ? new UUID(in.readLong(), in.readLong()) : null;
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_PINGPONG;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		if (uuid != null) {
+			out.writeLong(uuid.getMostSignificantBits());
+			out.writeLong(uuid.getLeastSignificantBits());
+		}
+	}
+	
+}
@@ -0,0 +1,35 @@
+package io.cubyz.multiplayer.packets;
+
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.netty.buffer.ByteBuf;
+
+public class VersionPacket implements IPacket {
+	
+	public final String info; // "brand;version" in the answer, null in the request.
+	
+	public VersionPacket() {
+		info = null;
+	}
+	
+	public VersionPacket(String info) {
+		this.info = info;
+	}
+	
+	public VersionPacket(ByteBuf in) {
+		info = in.isReadable() ? Protocol.readString(in) : null;
+	}
+	
+	@Override
+	public byte getID() {
+		return Packet.PACKET_GETVERSION;
+	}
+	
+	@Override
+	public void write(ByteBuf out) {
+		if (info != null)
+			Protocol.writeString(out, info);
+	}
+	
+}
@@ -0,0 +1,22 @@
+package io.cubyz.multiplayer.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A packet that can be sent through a pipeline with the packet codec.<br>
+ * Each packet type also needs a constructor that reads it from a ByteBuf, which gets registered in {@link Protocol#REGISTRY}.
+ */
+
+public interface IPacket {
+
+	/**
+	 * @return one of the IDs in {@link io.cubyz.multiplayer.Packet}
+	 */
+	public byte getID();
+	
+	/**
+	 * Writes the content of this packet, without the ID.
+	 */
+	public void write(ByteBuf out);
+	
+}
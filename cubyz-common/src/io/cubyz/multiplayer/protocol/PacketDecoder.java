@@ -0,0 +1,51 @@
+package io.cubyz.multiplayer.protocol;
+
+import io.cubyz.metrics.Histogram;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Waits until a whole frame arrived, no matter how TCP splits or merges them, and reads the packet from it.<br>
+ * A frame consists of the length as int, the packet ID and the content of the packet.
+ */
+
+public class PacketDecoder extends LengthFieldBasedFrameDecoder {
+	
+	private final PacketRegistry registry;
+	private final Histogram frameSizes;
+	
+	/**
+	 * @param frameSizes can be null
+	 */
+	public PacketDecoder(PacketRegistry registry, Histogram frameSizes) {
+		super(Protocol.MAX_FRAME_LENGTH, 0, 4, 0, 4);
+		this.registry = registry;
+		this.frameSizes = frameSizes;
+	}
+	
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+		ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+		if (frame == null)
+			return null;
+		try {
+			if (frameSizes != null)
+				frameSizes.record(frame.readableBytes());
+			if (!frame.isReadable())
+				throw new CorruptedFrameException("Empty frame");
+			byte id = frame.readByte();
+			IPacket packet = registry.read(id, frame);
+			if (frame.isReadable()) {
+				ReferenceCountUtil.release(packet);
+				throw new CorruptedFrameException(frame.readableBytes() + " unread bytes after packet " + id);
+			}
+			return packet;
+		} finally {
+			frame.release();
+		}
+	}
+	
+}
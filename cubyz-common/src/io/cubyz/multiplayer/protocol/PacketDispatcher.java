@@ -0,0 +1,32 @@
+package io.cubyz.multiplayer.protocol;
+
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Calls the handler that was registered for the ID of a packet.
+ */
+
+public class PacketDispatcher {
+	
+	private final PacketHandler<?>[] handlers = new PacketHandler<?>[256];
+	
+	/**
+	 * The handler needs to accept the packet class that is registered for this ID in the {@link PacketRegistry}.
+	 */
+	public <T extends IPacket> void register(byte id, PacketHandler<T> handler) {
+		handlers[id & 255] = handler;
+	}
+	
+	/**
+	 * @return false if there is no handler for this packet.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean dispatch(ChannelHandlerContext ctx, IPacket packet) {
+		PacketHandler<IPacket> handler = (PacketHandler<IPacket>) handlers[packet.getID() & 255];
+		if (handler == null)
+			return false;
+		handler.handle(ctx, packet);
+		return true;
+	}
+	
+}
@@ -0,0 +1,27 @@
+package io.cubyz.multiplayer.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * Writes packets together with their length and ID directly into a pooled direct buffer.
+ */
+
+public class PacketEncoder extends MessageToByteEncoder<IPacket> {
+	
+	@Override
+	protected void encode(ChannelHandlerContext ctx, IPacket packet, ByteBuf out) {
+		int start = out.writerIndex();
+		out.writeInt(0); // The length is only known afterwards.
+		out.writeByte(packet.getID());
+		packet.write(out);
+		int length = out.writerIndex() - start - 4;
+		if (length > Protocol.MAX_FRAME_LENGTH) {
+			throw new EncoderException("Packet " + packet.getID() + " is too big: " + length + " bytes");
+		}
+		out.setInt(start, length);
+	}
+	
+}
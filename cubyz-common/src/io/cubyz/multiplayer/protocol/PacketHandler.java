@@ -0,0 +1,10 @@
+package io.cubyz.multiplayer.protocol;
+
+import io.netty.channel.ChannelHandlerContext;
+
+@FunctionalInterface
+public interface PacketHandler<T extends IPacket> {
+
+	public void handle(ChannelHandlerContext ctx, T packet);
+	
+}
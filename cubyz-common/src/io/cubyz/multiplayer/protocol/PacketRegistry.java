@@ -0,0 +1,36 @@
+package io.cubyz.multiplayer.protocol;
+
+import java.util.function.Function;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * Maps the packet IDs to the functions that read the packets.
+ */
+
+public class PacketRegistry {
+	
+	@SuppressWarnings("unchecked")
+	private final Function<ByteBuf, ? extends IPacket>[] readers = new Function[256];
+	
+	public void register(byte id, Function<ByteBuf, ? extends IPacket> reader) {
+		if (readers[id & 255] != null) {
+			throw new IllegalArgumentException("Packet ID " + id + " is already registered");
+		}
+		readers[id & 255] = reader;
+	}
+	
+	public boolean isRegistered(byte id) {
+		return readers[id & 255] != null;
+	}
+	
+	public IPacket read(byte id, ByteBuf in) {
+		Function<ByteBuf, ? extends IPacket> reader = readers[id & 255];
+		if (reader == null) {
+			throw new CorruptedFrameException("Unknown packet ID " + id);
+		}
+		return reader.apply(in);
+	}
+	
+}
@@ -0,0 +1,70 @@
+package io.cubyz.multiplayer.protocol;
+
+import io.cubyz.Constants;
+import io.cubyz.metrics.Histogram;
+import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.packets.BlockChangesPacket;
+import io.cubyz.multiplayer.packets.ChatPacket;
+import io.cubyz.multiplayer.packets.ChunkPacket;
+import io.cubyz.multiplayer.packets.EntityDespawnPacket;
+import io.cubyz.multiplayer.packets.EntityMovesPacket;
+import io.cubyz.multiplayer.packets.EntitySpawnPacket;
+import io.cubyz.multiplayer.packets.HandshakePacket;
+import io.cubyz.multiplayer.packets.ListenPacket;
+import io.cubyz.multiplayer.packets.MovePacket;
+import io.cubyz.multiplayer.packets.PingDataPacket;
+import io.cubyz.multiplayer.packets.PingPongPacket;
+import io.cubyz.multiplayer.packets.VersionPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.EncoderException;
+
+public class Protocol {
+	
+	public static final int VERSION = 4; // Needs to be increased whenever the format of a packet changes.
+	public static final int MAX_FRAME_LENGTH = 1 << 24;
+	public static final PacketRegistry REGISTRY = new PacketRegistry();
+	
+	static {
+		REGISTRY.register(Packet.PACKET_HANDSHAKE, HandshakePacket::new);
+		REGISTRY.register(Packet.PACKET_GETVERSION, VersionPacket::new);
+		REGISTRY.register(Packet.PACKET_PINGPONG, PingPongPacket::new);
+		REGISTRY.register(Packet.PACKET_PINGDATA, PingDataPacket::new);
+		REGISTRY.register(Packet.PACKET_MOVE, MovePacket::new);
+		REGISTRY.register(Packet.PACKET_CHATMSG, ChatPacket::new);
+		REGISTRY.register(Packet.PACKET_LISTEN, ListenPacket::new);
+		REGISTRY.register(Packet.PACKET_CHUNK, ChunkPacket::new);
+		REGISTRY.register(Packet.PACKET_BLOCKCHANGES, BlockChangesPacket::new);
+		REGISTRY.register(Packet.PACKET_ENTITYSPAWN, EntitySpawnPacket::new);
+		REGISTRY.register(Packet.PACKET_ENTITYDESPAWN, EntityDespawnPacket::new);
+		REGISTRY.register(Packet.PACKET_ENTITYMOVES, EntityMovesPacket::new);
+	}
+	
+	/**
+	 * Adds the frame decoder and encoder to the end of the pipeline. The handlers after them receive and send {@link IPacket}s.
+	 * @param frameSizes can be null
+	 */
+	public static void addCodec(ChannelPipeline pipeline, Histogram frameSizes) {
+		pipeline.addLast("decoder", new PacketDecoder(REGISTRY, frameSizes));
+		pipeline.addLast("encoder", new PacketEncoder());
+	}
+	
+	/**
+	 * Writes the string as UTF-8 with the number of bytes in front, without creating a byte array.
+	 */
+	public static void writeString(ByteBuf out, CharSequence str) {
+		int start = out.writerIndex();
+		out.writeShort(0);
+		int length = ByteBufUtil.writeUtf8(out, str);
+		if (length > 65535) {
+			throw new EncoderException("String is too long: " + length + " bytes");
+		}
+		out.setShort(start, length);
+	}
+	
+	public static String readString(ByteBuf in) {
+		return in.readCharSequence(in.readUnsignedShort(), Constants.CHARSET).toString();
+	}
+	
+}
@@ -0,0 +1,116 @@
+package io.cubyz.multiplayer.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import io.cubyz.blocks.Block;
+import io.cubyz.handler.PlaceBlockHandler;
+import io.cubyz.handler.RemoveBlockHandler;
+import io.cubyz.metrics.Counter;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.multiplayer.packets.BlockChangesPacket;
+import io.cubyz.world.World;
+
+/**
+ * Collects the block changes of the surface and sends them to the players once per tick.<br>
+ * All changes of a chunk section within one tick are merged into one packet, which only goes to the players that already have the chunk.
+ * Each connection gets flushed once per tick, so big explosions or fast building don't cause one packet per block and player.
+ */
+
+public class BlockChangeBroadcaster implements PlaceBlockHandler, RemoveBlockHandler {
+	public static final int TICK_TIME = 50; // ms
+	private static final Counter changeCounter = Metrics.counter("net.server.blockChanges");
+	private static final Counter packetCounter = Metrics.counter("net.server.blockChangePackets");
+
+	private final ServerHandler handler;
+	private final int chunkAnd;
+	private HashMap<Long, SectionChanges> changes = new HashMap<>(); // Replaced by an empty map each tick. Guarded by this.
+
+	private static class SectionChanges {
+		final int x, y, z;
+		final long[] changed = new long[64]; // One bit for each position in the section.
+		short[] positions = new short[16];
+		int[] blocks = new int[16];
+		int size;
+
+		SectionChanges(int x, int y, int z) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		void set(int index, int block) {
+			if ((changed[index >>> 6] & 1L << index) != 0) {
+				// Only the last change of each block is needed:
+				for (int i = 0; i < size; i++) {
+					if (positions[i] == index) {
+						blocks[i] = block;
+						return;
+					}
+				}
+			}
+			changed[index >>> 6] |= 1L << index;
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, size << 1);
+				blocks = Arrays.copyOf(blocks, size << 1);
+			}
+			positions[size] = (short)index;
+			blocks[size] = block;
+			size++;
+		}
+	}
+
+	/**
+	 * @param chunkAnd -1 if the world doesn't wrap around.
+	 */
+	public BlockChangeBroadcaster(ServerHandler handler, int chunkAnd) {
+		this.handler = handler;
+		this.chunkAnd = chunkAnd;
+	}
+
+	@Override
+	public void onBlockPlaced(Block b, int x, int y, int z) {
+		add(x, y, z, b == null ? -1 : b.ID);
+	}
+
+	@Override
+	public void onBlockRemoved(Block b, int x, int y, int z) {
+		add(x, y, z, -1);
+	}
+
+	private synchronized void add(int x, int y, int z, int block) {
+		if (y < 0 || y >= World.WORLD_HEIGHT) return;
+		int cx = x >> 4 & chunkAnd;
+		int cz = z >> 4 & chunkAnd;
+		long key = (long)cx << 36 | (cz & 0xfffffffL) << 8 | (y >> 4);
+		SectionChanges section = changes.get(key);
+		if (section == null) {
+			section = new SectionChanges(cx, y >> 4, cz);
+			changes.put(key, section);
+		}
+		section.set((x & 15) << 4 | (y & 15) << 8 | (z & 15), block);
+		changeCounter.increment();
+	}
+
+	/**
+	 * Sends the changes since the last call. Each player only gets the sections of chunks it has.
+	 */
+	public void flush() {
+		HashMap<Long, SectionChanges> changes;
+		synchronized (this) {
+			if (this.changes.isEmpty()) return;
+			changes = this.changes;
+			this.changes = new HashMap<>();
+		}
+		ArrayList<BlockChangesPacket> packets = new ArrayList<>(changes.size());
+		for (SectionChanges section : changes.values()) {
+			packets.add(new BlockChangesPacket(section.x, section.z, section.y, section.size, section.positions, section.blocks));
+		}
+		packetCounter.add(packets.size());
+		// The packets are never changed after this, so all connections can share them.
+		for (ServerHandler.Client cl : handler.clients.values()) {
+			cl.ctx.executor().execute(() -> cl.chunks.sendBlockChanges(packets));
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package io.cubyz.multiplayer.server;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.cubyz.math.CubyzMath;
+import io.cubyz.metrics.Counter;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.multiplayer.packets.BlockChangesPacket;
+import io.cubyz.multiplayer.packets.ChunkPacket;
+import io.cubyz.world.LocalTorusSurface;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Sends the chunks around one player, nearest first.<br>
+ * Remembers which chunks the player already got, so moving around only sends the chunks that came into range.
+ * Each tick at most bytesPerTick are written and nothing is written while the channel is above its high water mark, so slow connections don't fill up the server's memory.
+ * All methods need to be called from the event loop of the channel.
+ */
+
+public class ChunkStreamer {
+	public static final int TICK_TIME = 50; // ms
+	private static final int HEADER_SIZE = 21; // Frame length, ID, x, z, seed and data length.
+	private static final Counter chunkCounter = Metrics.counter("net.server.chunks");
+	private static final Counter byteCounter = Metrics.counter("net.server.chunkBytes");
+
+	private final ServerHandler handler;
+	private final ChannelHandlerContext ctx;
+	private final int renderDistance;
+	private final int bytesPerTick;
+	private final int chunkAnd;
+	private final int compressionLevel;
+	private final HashSet<Long> sent = new HashSet<>();
+	private int endX = Integer.MAX_VALUE, endZ = Integer.MAX_VALUE; // Same as lastX and lastZ in LocalTorusSurface.seek
+	// Chunks in range that weren't sent yet. Each entry contains the squared distance in the upper and the index inside the range in the lower half, so sorting puts the nearest chunks first.
+	private long[] pending = new long[0];
+	private int nextPending;
+	private boolean retry; // Some of the pending chunks weren't ready.
+	private int budget;
+	private ScheduledFuture<?> task;
+
+	/**
+	 * @param compressionLevel see ChunkCodec.encode
+	 */
+	public ChunkStreamer(ServerHandler handler, ChannelHandlerContext ctx, int renderDistance, int bytesPerTick, int chunkAnd, int compressionLevel) {
+		this.handler = handler;
+		this.ctx = ctx;
+		this.renderDistance = renderDistance;
+		this.bytesPerTick = bytesPerTick;
+		this.chunkAnd = chunkAnd;
+		this.compressionLevel = compressionLevel;
+		budget = bytesPerTick;
+	}
+
+	public void start() {
+		task = ctx.executor().scheduleAtFixedRate(this::tick, TICK_TIME, TICK_TIME, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Can be called from any thread.
+	 */
+	public void stop() {
+		if (task != null)
+			task.cancel(false);
+	}
+
+	private static long getKey(int x, int z) {
+		return (long)x << 32 | (z & 0xffffffffL);
+	}
+
+	/**
+	 * @param x block coordinate of the player
+	 * @param z block coordinate of the player
+	 */
+	public void move(int x, int z) {
+		int endX = LocalTorusSurface.getSeekEnd(x, renderDistance);
+		int endZ = LocalTorusSurface.getSeekEnd(z, renderDistance);
+		if (endX == this.endX && endZ == this.endZ)
+			return;
+		this.endX = endX;
+		this.endZ = endZ;
+		int doubleRD = renderDistance << 1;
+		// Forget the chunks that are far enough away to be unloaded by the client. Same range as in LocalTorusSurface.seek
+		int cx = endX - renderDistance;
+		int cz = endZ - renderDistance;
+		sent.removeIf(key -> {
+			int dx = CubyzMath.matchSign(((int)(key >> 32) - cx) & chunkAnd, chunkAnd);
+			int dz = CubyzMath.matchSign(((int)(long)key - cz) & chunkAnd, chunkAnd);
+			return Math.abs(dx) >= renderDistance + 2 || Math.abs(dz) >= renderDistance + 2;
+		});
+		// Collect the missing chunks:
+		long[] pending = new long[doubleRD*doubleRD];
+		int size = 0;
+		for (int i = 0; i < doubleRD; i++) {
+			for (int j = 0; j < doubleRD; j++) {
+				int wx = endX - doubleRD + i;
+				int wz = endZ - doubleRD + j;
+				if (sent.contains(getKey(wx & chunkAnd, wz & chunkAnd))) continue;
+				long dx = (wx << 4) + 8 - x;
+				long dz = (wz << 4) + 8 - z;
+				pending[size++] = (dx*dx + dz*dz) << 32 | (i*doubleRD + j);
+			}
+		}
+		this.pending = Arrays.copyOf(pending, size);
+		Arrays.sort(this.pending);
+		nextPending = 0;
+		retry = false;
+		pump();
+	}
+
+	private void tick() {
+		budget = bytesPerTick;
+		if (retry && nextPending == pending.length) {
+			nextPending = 0;
+			retry = false;
+		}
+		pump();
+	}
+
+	/**
+	 * Sends the changes in chunks the player already has. The other chunks contain the changes when they get sent.
+	 */
+	public void sendBlockChanges(List<BlockChangesPacket> packets) {
+		boolean written = false;
+		for (int i = 0; i < packets.size(); i++) {
+			BlockChangesPacket packet = packets.get(i);
+			if (sent.contains(getKey(packet.x, packet.z))) {
+				ctx.write(packet);
+				written = true;
+			}
+		}
+		if (written)
+			ctx.flush();
+	}
+
+	/**
+	 * Sends chunks until the budget of this tick is used up or the channel stops being writable.
+	 * Needs to be called again when the channel becomes writable.
+	 */
+	public void pump() {
+		int doubleRD = renderDistance << 1;
+		boolean written = false;
+		while (nextPending < pending.length && budget > 0 && ctx.channel().isWritable()) {
+			int index = (int)pending[nextPending];
+			int x = (endX - doubleRD + index/doubleRD) & chunkAnd;
+			int z = (endZ - doubleRD + index%doubleRD) & chunkAnd;
+			if (!sent.contains(getKey(x, z))) {
+				ChunkPacket packet = handler.sendChunk(ctx, x, z, pending[nextPending] >>> 32, compressionLevel);
+				if (packet == null) { // Not generated yet.
+					retry = true;
+					nextPending++;
+					continue;
+				}
+				int size = HEADER_SIZE + packet.content().readableBytes();
+				budget -= size;
+				byteCounter.add(size);
+				chunkCounter.increment();
+				sent.add(getKey(x, z));
+				ctx.write(packet);
+				written = true;
+			}
+			nextPending++;
+		}
+		if (written)
+			ctx.flush();
+	}
+}
@@ -1,11 +1,19 @@
 package io.cubyz.multiplayer.server;
 
+import java.util.concurrent.TimeUnit;
+
+import io.cubyz.metrics.Histogram;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.cubyz.world.LocalStellarTorus;
+import io.cubyz.world.LocalTorusSurface;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -20,11 +28,19 @@ public class CubyzServer {
 	static EventLoopGroup boss;
 	static EventLoopGroup worker;
 	static ServerHandler handler;
+	static BlockChangeBroadcaster blockChanges;
+	static EntityTracker entities;
+	private static final int LOW_WATER_MARK = 64*1024, HIGH_WATER_MARK = 256*1024; // bytes waiting to be sent per connection
+	private static final Histogram packetSize = Metrics.histogram("net.server.packetBytes");
 	
 	static {
 		settings.maxPlayers = 20;
 		settings.playerTimeout = 5000;
 		settings.playerPingTime = 5000;
+		settings.renderDistance = 8;
+		settings.chunkBytesPerTick = 64*1024;
+		settings.chunkCompressionLevel = 1; // Higher levels barely make the chunks smaller.
+		settings.entityDistance = 64;
 	}
 
 	public CubyzServer(int port) {
@@ -33,6 +49,10 @@ public class CubyzServer {
 	
 	public void stop() throws Exception {
 		ServerHandler.th.interrupt();
+		if (blockChanges != null) {
+			ServerHandler.surface.removeHandler(blockChanges);
+			blockChanges = null;
+		}
 		ServerHandler.stellarTorus.cleanup();
 		
 		ch.close();
@@ -40,13 +60,24 @@ public class CubyzServer {
 		boss.shutdownGracefully();
 	}
 
-	public void start(boolean internal) throws Exception {
+	/**
+	 * @param internal true if the server runs inside of the client.
+	 * @param surface the world of the server. It needs to be updated and saved by the caller. An integrated server uses the world the player is in.
+	 */
+	public void start(boolean internal, LocalTorusSurface surface) throws Exception {
 		CubyzServer.internal = internal;
 		settings.internal = internal;
+		ServerHandler.surface = surface;
+		ServerHandler.stellarTorus = (LocalStellarTorus)surface.getStellarTorus();
 		
 		boss = new NioEventLoopGroup();
 		worker = new NioEventLoopGroup();
 		handler = new ServerHandler(this, settings);
+		blockChanges = new BlockChangeBroadcaster(handler, surface.getAnd() >>> 4);
+		surface.addHandler(blockChanges);
+		worker.scheduleAtFixedRate(blockChanges::flush, BlockChangeBroadcaster.TICK_TIME, BlockChangeBroadcaster.TICK_TIME, TimeUnit.MILLISECONDS);
+		entities = new EntityTracker(handler, surface.getEntityIndex(), surface.getAnd(), settings.entityDistance);
+		worker.scheduleAtFixedRate(entities::tick, EntityTracker.TICK_TIME, EntityTracker.TICK_TIME, TimeUnit.MILLISECONDS);
 		
 		try {
 			ServerBootstrap b = new ServerBootstrap();
@@ -54,10 +85,12 @@ public class CubyzServer {
 					.childHandler(new ChannelInitializer<SocketChannel>() {
 						@Override
 						public void initChannel(SocketChannel ch) throws Exception {
-							ch.pipeline().addLast(handler);
+							Protocol.addCodec(ch.pipeline(), packetSize);
+							ch.pipeline().addLast(new ServerHandshakeHandler(surface.getAnd()), handler);
 						}
 					}).option(ChannelOption.SO_BACKLOG, 128).
-					childOption(ChannelOption.SO_KEEPALIVE, true);
+					childOption(ChannelOption.SO_KEEPALIVE, true).
+					childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(LOW_WATER_MARK, HIGH_WATER_MARK)); // The chunk streaming pauses above the high water mark.
 			
 			ChannelFuture f = b.bind(port);
 			ch = f.channel();
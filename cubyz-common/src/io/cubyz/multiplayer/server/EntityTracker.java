@@ -0,0 +1,258 @@
+package io.cubyz.multiplayer.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import org.joml.Vector3f;
+
+import io.cubyz.entity.Entity;
+import io.cubyz.math.CubyzMath;
+import io.cubyz.math.Vector3fi;
+import io.cubyz.metrics.Counter;
+import io.cubyz.metrics.Histogram;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.multiplayer.packets.EntityDespawnPacket;
+import io.cubyz.multiplayer.packets.EntityMovesPacket;
+import io.cubyz.multiplayer.packets.EntitySpawnPacket;
+import io.cubyz.world.EntityIndex;
+
+import static io.cubyz.multiplayer.packets.EntityMovesPacket.*;
+
+/**
+ * Tells each player about the entities around it, once per tick.<br>
+ * Entities that come into the view distance get spawned on the client, entities that leave it(with a few blocks of tolerance, so entities at the border don't get spawned every other tick) get despawned.
+ * After that only the quantized movement relative to the last tick is sent and entities that stand still cost nothing.
+ * The movement is computed once per entity and tick and shared by all players, so every player that tracks an entity needs to get all of its movements.
+ * All methods except for the constructor need to be called from the same thread.
+ */
+
+public class EntityTracker {
+	public static final int TICK_TIME = 50; // ms
+	private static final float HYSTERESIS = 8; // Entities get despawned this many blocks outside of the view distance.
+	private static final int FRAME_HEADER_SIZE = 5; // Frame length and ID.
+	private static final Counter byteCounter = Metrics.counter("net.server.entityBytes");
+	private static final Histogram playerBytes = Metrics.histogram("net.server.entityBytesPerPlayer"); // Per player and tick. Multiply the average by 1000/TICK_TIME to get the bandwidth of each player.
+
+	private final ServerHandler handler;
+	private final EntityIndex index;
+	private final int worldAnd;
+	private final float viewDistance;
+	private final IdentityHashMap<Entity, State> states = new IdentityHashMap<>();
+	private final HashMap<ServerHandler.Client, View> views = new HashMap<>();
+	private final ArrayList<Entity> inRange = new ArrayList<>();
+	private final Vector3fi playerPosition = new Vector3fi();
+	private int nextID;
+	private int tick;
+
+	// The state of one entity as the clients know it.
+	private static class State {
+		final int id;
+		final Entity entity;
+		int x, fx, y, z, fz;
+		short rotX, rotY, rotZ;
+		// Change during the last tick:
+		int flags;
+		int dx, dy, dz;
+		boolean alive;
+
+		State(int id, Entity entity) {
+			this.id = id;
+			this.entity = entity;
+		}
+	}
+
+	// The entities a player knows about.
+	private static class View {
+		HashSet<State> tracked = new HashSet<>();
+		HashSet<State> next = new HashSet<>();
+	}
+
+	/**
+	 * @param viewDistance in blocks
+	 */
+	public EntityTracker(ServerHandler handler, EntityIndex index, int worldAnd, float viewDistance) {
+		this.handler = handler;
+		this.index = index;
+		this.worldAnd = worldAnd;
+		this.viewDistance = viewDistance;
+	}
+
+	public void tick() {
+		tick++;
+		updateStates();
+		Iterator<ServerHandler.Client> it = views.keySet().iterator();
+		while (it.hasNext()) {
+			if (!handler.clients.containsValue(it.next())) it.remove();
+		}
+		for (ServerHandler.Client cl : handler.clients.values()) {
+			View view = views.get(cl);
+			if (view == null) {
+				view = new View();
+				views.put(cl, view);
+			}
+			update(cl, view);
+		}
+	}
+
+	private void updateStates() {
+		for (State state : states.values()) {
+			state.alive = false;
+		}
+		for (Entity ent : index.getSnapshot()) {
+			State state = states.get(ent);
+			if (state == null) {
+				state = new State(nextID++, ent);
+				states.put(ent, state);
+				quantize(state); // New entities get spawned on the clients, which doesn't need a movement.
+				state.flags = 0;
+			} else {
+				quantize(state);
+			}
+			state.alive = true;
+		}
+		states.values().removeIf(state -> !state.alive); // Their IDs are never reused, so the despawn can happen any time later.
+	}
+
+	// Stores the current position and rotation of the entity and the difference to the last one.
+	private void quantize(State state) {
+		Vector3fi pos = state.entity.getPosition();
+		int floorX = (int)Math.floor(pos.relX);
+		int floorZ = (int)Math.floor(pos.relZ);
+		int x = (pos.x + floorX) & worldAnd;
+		int z = (pos.z + floorZ) & worldAnd;
+		int fx = Math.min((int)((pos.relX - floorX)*POSITION_SCALE), POSITION_SCALE - 1);
+		int fz = Math.min((int)((pos.relZ - floorZ)*POSITION_SCALE), POSITION_SCALE - 1);
+		int y = Math.round(pos.y*POSITION_SCALE);
+		long dx = (long)CubyzMath.matchSign((x - state.x) & worldAnd, worldAnd)*POSITION_SCALE + fx - state.fx;
+		long dy = (long)y - state.y;
+		long dz = (long)CubyzMath.matchSign((z - state.z) & worldAnd, worldAnd)*POSITION_SCALE + fz - state.fz;
+		state.flags = 0;
+		if (dx != 0 || dy != 0 || dz != 0) {
+			if (dx == (short)dx && dy == (short)dy && dz == (short)dz) {
+				state.flags = MOVED;
+				state.dx = (int)dx;
+				state.dy = (int)dy;
+				state.dz = (int)dz;
+			} else {
+				state.flags = TELEPORTED;
+			}
+		}
+		state.x = x;
+		state.fx = fx;
+		state.y = y;
+		state.z = z;
+		state.fz = fz;
+		Vector3f rot = state.entity.getRotation();
+		short rotX = quantizeAngle(rot.x);
+		short rotY = quantizeAngle(rot.y);
+		short rotZ = quantizeAngle(rot.z);
+		if (rotX != state.rotX || rotY != state.rotY || rotZ != state.rotZ) {
+			state.flags |= ROTATED;
+			state.rotX = rotX;
+			state.rotY = rotY;
+			state.rotZ = rotZ;
+		}
+	}
+
+	private float distanceSquared(State state) {
+		float dx = CubyzMath.matchSign((state.x - playerPosition.x) & worldAnd, worldAnd) + (float)state.fx/POSITION_SCALE - playerPosition.relX;
+		float dy = (float)state.y/POSITION_SCALE - playerPosition.y;
+		float dz = CubyzMath.matchSign((state.z - playerPosition.z) & worldAnd, worldAnd) + (float)state.fz/POSITION_SCALE - playerPosition.relZ;
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	private void update(ServerHandler.Client cl, View view) {
+		playerPosition.x = cl.x;
+		playerPosition.y = cl.y;
+		playerPosition.z = cl.z;
+		inRange.clear();
+		index.getInRange(playerPosition, viewDistance + HYSTERESIS, inRange);
+		int bytes = 0;
+		int size = 0;
+		int[] ids = new int[Math.min(inRange.size(), MAX_SIZE)];
+		byte[] flags = new byte[ids.length];
+		int[] positions = new int[5*ids.length];
+		short[] rotations = new short[3*ids.length];
+		for (int i = 0; i < inRange.size(); i++) {
+			State state = states.get(inRange.get(i));
+			if (state == null) continue; // Added after updateStates.
+			if (view.tracked.remove(state)) {
+				view.next.add(state);
+				if (state.flags == 0) continue;
+				if (size == ids.length) { // The packet is written later, so its arrays can't be reused.
+					bytes += send(cl, new EntityMovesPacket(tick, size, ids, flags, positions, rotations));
+					ids = new int[ids.length];
+					flags = new byte[ids.length];
+					positions = new int[5*ids.length];
+					rotations = new short[3*ids.length];
+					size = 0;
+				}
+				ids[size] = state.id;
+				flags[size] = (byte)state.flags;
+				if ((state.flags & TELEPORTED) != 0) {
+					positions[5*size] = state.x;
+					positions[5*size + 1] = state.fx;
+					positions[5*size + 2] = state.y;
+					positions[5*size + 3] = state.z;
+					positions[5*size + 4] = state.fz;
+				} else if ((state.flags & MOVED) != 0) {
+					positions[5*size] = state.dx;
+					positions[5*size + 1] = state.dy;
+					positions[5*size + 2] = state.dz;
+				}
+				rotations[3*size] = state.rotX;
+				rotations[3*size + 1] = state.rotY;
+				rotations[3*size + 2] = state.rotZ;
+				size++;
+			} else if (distanceSquared(state) <= viewDistance*viewDistance) {
+				view.next.add(state);
+				bytes += send(cl, new EntitySpawnPacket(state.id, tick, state.entity.getType().getRegistryID().toString(),
+						state.x, state.fx, state.y, state.z, state.fz, state.rotX, state.rotY, state.rotZ));
+			}
+		}
+		if (size != 0) {
+			bytes += send(cl, new EntityMovesPacket(tick, size, ids, flags, positions, rotations));
+		}
+		// Everything that is still in the old set is out of range or gone:
+		if (!view.tracked.isEmpty()) {
+			int[] despawned = new int[Math.min(view.tracked.size(), MAX_SIZE)];
+			size = 0;
+			for (State state : view.tracked) {
+				if (size == despawned.length) {
+					bytes += send(cl, new EntityDespawnPacket(size, despawned));
+					despawned = new int[despawned.length];
+					size = 0;
+				}
+				despawned[size++] = state.id;
+			}
+			bytes += send(cl, new EntityDespawnPacket(size, despawned));
+			view.tracked.clear();
+		}
+		HashSet<State> swap = view.tracked;
+		view.tracked = view.next;
+		view.next = swap;
+		if (bytes != 0) {
+			cl.ctx.flush();
+			byteCounter.add(bytes);
+		}
+		playerBytes.record(bytes);
+	}
+
+	private static int send(ServerHandler.Client cl, EntitySpawnPacket packet) {
+		cl.ctx.write(packet);
+		return FRAME_HEADER_SIZE + packet.getSize();
+	}
+
+	private static int send(ServerHandler.Client cl, EntityDespawnPacket packet) {
+		cl.ctx.write(packet);
+		return FRAME_HEADER_SIZE + packet.getSize();
+	}
+
+	private static int send(ServerHandler.Client cl, EntityMovesPacket packet) {
+		cl.ctx.write(packet);
+		return FRAME_HEADER_SIZE + packet.getSize();
+	}
+}
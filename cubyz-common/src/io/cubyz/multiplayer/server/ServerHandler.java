@@ -1,18 +1,38 @@
 package io.cubyz.multiplayer.server;
 
-import java.util.HashMap;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
-import io.cubyz.ClientOnly;
 import io.cubyz.Constants;
-import io.cubyz.blocks.Block;
+import io.cubyz.CubyzLogger;
+import io.cubyz.metrics.Counter;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.metrics.Timer;
 import io.cubyz.multiplayer.Packet;
+import io.cubyz.multiplayer.packets.ChatPacket;
+import io.cubyz.multiplayer.packets.ChunkPacket;
+import io.cubyz.multiplayer.packets.ListenPacket;
+import io.cubyz.multiplayer.packets.MovePacket;
+import io.cubyz.multiplayer.packets.PingDataPacket;
+import io.cubyz.multiplayer.packets.PingPongPacket;
+import io.cubyz.multiplayer.packets.VersionPacket;
+import io.cubyz.multiplayer.protocol.IPacket;
+import io.cubyz.multiplayer.protocol.PacketDispatcher;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.ChunkCodec;
 import io.cubyz.world.LocalStellarTorus;
-import io.netty.buffer.ByteBuf;
+import io.cubyz.world.LocalTorusSurface;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
 
 @SuppressWarnings("unused")
+@Sharable
 public class ServerHandler extends ChannelInboundHandlerAdapter {
 	
 	int online;
@@ -22,20 +42,30 @@ public class ServerHandler extends ChannelInboundHandlerAdapter {
 	boolean init;
 	boolean isInternal;
 	boolean onlineMode;
+	int renderDistance;
+	int chunkBytesPerTick;
+	int chunkCompressionLevel;
 	CubyzServer server;
 	
 	public static LocalStellarTorus stellarTorus;
+	public static LocalTorusSurface surface;
+	private static final Counter packetCounter = Metrics.counter("net.server.packets");
+	private static final Timer packetTimer = Metrics.timer("net.server.handle");
 	static Thread th;
 	
 	String motd;
 	
-	HashMap<String, Client> clients = new HashMap<>();
+	private final PacketDispatcher dispatcher = new PacketDispatcher();
+	
+	Map<String, Client> clients = new ConcurrentHashMap<>(); // Also used by the ping thread.
 	class Client {
 		public ChannelHandlerContext ctx;
 		public String username;
 		public UUID uuid;
 		public long lastPing;
 		public long lastSendedPing = -1;
+		public ChunkStreamer chunks;
+		public volatile int x, y, z; // Position from the last move packet. Also read by the EntityTracker.
 	}
 	
 	public Client getClient(ChannelHandlerContext ctx) {
@@ -54,28 +84,26 @@ public class ServerHandler extends ChannelInboundHandlerAdapter {
 		playerTimeout = settings.playerTimeout;
 		onlineMode = settings.onlineMode;
 		isInternal = settings.internal;
-		//stellarTorus = new LocalStellarTorus(); TODO!
-		//Block[] blocks = stellarTorus.generate(); TODO!
-		// Generate the Block meshes:
-		/*for(Block b : blocks) { TODO!
-			ClientOnly.createBlockMesh.accept(b);
-		}*/
+		renderDistance = settings.renderDistance;
+		chunkBytesPerTick = settings.chunkBytesPerTick;
+		chunkCompressionLevel = settings.chunkCompressionLevel;
+		registerHandlers();
 		th = new Thread(() -> {
 			while (true) {
 				for (String uuid : clients.keySet()) {
 					Client cl = clients.get(uuid);
+					if (cl == null) continue;
 					if (cl.lastSendedPing != -1) {
 						if (cl.lastSendedPing < System.currentTimeMillis() - playerTimeout) {
 							// timed out
 							clients.remove(uuid);
+							cl.chunks.stop();
 							System.out.println(cl.username + " timed out!");
 						}
 					}
 					if (cl.lastPing < System.currentTimeMillis() - playerPingTime && cl.lastSendedPing == -1) {
 						cl.lastSendedPing = System.currentTimeMillis();
-						ByteBuf buf = cl.ctx.alloc().buffer();
-						buf.writeByte(Packet.PACKET_PINGPONG);
-						cl.ctx.writeAndFlush(buf);
+						cl.ctx.writeAndFlush(new PingPongPacket());
 					}
 				}
 				if (Thread.interrupted()) {
@@ -91,22 +119,71 @@ public class ServerHandler extends ChannelInboundHandlerAdapter {
 		th.start();
 	}
 	
-	public ByteBuf sendChunk(ChannelHandlerContext ctx, int x, int z) {
-		ByteBuf out = ctx.alloc().buffer();
-		//world.seek(x*16, z*16);
-		/*stellarTorus.seek(0, 0); TODO!
-		byte[] data = stellarTorus.getChunkData(x, z);
-		out.writeByte(Packet.PACKET_CHUNK);
-		out.writeInt(x);
-		out.writeInt(z);
-		out.writeInt(stellarTorus.getLocalSeed());
-		out.writeInt(data.length);
-		out.writeBytes(data);*/
-		return out;
+	/**
+	 * @param distance squared distance in blocks to the player, nearer chunks get generated first.
+	 * @return null if the chunk isn't generated yet. It gets queued for generation in that case.
+	 */
+	public ChunkPacket sendChunk(ChannelHandlerContext ctx, int x, int z, float distance, int compressionLevel) {
+		Chunk ch = surface._getChunk(x, z);
+		if (!ch.isGenerated()) {
+			// The player of the server might be somewhere else, so the chunk can't wait for the chunks around it:
+			surface.queueChunk(ch, distance);
+			return null;
+		}
+		return new ChunkPacket(x, z, (int)surface.getSeed(), Unpooled.wrappedBuffer(ChunkCodec.encode(ch, compressionLevel)));
+	}
+	
+	private static boolean isLocal(ChannelHandlerContext ctx) {
+		SocketAddress address = ctx.channel().remoteAddress();
+		return address instanceof InetSocketAddress && ((InetSocketAddress)address).getAddress().isLoopbackAddress();
+	}
+	
+	private void registerHandlers() {
+		dispatcher.register(Packet.PACKET_GETVERSION, (ChannelHandlerContext ctx, VersionPacket packet) -> {
+			ctx.write(new VersionPacket(Constants.GAME_BRAND + ";" + Constants.GAME_VERSION));
+		});
+		dispatcher.register(Packet.PACKET_CHATMSG, (ChannelHandlerContext ctx, ChatPacket packet) -> {
+			for (Client cl : clients.values()) {
+				cl.ctx.writeAndFlush(packet);
+			}
+			System.out.println("[Server | Chat] " + packet.message);
+		});
+		dispatcher.register(Packet.PACKET_PINGPONG, (ChannelHandlerContext ctx, PingPongPacket packet) -> {
+			Client cl = clients.get(packet.uuid.toString());
+			if (cl != null) {
+				cl.lastPing = System.currentTimeMillis();
+				cl.lastSendedPing = -1;
+			}
+		});
+		dispatcher.register(Packet.PACKET_LISTEN, (ChannelHandlerContext ctx, ListenPacket packet) -> {
+			Client cl = new Client();
+			cl.ctx = ctx;
+			cl.uuid = packet.uuid;
+			cl.username = packet.username; // TODO retrieve username
+			cl.lastPing = System.currentTimeMillis();
+			// Compression only costs time if the client is on the same machine:
+			int compressionLevel = isLocal(ctx) ? 0 : chunkCompressionLevel;
+			cl.chunks = new ChunkStreamer(this, ctx, renderDistance, chunkBytesPerTick, surface.getAnd() >>> 4, compressionLevel);
+			clients.put(packet.uuid.toString(), cl);
+			cl.chunks.move(0, 0); // Until the first move packet arrives.
+			cl.chunks.start();
+		});
+		dispatcher.register(Packet.PACKET_PINGDATA, (ChannelHandlerContext ctx, PingDataPacket packet) -> {
+			ctx.write(new PingDataPacket(motd, online, max));
+		});
+		dispatcher.register(Packet.PACKET_MOVE, (ChannelHandlerContext ctx, MovePacket packet) -> {
+			Client cl = getClient(ctx);
+			if (cl != null) {
+				cl.x = packet.x;
+				cl.y = packet.y;
+				cl.z = packet.z;
+				cl.chunks.move(packet.x, packet.z);
+			}
+		});
 	}
 	
 	@Override
-    public void channelRead(ChannelHandlerContext ctx, Object omsg) {
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
 		if (!init) {
 			motd = "A Cubyz server";
 			// TODO load properties
@@ -115,72 +192,38 @@ public class ServerHandler extends ChannelInboundHandlerAdapter {
 			}
 			init = true;
 		}
-		ByteBuf msg = (ByteBuf) omsg;
-		Client client = getClient(ctx);
-		byte packetType = msg.readByte();
-		if (CubyzServer.internal) {
-			//System.out.println("[Integrated Server] packet type: " + packetType);
-		}
-		if (packetType == Packet.PACKET_GETVERSION) {
-			ByteBuf out = ctx.alloc().ioBuffer(128); // 128-length version including brand
-			out.writeByte(Packet.PACKET_GETVERSION);
-			String seq = Constants.GAME_BRAND + ";" + Constants.GAME_VERSION;
-			out.writeByte(seq.length());
-			out.writeCharSequence(seq, Constants.CHARSET);
-			ctx.write(out);
-		}
-		if (packetType == Packet.PACKET_CHATMSG) {
-			short chatLen = msg.readShort();
-			String chat = msg.readCharSequence(chatLen, Constants.CHARSET).toString();
-			for (Client cl : clients.values()) {
-				ByteBuf buf = cl.ctx.alloc().buffer(1 + chatLen);
-				buf.writeByte(Packet.PACKET_CHATMSG);
-				buf.writeShort(chatLen);
-				buf.writeCharSequence(chat, Constants.CHARSET);
-				cl.ctx.write(buf);
+		long t = System.nanoTime();
+		IPacket packet = (IPacket) msg;
+		packetCounter.increment();
+		try {
+			if (!dispatcher.dispatch(ctx, packet)) {
+				CubyzLogger.instance.warning("[Server] Unhandled packet type: " + packet.getID());
 			}
-			System.out.println("[Server | Chat] " + chat);
-		}
-		if (packetType == Packet.PACKET_PINGPONG) {
-			UUID uuid = UUID.fromString(msg.readCharSequence(36, Constants.CHARSET).toString());
-			Client cl = clients.get(uuid.toString());
-			cl.lastPing = System.currentTimeMillis();
-			cl.lastSendedPing = -1;
+		} finally {
+			ReferenceCountUtil.release(msg);
 		}
-		if (packetType == Packet.PACKET_LISTEN) {
-			UUID uuid = UUID.fromString(msg.readCharSequence(36, Constants.CHARSET).toString());
-			Client cl = new Client();
-			int usernamelen = msg.readShort();
-			cl.ctx = ctx;
-			cl.uuid = uuid;
-			cl.username = msg.readCharSequence(usernamelen, Constants.CHARSET).toString(); // TODO retrieve username
-			cl.lastPing = System.currentTimeMillis();
-			clients.put(uuid.toString(), cl);
-			for (int x = 0; x < 4; x++) {
-				for (int y = 0; y < 4; y++) {
-					ctx.writeAndFlush(sendChunk(ctx, x, y));
-				}
-			}
-		}
-		if (packetType == Packet.PACKET_PINGDATA) {
-			ByteBuf out = ctx.alloc().ioBuffer(512);
-			out.writeByte(Packet.PACKET_PINGDATA); // 1 byte
-			out.writeShort(motd.length()); // 2 bytes
-			out.writeCharSequence(motd, Constants.CHARSET);
-			out.writeInt(online); // 4 bytes
-			out.writeInt(max); // 4 bytes
-			// 1+2+4+4=11 bytes of "same size" data
-			//512-11=501, so 501 characters max for motd
-			ctx.write(out);
+		packetTimer.stop(t);
+    }
+	
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+		if (ctx.channel().isWritable()) {
+			Client cl = getClient(ctx);
+			if (cl != null)
+				cl.chunks.pump();
 		}
-		if (packetType == Packet.PACKET_MOVE) {
-			int x = msg.readInt();
-			int y = msg.readInt();
-			int z = msg.readInt();
-			
+		ctx.fireChannelWritabilityChanged();
+	}
+	
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) {
+		Client cl = getClient(ctx);
+		if (cl != null) {
+			clients.remove(cl.uuid.toString());
+			cl.chunks.stop();
 		}
-        msg.release();
-    }
+		ctx.fireChannelInactive();
+	}
 	
 	@Override
     public void channelReadComplete(ChannelHandlerContext ctx) {
@@ -0,0 +1,47 @@
+package io.cubyz.multiplayer.server;
+
+import io.cubyz.CubyzLogger;
+import io.cubyz.multiplayer.packets.HandshakePacket;
+import io.cubyz.multiplayer.protocol.Protocol;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Only lets packets through after the client sent a handshake with the same protocol version. Removes itself afterwards.
+ */
+
+public class ServerHandshakeHandler extends ChannelInboundHandlerAdapter {
+	
+	private final int worldAnd;
+	
+	public ServerHandshakeHandler(int worldAnd) {
+		this.worldAnd = worldAnd;
+	}
+	
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) {
+		if (!(msg instanceof HandshakePacket)) {
+			ReferenceCountUtil.release(msg);
+			CubyzLogger.instance.warning("Closed connection to " + ctx.channel().remoteAddress() + ": No handshake");
+			ctx.close();
+			return;
+		}
+		HandshakePacket handshake = (HandshakePacket) msg;
+		if (handshake.protocolVersion == Protocol.VERSION) {
+			ctx.writeAndFlush(new HandshakePacket(true, worldAnd));
+			ctx.pipeline().remove(this);
+		} else {
+			CubyzLogger.instance.warning("Closed connection to " + ctx.channel().remoteAddress() + ": Protocol version " + handshake.protocolVersion + " instead of " + Protocol.VERSION);
+			ctx.writeAndFlush(new HandshakePacket(false)).addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+	
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		cause.printStackTrace();
+		ctx.close();
+	}
+	
+}
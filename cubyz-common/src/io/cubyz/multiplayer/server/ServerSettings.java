@@ -7,6 +7,10 @@ public class ServerSettings {
 	public boolean onlineMode;
 	public int maxPlayers;
 	public boolean internal;
+	public int renderDistance; // in chunks
+	public int chunkBytesPerTick; // Limit for the chunk data sent to each player every ChunkStreamer.TICK_TIME
+	public int chunkCompressionLevel; // 0 to 9, see ChunkCodec.encode
+	public int entityDistance; // in blocks
 	
 	public ServerSettings() {
 		
@@ -0,0 +1,135 @@
+package io.cubyz.save;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.cubyz.math.Bits;
+
+/**
+ * Stores the data of 32×32 chunks in one file.<br>
+ * The file is split into sectors of 4096 bytes. The first sector is the header, which contains one int per chunk: the sector offset in the upper 24 bits and the sector count in the lower 8 bits.<br>
+ * Each chunk is deflated on its own and starts with its compressed length, so saving or loading a chunk only touches the sectors of that chunk.
+ */
+
+public class RegionFile {
+	public static final int SHIFT = 5;
+	public static final int SIZE = 1 << SHIFT; // Chunks per region in each direction.
+	private static final int SECTOR_SIZE = 4096;
+	private static final int MAX_SECTORS = 255;
+
+	private final RandomAccessFile file;
+	private final int[] offsets = new int[SIZE*SIZE];
+	private final BitSet usedSectors = new BitSet();
+	private final byte[] header = new byte[SECTOR_SIZE];
+
+	public RegionFile(File path) throws IOException {
+		file = new RandomAccessFile(path, "rw");
+		if(file.length() < SECTOR_SIZE) {
+			file.setLength(0);
+			file.write(header);
+		} else {
+			file.readFully(header);
+		}
+		usedSectors.set(0);
+		for(int i = 0; i < offsets.length; i++) {
+			offsets[i] = Bits.getInt(header, i << 2);
+			if(offsets[i] != 0) {
+				usedSectors.set(offsets[i] >>> 8, (offsets[i] >>> 8) + (offsets[i] & 255));
+			}
+		}
+	}
+
+	private static int index(int cx, int cz) {
+		return (cx & (SIZE - 1)) | (cz & (SIZE - 1)) << SHIFT;
+	}
+
+	public synchronized boolean hasChunk(int cx, int cz) {
+		return offsets[index(cx, cz)] != 0;
+	}
+
+	/**
+	 * @return the uncompressed chunk data or null if the chunk wasn't saved in this region.
+	 */
+	public synchronized byte[] read(int cx, int cz) throws IOException {
+		int offset = offsets[index(cx, cz)];
+		if(offset == 0) return null;
+		file.seek((long)(offset >>> 8)*SECTOR_SIZE);
+		byte[] compressed = new byte[file.readInt()];
+		file.readFully(compressed);
+		Inflater inflater = new Inflater();
+		inflater.setInput(compressed);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length*4);
+		byte[] buffer = new byte[4096];
+		try {
+			while(!inflater.finished()) {
+				int len = inflater.inflate(buffer);
+				if(len == 0 && inflater.needsInput()) throw new IOException("Chunk data of " + cx + " " + cz + " is truncated.");
+				out.write(buffer, 0, len);
+			}
+		} catch(DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Compresses the data and writes it into free sectors. The old sectors of the chunk are only released after the header was updated, so a crash never destroys the previously saved state.
+	 * @return the number of bytes written to the file.
+	 */
+	public synchronized int write(int cx, int cz, byte[] data) throws IOException {
+		Deflater deflater = new Deflater();
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length/2 + 16);
+		byte[] buffer = new byte[4096];
+		while(!deflater.finished()) {
+			out.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+		byte[] compressed = out.toByteArray();
+		int sectors = (compressed.length + 4 + SECTOR_SIZE - 1)/SECTOR_SIZE;
+		if(sectors > MAX_SECTORS) throw new IOException("Chunk data of " + cx + " " + cz + " is too big: " + compressed.length + " bytes");
+
+		int index = index(cx, cz);
+		int oldOffset = offsets[index];
+		// Always write into free sectors, so the old data stays intact until the header points to the new data:
+		int start = 1;
+		while(true) {
+			start = usedSectors.nextClearBit(start);
+			int end = usedSectors.nextSetBit(start);
+			if(end == -1 || end - start >= sectors) break;
+			start = end;
+		}
+		usedSectors.set(start, start + sectors);
+
+		byte[] sectorData = new byte[sectors*SECTOR_SIZE];
+		Bits.putInt(sectorData, 0, compressed.length);
+		System.arraycopy(compressed, 0, sectorData, 4, compressed.length);
+		file.seek((long)start*SECTOR_SIZE);
+		file.write(sectorData);
+
+		offsets[index] = start << 8 | sectors;
+		Bits.putInt(header, index << 2, offsets[index]);
+		file.seek(index << 2);
+		file.write(header, index << 2, 4);
+		if(oldOffset != 0)
+			usedSectors.clear(oldOffset >>> 8, (oldOffset >>> 8) + (oldOffset & 255));
+		return sectorData.length + 4;
+	}
+
+	public synchronized void close() {
+		try {
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
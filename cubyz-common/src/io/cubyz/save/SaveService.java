@@ -0,0 +1,166 @@
+package io.cubyz.save;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import io.cubyz.CubyzLogger;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.metrics.Timer;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.ChunkMap;
+import io.cubyz.world.LocalTorusSurface;
+
+/**
+ * Collects changed chunks and writes them on a background thread, so block edits never wait for the disk.<br>
+ * Marking the same chunk dirty multiple times before the next flush only writes it once.
+ */
+
+public class SaveService {
+	public static final int DEFAULT_INTERVAL = 5000; // ms
+
+	private final TorusIO io;
+	private final LocalTorusSurface surface;
+	private final ChunkMap<Chunk> dirty = new ChunkMap<>();
+	private final ChunkMap<Chunk> writing = new ChunkMap<>(); // Chunks that are currently being written. Loading them from disk would return outdated data.
+	private volatile boolean torusDirty;
+	private volatile int interval;
+	private volatile boolean running = true;
+	private final Thread thread;
+
+	// Metrics:
+	private volatile long lastFlushTime; // ns
+	private volatile long maxFlushTime; // ns
+	private volatile int lastFlushSize;
+	private volatile long writtenChunks;
+	private static final Timer flushTimer = Metrics.timer("save.flush");
+
+	public SaveService(TorusIO io, LocalTorusSurface surface, int interval) {
+		this.io = io;
+		this.surface = surface;
+		this.interval = interval;
+		thread = new Thread(this::run);
+		thread.setName("Save-Thread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run() {
+		while(running) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				break;
+			}
+			flush();
+		}
+	}
+
+	public void markDirty(Chunk ch) {
+		dirty.put(ch.getX(), ch.getZ(), ch);
+	}
+
+	/**
+	 * The torus data(mainly the entities) gets saved with the next flush.
+	 */
+	public void markTorusDirty() {
+		torusDirty = true;
+	}
+
+	/**
+	 * @return the chunk, if it wasn't written to disk yet.
+	 */
+	public Chunk getPending(int cx, int cz) {
+		Chunk ch = dirty.get(cx, cz);
+		if(ch == null)
+			ch = writing.get(cx, cz);
+		return ch;
+	}
+
+	/**
+	 * Writes everything that changed since the last flush. Blocks until it is done.
+	 */
+	public synchronized void flush() {
+		long start = System.nanoTime();
+		int count = 0;
+		for(Chunk ch : dirty.values()) {
+			// Put it into writing before removing it from dirty, so getPending always finds it.
+			writing.put(ch.getX(), ch.getZ(), ch);
+			dirty.remove(ch.getX(), ch.getZ(), ch);
+			io.saveChunk(ch);
+			writing.remove(ch.getX(), ch.getZ(), ch);
+			count++;
+		}
+		if(torusDirty) {
+			torusDirty = false;
+			io.saveTorusData(surface);
+		}
+		long time = System.nanoTime() - start;
+		if(count != 0) {
+			flushTimer.record(time);
+			lastFlushTime = time;
+			maxFlushTime = Math.max(maxFlushTime, time);
+			lastFlushSize = count;
+			writtenChunks += count;
+		}
+	}
+
+	public void setInterval(int interval) {
+		this.interval = interval;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Stops the background thread and writes everything that is left.
+	 */
+	public void stop() {
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		flush();
+	}
+
+	/**
+	 * @return number of chunks waiting to be written.
+	 */
+	public int getQueueDepth() {
+		return dirty.size();
+	}
+
+	public long getLastFlushTime() {
+		return lastFlushTime;
+	}
+
+	public long getMaxFlushTime() {
+		return maxFlushTime;
+	}
+
+	public int getLastFlushSize() {
+		return lastFlushSize;
+	}
+
+	public long getWrittenChunks() {
+		return writtenChunks;
+	}
+
+	/**
+	 * Replaces the target with the temporary file, so a crash while saving never leaves a half written file behind.
+	 */
+	public static void replaceFile(File temp, File target) throws IOException {
+		try {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			CubyzLogger.i.warning("Atomic move isn't supported by the file system. Saving " + target + " non-atomically.");
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -1,43 +1,53 @@
 package io.cubyz.save;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
 import io.cubyz.entity.Entity;
 import io.cubyz.math.Bits;
+import io.cubyz.metrics.Counter;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.metrics.Timer;
 import io.cubyz.ndt.NDTContainer;
 import io.cubyz.world.Chunk;
+import io.cubyz.world.ChunkMap;
 import io.cubyz.world.LocalStellarTorus;
 import io.cubyz.world.LocalTorusSurface;
 
 public class TorusIO {
 
 	private File dir;
+	private File regionDir;
+	private File mapDir;
 	private LocalStellarTorus torus;
-	private ArrayList<byte[]> blockData = new ArrayList<>();
-	private ArrayList<int[]> chunkData = new ArrayList<>();
+	private ChunkMap<RegionFile> regions = new ChunkMap<>();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private static final Timer chunkTimer = Metrics.timer("save.chunk");
+	private static final Timer mapTimer = Metrics.timer("save.map");
+	private static final Counter bytesCounter = Metrics.counter("save.bytes"); // Of all TorusIOs.
 
 	public TorusIO(LocalStellarTorus torus, File directory) {
 		dir = directory;
-		if (!dir.exists()) {
-			dir.mkdirs();
+		regionDir = new File(dir, "regions");
+		if (!regionDir.exists()) {
+			regionDir.mkdirs();
 		}
+		mapDir = new File(dir, "maps");
 		this.torus = torus;
 	}
-	
-	public void link(LocalTorusSurface surface) {
-		surface.blockData = blockData;
-		surface.chunkData = chunkData;
-	}
 
 	public boolean hasTorusData() {
 		return new File(dir, "torus.dat").exists();
@@ -63,32 +73,38 @@ public class TorusIO {
 				surface.setEntities(entities);
 			}
 			in.close();
-			in = new BufferedInputStream(new InflaterInputStream(new FileInputStream(new File(dir, "region.dat"))));
-			// read block data
-			in.read(len);
-			l = Bits.getInt(len, 0);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		convertOldRegion();
+	}
+	
+	// Worlds from older versions store all chunks in one deflated region.dat. Move them into the region files:
+	private void convertOldRegion() {
+		File old = new File(dir, "region.dat");
+		if (!old.exists())
+			return;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(old))));
+			int l = in.readInt();
 			for (int i = 0; i < l; i++) {
-				byte[] b = new byte[4];
-				in.read(b);
-				int ln = Bits.getInt(b, 0);
-				byte[] data = new byte[ln];
-				in.read(data);
-				blockData.add(data);
-				
-				int ox = Bits.getInt(data, 0);
-				int oz = Bits.getInt(data, 4);
-				int[] ckData = new int[] {ox, oz};
-				chunkData.add(ckData);
+				byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+				int cx = Bits.getInt(data, 0);
+				int cz = Bits.getInt(data, 4);
+				getRegion(cx, cz, true).write(cx, cz, data);
 			}
 			in.close();
+			old.renameTo(new File(dir, "region.dat.old"));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
-	public void saveTorusData(LocalTorusSurface surface) {
+	public synchronized void saveTorusData(LocalTorusSurface surface) {
 		try {
-			OutputStream out = new FileOutputStream(new File(dir, "torus.dat"));
+			File temp = new File(dir, "torus.dat.tmp");
+			OutputStream out = new FileOutputStream(temp);
 			NDTContainer ndt = new NDTContainer();
 			ndt.setInteger("version", 1);
 			ndt.setString("name", torus.getName());
@@ -103,54 +119,133 @@ public class TorusIO {
 				}
 			}
 			out.close();
+			addBytes(temp.length());
+			SaveService.replaceFile(temp, new File(dir, "torus.dat"));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+	}
+
+	/**
+	 * @param create if the region file should be created, if it doesn't exist yet.
+	 * @return null if the region file doesn't exist and create is false.
+	 */
+	private RegionFile getRegion(int cx, int cz, boolean create) throws IOException {
+		int rx = cx >> RegionFile.SHIFT;
+		int rz = cz >> RegionFile.SHIFT;
+		RegionFile region = regions.get(rx, rz);
+		if (region != null)
+			return region;
+		synchronized (regions) { // Make sure every file is only opened once.
+			region = regions.get(rx, rz);
+			if (region != null)
+				return region;
+			File file = new File(regionDir, "r." + rx + "." + rz + ".dat");
+			if (!create && !file.exists())
+				return null;
+			region = new RegionFile(file);
+			regions.put(rx, rz, region);
+			return region;
+		}
+	}
+
+	/**
+	 * @return the saved data of the chunk or null if there is none.
+	 */
+	public byte[] loadChunkData(int cx, int cz) {
 		try {
-			BufferedOutputStream out = new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(new File(dir, "region.dat"))));
-			synchronized (blockData) {
-				byte[] len = new byte[4];
-				int l = 0;
-				for (byte[] data : blockData)
-					if (data.length > 12)
-						l++;
-				Bits.putInt(len, 0, l);
-				out.write(len);
-				for (byte[] data : blockData) {
-					if(data.length > 12) { // Only write data if there is any data except the chunk coordinates.
-						byte[] b = new byte[4];
-						Bits.putInt(b, 0, data.length);
-						out.write(b);
-						out.write(data);
-					}
-				}
-			}
-			out.close();
+			RegionFile region = getRegion(cx, cz, false);
+			if (region != null)
+				return region.read(cx, cz);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		return null;
 	}
 
 	public void saveChunk(Chunk ch) {
-		byte[] cb = ch.save();
-		int[] cd = ch.getData();
-		int index = -1;
-		synchronized (blockData) {
-			for (int i = 0; i < blockData.size(); i++) {
-				int[] cd2 = chunkData.get(i);
-				if (cd[0] == cd2[0] && cd[1] == cd2[1]) {
-					index = i;
-					break;
+		long t = System.nanoTime();
+		byte[] data = ch.save();
+		try {
+			// Chunks without changes only need to be written if there was some older data that needs to be replaced.
+			RegionFile region = getRegion(ch.getX(), ch.getZ(), data.length > 12);
+			if (region != null && (data.length > 12 || region.hasChunk(ch.getX(), ch.getZ())))
+				addBytes(region.write(ch.getX(), ch.getZ(), data));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		chunkTimer.stop(t);
+	}
+
+	/**
+	 * Loads the noise maps of a MetaChunk that were stored with saveMapData.
+	 * @return {heightMap, heatMap} or null if they weren't stored.
+	 */
+	public float[][][] loadMapData(int x, int y) {
+		File file = new File(mapDir, x + "_" + y + ".dat");
+		if (!file.exists())
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file))))) {
+			int size = in.readInt();
+			float[][][] maps = new float[2][size][size];
+			byte[] data = new byte[2*size*size*4];
+			in.readFully(data);
+			FloatBuffer buffer = ByteBuffer.wrap(data).asFloatBuffer(); // Big endian, just like DataOutputStream.
+			for (float[][] map : maps) {
+				for (float[] line : map) {
+					buffer.get(line);
 				}
 			}
-			if (index == -1) {
-				blockData.add(cb);
-				chunkData.add(cd);
-			} else {
-				blockData.set(index, cb);
-				chunkData.set(index, cd);
+			return maps;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the noise maps of a MetaChunk, so they don't need to be generated again.
+	 */
+	public void saveMapData(int x, int y, float[][] heightMap, float[][] heatMap) {
+		long t = System.nanoTime();
+		if (!mapDir.exists()) {
+			mapDir.mkdirs();
+		}
+		File temp = new File(mapDir, x + "_" + y + ".dat.tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(temp))));
+			out.writeInt(heightMap.length);
+			for (float[][] map : new float[][][] {heightMap, heatMap}) {
+				for (float[] line : map) {
+					for (float value : line) {
+						out.writeFloat(value);
+					}
+				}
 			}
+			out.close();
+			addBytes(temp.length());
+			SaveService.replaceFile(temp, new File(mapDir, x + "_" + y + ".dat"));
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+		mapTimer.stop(t);
+	}
+
+	private void addBytes(long bytes) {
+		bytesWritten.addAndGet(bytes);
+		bytesCounter.add(bytes);
+	}
+
+	/**
+	 * @return the number of bytes written to disk since this was created.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public void close() {
+		regions.forEach(RegionFile::close);
+		regions.clear();
 	}
 
 }
@@ -70,7 +70,8 @@ public class WorldIO {
 	
 	public void saveWorldData() {
 		try {
-			OutputStream out = new FileOutputStream(new File(dir, "world.dat"));
+			File temp = new File(dir, "world.dat.tmp");
+			OutputStream out = new FileOutputStream(temp);
 			NDTContainer ndt = new NDTContainer();
 			ndt.setInteger("version", 2);
 			ndt.setString("name", world.getName());
@@ -84,6 +85,7 @@ public class WorldIO {
 			out.write(len);
 			out.write(ndt.getData());
 			out.close();
+			SaveService.replaceFile(temp, new File(dir, "world.dat"));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
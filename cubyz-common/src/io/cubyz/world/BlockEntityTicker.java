@@ -0,0 +1,114 @@
+package io.cubyz.world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import io.cubyz.blocks.BlockEntity;
+import io.cubyz.blocks.IUpdateable;
+
+/**
+ * Keeps track of the updateable block entities in loaded chunks, so the cost of a tick only depends on how many of them exist.<br>
+ * Regular updates are sorted by the tick they are due at. Random updates work like Minecraft's random ticks:
+ * Each tick a few random positions are chosen in every section that contains block entities with random updates.
+ * Block entities can be added and removed from any thread, the changes are applied at the start of the next tick.
+ */
+
+public class BlockEntityTicker {
+	public static int randomTickSpeed = 3; // Number of random positions that get chosen per section and tick.
+
+	private static class Entry {
+		final BlockEntity blockEntity;
+		final IUpdateable updateable;
+		final long section;
+		final int index; // Position inside the section, same as in ChunkSection.
+		long nextTick;
+		boolean removed;
+
+		Entry(BlockEntity blockEntity, int x, int y, int z) {
+			this.blockEntity = blockEntity;
+			updateable = (IUpdateable)blockEntity;
+			section = (long)(x >> 4) << 36 | (long)(z >> 4) << 8 | (y >> 4);
+			index = (x & 15) << 4 | (y & 15) << 8 | (z & 15);
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Runnable> changes = new ConcurrentLinkedQueue<>();
+	private final HashMap<BlockEntity, Entry> entries = new HashMap<>();
+	private final PriorityQueue<Entry> scheduled = new PriorityQueue<>((a, b) -> Long.compare(a.nextTick, b.nextTick)); // Removed entries are only dropped when they are due.
+	private final HashMap<Long, ArrayList<Entry>> randomSections = new HashMap<>();
+	private long lastTick;
+
+	/**
+	 * Does nothing if the block entity doesn't implement IUpdateable.
+	 * @param x world coordinates of the block
+	 */
+	public void add(BlockEntity blockEntity, int x, int y, int z) {
+		if (!(blockEntity instanceof IUpdateable)) return;
+		Entry entry = new Entry(blockEntity, x, y, z);
+		changes.add(() -> addNow(entry));
+	}
+
+	public void remove(BlockEntity blockEntity) {
+		if (!(blockEntity instanceof IUpdateable)) return;
+		changes.add(() -> removeNow(blockEntity));
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private void addNow(Entry entry) {
+		if (entries.putIfAbsent(entry.blockEntity, entry) != null) return;
+		int interval = entry.updateable.getUpdateInterval();
+		if (interval > 0) {
+			entry.nextTick = lastTick + interval;
+			scheduled.add(entry);
+		}
+		if (entry.updateable.randomUpdates()) {
+			randomSections.computeIfAbsent(entry.section, key -> new ArrayList<>()).add(entry);
+		}
+	}
+
+	private void removeNow(BlockEntity blockEntity) {
+		Entry entry = entries.remove(blockEntity);
+		if (entry == null) return;
+		entry.removed = true;
+		ArrayList<Entry> section = randomSections.get(entry.section);
+		if (section != null) {
+			section.remove(entry);
+			if (section.isEmpty())
+				randomSections.remove(entry.section);
+		}
+	}
+
+	public void tick(long gameTime, Random rnd) {
+		lastTick = gameTime;
+		Runnable change;
+		while ((change = changes.poll()) != null) {
+			change.run();
+		}
+		while (!scheduled.isEmpty() && scheduled.peek().nextTick <= gameTime) {
+			Entry entry = scheduled.poll();
+			if (entry.removed) continue;
+			entry.updateable.update(false);
+			int interval = entry.updateable.getUpdateInterval();
+			if (interval > 0) {
+				entry.nextTick = gameTime + interval;
+				scheduled.add(entry);
+			}
+		}
+		for (ArrayList<Entry> section : randomSections.values()) {
+			for (int i = 0; i < randomTickSpeed; i++) {
+				int index = rnd.nextInt(ChunkSection.SIZE);
+				for (int j = 0; j < section.size(); j++) {
+					if (section.get(j).index == index) {
+						section.get(j).updateable.update(true);
+					}
+				}
+			}
+		}
+	}
+}
@@ -15,17 +15,28 @@ import io.cubyz.entity.Player;
 import io.cubyz.handler.BlockVisibilityChangeHandler;
 import io.cubyz.math.Bits;
 import io.cubyz.math.CubyzMath;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.metrics.Timer;
 import io.cubyz.save.BlockChange;
 import io.cubyz.world.generator.StellarTorusGenerator;
 
 public class Chunk {
 	public static boolean easyLighting = true; // Enables the easy-lighting system.
-	// Due to having powers of 2 as dimensions it is more efficient to use a one-dimensional array.
-	private BlockInstance[] inst;
+	// Neighbor directions in the same order as used by BlockInstance.getNeighbors.
+	private static final int[] NEIGHBOR_DX = {-1, 1, 0, 0, 0, 0};
+	private static final int[] NEIGHBOR_DY = {0, 0, 0, 0, -1, 1};
+	private static final int[] NEIGHBOR_DZ = {0, 0, 1, -1, 0, 0};
+	private static final ThreadLocal<LightQueue> lightQueues = ThreadLocal.withInitial(LightQueue::new);
+	private static final Timer loadTimer = Metrics.timer("chunk.load");
+	private static final Timer lightTimer = Metrics.timer("chunk.light"); // Initial lighting and light updates after block changes.
+	// Blocks are stored in palette compressed 16×16×16 sections. null sections only contain air.
+	private ChunkSection[] sections = new ChunkSection[World.WORLD_HEIGHT >> 4];
+	// BlockInstances only exist for blocks that need an identity: visible blocks and block entities. They are created on demand.
+	// Due to having powers of 2 as dimensions it is more efficient to use a one-dimensional array. The arrays of sections without any instances are null.
+	private BlockInstance[][] instances = new BlockInstance[World.WORLD_HEIGHT >> 4][];
+	private int[] instanceCount = new int[World.WORLD_HEIGHT >> 4];
 	private int[] light; // Stores sun r g b channels of each light channel in one integer. This makes it easier to store and to access.
-	private ArrayList<BlockInstance> list = new ArrayList<>();
-	private ArrayList<BlockInstance> liquids = new ArrayList<>();
-	private ArrayList<BlockInstance> updatingLiquids = new ArrayList<>(); // liquids that should be updated at next frame
+	private final LiquidQueue liquidQueue = new LiquidQueue(); // Liquids that should flow at the next liquid update. Generated liquids are at rest until something changes next to them.
 	private ArrayList<BlockChange> changes; // Reports block changes. Only those will be saved!
 	//private ArrayList<BlockInstance> visibles = new ArrayList<>();
 	private BlockInstance[] visibles = new BlockInstance[50]; // Using an array here to speed up the renderer.
@@ -37,6 +48,9 @@ public class Chunk {
 	
 	private TorusSurface surface;
 	
+	private volatile ChunkMesh mesh;
+	private volatile boolean meshDirty = true; // Set whenever something changed that is visible in the mesh.
+	
 	public Chunk(int ox, int oy, TorusSurface surface, ArrayList<BlockChange> changes) {
 		if(surface != null) {
 			ox &= surface.getAnd() >>> 4;
@@ -52,35 +66,109 @@ public class Chunk {
 	}
 	
 	// Functions calls are faster than two pointer references, which would happen when using a 3D-array, and functions can additionally be inlined by the VM.
-	private void setInst(int x, int y, int z, BlockInstance bi) {
-		inst[(x << 4) | (y << 8) | z] = bi;
+	public Block getBlockAt(int x, int y, int z) {
+		ChunkSection section = sections[y >> 4];
+		if(section == null) return null;
+		return section.get((x << 4) | ((y & 15) << 8) | z);
+	}
+	private void setBlockAt(int x, int y, int z, Block b) {
+		ChunkSection section = sections[y >> 4];
+		if(section == null) {
+			if(b == null) return;
+			section = sections[y >> 4] = new ChunkSection(null);
+		}
+		section.set((x << 4) | ((y & 15) << 8) | z, b);
+		if(section.isEmpty())
+			sections[y >> 4] = null;
+		meshDirty = true;
+		if(loaded) { // The faces next to this block might be in the neighboring chunks.
+			if(x == 0) setNeighborMeshDirty(-1, 0);
+			if(x == 15) setNeighborMeshDirty(1, 0);
+			if(z == 0) setNeighborMeshDirty(0, -1);
+			if(z == 15) setNeighborMeshDirty(0, 1);
+		}
+	}
+	private BlockInstance getInstanceAt(int x, int y, int z) {
+		BlockInstance[] arr = instances[y >> 4];
+		if(arr == null) return null;
+		return arr[(x << 4) | ((y & 15) << 8) | z];
 	}
+	private void setInstanceAt(int x, int y, int z, BlockInstance bi) {
+		int sy = y >> 4;
+		int index = (x << 4) | ((y & 15) << 8) | z;
+		BlockInstance[] arr = instances[sy];
+		if(arr == null) {
+			if(bi == null) return;
+			arr = instances[sy] = new BlockInstance[ChunkSection.SIZE];
+		}
+		if(arr[index] == null) {
+			if(bi == null) return;
+			instanceCount[sy]++;
+		} else if(bi == null && --instanceCount[sy] == 0) {
+			instances[sy] = null;
+			return;
+		}
+		arr[index] = bi;
+	}
+	/**
+	 * Returns the BlockInstance at the given position. If it doesn't exist yet, but there is a block, it will be created.
+	 */
 	public BlockInstance getBlockInstanceAt(int x, int y, int z) {
-		return inst[(x << 4) | (y << 8) | z];
+		BlockInstance bi = getInstanceAt(x, y, z);
+		if(bi != null) return bi;
+		Block b = getBlockAt(x, y, z);
+		if(b == null) return null;
+		bi = createInstance(x, y, z, b);
+		setInstanceAt(x, y, z, bi);
+		return bi;
+	}
+	private BlockInstance createInstance(int x, int y, int z, Block b) {
+		BlockInstance bi = new BlockInstance(b);
+		bi.setPosition(new Vector3i((ox << 4) + x, y, (oy << 4) + z));
+		bi.setStellarTorus(surface);
+		updateOwnNeighborFlags(bi, x, y, z);
+		return bi;
 	}
-	private BlockInstance getInstUnbound(int x, int y, int z) {
+	// Blocks that are referenced from somewhere else and therefore always need an instance.
+	private static boolean needsIdentity(Block b) {
+		return b.hasBlockEntity();
+	}
+	private Block getBlockUnbound(int x, int y, int z) {
 		if(y < 0 || y >= World.WORLD_HEIGHT || !generated) return null;
+		if(surface == null && (x < 0 || x > 15 || z < 0 || z > 15)) return null; // No neighbors.
 		if(x < 0) {
 			Chunk chunk = surface._getNoGenerateChunk(ox-1, oy);
-			if(chunk != null) return chunk.getInstUnbound(x+16, y, z);
+			if(chunk != null) return chunk.getBlockUnbound(x+16, y, z);
 			return null;
 		}
 		if(x > 15) {
 			Chunk chunk = surface._getNoGenerateChunk(ox+1, oy);
-			if(chunk != null) return chunk.getInstUnbound(x-16, y, z);
+			if(chunk != null) return chunk.getBlockUnbound(x-16, y, z);
 			return null;
 		}
 		if(z < 0) {
 			Chunk chunk = surface._getNoGenerateChunk(ox, oy-1);
-			if(chunk != null) return chunk.getInstUnbound(x, y, z+16);
+			if(chunk != null) return chunk.getBlockUnbound(x, y, z+16);
 			return null;
 		}
 		if(z > 15) {
 			Chunk chunk = surface._getNoGenerateChunk(ox, oy+1);
-			if(chunk != null) return chunk.getInstUnbound(x, y, z-16);
+			if(chunk != null) return chunk.getBlockUnbound(x, y, z-16);
 			return null;
 		}
-		return inst[(x << 4) | (y << 8) | z];
+		return getBlockAt(x, y, z);
+	}
+	// Returns the chunk that contains the given relative coordinates, if it is generated. Only works for direct neighbors.
+	private Chunk getGeneratedChunkUnbound(int x, int y, int z) {
+		if(y < 0 || y >= World.WORLD_HEIGHT || !generated) return null;
+		Chunk chunk = this;
+		if(surface == null && (x < 0 || x > 15 || z < 0 || z > 15)) return null; // No neighbors.
+		if(x < 0) chunk = surface._getNoGenerateChunk(ox-1, oy);
+		else if(x > 15) chunk = surface._getNoGenerateChunk(ox+1, oy);
+		else if(z < 0) chunk = surface._getNoGenerateChunk(ox, oy-1);
+		else if(z > 15) chunk = surface._getNoGenerateChunk(ox, oy+1);
+		if(chunk == null || !chunk.generated) return null;
+		return chunk;
 	}
 	
 	/**
@@ -88,13 +176,105 @@ public class Chunk {
 	 */
 	@Deprecated
 	public void createBlocksForOverlay() {
-		inst = new BlockInstance[16*256*16];
+		// The block storage always exists now.
+	}
+	
+	// The neighbor flags are used to cull faces in the renderer.
+	private static void setNeighborFlag(BlockInstance bi, int neighbor, boolean value) {
+		switch(neighbor) {
+			case 0:
+				bi.neighborWest = value;
+				break;
+			case 1:
+				bi.neighborEast = value;
+				break;
+			case 2:
+				bi.neighborSouth = value;
+				break;
+			case 3:
+				bi.neighborNorth = value;
+				break;
+			case 4:
+				bi.neighborUp = value;
+				break;
+			case 5:
+				bi.neighborDown = value;
+				break;
+		}
+	}
+	// Updates the flags of the existing neighbor instances after the block at the given position changed to b.
+	private void updateNeighborFlags(int x, int y, int z, Block b) {
+		for(int i = 0; i < 6; i++) {
+			int nx = x + NEIGHBOR_DX[i];
+			int ny = y + NEIGHBOR_DY[i];
+			int nz = z + NEIGHBOR_DZ[i];
+			Chunk ch = getGeneratedChunkUnbound(nx, ny, nz);
+			if(ch == null) continue;
+			BlockInstance neighbor = ch.getInstanceAt(nx & 15, ny, nz & 15);
+			if(neighbor != null)
+				setNeighborFlag(neighbor, i, b != null && getsBlocked(neighbor.getBlock(), b.isTransparent()));
+		}
+	}
+	// Calculates the flags of a newly created instance.
+	private void updateOwnNeighborFlags(BlockInstance bi, int x, int y, int z) {
+		for(int i = 0; i < 6; i++) {
+			Block neighbor = getBlockUnbound(x + NEIGHBOR_DX[i], y + NEIGHBOR_DY[i], z + NEIGHBOR_DZ[i]);
+			// Direction i seen from the neighbor is the opposite direction i^1.
+			setNeighborFlag(bi, i ^ 1, neighbor != null && getsBlocked(bi.getBlock(), neighbor.isTransparent()));
+		}
+	}
+	// Checks if one of the neighbors lets light through to this block.
+	private boolean isExposed(int x, int y, int z, boolean transparent) {
+		for(int i = 0; i < 6; i++) {
+			if(blocksLight(getBlockUnbound(x + NEIGHBOR_DX[i], y + NEIGHBOR_DY[i], z + NEIGHBOR_DZ[i]), transparent))
+				return true;
+		}
+		return false;
+	}
+	// Hides the neighbors of the given position that got fully covered.
+	private void hideCoveredNeighbors(int x, int y, int z, boolean updateLiquids) {
+		for(int i = 0; i < 6; i++) {
+			int nx = x + NEIGHBOR_DX[i];
+			int ny = y + NEIGHBOR_DY[i];
+			int nz = z + NEIGHBOR_DZ[i];
+			Chunk ch = getGeneratedChunkUnbound(nx, ny, nz);
+			if(ch == null) continue;
+			if(updateLiquids) {
+				Block block = ch.getBlockAt(nx & 15, ny, nz & 15);
+				if(block != null && block.getBlockClass() == BlockClass.FLUID)
+					ch.scheduleLiquid(LiquidQueue.pack(nx & 15, ny, nz & 15));
+			}
+			BlockInstance neighbor = ch.getInstanceAt(nx & 15, ny, nz & 15);
+			if(neighbor == null) continue;
+			if(ch.contains(neighbor) && !ch.isExposed(nx & 15, ny, nz & 15, neighbor.getBlock().isTransparent())) {
+				ch.hideBlock(neighbor);
+			}
+		}
 	}
 	
 	public void setLoaded(boolean loaded) {
+		if(loaded != this.loaded && surface != null) {
+			// Only the block entities of loaded chunks get updated:
+			BlockEntityTicker ticker = surface.getBlockEntityTicker();
+			for(Map.Entry<BlockInstance, BlockEntity> entry : blockEntities.entrySet()) {
+				if(entry.getValue() == null) continue;
+				if(loaded) {
+					BlockInstance bi = entry.getKey();
+					ticker.add(entry.getValue(), bi.getX(), bi.getY(), bi.getZ());
+				} else {
+					ticker.remove(entry.getValue());
+				}
+			}
+		}
 		this.loaded = loaded;
 	}
 	
+	private void addBlockEntity(BlockInstance bi, BlockEntity be) {
+		blockEntities.put(bi, be);
+		if(loaded && be != null)
+			surface.getBlockEntityTicker().add(be, bi.getX(), bi.getY(), bi.getZ());
+	}
+	
 	public boolean isLoaded() {
 		return loaded;
 	}
@@ -107,16 +287,57 @@ public class Chunk {
 		return oy;
 	}
 	
-	public ArrayList<BlockInstance> list() {
-		return list;
+	/**
+	 * Lets the liquid at the given position flow at the next liquid update.
+	 */
+	public void scheduleLiquid(int x, int y, int z) {
+		scheduleLiquid(LiquidQueue.pack(x, y, z));
 	}
 	
-	public ArrayList<BlockInstance> liquids() {
-		return liquids;
+	private void scheduleLiquid(int index) {
+		boolean wasEmpty = liquidQueue.isEmpty();
+		if(liquidQueue.add(index) && wasEmpty && surface != null)
+			surface.scheduleLiquidUpdate(this);
 	}
 	
-	public ArrayList<BlockInstance> updatingLiquids() {
-		return updatingLiquids;
+	/**
+	 * Lets all scheduled liquids flow down or, if they are on solid ground, to the sides. The new liquid blocks get scheduled for the next update.
+	 * Only called by the surface, and only if something was scheduled.
+	 */
+	public void updateLiquids() {
+		int n = liquidQueue.swap();
+		// Liquids can only flow into chunks that are already there:
+		Chunk xNeg = getGeneratedChunkUnbound(-1, 0, 0);
+		Chunk xPos = getGeneratedChunkUnbound(16, 0, 0);
+		Chunk zNeg = getGeneratedChunkUnbound(0, 0, -1);
+		Chunk zPos = getGeneratedChunkUnbound(0, 0, 16);
+		for(int i = 0; i < n; i++) {
+			int index = liquidQueue.get(i);
+			int x = LiquidQueue.getX(index);
+			int y = LiquidQueue.getY(index);
+			int z = LiquidQueue.getZ(index);
+			Block b = getBlockAt(x, y, z);
+			if(b == null || b.getBlockClass() != BlockClass.FLUID || y == 0) continue;
+			Block below = getBlockAt(x, y - 1, z);
+			if(below == null) {
+				addBlock(b, (ox << 4) + x, y - 1, (oy << 4) + z);
+				continue;
+			}
+			if(below.getBlockClass() == BlockClass.FLUID) continue;
+			for(int dir = 0; dir < 4; dir++) {
+				int nx = x + NEIGHBOR_DX[dir];
+				int nz = z + NEIGHBOR_DZ[dir];
+				Chunk ch = nx < 0 ? xNeg : nx > 15 ? xPos : nz < 0 ? zNeg : nz > 15 ? zPos : this;
+				if(ch == null) { // Tries again when the neighbor chunk might be generated.
+					scheduleLiquid(index);
+					continue;
+				}
+				nx &= 15;
+				nz &= 15;
+				if(ch.getBlockAt(nx, y, nz) == null)
+					ch.addBlock(b, (ch.ox << 4) + nx, y, (ch.oy << 4) + nz);
+			}
+		}
 	}
 	
 	public BlockInstance[] getVisibles() {
@@ -126,106 +347,34 @@ public class Chunk {
 	public Map<BlockInstance, BlockEntity> blockEntities() {
 		return blockEntities;
 	}
-	// Performs a light update in all channels on this block.
+	// Performs a light update in all channels on the 8 corners of this block.
 	private void lightUpdate(int x, int y, int z) {
-		ArrayList<int[]> updates = new ArrayList<>();
-		// Sun:
-		for(int dx = 0; dx <= 1; dx++) {
-			for(int dy = 0; dy <= 1; dy++) {
-				for(int dz = 0; dz <= 1; dz++) {
-					int newLight = localLightUpdate(x+dx, y+dy, z+dz, 24, 0x00ffffff);
-					int[] arr = new int[]{x, y, z, newLight};
-					updates.add(arr);
-				}
-			}
-		}
-		lightUpdate(updates, 24, 0x00ffffff);
-		// Red:
-		for(int dx = 0; dx <= 1; dx++) {
-			for(int dy = 0; dy <= 1; dy++) {
-				for(int dz = 0; dz <= 1; dz++) {
-					int newLight = localLightUpdate(x+dx, y+dy, z+dz, 16, 0xff00ffff);
-					int[] arr = new int[]{x, y, z, newLight};
-					updates.add(arr);
-				}
-			}
-		}
-		lightUpdate(updates, 16, 0xff00ffff);
-		// Green:
-		for(int dx = 0; dx <= 1; dx++) {
-			for(int dy = 0; dy <= 1; dy++) {
-				for(int dz = 0; dz <= 1; dz++) {
-					int newLight = localLightUpdate(x+dx, y+dy, z+dz, 8, 0xffff00ff);
-					int[] arr = new int[]{x, y, z, newLight};
-					updates.add(arr);
-				}
-			}
-		}
-		lightUpdate(updates, 8, 0xffff00ff);
-		// Blue:
+		long t = System.nanoTime();
+		LightQueue queue = lightQueues.get();
 		for(int dx = 0; dx <= 1; dx++) {
 			for(int dy = 0; dy <= 1; dy++) {
 				for(int dz = 0; dz <= 1; dz++) {
-					int newLight = localLightUpdate(x+dx, y+dy, z+dz, 0, 0xffffff00);
-					int[] arr = new int[]{x, y, z, newLight};
-					updates.add(arr);
+					localLightUpdate(x+dx, y+dy, z+dz, queue);
+					queue.add(x+dx, y+dy, z+dz);
 				}
 			}
 		}
-		lightUpdate(updates, 0, 0xffffff00);
-	}
-	// Update only 1 corner:
-	private void singleLightUpdate(int x, int y, int z) {
-		ArrayList<int[]> updates = new ArrayList<>();
-		// Sun:
-		int newLight = localLightUpdate(x, y, z, 24, 0x00ffffff);
-		int[] arr = new int[]{x, y, z, newLight};
-		updates.add(arr);
-		lightUpdate(updates, 24, 0x00ffffff);
-		// Red:
-		newLight = localLightUpdate(x, y, z, 16, 0xff00ffff);
-		arr = new int[]{x, y, z, newLight};
-		updates.add(arr);
-		lightUpdate(updates, 16, 0xff00ffff);
-		// Green:
-		newLight = localLightUpdate(x, y, z, 8, 0xffff00ff);
-		arr = new int[]{x, y, z, newLight};
-		updates.add(arr);
-		lightUpdate(updates, 8, 0xffff00ff);
-		// Blue:
-		newLight = localLightUpdate(x, y, z, 0, 0xffffff00);
-		arr = new int[]{x, y, z, newLight};
-		updates.add(arr);
-		lightUpdate(updates, 0, 0xffffff00);
-	}
-	private int applyNeighbors(int light, int shift, BlockInstance n1, BlockInstance n2, BlockInstance n3, BlockInstance n4) {
+		propagateLight(queue);
+		lightTimer.stop(t);
+	}
+	// n1 to n4 are the indices of the four blocks around the edge between the two lighting nodes.
+	private static int applyNeighbors(int light, int shift, int[] absorption, boolean[] solid, int n1, int n2, int n3, int n4) {
 		light = (light >>> shift) & 255;
 		light <<= 2; // make sure small absorptions don't get ignored while dividing by 4.
 		int solidNeighbors = 0;
-		if(n1 != null) {
-			if(n1.getBlock().isTransparent()) {
-				light -= (n1.getBlock().getAbsorption() >>> shift) & 255;
-			} else
-				solidNeighbors++;
-		}
-		if(n2 != null) {
-			if(n2.getBlock().isTransparent()) {
-				light -= (n2.getBlock().getAbsorption() >>> shift) & 255;
-			} else
-				solidNeighbors++;
-		}
-		if(n3 != null) {
-			if(n3.getBlock().isTransparent()) {
-				light -= (n3.getBlock().getAbsorption() >>> shift) & 255;
-			} else
-				solidNeighbors++;
-		}
-		if(n4 != null) {
-			if(n4.getBlock().isTransparent()) {
-				light -= (n4.getBlock().getAbsorption() >>> shift) & 255;
-			} else
-				solidNeighbors++;
-		}
+		if(solid[n1]) solidNeighbors++;
+		else light -= (absorption[n1] >>> shift) & 255;
+		if(solid[n2]) solidNeighbors++;
+		else light -= (absorption[n2] >>> shift) & 255;
+		if(solid[n3]) solidNeighbors++;
+		else light -= (absorption[n3] >>> shift) & 255;
+		if(solid[n4]) solidNeighbors++;
+		else light -= (absorption[n4] >>> shift) & 255;
 		light >>= 2; // Divide by 4.
 		switch(solidNeighbors) {
 			case 4:
@@ -240,145 +389,145 @@ public class Chunk {
 				light -= 8;
 		}
 		// Check if one of the blocks is glowing bright enough to support more light:
-		if(n1 != null) {
-			light = Math.max(light, (n1.getBlock().getAbsorption() >>> shift) & 255);
-		}
-		if(n2 != null) {
-			light = Math.max(light, (n2.getBlock().getAbsorption() >>> shift) & 255);
-		}
-		if(n3 != null) {
-			light = Math.max(light, (n3.getBlock().getAbsorption() >>> shift) & 255);
-		}
-		if(n4 != null) {
-			light = Math.max(light, (n4.getBlock().getAbsorption() >>> shift) & 255);
-		}
+		light = Math.max(light, (absorption[n1] >>> shift) & 255);
+		light = Math.max(light, (absorption[n2] >>> shift) & 255);
+		light = Math.max(light, (absorption[n3] >>> shift) & 255);
+		light = Math.max(light, (absorption[n4] >>> shift) & 255);
 		return light;
 	}
-	private int localLightUpdate(int x, int y, int z, int shift, int mask) {
-		// Make some bound checks:
-		if(!easyLighting || y < 0 || y >= World.WORLD_HEIGHT || !generated) return -1;
+	// Recalculates all four channels of a lighting node from its six neighbors. Returns true if the light changed.
+	private boolean localLightUpdate(int x, int y, int z, LightQueue queue) {
+		// Make some bound checks. Chunks that aren't loaded get their light when they are loaded:
+		if(!easyLighting || y < 0 || y >= World.WORLD_HEIGHT || !generated || !loaded) return false;
 		// Check if it's inside this chunk:
 		if(x < 0) {
 			Chunk chunk = surface._getNoGenerateChunk(ox-1, oy);
-			if(chunk != null) return chunk.localLightUpdate(x+16, y, z, shift, mask);
-			return -1;
+			if(chunk != null) return chunk.localLightUpdate(x+16, y, z, queue);
+			return false;
 		}
 		if(x > 15) {
 			Chunk chunk = surface._getNoGenerateChunk(ox+1, oy);
-			if(chunk != null) return chunk.localLightUpdate(x-16, y, z, shift, mask);
-			return -1;
+			if(chunk != null) return chunk.localLightUpdate(x-16, y, z, queue);
+			return false;
 		}
 		if(z < 0) {
 			Chunk chunk = surface._getNoGenerateChunk(ox, oy-1);
-			if(chunk != null) return chunk.localLightUpdate(x, y, z+16, shift, mask);
-			return -1;
+			if(chunk != null) return chunk.localLightUpdate(x, y, z+16, queue);
+			return false;
 		}
 		if(z > 15) {
 			Chunk chunk = surface._getNoGenerateChunk(ox, oy+1);
-			if(chunk != null) return chunk.localLightUpdate(x, y, z-16, shift, mask);
-			return -1;
+			if(chunk != null) return chunk.localLightUpdate(x, y, z-16, queue);
+			return false;
 		}
-		// Get all eight neighbors of this lighting node:
-		BlockInstance[] neighbors = new BlockInstance[8];
+		// Get all eight neighbors of this lighting node. Only their absorption and whether they are solid matters:
+		int[] absorption = queue.absorption;
+		boolean[] solid = queue.solid;
 		for(int dx = -1; dx <= 0; dx++) {
 			for(int dy = -1; dy <= 0; dy++) {
 				for(int dz = -1; dz <= 0; dz++) {
-					neighbors[7 + (dx << 2) + (dy << 1) + dz] = getInstUnbound(x+dx, y+dy, z+dz);
+					int i = 7 + (dx << 2) + (dy << 1) + dz;
+					Block b = getBlockUnbound(x+dx, y+dy, z+dz);
+					absorption[i] = b == null ? 0 : b.getAbsorption();
+					solid[i] = b != null && !b.isTransparent();
 				}
 			}
 		}
 		
-		// Check all neighbors and find their highest lighting in the specified channel after applying block-specific effects to it:
-
 		int index = (x << 4) | (y << 8) | z; // Works close to the datastructure. Allows for some optimizations.
 		
-		int maxLight = 0;
+		// Get the light of the neighboring nodes once for all channels:
+		int west = 0, east = 0, north = 0, south = 0;
+		boolean hasWest = true, hasEast = true, hasNorth = true, hasSouth = true;
 		if(x != 0) {
-			maxLight = Math.max(maxLight, applyNeighbors(light[index-16], shift, neighbors[0], neighbors[1], neighbors[2], neighbors[3]));
+			west = light[index-16];
 		} else {
 			Chunk chunk = surface._getNoGenerateChunk(ox-1, oy);
-			if(chunk != null && chunk.isLoaded()) {
-				maxLight = Math.max(maxLight, applyNeighbors(chunk.light[index | 0xf0], shift, neighbors[0], neighbors[1], neighbors[2], neighbors[3]));
-			}
+			hasWest = chunk != null && chunk.isLoaded();
+			if(hasWest) west = chunk.light[index | 0xf0];
 		}
 		if(x != 15) {
-			maxLight = Math.max(maxLight, applyNeighbors(light[index+16], shift, neighbors[4], neighbors[5], neighbors[6], neighbors[7]));
+			east = light[index+16];
 		} else {
 			Chunk chunk = surface._getNoGenerateChunk(ox+1, oy);
-			if(chunk != null && chunk.isLoaded()) {
-				maxLight = Math.max(maxLight, applyNeighbors(chunk.light[index & ~0xf0], shift, neighbors[4], neighbors[5], neighbors[6], neighbors[7]));
-			}
+			hasEast = chunk != null && chunk.isLoaded();
+			if(hasEast) east = chunk.light[index & ~0xf0];
 		}
 		if(z != 0) {
-			maxLight = Math.max(maxLight, applyNeighbors(light[index-1], shift, neighbors[0], neighbors[2], neighbors[4], neighbors[6]));
+			north = light[index-1];
 		} else {
 			Chunk chunk = surface._getNoGenerateChunk(ox, oy-1);
-			if(chunk != null && chunk.isLoaded()) {
-				maxLight = Math.max(maxLight, applyNeighbors(chunk.light[index | 0xf], shift, neighbors[0], neighbors[2], neighbors[4], neighbors[6]));
-			}
+			hasNorth = chunk != null && chunk.isLoaded();
+			if(hasNorth) north = chunk.light[index | 0xf];
 		}
 		if(z != 15) {
-			maxLight = Math.max(maxLight, applyNeighbors(light[index+1], shift, neighbors[1], neighbors[3], neighbors[5], neighbors[7]));
+			south = light[index+1];
 		} else {
 			Chunk chunk = surface._getNoGenerateChunk(ox, oy+1);
-			if(chunk != null && chunk.isLoaded()) {
-				maxLight = Math.max(maxLight, applyNeighbors(chunk.light[index & ~0xf], shift, neighbors[1], neighbors[3], neighbors[5], neighbors[7]));
-			}
+			hasSouth = chunk != null && chunk.isLoaded();
+			if(hasSouth) south = chunk.light[index & ~0xf];
 		}
-		if(y != 0) {
-			maxLight = Math.max(maxLight, applyNeighbors(light[index-256], shift, neighbors[0], neighbors[1], neighbors[4], neighbors[5]));
-		}
-		if(y != 255) {
-			int local = applyNeighbors(light[index+256], shift, neighbors[2], neighbors[3], neighbors[6], neighbors[7]);
-			if(shift == 24 && local != 0)
-				local += 8;
-			maxLight = Math.max(maxLight, local);
-		} else if(shift == 24) {
-			maxLight = 255; // The top block gets always maximum sunlight.
+		
+		// Check all neighbors and find their highest lighting in each channel after applying block-specific effects to it:
+		int newLight = 0;
+		for(int shift = 0; shift < 32; shift += 8) {
+			int maxLight = 0;
+			if(hasWest)
+				maxLight = Math.max(maxLight, applyNeighbors(west, shift, absorption, solid, 0, 1, 2, 3));
+			if(hasEast)
+				maxLight = Math.max(maxLight, applyNeighbors(east, shift, absorption, solid, 4, 5, 6, 7));
+			if(hasNorth)
+				maxLight = Math.max(maxLight, applyNeighbors(north, shift, absorption, solid, 0, 2, 4, 6));
+			if(hasSouth)
+				maxLight = Math.max(maxLight, applyNeighbors(south, shift, absorption, solid, 1, 3, 5, 7));
+			if(y != 0) {
+				maxLight = Math.max(maxLight, applyNeighbors(light[index-256], shift, absorption, solid, 0, 1, 4, 5));
+			}
+			if(y != 255) {
+				int local = applyNeighbors(light[index+256], shift, absorption, solid, 2, 3, 6, 7);
+				if(shift == 24 && local != 0)
+					local += 8;
+				maxLight = Math.max(maxLight, local);
+			} else if(shift == 24) {
+				maxLight = 255; // The top block gets always maximum sunlight.
+			}
+			newLight |= maxLight << shift;
 		}
 		// Update the light and return.
-		int curLight = (light[index] >>> shift) & 255;
-		if(maxLight < 0) maxLight = 0;
-		if(curLight != maxLight) {
-			light[index] = (light[index] & mask) | (maxLight << shift);
-			return maxLight;
-		}
-		return -1;
-	}
-	// Used for first time loading. For later update also negative changes have to be taken into account making the system more complex.
-	public void lightUpdate(ArrayList<int[]> lightUpdates, int shift, int mask) {
-		while(lightUpdates.size() != 0) {
-			// Find the block with the highest light level from the list:
-			int[][] updates = lightUpdates.toArray(new int[0][]);
-			int[] max = updates[0];
-			for(int i = 1; i < updates.length; i++) {
-				if(max[3] < updates[i][3]) {
-					max = updates[i];
-					if(max[3] == 255)
-						break;
-				}
-			}
-			lightUpdates.remove(max);
-			int[] dx = {-1, 1, 0, 0, 0, 0};
-			int[] dy = {0, 0, -1, 1, 0, 0};
-			int[] dz = {0, 0, 0, 0, -1, 1};
+		if(light[index] != newLight) {
+			light[index] = newLight;
+			meshDirty = true;
+			// The nodes on the lower borders are also corners of the neighbors' blocks:
+			if(x == 0) setNeighborMeshDirty(-1, 0);
+			if(z == 0) setNeighborMeshDirty(0, -1);
+			if(x == 0 && z == 0) setNeighborMeshDirty(-1, -1);
+			return true;
+		}
+		return false;
+	}
+	// Only nodes that actually changed need to be spread further.
+	private void borderLightUpdate(int x, int y, int z, int outerX, int outerY, int outerZ, LightQueue queue) {
+		if(localLightUpdate(x, y, z, queue))
+			queue.add(x, y, z);
+		if(localLightUpdate(outerX, outerY, outerZ, queue))
+			queue.add(outerX, outerY, outerZ);
+	}
+	// Spreads the changes of all nodes in the queue until nothing changes anymore. The coordinates of the nodes are relative to this chunk and may be outside of it.
+	// For first time loading the light only increases. For later updates the decreasing light runs out on its own, because it gets weaker with every step.
+	private void propagateLight(LightQueue queue) {
+		while(!queue.isEmpty()) {
+			int node = queue.poll();
+			int x0 = LightQueue.getX(node);
+			int y0 = LightQueue.getY(node);
+			int z0 = LightQueue.getZ(node);
 			// Look at the neighbors:
 			for(int n = 0; n < 6; n++) {
-				int x = max[0]+dx[n];
-				int y = max[1]+dy[n];
-				int z = max[2]+dz[n];
-				int light;
-				if((light = localLightUpdate(x, y, z, shift, mask)) >= 0) {
-					for(int i = 0;; i++) {
-						if(i == updates.length) {
-							lightUpdates.add(new int[]{x, y, z, light});
-							break;
-						}
-						if(updates[i][0] == x && updates[i][1] == y && updates[i][2] == z) {
-							updates[i][3] = light;
-							break;
-						}
-					}
+				int x = x0 + NEIGHBOR_DX[n];
+				int y = y0 + NEIGHBOR_DY[n];
+				int z = z0 + NEIGHBOR_DZ[n];
+				if(Math.abs(x) > LightQueue.MAX_DISTANCE || Math.abs(z) > LightQueue.MAX_DISTANCE) continue;
+				if(localLightUpdate(x, y, z, queue)) {
+					queue.add(x, y, z);
 				}
 			}
 		}
@@ -394,7 +543,7 @@ public class Chunk {
 	 */
 	public void addBlock(Block b, int x, int y, int z) {
 		if (b == null) return;
-		if(y >= World.WORLD_HEIGHT)
+		if(y < 0 || y >= World.WORLD_HEIGHT)
 			return;
 		int rx = x - (ox << 4);
 		// Determines if the block is part of another chunk.
@@ -415,72 +564,46 @@ public class Chunk {
 			surface._getChunk(ox, oy + 1).addBlock(b, x, y, z);
 			return;
 		}
-		if(inst == null) {
-			inst = new BlockInstance[16*World.WORLD_HEIGHT*16];
-		} else { // Checks if there is a block on that position and deposits it if degradable.
-			BlockInstance bi = getBlockInstanceAt(rx, y, rz);
-			if(bi != null) {
-				if(!bi.getBlock().isDegradable() || b.isDegradable()) {
-					return;
-				}
-				removeBlockAt(rx, y, rz, false);
+		// Checks if there is a block on that position and deposits it if degradable.
+		Block old = getBlockAt(rx, y, rz);
+		if(old != null) {
+			if(!old.isDegradable() || b.isDegradable()) {
+				return;
+			}
+			removeBlockAt(rx, y, rz, false);
+		}
+		setBlockAt(rx, y, rz, b);
+		if(needsIdentity(b)) {
+			BlockInstance inst0 = createInstance(rx, y, rz, b);
+			setInstanceAt(rx, y, rz, inst0);
+			if (b.hasBlockEntity()) {
+				addBlockEntity(inst0, b.createBlockEntity(inst0.getPosition()));
 			}
 		}
-		BlockInstance inst0 = new BlockInstance(b);
-		inst0.setPosition(new Vector3i(x, y, z));
-		inst0.setStellarTorus(surface);
-		if (b.hasBlockEntity()) {
-			BlockEntity te = b.createBlockEntity(inst0.getPosition());
-			blockEntities.put(inst0, te);
-		}
-		if (b.getBlockClass() == BlockClass.FLUID) {
-			liquids.add(inst0);
-			updatingLiquids.add(inst0);
-		}
-		list.add(inst0);
-		setInst(rx, y, rz, inst0);
 		if(generated) {
-			BlockInstance[] neighbors = inst0.getNeighbors(this);
-			for (int i = 0; i < neighbors.length; i++) {
-				if (blocksLight(neighbors[i], inst0.getBlock().isTransparent())) {
-					revealBlock(inst0);
-					break;
-				}
+			if (b.getBlockClass() == BlockClass.FLUID) {
+				scheduleLiquid(LiquidQueue.pack(rx, y, rz));
 			}
-			if(neighbors[0] != null) neighbors[0].neighborWest = getsBlocked(neighbors[0], inst0.getBlock().isTransparent());
-			if(neighbors[1] != null) neighbors[1].neighborEast = getsBlocked(neighbors[1], inst0.getBlock().isTransparent());
-			if(neighbors[2] != null) neighbors[2].neighborSouth = getsBlocked(neighbors[2], inst0.getBlock().isTransparent());
-			if(neighbors[3] != null) neighbors[3].neighborNorth = getsBlocked(neighbors[3], inst0.getBlock().isTransparent());
-			if(neighbors[4] != null) neighbors[4].neighborUp = getsBlocked(neighbors[4], inst0.getBlock().isTransparent());
-			if(neighbors[5] != null) neighbors[5].neighborDown = getsBlocked(neighbors[5], inst0.getBlock().isTransparent());
-			for (int i = 0; i < neighbors.length; i++) {
-				if(neighbors[i] != null) {
-					Chunk ch = getChunk(neighbors[i].getX(), neighbors[i].getZ());
-					if (ch.contains(neighbors[i])) {
-						BlockInstance[] neighbors1 = neighbors[i].getNeighbors(ch);
-						boolean vis = true;
-						for (int j = 0; j < neighbors1.length; j++) {
-							if (blocksLight(neighbors1[j], neighbors[i].getBlock().isTransparent())) {
-								vis = false;
-								break;
-							}
-						}
-						if(vis) {
-							ch.hideBlock(neighbors[i]);
-						}
-					}
-				}
+			if(isExposed(rx, y, rz, b.isTransparent())) {
+				revealBlock(getBlockInstanceAt(rx, y, rz));
 			}
+			updateNeighborFlags(rx, y, rz, b);
+			hideCoveredNeighbors(rx, y, rz, false);
 		}
 		if(loaded)
 			lightUpdate(rx, y, rz);
 	}
 	
 	public void generateFrom(StellarTorusGenerator gen) {
-		if(inst == null) {
-			inst = new BlockInstance[16*World.WORLD_HEIGHT*16];
-		}
 		gen.generate(this, surface);
+		// Generators place a lot of different blocks, so the palettes usually contain a lot of unused entries afterwards:
+		for(int i = 0; i < sections.length; i++) {
+			if(sections[i] != null) {
+				sections[i].compact();
+				if(sections[i].isEmpty())
+					sections[i] = null;
+			}
+		}
 		generated = true;
 	}
 	
@@ -492,48 +615,60 @@ public class Chunk {
 				continue;
 			}
 			Block bl = surface.getPlanetBlocks()[bc.newType];
-			if(getBlockInstanceAt(bc.x, bc.y, bc.z) == null) {
+			Block old = getBlockAt(bc.x, bc.y, bc.z);
+			if(old == null) {
 				addBlockAt(bc.x, bc.y, bc.z, bl, false);
 				bc.oldType = -1;
 				continue;
 			}
-			bc.oldType = getBlockInstanceAt(bc.x, bc.y, bc.z).getID();
-			getBlockInstanceAt(bc.x, bc.y, bc.z).setBlock(bl);
+			bc.oldType = old.ID;
+			setBlockAt(bc.x, bc.y, bc.z, bl);
+			BlockInstance bi = getInstanceAt(bc.x, bc.y, bc.z);
+			if(bi != null)
+				bi.setBlock(bl);
 		}
 	}
 	
 	// Loads the chunk
 	public void load() {
+		long t = System.nanoTime();
 		// Empty the list, so blocks won't get added twice. This will also be important, when there is a manual chunk reloading.
 		visibles = new BlockInstance[10];
 		visiblesSize = 0;
 		
-		loaded = true;
+		setLoaded(true);
 		boolean chx0 = surface._getChunk(ox - 1, oy).isGenerated();
 		boolean chx1 = surface._getChunk(ox + 1, oy).isGenerated();
 		boolean chy0 = surface._getChunk(ox, oy - 1).isGenerated();
 		boolean chy1 = surface._getChunk(ox, oy + 1).isGenerated();
-		for(int k = 0; k < list.size(); k++) {
-			BlockInstance bi = list.get(k);
-			BlockInstance[] neighbors = bi.getNeighbors(this);
-			if(neighbors[0] != null) neighbors[0].neighborWest = getsBlocked(neighbors[0], bi.getBlock().isTransparent());
-			if(neighbors[1] != null) neighbors[1].neighborEast = getsBlocked(neighbors[1], bi.getBlock().isTransparent());
-			if(neighbors[2] != null) neighbors[2].neighborSouth = getsBlocked(neighbors[2], bi.getBlock().isTransparent());
-			if(neighbors[3] != null) neighbors[3].neighborNorth = getsBlocked(neighbors[3], bi.getBlock().isTransparent());
-			if(neighbors[4] != null) neighbors[4].neighborUp = getsBlocked(neighbors[4], bi.getBlock().isTransparent());
-			if(neighbors[5] != null) neighbors[5].neighborDown = getsBlocked(neighbors[5], bi.getBlock().isTransparent());
-			int j = bi.getY();
-			int px = bi.getX()&15;
-			int py = bi.getZ()&15;
-			for (int i = 0; i < neighbors.length; i++) {
-				if (blocksLight(neighbors[i], bi.getBlock().isTransparent())
-											&& (j != 0 || i != 4)
-											&& (px != 0 || i != 0 || chx0)
-											&& (px != 15 || i != 1 || chx1)
-											&& (py != 0 || i != 3 || chy0)
-											&& (py != 15 || i != 2 || chy1)) {
-					revealBlock(bi);
-					break;
+		// The existing instances were created during generation, when the neighbors weren't known yet:
+		for(int sy = 0; sy < instances.length; sy++) {
+			BlockInstance[] arr = instances[sy];
+			if(arr == null) continue;
+			for(BlockInstance bi : arr) {
+				if(bi != null)
+					updateOwnNeighborFlags(bi, bi.getX() & 15, bi.getY(), bi.getZ() & 15);
+			}
+		}
+		for(int sy = 0; sy < sections.length; sy++) {
+			if(sections[sy] == null) continue;
+			for(int j = sy << 4; j < (sy + 1) << 4; j++) {
+				for(int px = 0; px < 16; px++) {
+					for(int py = 0; py < 16; py++) {
+						Block b = getBlockAt(px, j, py);
+						if(b == null) continue;
+						for (int i = 0; i < 6; i++) {
+							if (blocksLight(getBlockUnbound(px + NEIGHBOR_DX[i], j + NEIGHBOR_DY[i], py + NEIGHBOR_DZ[i]), b.isTransparent())
+														&& (j != 0 || i != 4)
+														&& (px != 0 || i != 0 || chx0)
+														&& (px != 15 || i != 1 || chx1)
+														&& (py != 0 || i != 3 || chy0)
+														&& (py != 15 || i != 2 || chy1)) {
+								revealBlock(getBlockInstanceAt(px, j, py));
+								break;
+							}
+						}
+					}
 				}
 			}
 		}
@@ -554,15 +689,16 @@ public class Chunk {
 				if (toCheck[k]) {
 					Chunk ch = chunks[k];
 					for (int j = World.WORLD_HEIGHT - 1; j >= 0; j--) {
-						BlockInstance inst0 = ch.getBlockInstanceAt(dx[k], j, dy[k]);
-						if(inst0 == null) {
+						Block b = ch.getBlockAt(dx[k], j, dy[k]);
+						if(b == null) {
 							continue;
 						}
-						if(ch.contains(inst0)) {
+						BlockInstance inst0 = ch.getInstanceAt(dx[k], j, dy[k]);
+						if(inst0 != null && ch.contains(inst0)) {
 							continue;
 						}
-						if (blocksLight(getBlockInstanceAt(invdx[k], j, invdy[k]), inst0.getBlock().isTransparent())) {
-							ch.revealBlock(inst0);
+						if (blocksLight(getBlockAt(invdx[k], j, invdy[k]), b.isTransparent())) {
+							ch.revealBlock(ch.getBlockInstanceAt(dx[k], j, dy[k]));
 							continue;
 						}
 					}
@@ -571,7 +707,8 @@ public class Chunk {
 		}
 		// Do some light updates.
 		if(easyLighting) {
-			ArrayList<int[]> lightUpdates = new ArrayList<>();
+			long lightStart = System.nanoTime();
+			LightQueue queue = lightQueues.get();
 			// First of all update the top air blocks on which the sun is constant:
 			int y0 = World.WORLD_HEIGHT;
 			boolean stopped = false;
@@ -579,99 +716,82 @@ public class Chunk {
 				--y0;
 				for(int xz = 0; xz < 256; xz++) {
 					light[(y0 << 8) | xz] |= 0xff000000;
-					if(inst[(y0 << 8) | xz] != null) {
-						inst[(y0 << 8) | xz].light |= 0xff000000;
+					if(getBlockAt(xz >>> 4, y0, xz & 15) != null) {
 						stopped = true;
 					}
 				}
 			}
-			// Add the lowest layer to the updates list:
+			// Add the lowest layer to the queue:
 			for(int x = 0; x < 16; x++) {
 				for(int z = 0; z < 16; z++) {
-					if(getBlockInstanceAt(x, y0, z) == null)
-						lightUpdates.add(new int[] {x, y0, z, 255});
+					if(getBlockAt(x, y0, z) == null)
+						queue.add(x, y0, z);
 				}
 			}
-			lightUpdate(lightUpdates, 24, 0x00ffffff);
-			// Look at the neighboring chunks. Update only the outer corners:
+			// Look at the neighboring chunks. The nodes on both sides of the border can now see each other, so update them:
 			boolean no = surface._getNoGenerateChunk(ox-1, oy) != null;
 			boolean po = surface._getNoGenerateChunk(ox+1, oy) != null;
 			boolean on = surface._getNoGenerateChunk(ox, oy-1) != null;
 			boolean op = surface._getNoGenerateChunk(ox, oy+1) != null;
-			if(no || on) {
-				int x = 0, z = 0;
+			for(int i = 0; i < 16; i++) {
 				for(int y = 0; y < y0; y++) {
-					singleLightUpdate(x, y, z);
-				}
-			}
-			if(no || op) {
-				int x = 0, z = 15;
-				for(int y = 0; y < y0; y++) {
-					singleLightUpdate(x, y, z);
-				}
-			}
-			if(po || on) {
-				int x = 15, z = 0;
-				for(int y = 0; y < y0; y++) {
-					singleLightUpdate(x, y, z);
-				}
-			}
-			if(po || op) {
-				int x = 15, z = 15;
-				for(int y = 0; y < y0; y++) {
-					singleLightUpdate(x, y, z);
-				}
-			}
-			if(no) {
-				int x = 0;
-				for(int z = 1; z < 15; z++) {
-					for(int y = 0; y < y0; y++) {
-						singleLightUpdate(x, y, z);
-					}
-				}
-			}
-			if(po) {
-				int x = 15;
-				for(int z = 1; z < 15; z++) {
-					for(int y = 0; y < y0; y++) {
-						singleLightUpdate(x, y, z);
-					}
-				}
-			}
-			if(on) {
-				int z = 0;
-				for(int x = 1; x < 15; x++) {
-					for(int y = 0; y < y0; y++) {
-						singleLightUpdate(x, y, z);
-					}
-				}
-			}
-			if(op) {
-				int z = 15;
-				for(int x = 1; x < 15; x++) {
-					for(int y = 0; y < y0; y++) {
-						singleLightUpdate(x, y, z);
-					}
+					if(no) borderLightUpdate(0, y, i, -1, y, i, queue);
+					if(po) borderLightUpdate(15, y, i, 16, y, i, queue);
+					if(on) borderLightUpdate(i, y, 0, i, y, -1, queue);
+					if(op) borderLightUpdate(i, y, 15, i, y, 16, queue);
 				}
 			}
 			// Take care about light sources:
-			for(BlockInstance bi: list) {
-				if(bi.getBlock().getLight() != 0) {
-					lightUpdate(bi.getX(), bi.getY(), bi.getZ());
+			for(int sy = 0; sy < sections.length; sy++) {
+				if(sections[sy] == null) continue;
+				for(int y = sy << 4; y < (sy + 1) << 4; y++) {
+					for(int x = 0; x < 16; x++) {
+						for(int z = 0; z < 16; z++) {
+							Block b = getBlockAt(x, y, z);
+							if(b != null && b.getLight() != 0) {
+								for(int dx = 0; dx <= 1; dx++) {
+									for(int dy = 0; dy <= 1; dy++) {
+										for(int dz = 0; dz <= 1; dz++) {
+											localLightUpdate(x+dx, y+dy, z+dz, queue);
+											queue.add(x+dx, y+dy, z+dz);
+										}
+									}
+								}
+							}
+						}
+					}
 				}
 			}
-		}
+			// Spread everything in one pass:
+			propagateLight(queue);
+			lightTimer.stop(lightStart);
+		}
+		// The border faces and corner lights of the neighbors might have changed:
+		setNeighborMeshDirty(-1, 0);
+		setNeighborMeshDirty(1, 0);
+		setNeighborMeshDirty(0, -1);
+		setNeighborMeshDirty(0, 1);
+		setNeighborMeshDirty(-1, -1);
+		loadTimer.stop(t);
 	}
 	
-	public boolean blocksLight(BlockInstance bi, boolean transparent) {
-		if(bi == null || (bi.getBlock().isTransparent() && !transparent)) {
+	public boolean blocksLight(Block b, boolean transparent) {
+		if(b == null || (b.isTransparent() && !transparent)) {
 			return true;
 		}
 		return false;
 	}
 	
+	public boolean blocksLight(BlockInstance bi, boolean transparent) {
+		return blocksLight(bi == null ? null : bi.getBlock(), transparent);
+	}
+	
+	public boolean getsBlocked(Block b, boolean transparent) {
+		return !(!b.isTransparent() && transparent);
+	}
+	
 	public boolean getsBlocked(BlockInstance bi, boolean transparent) {
-		return !(!bi.getBlock().isTransparent() && transparent);
+		return getsBlocked(bi.getBlock(), transparent);
 	}
 	
 	public boolean isGenerated() {
@@ -710,6 +830,10 @@ public class Chunk {
 		if (surface != null) for (BlockVisibilityChangeHandler handler : surface.visibHandlers) {
 			if (bi != null) handler.onBlockHide(bi.getBlock(), bi.getX(), bi.getY(), bi.getZ());
 		}
+		// Hidden blocks don't need an instance anymore, unless something else references it:
+		if (bi != null && !needsIdentity(bi.getBlock()) && getInstanceAt(bi.getX() & 15, bi.getY(), bi.getZ() & 15) == bi) {
+			setInstanceAt(bi.getX() & 15, bi.getY(), bi.getZ() & 15, null);
+		}
 	}
 	
 	public synchronized void revealBlock(BlockInstance bi) {
@@ -734,70 +858,111 @@ public class Chunk {
 	}
 	
 	public void removeBlockAt(int x, int y, int z, boolean registerBlockChange) {
-		BlockInstance bi = getBlockInstanceAt(x, y, z);
-		if(bi == null)
+		Block b = getBlockAt(x, y, z);
+		if(b == null)
 			return;
-		hideBlock(bi);
-		if (bi.getBlock().getBlockClass() == BlockClass.FLUID) {
-			liquids.remove(bi);
-		}
-		list.remove(bi);
-		if (bi.getBlock().hasBlockEntity()) {
-			blockEntities.remove(bi);
-		}
-		setInst(x, y, z, null);
-		BlockInstance[] neighbors = bi.getNeighbors(this);
-		if(neighbors[0] != null) neighbors[0].neighborWest = false;
-		if(neighbors[1] != null) neighbors[1].neighborEast = false;
-		if(neighbors[2] != null) neighbors[2].neighborSouth = false;
-		if(neighbors[3] != null) neighbors[3].neighborNorth = false;
-		if(neighbors[4] != null) neighbors[4].neighborUp = false;
-		if(neighbors[5] != null) neighbors[5].neighborDown = false;
+		BlockInstance bi = getInstanceAt(x, y, z);
+		if(bi != null) {
+			hideBlock(bi);
+			if (b.hasBlockEntity()) {
+				BlockEntity be = blockEntities.remove(bi);
+				if (loaded && be != null)
+					surface.getBlockEntityTicker().remove(be);
+			}
+			setInstanceAt(x, y, z, null);
+		}
+		setBlockAt(x, y, z, null);
+		updateNeighborFlags(x, y, z, null);
 		if(loaded)
 			lightUpdate(x, y, z);
-		for (int i = 0; i < neighbors.length; i++) {
-			BlockInstance inst = neighbors[i];
-			if (inst != null && inst != bi) {
-				Chunk ch = getChunk(inst.getX(), inst.getZ());
-				if (!ch.contains(inst)) {
-					ch.revealBlock(inst);
-				}
-				if (inst.getBlock().getBlockClass() == BlockClass.FLUID) {
-					if (!updatingLiquids.contains(inst))
-						updatingLiquids.add(inst);
-				}
+		for (int i = 0; i < 6; i++) {
+			int nx = x + NEIGHBOR_DX[i];
+			int ny = y + NEIGHBOR_DY[i];
+			int nz = z + NEIGHBOR_DZ[i];
+			Chunk ch = getGeneratedChunkUnbound(nx, ny, nz);
+			if (ch == null || ch.getBlockAt(nx & 15, ny, nz & 15) == null) continue;
+			BlockInstance inst = ch.getBlockInstanceAt(nx & 15, ny, nz & 15);
+			if (!ch.contains(inst)) {
+				ch.revealBlock(inst);
+			}
+			if (inst.getBlock().getBlockClass() == BlockClass.FLUID) {
+				ch.scheduleLiquid(LiquidQueue.pack(nx & 15, ny, nz & 15));
 			}
 		}
-		setInst(x, y, z, null);
 
 		if(registerBlockChange) {
-			// Registers blockChange:
-			int index = -1; // Checks if it is already in the list
-			for(int i = 0; i < changes.size(); i++) {
-				BlockChange bc = changes.get(i);
-				if(bc.x == x && bc.y == y && bc.z == z) {
-					index = i;
-					break;
+			synchronized(changes) { // The save thread might read them at the same time.
+				// Registers blockChange:
+				int index = -1; // Checks if it is already in the list
+				for(int i = 0; i < changes.size(); i++) {
+					BlockChange bc = changes.get(i);
+					if(bc.x == x && bc.y == y && bc.z == z) {
+						index = i;
+						break;
+					}
 				}
+				if(index == -1) { // Creates a new object if the block wasn't changed before
+					changes.add(new BlockChange(b.ID, -1, x, y, z));
+					return;
+				}
+				if(-1 == changes.get(index).oldType) { // Removes the object if the block reverted to it's original state.
+					changes.remove(index);
+					return;
+				}
+				changes.get(index).newType = -1;
 			}
-			if(index == -1) { // Creates a new object if the block wasn't changed before
-				changes.add(new BlockChange(bi.getID(), -1, x, y, z));
-				return;
-			}
-			if(-1 == changes.get(index).oldType) { // Removes the object if the block reverted to it's original state.
-				changes.remove(index);
-				return;
-			}
-			changes.get(index).newType = -1;
 		}
 	}
 	
 	public void addBlockAt(int x, int y, int z, Block b, boolean registerBlockChange) {
-		if(y >= World.WORLD_HEIGHT)
-			return;
-		removeBlockAt(x, y, z, false);
-		BlockInstance inst0 = new BlockInstance(b);
-		addBlockAt(x, y, z, inst0, registerBlockChange);
+		addBlockAt(x, y, z, b, null, registerBlockChange);
+	}
+	
+	/**
+	 * Replaces the blocks of a newly created chunk by the blocks of the buffer. To use with WorldGenerators
+	 * Only blocks that need an identity(block entities) get a BlockInstance, the other blocks are packed into the sections directly.
+	 */
+	public void setBlocks(GenerationBuffer buffer) {
+		for(int sy = 0; sy < sections.length; sy++) {
+			sections[sy] = buffer.createSection(sy);
+		}
+		createInstances();
+	}
+	
+	/**
+	 * Replaces the blocks of a newly created chunk by the blocks that were received from the server. The chunk counts as generated afterwards.
+	 */
+	void setReceivedSections(ChunkSection[] received) {
+		System.arraycopy(received, 0, sections, 0, sections.length);
+		createInstances();
+		generated = true;
+	}
+	
+	ChunkSection getSection(int sy) {
+		return sections[sy];
+	}
+	
+	// Creates the instances and block entities of blocks that need an identity after all sections were replaced.
+	private void createInstances() {
+		for(int sy = 0; sy < sections.length; sy++) {
+			instances[sy] = null;
+			instanceCount[sy] = 0;
+		}
+		meshDirty = true;
+		for(int sy = 0; sy < sections.length; sy++) {
+			ChunkSection section = sections[sy];
+			if(section == null || !section.paletteContains(Chunk::needsIdentity)) continue;
+			for(int i = 0; i < ChunkSection.SIZE; i++) {
+				Block b = section.get(i);
+				if(b == null || !needsIdentity(b)) continue;
+				int x = i >> 4 & 15;
+				int y = sy << 4 | i >> 8;
+				int z = i & 15;
+				BlockInstance bi = createInstance(x, y, z, b);
+				setInstanceAt(x, y, z, bi);
+				blockEntities.put(bi, b.createBlockEntity(bi.getPosition()));
+			}
+		}
 	}
 	
 	/**
@@ -807,99 +972,139 @@ public class Chunk {
 	 * @param z
 	 */
 	public void rawAddBlock(int x, int y, int z, BlockInstance bi) {
-		if (bi != null && bi.getBlock() == null) {
-			setInst(x, y, z, null);
+		if (bi == null || bi.getBlock() == null) {
+			setBlockAt(x, y, z, null);
+			setInstanceAt(x, y, z, null);
 			return;
 		}
-		if (bi != null) {
-			bi.setStellarTorus(surface);
-			list.add(bi);
-			if (bi.getBlock().getBlockClass() == BlockClass.FLUID) {
-				liquids.add(bi);
-			}
+		// The caller might keep a reference to this instance, so it gets stored.
+		bi.setStellarTorus(surface);
+		setBlockAt(x, y, z, bi.getBlock());
+		setInstanceAt(x, y, z, bi);
+	}
+	
+	/**
+	 * Raw add block. Doesn't do any checks. To use with WorldGenerators
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the BlockInstance if the block needs one(block entities), null otherwise.
+	 */
+	public BlockInstance rawAddBlock(int x, int y, int z, Block b) {
+		setBlockAt(x, y, z, b);
+		if (b == null || !needsIdentity(b)) {
+			setInstanceAt(x, y, z, null);
+			return null;
 		}
-		setInst(x, y, z, bi);
+		BlockInstance bi = createInstance(x, y, z, b);
+		setInstanceAt(x, y, z, bi);
+		return bi;
 	}
 	
 	public void addBlockAt(int x, int y, int z, BlockInstance inst0, boolean registerBlockChange) {
+		addBlockAt(x, y, z, inst0.getBlock(), inst0, registerBlockChange);
+	}
+	
+	private void addBlockAt(int x, int y, int z, Block b, BlockInstance inst0, boolean registerBlockChange) {
 		int wx = ox << 4;
 		int wy = oy << 4;
 		if(y >= World.WORLD_HEIGHT)
 			return;
 		removeBlockAt(x, y, z, false);
-		Block b = inst0.getBlock();
-		inst0.setPosition(new Vector3i(x + wx, y, z + wy));
-		inst0.setStellarTorus(surface);
-		if (b.hasBlockEntity()) {
-			BlockEntity te = b.createBlockEntity(inst0.getPosition());
-			blockEntities.put(inst0, te);
-		}
-		list.add(inst0);
-		if (b.getBlockClass() == BlockClass.FLUID) {
-			liquids.add(inst0);
-			updatingLiquids.add(inst0);
-		}
-		setInst(x, y, z, inst0);
-		BlockInstance[] neighbors = inst0.getNeighbors(this);
-		if(neighbors[0] != null) neighbors[0].neighborWest = getsBlocked(neighbors[0], inst0.getBlock().isTransparent());
-		if(neighbors[1] != null) neighbors[1].neighborEast = getsBlocked(neighbors[1], inst0.getBlock().isTransparent());
-		if(neighbors[2] != null) neighbors[2].neighborSouth = getsBlocked(neighbors[2], inst0.getBlock().isTransparent());
-		if(neighbors[3] != null) neighbors[3].neighborNorth = getsBlocked(neighbors[3], inst0.getBlock().isTransparent());
-		if(neighbors[4] != null) neighbors[4].neighborUp = getsBlocked(neighbors[4], inst0.getBlock().isTransparent());
-		if(neighbors[5] != null) neighbors[5].neighborDown = getsBlocked(neighbors[5], inst0.getBlock().isTransparent());
-		
-		for (int i = 0; i < neighbors.length; i++) {
-			if (blocksLight(neighbors[i], inst0.getBlock().isTransparent())) {
-				revealBlock(inst0);
-				break;
+		setBlockAt(x, y, z, b);
+		if(inst0 == null && needsIdentity(b)) {
+			inst0 = new BlockInstance(b);
+		}
+		if(inst0 != null) {
+			inst0.setPosition(new Vector3i(x + wx, y, z + wy));
+			inst0.setStellarTorus(surface);
+			updateOwnNeighborFlags(inst0, x, y, z);
+			setInstanceAt(x, y, z, inst0);
+			if (b.hasBlockEntity()) {
+				addBlockEntity(inst0, b.createBlockEntity(inst0.getPosition()));
 			}
 		}
-		
-		for (int i = 0; i < neighbors.length; i++) {
-			if(neighbors[i] != null) {
-				Chunk ch = getChunk(neighbors[i].getX(), neighbors[i].getZ());
-				if (ch.contains(neighbors[i])) {
-					BlockInstance[] neighbors1 = neighbors[i].getNeighbors(ch);
-					boolean vis = true;
-					for (int j = 0; j < neighbors1.length; j++) {
-						if (blocksLight(neighbors1[j], neighbors[i].getBlock().isTransparent())) {
-							vis = false;
-							break;
-						}
-					}
-					if(vis) {
-						ch.hideBlock(neighbors[i]);
-					}
-				}
-				if (neighbors[i].getBlock().getBlockClass() == BlockClass.FLUID) {
-					if (!updatingLiquids.contains(neighbors[i]))
-						updatingLiquids.add(neighbors[i]);
-				}
+		if(generated) {
+			if (b.getBlockClass() == BlockClass.FLUID) {
+				scheduleLiquid(LiquidQueue.pack(x, y, z));
 			}
+			updateNeighborFlags(x, y, z, b);
+			if(isExposed(x, y, z, b.isTransparent())) {
+				revealBlock(getBlockInstanceAt(x, y, z));
+			}
+			hideCoveredNeighbors(x, y, z, true);
 		}
+		if(loaded)
+			lightUpdate(x, y, z);
 
 		if(registerBlockChange) {
-			// Registers blockChange:
-			int index = -1; // Checks if it is already in the list
-			for(int i = 0; i < changes.size(); i++) {
-				BlockChange bc = changes.get(i);
-				if(bc.x == x && bc.y == y && bc.z == z) {
-					index = i;
-					break;
+			synchronized(changes) { // The save thread might read them at the same time.
+				// Registers blockChange:
+				int index = -1; // Checks if it is already in the list
+				for(int i = 0; i < changes.size(); i++) {
+					BlockChange bc = changes.get(i);
+					if(bc.x == x && bc.y == y && bc.z == z) {
+						index = i;
+						break;
+					}
 				}
+				if(index == -1) { // Creates a new object if the block wasn't changed before
+					changes.add(new BlockChange(-1, b.ID, x, y, z));
+					return;
+				}
+				if(b.ID == changes.get(index).oldType) { // Removes the object if the block reverted to it's original state.
+					changes.remove(index);
+					return;
+				}
+				changes.get(index).newType = b.ID;
 			}
-			if(index == -1) { // Creates a new object if the block wasn't changed before
-				changes.add(new BlockChange(-1, b.ID, x, y, z));
-				return;
-			}
-			if(b.ID == changes.get(index).oldType) { // Removes the object if the block reverted to it's original state.
-				changes.remove(index);
-				return;
-			}
-			changes.get(index).newType = b.ID;
 		}
-		if(loaded)
-			lightUpdate(x, y, z);
+	}
+	
+	/**
+	 * @return the last mesh created by the ChunkMesher or null.
+	 */
+	public ChunkMesh getMesh() {
+		return mesh;
+	}
+	
+	void setMesh(ChunkMesh mesh) {
+		this.mesh = mesh;
+	}
+	
+	/**
+	 * @return true if the mesh is missing or outdated. Chunks without a surface don't have neighbors and are never meshed.
+	 */
+	public boolean needsMesh() {
+		return meshDirty && loaded && surface != null;
+	}
+	
+	// Called before meshing, so changes during the meshing will cause another update.
+	void startMeshing() {
+		meshDirty = false;
+	}
+	
+	private void setNeighborMeshDirty(int dx, int dz) {
+		if(surface == null) return;
+		Chunk ch = surface._getNoGenerateChunk(ox + dx, oy + dz);
+		if(ch != null)
+			ch.meshDirty = true;
+	}
+	
+	/**
+	 * @return the neighbor chunk in the given direction, if it is generated.
+	 */
+	Chunk getNeighbor(int dx, int dz) {
+		if(surface == null) return null;
+		Chunk ch = surface._getNoGenerateChunk(ox + dx, oy + dz);
+		if(ch == null || !ch.generated) return null;
+		return ch;
+	}
+	
+	// Returns the light value as stored, without the sun light color applied.
+	int getRawLight(int x, int y, int z) {
+		if(light == null) return 0xffffffff;
+		return light[(x << 4) | (y << 8) | z];
 	}
 	
 	public Vector3f getMin(Player localPlayer, int worldAnd) {
@@ -911,14 +1116,16 @@ public class Chunk {
 	}
 	
 	public byte[] save() {
-		byte[] data = new byte[12 + (changes.size() << 4)];
-		Bits.putInt(data, 0, ox);
-		Bits.putInt(data, 4, oy);
-		Bits.putInt(data, 8, changes.size());
-		for(int i = 0; i < changes.size(); i++) {
-			changes.get(i).save(data, 12 + (i << 4));
+		synchronized(changes) {
+			byte[] data = new byte[12 + (changes.size() << 4)];
+			Bits.putInt(data, 0, ox);
+			Bits.putInt(data, 4, oy);
+			Bits.putInt(data, 8, changes.size());
+			for(int i = 0; i < changes.size(); i++) {
+				changes.get(i).save(data, 12 + (i << 4));
+			}
+			return data;
 		}
-		return data;
 	}
 	
 	public int[] getData() {
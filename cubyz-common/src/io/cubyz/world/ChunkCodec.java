@@ -0,0 +1,276 @@
+package io.cubyz.world;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.cubyz.blocks.Block;
+
+/**
+ * Converts all blocks of a chunk into the compact format that is sent to the clients.<br>
+ * Format: One byte that tells if the rest is deflated, followed by the uncompressed size if it is.
+ * Then a short with one bit for each section that contains blocks.
+ * Each of these sections has a palette of the block IDs in it(without air) and the number of bits per palette index.
+ * The blocks themselves are stored as alternating runs of air and runs of bit-packed palette indices, each run starting with its length.
+ * All numbers except for the section bits are stored as var ints.
+ */
+
+public class ChunkCodec {
+	private static final int UNCOMPRESSED = 0, DEFLATED = 1;
+	private static final int SECTIONS = World.WORLD_HEIGHT >> 4;
+	private static final int MAX_SIZE = 1 << 20; // More than the uncompressed data of any chunk can take.
+
+	// Everything that gets reused between chunks. Encoding happens on the network threads and decoding on the client's network thread.
+	private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+	private static class Buffers {
+		byte[] out = new byte[8192];
+		int size;
+		byte[] compressed = new byte[8192];
+		byte[] inflated = new byte[8192];
+		int[] indices = new int[ChunkSection.SIZE];
+		Block[] palette = new Block[16];
+		final Deflater deflater = new Deflater();
+		final Inflater inflater = new Inflater();
+
+		void ensure(int bytes) {
+			if(size + bytes > out.length)
+				out = Arrays.copyOf(out, Math.max(out.length << 1, size + bytes));
+		}
+
+		void writeByte(int b) {
+			ensure(1);
+			out[size++] = (byte)b;
+		}
+
+		void writeVarInt(int value) {
+			ensure(5);
+			size = putVarInt(out, size, value);
+		}
+	}
+
+	// Returns the position after the var int.
+	private static int putVarInt(byte[] arr, int pos, int value) {
+		while((value & ~127) != 0) {
+			arr[pos++] = (byte)(value & 127 | 128);
+			value >>>= 7;
+		}
+		arr[pos++] = (byte)value;
+		return pos;
+	}
+
+	/**
+	 * @param compressionLevel 0 to 9, like for the Deflater. 0 means that the data isn't compressed at all.
+	 */
+	public static byte[] encode(Chunk ch, int compressionLevel) {
+		Buffers buf = buffers.get();
+		buf.size = 0;
+		buf.writeByte(UNCOMPRESSED);
+		buf.writeByte(0);
+		buf.writeByte(0);
+		int sectionBits = 0;
+		for(int sy = 0; sy < SECTIONS; sy++) {
+			ChunkSection section = ch.getSection(sy);
+			if(section != null && encodeSection(section, buf)) {
+				sectionBits |= 1 << sy;
+			}
+		}
+		buf.out[1] = (byte)(sectionBits >>> 8);
+		buf.out[2] = (byte)sectionBits;
+		if(compressionLevel <= 0)
+			return Arrays.copyOf(buf.out, buf.size);
+		// Compress everything after the first byte:
+		Deflater deflater = buf.deflater;
+		deflater.reset();
+		deflater.setLevel(compressionLevel);
+		deflater.setInput(buf.out, 1, buf.size - 1);
+		deflater.finish();
+		buf.compressed[0] = DEFLATED;
+		int length = putVarInt(buf.compressed, 1, buf.size - 1);
+		while(!deflater.finished()) {
+			if(length == buf.compressed.length)
+				buf.compressed = Arrays.copyOf(buf.compressed, length << 1);
+			length += deflater.deflate(buf.compressed, length, buf.compressed.length - length);
+		}
+		return Arrays.copyOf(buf.compressed, length);
+	}
+
+	// Returns false and writes nothing if the section only contains air.
+	private static boolean encodeSection(ChunkSection section, Buffers buf) {
+		int[] indices = buf.indices;
+		Block[] palette = buf.palette;
+		int paletteSize = 0;
+		int last = -1; // Neighboring blocks are usually the same, so the last one is checked first.
+		for(int i = 0; i < ChunkSection.SIZE; i++) {
+			Block b = section.get(i);
+			if(b == null) {
+				indices[i] = -1;
+				continue;
+			}
+			if(last < 0 || palette[last] != b) {
+				last = -1;
+				for(int j = 0; j < paletteSize; j++) {
+					if(palette[j] == b) {
+						last = j;
+						break;
+					}
+				}
+				if(last < 0) {
+					if(paletteSize == palette.length)
+						buf.palette = palette = Arrays.copyOf(palette, paletteSize << 1);
+					last = paletteSize;
+					palette[paletteSize++] = b;
+				}
+			}
+			indices[i] = last;
+		}
+		if(paletteSize == 0) return false;
+		buf.writeVarInt(paletteSize);
+		for(int i = 0; i < paletteSize; i++) {
+			buf.writeVarInt(palette[i].ID);
+		}
+		int bits = 32 - Integer.numberOfLeadingZeros(paletteSize - 1); // 0 if there is only one kind of block.
+		buf.writeByte(bits);
+		int i = 0;
+		while(i < ChunkSection.SIZE) {
+			int start = i;
+			while(i < ChunkSection.SIZE && indices[i] == -1) {
+				i++;
+			}
+			buf.writeVarInt(i - start);
+			start = i;
+			while(i < ChunkSection.SIZE && indices[i] != -1) {
+				i++;
+			}
+			buf.writeVarInt(i - start);
+			if(bits == 0) continue;
+			// Pack the indices of this run, starting at the lowest bit:
+			buf.ensure(((i - start)*bits + 7) >> 3);
+			long acc = 0;
+			int accBits = 0;
+			for(int j = start; j < i; j++) {
+				acc |= (long)indices[j] << accBits;
+				accBits += bits;
+				while(accBits >= 8) {
+					buf.out[buf.size++] = (byte)acc;
+					acc >>>= 8;
+					accBits -= 8;
+				}
+			}
+			if(accBits > 0)
+				buf.out[buf.size++] = (byte)acc;
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the blocks of a newly created chunk by the received blocks.
+	 * @param data gets read from its position to its limit.
+	 * @param blocks all blocks by ID
+	 */
+	public static void decode(ByteBuffer data, Chunk ch, Block[] blocks) {
+		Buffers buf = buffers.get();
+		if(data.get() == DEFLATED) {
+			int rawSize = readVarInt(data);
+			if(rawSize < 0 || rawSize > MAX_SIZE)
+				throw new IllegalArgumentException("Invalid chunk size " + rawSize);
+			byte[] input;
+			int offset = 0;
+			int length = data.remaining();
+			if(data.hasArray()) {
+				input = data.array();
+				offset = data.arrayOffset() + data.position();
+			} else {
+				if(buf.compressed.length < length)
+					buf.compressed = new byte[length];
+				input = buf.compressed;
+				data.duplicate().get(input, 0, length);
+			}
+			if(buf.inflated.length < rawSize)
+				buf.inflated = new byte[rawSize];
+			Inflater inflater = buf.inflater;
+			inflater.reset();
+			inflater.setInput(input, offset, length);
+			try {
+				if(inflater.inflate(buf.inflated, 0, rawSize) != rawSize || !inflater.finished())
+					throw new IllegalArgumentException("Chunk data is shorter than announced.");
+			} catch(DataFormatException e) {
+				throw new IllegalArgumentException(e);
+			}
+			data = ByteBuffer.wrap(buf.inflated, 0, rawSize);
+		}
+		int sectionBits = data.getShort() & 0xffff;
+		ChunkSection[] sections = new ChunkSection[SECTIONS];
+		for(int sy = 0; sy < SECTIONS; sy++) {
+			if((sectionBits & 1 << sy) != 0) {
+				sections[sy] = decodeSection(data, blocks, buf);
+			}
+		}
+		if(data.hasRemaining())
+			throw new IllegalArgumentException("Unexpected bytes after the chunk data.");
+		ch.setReceivedSections(sections);
+	}
+
+	private static ChunkSection decodeSection(ByteBuffer data, Block[] blocks, Buffers buf) {
+		int paletteSize = readVarInt(data);
+		if(paletteSize <= 0 || paletteSize > ChunkSection.SIZE)
+			throw new IllegalArgumentException("Invalid palette size " + paletteSize);
+		Block[] palette = new Block[paletteSize + 1]; // Air goes to the end.
+		for(int i = 0; i < paletteSize; i++) {
+			int id = readVarInt(data);
+			if(id < 0 || id >= blocks.length || blocks[id] == null)
+				throw new IllegalArgumentException("Unknown block ID " + id);
+			palette[i] = blocks[id];
+		}
+		int bits = data.get();
+		if(bits < 0 || bits > 16)
+			throw new IllegalArgumentException("Invalid number of bits " + bits);
+		int mask = (1 << bits) - 1;
+		int[] indices = buf.indices;
+		boolean hasAir = false;
+		int i = 0;
+		while(i < ChunkSection.SIZE) {
+			int air = readVarInt(data);
+			int run = readVarInt(data);
+			if(air < 0 || run < 0 || i + air + run > ChunkSection.SIZE)
+				throw new IllegalArgumentException("Runs don't fit into the section.");
+			if(air != 0) {
+				Arrays.fill(indices, i, i + air, paletteSize);
+				hasAir = true;
+				i += air;
+			}
+			if(bits == 0) {
+				Arrays.fill(indices, i, i + run, 0);
+				i += run;
+				continue;
+			}
+			long acc = 0;
+			int accBits = 0;
+			for(int end = i + run; i < end; i++) {
+				while(accBits < bits) {
+					acc |= (data.get() & 255L) << accBits;
+					accBits += 8;
+				}
+				int index = (int)acc & mask;
+				if(index >= paletteSize)
+					throw new IllegalArgumentException("Palette index out of range.");
+				indices[i] = index;
+				acc >>>= bits;
+				accBits -= bits;
+			}
+		}
+		return new ChunkSection(hasAir ? palette : Arrays.copyOf(palette, paletteSize), indices);
+	}
+
+	private static int readVarInt(ByteBuffer data) {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			byte b = data.get();
+			value |= (b & 127) << shift;
+			if(b >= 0) return value;
+		}
+		throw new IllegalArgumentException("Var int is too long.");
+	}
+}
@@ -0,0 +1,232 @@
+package io.cubyz.world;
+
+import io.cubyz.math.CubyzMath;
+
+/**
+ * Chunks waiting for generation, ordered by their distance to the player.<br>
+ * Chunks in the direction the player is looking at are preferred, chunks behind the player are treated as if they were twice as far away.
+ * Chunks that leave the render distance before they get generated are dropped.
+ * Chunks requested for other players(see {@link #offer(Chunk, float)}) are kept until they get generated.
+ * Adding never blocks, only the generation threads wait in {@link #take()}.
+ */
+
+class ChunkGenerationQueue {
+	private static final float VIEW_CONE = 0.5f; // cos of the half angle in which chunks count as visible.
+	private static final float MIN_YAW_CHANGE = 0.2f; // Smaller rotations don't cause a reordering.
+
+	private Chunk[] heap = new Chunk[256];
+	private float[] priorities = new float[256];
+	private int size;
+	private final ChunkMap<Chunk> queued = new ChunkMap<>(); // Used to find duplicates.
+	private final ChunkMap<Chunk> requested = new ChunkMap<>(); // Queued chunks that don't depend on the range.
+	private final int chunkAnd, worldAnd;
+
+	// Player position in blocks and the view direction:
+	private int playerX, playerZ;
+	private float yaw = Float.NaN, dirX, dirZ;
+	// Chunks outside of [minX, maxX)×[minZ, maxZ) get dropped. The bounds can be outside of the world, chunks are compared by their wrapped distance to minX and minZ:
+	private int minX, maxX, minZ, maxZ;
+	private boolean hasRange;
+
+	/**
+	 * @param chunkAnd worldAnd >>> 4 of the surface
+	 */
+	public ChunkGenerationQueue(int chunkAnd) {
+		this.chunkAnd = chunkAnd;
+		worldAnd = chunkAnd << 4 | 15;
+	}
+
+	/**
+	 * Adds the chunk unless it is already queued or out of range.
+	 * @return false if the chunk wasn't added.
+	 */
+	public synchronized boolean offer(Chunk ch) {
+		if(!isInRange(ch) || queued.get(ch.getX(), ch.getZ()) != null) return false;
+		queued.put(ch.getX(), ch.getZ(), ch);
+		add(ch, getPriority(ch));
+		return true;
+	}
+
+	/**
+	 * Adds a chunk that is needed somewhere else than around the player, for example by a player on the server.
+	 * It doesn't get dropped when the player moves away.
+	 * @param priority squared distance in blocks to whoever needs the chunk
+	 * @return false if the chunk was already requested.
+	 */
+	public synchronized boolean offer(Chunk ch, float priority) {
+		if(requested.get(ch.getX(), ch.getZ()) != null) return false;
+		Chunk old = queued.get(ch.getX(), ch.getZ());
+		if(old == null) {
+			queued.put(ch.getX(), ch.getZ(), ch);
+			requested.put(ch.getX(), ch.getZ(), ch);
+			add(ch, priority);
+			return true;
+		}
+		if(old != ch) return false;
+		// Already queued for the player, so it only needs to stay in the queue:
+		requested.put(ch.getX(), ch.getZ(), ch);
+		for(int i = 0; i < size; i++) {
+			if(heap[i] == ch) {
+				if(priority < priorities[i]) {
+					priorities[i] = priority;
+					siftUp(i);
+				}
+				break;
+			}
+		}
+		return true;
+	}
+
+	private void add(Chunk ch, float priority) {
+		if(size == heap.length) {
+			Chunk[] newHeap = new Chunk[size << 1];
+			float[] newPriorities = new float[size << 1];
+			System.arraycopy(heap, 0, newHeap, 0, size);
+			System.arraycopy(priorities, 0, newPriorities, 0, size);
+			heap = newHeap;
+			priorities = newPriorities;
+		}
+		heap[size] = ch;
+		priorities[size] = priority;
+		siftUp(size++);
+		notify();
+	}
+
+	/**
+	 * Waits until a chunk is available and removes the one with the highest priority.
+	 */
+	public synchronized Chunk take() throws InterruptedException {
+		while(size == 0) {
+			wait();
+		}
+		Chunk ch = heap[0];
+		removeTop();
+		queued.remove(ch.getX(), ch.getZ(), ch);
+		requested.remove(ch.getX(), ch.getZ(), ch);
+		return ch;
+	}
+
+	/**
+	 * Updates player position, view direction and the area of chunks that are still needed.
+	 * Reorders the queue if the player moved to another chunk or turned around noticeably.
+	 * @param yaw rotation around the y-axis as used by the player movement. NaN if there is no view direction.
+	 */
+	public synchronized void update(int playerX, int playerZ, float yaw, int minX, int minZ, int maxX, int maxZ) {
+		boolean moved = !hasRange || (playerX >> 4) != (this.playerX >> 4) || (playerZ >> 4) != (this.playerZ >> 4) || minX != this.minX || minZ != this.minZ || maxX != this.maxX || maxZ != this.maxZ;
+		boolean turned = Float.isNaN(yaw) != Float.isNaN(this.yaw) || Math.abs(yaw - this.yaw) >= MIN_YAW_CHANGE;
+		this.playerX = playerX;
+		this.playerZ = playerZ;
+		this.minX = minX;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxZ = maxZ;
+		hasRange = true;
+		if(turned) {
+			this.yaw = yaw;
+			if(Float.isNaN(yaw)) {
+				dirX = dirZ = 0;
+			} else {
+				// Same direction as moving forward in PlayerEntity.move:
+				dirX = (float)Math.sin(yaw);
+				dirZ = -(float)Math.cos(yaw);
+			}
+		}
+		if(!moved && !turned) return;
+		// Drop chunks that are out of range and recalculate all priorities:
+		int newSize = 0;
+		for(int i = 0; i < size; i++) {
+			Chunk ch = heap[i];
+			if(requested.get(ch.getX(), ch.getZ()) == ch) {
+				heap[newSize] = ch;
+				priorities[newSize] = isInRange(ch) ? Math.min(priorities[i], getPriority(ch)) : priorities[i];
+				newSize++;
+			} else if(isInRange(ch)) {
+				heap[newSize] = ch;
+				priorities[newSize] = getPriority(ch);
+				newSize++;
+			} else {
+				queued.remove(ch.getX(), ch.getZ(), ch);
+			}
+		}
+		for(int i = newSize; i < size; i++) {
+			heap[i] = null;
+		}
+		size = newSize;
+		for(int i = (size >> 1) - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized void clear() {
+		for(int i = 0; i < size; i++) {
+			heap[i] = null;
+		}
+		size = 0;
+		queued.clear();
+		requested.clear();
+	}
+
+	private boolean isInRange(Chunk ch) {
+		if(!hasRange) return true;
+		int dx = CubyzMath.matchSign((ch.getX() - minX) & chunkAnd, chunkAnd);
+		int dz = CubyzMath.matchSign((ch.getZ() - minZ) & chunkAnd, chunkAnd);
+		return dx >= 0 && dx < maxX - minX && dz >= 0 && dz < maxZ - minZ;
+	}
+
+	// Squared distance to the player in blocks. Lower values get generated first.
+	private float getPriority(Chunk ch) {
+		float dx = CubyzMath.matchSign(((ch.getX() << 4) + 8 - playerX) & worldAnd, worldAnd);
+		float dz = CubyzMath.matchSign(((ch.getZ() << 4) + 8 - playerZ) & worldAnd, worldAnd);
+		float distSqr = dx*dx + dz*dz;
+		// The chunks right around the player are always needed.
+		if(distSqr <= 32*32) return distSqr;
+		float dot = dx*dirX + dz*dirZ;
+		if(dot < 0 || dot*dot < VIEW_CONE*VIEW_CONE*distSqr) {
+			if(dirX != 0 || dirZ != 0)
+				return distSqr*4;
+		}
+		return distSqr;
+	}
+
+	private void removeTop() {
+		size--;
+		heap[0] = heap[size];
+		priorities[0] = priorities[size];
+		heap[size] = null;
+		siftDown(0);
+	}
+
+	private void siftUp(int i) {
+		Chunk ch = heap[i];
+		float priority = priorities[i];
+		while(i > 0) {
+			int parent = (i - 1) >> 1;
+			if(priorities[parent] <= priority) break;
+			heap[i] = heap[parent];
+			priorities[i] = priorities[parent];
+			i = parent;
+		}
+		heap[i] = ch;
+		priorities[i] = priority;
+	}
+
+	private void siftDown(int i) {
+		Chunk ch = heap[i];
+		float priority = priorities[i];
+		while(true) {
+			int child = 2*i + 1;
+			if(child >= size) break;
+			if(child + 1 < size && priorities[child + 1] < priorities[child]) child++;
+			if(priorities[child] >= priority) break;
+			heap[i] = heap[child];
+			priorities[i] = priorities[child];
+			i = child;
+		}
+		heap[i] = ch;
+		priorities[i] = priority;
+	}
+}
@@ -0,0 +1,271 @@
+package io.cubyz.world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent hash map from chunk coordinates(two ints packed into one long) to some per chunk object.<br>
+ * Uses open addressing on primitive keys, so there is no boxing and lookups stay O(1) no matter how many chunks are loaded.<br>
+ * The table is split into independently locked segments, so the chunk generation threads and the main thread rarely block each other.
+ * @param <T> type of the stored values. null values are not allowed.
+ */
+
+public class ChunkMap<T> {
+	private static final int SEGMENT_BITS = 4;
+	private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+	private final Segment<T>[] segments;
+
+	public ChunkMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize number of entries the map should hold without resizing.
+	 */
+	@SuppressWarnings("unchecked")
+	public ChunkMap(int expectedSize) {
+		segments = new Segment[SEGMENTS];
+		int perSegment = Math.max(4, expectedSize/SEGMENTS);
+		for(int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment<>(perSegment);
+		}
+	}
+
+	public static long key(int x, int z) {
+		return ((long)x << 32) | (z & 0xffffffffL);
+	}
+
+	public static int keyX(long key) {
+		return (int)(key >> 32);
+	}
+
+	public static int keyZ(long key) {
+		return (int)key;
+	}
+
+	private static int hash(long key) {
+		key *= 0x9E3779B97F4A7C15L; // Fibonacci hashing. Neighboring chunks end up far apart.
+		return (int)(key ^ (key >>> 32));
+	}
+
+	private Segment<T> segmentFor(int hash) {
+		return segments[hash >>> (32 - SEGMENT_BITS)];
+	}
+
+	public T get(int x, int z) {
+		long key = key(x, z);
+		int hash = hash(key);
+		return segmentFor(hash).get(key, hash);
+	}
+
+	/**
+	 * @return the previous value or null.
+	 */
+	public T put(int x, int z, T value) {
+		if(value == null) throw new NullPointerException();
+		long key = key(x, z);
+		int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, false);
+	}
+
+	/**
+	 * @return the value that is in the map after the call. That is the given value, if there was no mapping before.
+	 */
+	public T putIfAbsent(int x, int z, T value) {
+		if(value == null) throw new NullPointerException();
+		long key = key(x, z);
+		int hash = hash(key);
+		T old = segmentFor(hash).put(key, hash, value, true);
+		return old == null ? value : old;
+	}
+
+	/**
+	 * @return the removed value or null.
+	 */
+	public T remove(int x, int z) {
+		long key = key(x, z);
+		int hash = hash(key);
+		return segmentFor(hash).remove(key, hash, null);
+	}
+
+	/**
+	 * Only removes the entry if it is still mapped to the given value.
+	 * @return true if something was removed.
+	 */
+	public boolean remove(int x, int z, T value) {
+		long key = key(x, z);
+		int hash = hash(key);
+		return segmentFor(hash).remove(key, hash, value) != null;
+	}
+
+	public int size() {
+		int size = 0;
+		for(Segment<T> s : segments) {
+			size += s.size;
+		}
+		return size;
+	}
+
+	public void clear() {
+		for(Segment<T> s : segments) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * Calls the action on every value. Each segment is locked while its values are being visited, so don't do anything expensive or modify this map inside of it.
+	 */
+	public void forEach(Consumer<? super T> action) {
+		for(Segment<T> s : segments) {
+			s.forEach(action);
+		}
+	}
+
+	/**
+	 * Removes all values that match the filter.
+	 * @return number of removed entries.
+	 */
+	public int removeIf(Predicate<? super T> filter) {
+		int removed = 0;
+		for(Segment<T> s : segments) {
+			removed += s.removeIf(filter);
+		}
+		return removed;
+	}
+
+	/**
+	 * @return a snapshot of all values.
+	 */
+	public List<T> values() {
+		ArrayList<T> list = new ArrayList<>(size());
+		forEach(list::add);
+		return list;
+	}
+
+	// Linear probing table with backward shift deletion, so no tombstones are needed.
+	private static final class Segment<T> {
+		long[] keys;
+		Object[] values;
+		int mask;
+		volatile int size;
+
+		Segment(int capacity) {
+			int cap = Integer.highestOneBit(Math.max(4, capacity)*2 - 1);
+			keys = new long[cap];
+			values = new Object[cap];
+			mask = cap - 1;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized T get(long key, int hash) {
+			int i = hash & mask;
+			while(values[i] != null) {
+				if(keys[i] == key) return (T)values[i];
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized T put(long key, int hash, T value, boolean onlyIfAbsent) {
+			int i = hash & mask;
+			while(values[i] != null) {
+				if(keys[i] == key) {
+					T old = (T)values[i];
+					if(!onlyIfAbsent)
+						values[i] = value;
+					return old;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = value;
+			size++;
+			if(size*4 > keys.length*3) // Keep the load factor below 0.75
+				resize(keys.length << 1);
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized T remove(long key, int hash, T expected) {
+			int i = hash & mask;
+			while(values[i] != null) {
+				if(keys[i] == key) {
+					T old = (T)values[i];
+					if(expected != null && old != expected) return null;
+					removeAt(i);
+					return old;
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		synchronized void clear() {
+			keys = new long[keys.length];
+			values = new Object[values.length];
+			size = 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized void forEach(Consumer<? super T> action) {
+			for(int i = 0; i < values.length; i++) {
+				if(values[i] != null)
+					action.accept((T)values[i]);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized int removeIf(Predicate<? super T> filter) {
+			int removed = 0;
+			for(int i = 0; i < values.length; i++) {
+				// Shifting may move another candidate into slot i, so check the same slot again after a removal.
+				while(values[i] != null && filter.test((T)values[i])) {
+					removeAt(i);
+					removed++;
+				}
+			}
+			return removed;
+		}
+
+		private void removeAt(int i) {
+			values[i] = null;
+			size--;
+			// Move later entries of the same probe chain back into the gap:
+			int j = i;
+			while(true) {
+				j = (j + 1) & mask;
+				if(values[j] == null) return;
+				int home = hash(keys[j]) & mask;
+				// Only move the entry if its home slot isn't cyclically in (i, j]
+				if(i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+					keys[i] = keys[j];
+					values[i] = values[j];
+					values[j] = null;
+					i = j;
+				}
+			}
+		}
+
+		private void resize(int newCapacity) {
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+			keys = new long[newCapacity];
+			values = new Object[newCapacity];
+			mask = newCapacity - 1;
+			for(int i = 0; i < oldValues.length; i++) {
+				if(oldValues[i] != null) {
+					int j = hash(oldKeys[i]) & mask;
+					while(values[j] != null) {
+						j = (j + 1) & mask;
+					}
+					keys[j] = oldKeys[i];
+					values[j] = oldValues[i];
+				}
+			}
+		}
+	}
+}
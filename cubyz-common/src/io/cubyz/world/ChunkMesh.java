@@ -0,0 +1,70 @@
+package io.cubyz.world;
+
+import io.cubyz.blocks.Block;
+import io.cubyz.blocks.BlockInstance;
+
+/**
+ * Geometry of the opaque blocks of a chunk, created by the ChunkMesher.<br>
+ * Each quad covers a rectangle of equal faces and is stored as 4 vertices. The quads are grouped by block, so every group can be drawn with one texture.
+ * Positions are relative to the lower corner of the chunk, so the corner of a block at (x, y, z) is at (x, y, z) and the block center at (x+0.5, y+0.5, z+0.5).
+ * Texture coordinates are given in blocks and should be repeated every block.
+ * The light values are stored like the light nodes of the chunk: sun << 24 | r << 16 | g << 8 | b.
+ */
+
+public class ChunkMesh {
+	public static final int VERTICES_PER_QUAD = 4;
+
+	public final Chunk chunk;
+	/** The block of each group. */
+	public final Block[] blocks;
+	/** The first quad of each group. The last entry is the total quad count. */
+	public final int[] groupStart;
+	/** 3 per vertex */
+	public final float[] positions;
+	/** 2 per vertex */
+	public final float[] texCoords;
+	/** 3 per vertex */
+	public final float[] normals;
+	/** 1 per vertex */
+	public final int[] light;
+	/** Visible blocks that are not part of the mesh, like water or leaves. */
+	public final BlockInstance[] others;
+	/** Can be used by the renderer to store the uploaded buffers. */
+	public Object renderData;
+
+	ChunkMesh(Chunk chunk, Block[] blocks, int[] groupStart, float[] positions, float[] texCoords, float[] normals, int[] light, BlockInstance[] others) {
+		this.chunk = chunk;
+		this.blocks = blocks;
+		this.groupStart = groupStart;
+		this.positions = positions;
+		this.texCoords = texCoords;
+		this.normals = normals;
+		this.light = light;
+		this.others = others;
+	}
+
+	public int getQuadCount() {
+		return groupStart[blocks.length];
+	}
+
+	public int getVertexCount() {
+		return getQuadCount()*VERTICES_PER_QUAD;
+	}
+
+	/**
+	 * Creates the indices for drawing the given amount of quads as triangles. They are the same for every mesh.
+	 */
+	public static int[] createIndices(int quads) {
+		int[] indices = new int[quads*6];
+		for(int i = 0; i < quads; i++) {
+			int v = i*VERTICES_PER_QUAD;
+			indices[i*6] = v;
+			indices[i*6 + 1] = v + 1;
+			indices[i*6 + 2] = v + 2;
+			indices[i*6 + 3] = v + 2;
+			indices[i*6 + 4] = v + 3;
+			indices[i*6 + 5] = v;
+		}
+		return indices;
+	}
+}
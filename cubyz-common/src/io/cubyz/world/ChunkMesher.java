@@ -0,0 +1,346 @@
+package io.cubyz.world;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+import io.cubyz.CubyzLogger;
+import io.cubyz.blocks.Block;
+import io.cubyz.blocks.BlockInstance;
+
+/**
+ * Creates the ChunkMeshes of changed chunks on worker threads.<br>
+ * Faces of the same block that lie next to each other are merged into one quad(greedy meshing), as long as they have the same light on all corners.
+ * Doesn't need OpenGL, so it also works without a window.
+ */
+
+public class ChunkMesher {
+	private static final int X = 0, Y = 1, Z = 2;
+	// Same order as the neighbors in Chunk: -x, +x, +z, -z, down, up
+	private static final int[] DX = {-1, 1, 0, 0, 0, 0};
+	private static final int[] DY = {0, 0, 0, 0, -1, 1};
+	private static final int[] DZ = {0, 0, 1, -1, 0, 0};
+	private static final int QUAD_SIZE = 11; // Ints per quad in the scratch list: block ID, direction, plane, u, v, w, h, 4 corner lights
+	private static final ThreadLocal<MeshBuilder> builders = ThreadLocal.withInitial(MeshBuilder::new);
+
+	private final LinkedBlockingDeque<Chunk> queue = new LinkedBlockingDeque<>();
+	private final ChunkMap<Chunk> queued = new ChunkMap<>();
+	private final ArrayList<Thread> threads = new ArrayList<>();
+
+	/**
+	 * @param meshable decides which blocks are part of the mesh. All others are stored in ChunkMesh.others.
+	 */
+	public ChunkMesher(int threadCount, Predicate<Block> meshable) {
+		for(int i = 0; i < threadCount; i++) {
+			Thread thread = new Thread(() -> {
+				while(true) {
+					try {
+						Chunk ch = queue.take();
+						queued.remove(ch.getX(), ch.getZ(), ch);
+						if(!ch.needsMesh()) continue;
+						ch.startMeshing();
+						try {
+							ch.setMesh(generateMesh(ch, meshable));
+						} catch(RuntimeException e) {
+							if(ch.needsMesh()) {
+								// The chunk was changed while reading it, which can break the reading. The new state needs a mesh anyway:
+								queue(ch);
+							} else {
+								CubyzLogger.instance.log(Level.SEVERE, "Couldn't create the mesh of chunk " + ch.getX() + " " + ch.getZ(), e);
+							}
+						}
+					} catch(InterruptedException e) {
+						break;
+					}
+				}
+			});
+			thread.setName("Chunk-Mesher-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+	}
+
+	public ChunkMesher(int threadCount) {
+		this(threadCount, b -> !b.isTransparent());
+	}
+
+	/**
+	 * Queues the chunk, if it needs a new mesh and isn't queued already.
+	 */
+	public void queue(Chunk ch) {
+		if(ch.needsMesh() && queued.putIfAbsent(ch.getX(), ch.getZ(), ch) == ch)
+			queue.add(ch);
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	public void stop() {
+		for(Thread thread : threads) {
+			thread.interrupt();
+		}
+		for(Thread thread : threads) {
+			try {
+				thread.join();
+			} catch(InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		threads.clear();
+	}
+
+	/**
+	 * Creates the mesh of a chunk on the calling thread.
+	 */
+	public static ChunkMesh generateMesh(Chunk ch, Predicate<Block> meshable) {
+		return builders.get().build(ch, meshable);
+	}
+
+	private static int getX(int axis, int n, int u, int v) {
+		return axis == X ? n : u;
+	}
+
+	private static int getY(int axis, int n, int u, int v) {
+		return axis == Y ? n : v;
+	}
+
+	private static int getZ(int axis, int n, int u, int v) {
+		return axis == X ? u : axis == Z ? n : v;
+	}
+
+	// Scratch space of one thread.
+	private static class MeshBuilder {
+		final Block[] mask = new Block[16*World.WORLD_HEIGHT];
+		final int[] maskLight = new int[16*World.WORLD_HEIGHT];
+		final boolean[] maskUniform = new boolean[16*World.WORLD_HEIGHT];
+		int[] quads = new int[QUAD_SIZE*1024];
+		int quadCount;
+		Block[] blocksByID = new Block[64];
+		Chunk ch, nx0, nx1, nz0, nz1, nxz;
+		Predicate<Block> meshable;
+
+		ChunkMesh build(Chunk ch, Predicate<Block> meshable) {
+			this.ch = ch;
+			this.meshable = meshable;
+			nx0 = ch.getNeighbor(-1, 0);
+			nx1 = ch.getNeighbor(1, 0);
+			nz0 = ch.getNeighbor(0, -1);
+			nz1 = ch.getNeighbor(0, 1);
+			nxz = ch.getNeighbor(1, 1);
+			quadCount = 0;
+			int height = 0; // Everything above is air.
+			for(int y = World.WORLD_HEIGHT - 1; y >= 0 && height == 0; y--) {
+				for(int xz = 0; xz < 256; xz++) {
+					if(ch.getBlockAt(xz >> 4, y, xz & 15) != null) {
+						height = y + 1;
+						break;
+					}
+				}
+			}
+			for(int d = 0; d < 6; d++) {
+				int axis = d < 2 ? X : d < 4 ? Z : Y;
+				boolean positive = DX[d] + DY[d] + DZ[d] > 0;
+				int sizeN = axis == Y ? height : 16;
+				int sizeU = 16;
+				int sizeV = axis == Y ? 16 : height;
+				for(int n = 0; n < sizeN; n++) {
+					int plane = positive ? n + 1 : n;
+					if(fillMask(d, axis, n, plane, sizeU, sizeV))
+						mergeFaces(d, axis, plane, sizeU, sizeV);
+				}
+			}
+			ChunkMesh mesh = createMesh();
+			this.ch = nx0 = nx1 = nz0 = nz1 = nxz = null;
+			this.meshable = null;
+			return mesh;
+		}
+
+		// Returns true if there is at least one face in the slice.
+		boolean fillMask(int d, int axis, int n, int plane, int sizeU, int sizeV) {
+			boolean any = false;
+			for(int v = 0; v < sizeV; v++) {
+				for(int u = 0; u < sizeU; u++) {
+					int i = u + v*sizeU;
+					mask[i] = null;
+					int x = getX(axis, n, u, v);
+					int y = getY(axis, n, u, v);
+					int z = getZ(axis, n, u, v);
+					Block b = ch.getBlockAt(x, y, z);
+					if(b == null || !meshable.test(b) || !isFaceVisible(x + DX[d], y + DY[d], z + DZ[d])) continue;
+					int light = getLight(getX(axis, plane, u, v), getY(axis, plane, u, v), getZ(axis, plane, u, v));
+					mask[i] = b;
+					maskLight[i] = light;
+					maskUniform[i] = light == getLight(getX(axis, plane, u+1, v), getY(axis, plane, u+1, v), getZ(axis, plane, u+1, v))
+							&& light == getLight(getX(axis, plane, u+1, v+1), getY(axis, plane, u+1, v+1), getZ(axis, plane, u+1, v+1))
+							&& light == getLight(getX(axis, plane, u, v+1), getY(axis, plane, u, v+1), getZ(axis, plane, u, v+1));
+					any = true;
+				}
+			}
+			return any;
+		}
+
+		boolean canMerge(int i, int j) {
+			return mask[j] == mask[i] && maskUniform[j] && maskLight[j] == maskLight[i];
+		}
+
+		void mergeFaces(int d, int axis, int plane, int sizeU, int sizeV) {
+			for(int v = 0; v < sizeV; v++) {
+				for(int u = 0; u < sizeU; u++) {
+					int i = u + v*sizeU;
+					Block b = mask[i];
+					if(b == null) continue;
+					int w = 1, h = 1;
+					if(maskUniform[i]) {
+						while(u + w < sizeU && canMerge(i, i + w)) {
+							w++;
+						}
+						extend:
+						while(v + h < sizeV) {
+							for(int k = 0; k < w; k++) {
+								if(!canMerge(i, i + h*sizeU + k)) break extend;
+							}
+							h++;
+						}
+					}
+					int l0 = maskLight[i], l1 = l0, l2 = l0, l3 = l0;
+					if(!maskUniform[i]) {
+						l1 = getLight(getX(axis, plane, u+1, v), getY(axis, plane, u+1, v), getZ(axis, plane, u+1, v));
+						l2 = getLight(getX(axis, plane, u+1, v+1), getY(axis, plane, u+1, v+1), getZ(axis, plane, u+1, v+1));
+						l3 = getLight(getX(axis, plane, u, v+1), getY(axis, plane, u, v+1), getZ(axis, plane, u, v+1));
+					}
+					addQuad(b, d, plane, u, v, w, h, l0, l1, l2, l3);
+					for(int dv = 0; dv < h; dv++) {
+						for(int du = 0; du < w; du++) {
+							mask[i + dv*sizeU + du] = null;
+						}
+					}
+				}
+			}
+		}
+
+		void addQuad(Block b, int d, int plane, int u, int v, int w, int h, int l0, int l1, int l2, int l3) {
+			if(b.ID >= blocksByID.length) {
+				Block[] newBlocks = new Block[Math.max(b.ID + 1, blocksByID.length*2)];
+				System.arraycopy(blocksByID, 0, newBlocks, 0, blocksByID.length);
+				blocksByID = newBlocks;
+			}
+			blocksByID[b.ID] = b;
+			if((quadCount + 1)*QUAD_SIZE > quads.length) {
+				int[] newQuads = new int[quads.length*2];
+				System.arraycopy(quads, 0, newQuads, 0, quadCount*QUAD_SIZE);
+				quads = newQuads;
+			}
+			int i = quadCount*QUAD_SIZE;
+			quads[i] = b.ID;
+			quads[i+1] = d;
+			quads[i+2] = plane;
+			quads[i+3] = u;
+			quads[i+4] = v;
+			quads[i+5] = w;
+			quads[i+6] = h;
+			quads[i+7] = l0;
+			quads[i+8] = l1;
+			quads[i+9] = l2;
+			quads[i+10] = l3;
+			quadCount++;
+		}
+
+		// Sorts the quads by block and turns them into vertices.
+		ChunkMesh createMesh() {
+			int[] count = new int[blocksByID.length + 1];
+			for(int q = 0; q < quadCount; q++) {
+				count[quads[q*QUAD_SIZE] + 1]++;
+			}
+			int groups = 0;
+			for(int id = 0; id < blocksByID.length; id++) {
+				if(count[id + 1] != 0) groups++;
+			}
+			Block[] blocks = new Block[groups];
+			int[] groupStart = new int[groups + 1];
+			int[] next = new int[blocksByID.length]; // Where the next quad of each block goes.
+			int group = 0;
+			int start = 0;
+			for(int id = 0; id < blocksByID.length; id++) {
+				if(count[id + 1] == 0) continue;
+				blocks[group] = blocksByID[id];
+				groupStart[group] = start;
+				next[id] = start;
+				start += count[id + 1];
+				group++;
+			}
+			groupStart[groups] = start;
+			int vertices = quadCount*ChunkMesh.VERTICES_PER_QUAD;
+			float[] positions = new float[vertices*3];
+			float[] texCoords = new float[vertices*2];
+			float[] normals = new float[vertices*3];
+			int[] light = new int[vertices];
+			int[] cornerU = new int[4], cornerV = new int[4], cornerLight = new int[4];
+			for(int q = 0; q < quadCount; q++) {
+				int i = q*QUAD_SIZE;
+				int d = quads[i+1];
+				int axis = d < 2 ? X : d < 4 ? Z : Y;
+				int plane = quads[i+2];
+				int u = quads[i+3], v = quads[i+4], w = quads[i+5], h = quads[i+6];
+				// The corners need to be counter-clockwise when looking at the face:
+				boolean reverse = d == 1 || d == 3 || d == 5;
+				for(int c = 0; c < 4; c++) {
+					int corner = reverse ? (4 - c) & 3 : c;
+					cornerU[c] = corner == 1 || corner == 2 ? u + w : u;
+					cornerV[c] = corner >= 2 ? v + h : v;
+					cornerLight[c] = quads[i + 7 + corner];
+				}
+				int vertex = next[quads[i]]++*ChunkMesh.VERTICES_PER_QUAD;
+				for(int c = 0; c < 4; c++, vertex++) {
+					positions[vertex*3] = getX(axis, plane, cornerU[c], cornerV[c]);
+					positions[vertex*3 + 1] = getY(axis, plane, cornerU[c], cornerV[c]);
+					positions[vertex*3 + 2] = getZ(axis, plane, cornerU[c], cornerV[c]);
+					texCoords[vertex*2] = cornerU[c] - u;
+					texCoords[vertex*2 + 1] = cornerV[c] - v;
+					normals[vertex*3] = DX[d];
+					normals[vertex*3 + 1] = DY[d];
+					normals[vertex*3 + 2] = DZ[d];
+					light[vertex] = cornerLight[c];
+				}
+			}
+			for(int id = 0; id < blocksByID.length; id++) {
+				blocksByID[id] = null;
+			}
+			// Collect the visible blocks that aren't part of the mesh:
+			ArrayList<BlockInstance> others = new ArrayList<>();
+			BlockInstance[] visibles = ch.getVisibles();
+			for(int i = 0; i < visibles.length && visibles[i] != null; i++) {
+				Block b = visibles[i].getBlock();
+				if(!meshable.test(b))
+					others.add(visibles[i]);
+			}
+			return new ChunkMesh(ch, blocks, groupStart, positions, texCoords, normals, light, others.toArray(new BlockInstance[others.size()]));
+		}
+
+		// A face is visible if the block in front of it doesn't cover it. Faces next to chunks that aren't generated yet stay hidden until the neighbor is there.
+		boolean isFaceVisible(int x, int y, int z) {
+			if(y < 0) return false;
+			if(y >= World.WORLD_HEIGHT) return true;
+			Chunk other = ch;
+			if(x < 0) other = nx0;
+			else if(x > 15) other = nx1;
+			else if(z < 0) other = nz0;
+			else if(z > 15) other = nz1;
+			if(other == null) return false;
+			Block b = other.getBlockAt(x & 15, y, z & 15);
+			return b == null || b.isTransparent();
+		}
+
+		// Light nodes at x = 16 or z = 16 belong to the neighbors.
+		int getLight(int x, int y, int z) {
+			if(y >= World.WORLD_HEIGHT) return 0xff000000;
+			Chunk other = ch;
+			if(x > 15) other = z > 15 ? nxz : nx1;
+			else if(z > 15) other = nz1;
+			if(other == null) return 0;
+			return other.getRawLight(x & 15, y, z & 15);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package io.cubyz.world;
+
+import java.util.function.Predicate;
+
+import io.cubyz.blocks.Block;
+
+/**
+ * Stores the blocks of a 16×16×16 part of a chunk as indices into a palette.<br>
+ * The indices are bit-packed into longs using 1, 2, 4, 8 or 16 bits, depending on the palette size.
+ * If the section only contains one kind of block no index data is needed at all.<br>
+ * Air is stored as null.
+ */
+
+public class ChunkSection {
+	public static final int SIZE = 16*16*16;
+
+	private Block[] palette;
+	private int paletteSize;
+	private long[] data; // null if the palette only has one entry. The number of bits per entry is data.length/64.
+	private int nonAirBlocks;
+
+	/**
+	 * Creates a section that is completely filled with the given block.
+	 */
+	public ChunkSection(Block fill) {
+		palette = new Block[] {fill};
+		paletteSize = 1;
+		nonAirBlocks = fill == null ? 0 : SIZE;
+	}
+
+	/**
+	 * Creates a section with the smallest possible amount of bits per block.
+	 * @param palette must not contain duplicates.
+	 * @param indices palette index of every block, by (x << 4) | (y << 8) | z
+	 */
+	public ChunkSection(Block[] palette, int[] indices) {
+		this.palette = palette;
+		paletteSize = palette.length;
+		for(int i = 0; i < SIZE; i++) {
+			if(palette[indices[i]] != null) nonAirBlocks++;
+		}
+		if(paletteSize > 1) {
+			int bits = 1;
+			while((1 << bits) < paletteSize) {
+				bits <<= 1;
+			}
+			data = new long[bits << 6];
+			for(int i = 0; i < SIZE; i++) {
+				int bitIndex = i*bits;
+				data[bitIndex >>> 6] |= (long)indices[i] << (bitIndex & 63);
+			}
+		}
+	}
+
+	/**
+	 * @param index (x << 4) | (y << 8) | z
+	 */
+	public Block get(int index) {
+		// Read everything into local variables, so the generation threads of neighboring chunks always see a consistent state.
+		long[] data = this.data;
+		Block[] palette = this.palette;
+		if(data == null) return palette[0];
+		int bits = data.length >>> 6;
+		int bitIndex = index*bits;
+		int paletteIndex = (int)(data[bitIndex >>> 6] >>> (bitIndex & 63)) & ((1 << bits) - 1);
+		if(paletteIndex >= palette.length) return null;
+		return palette[paletteIndex];
+	}
+
+	/**
+	 * @param index (x << 4) | (y << 8) | z
+	 * @return the block that was there before.
+	 */
+	public Block set(int index, Block b) {
+		int paletteIndex = paletteIndexOf(b);
+		if(paletteIndex == -1) {
+			if(paletteSize == capacity()) {
+				resize(data == null ? 1 : (data.length >>> 6) << 1);
+			}
+			if(paletteSize == palette.length) {
+				Block[] newPalette = new Block[palette.length << 1];
+				System.arraycopy(palette, 0, newPalette, 0, paletteSize);
+				palette = newPalette;
+			}
+			paletteIndex = paletteSize;
+			palette[paletteSize++] = b;
+		}
+		Block old;
+		if(data == null) {
+			old = palette[0];
+		} else {
+			int bits = data.length >>> 6;
+			int bitIndex = index*bits;
+			long mask = (1L << bits) - 1;
+			int shift = bitIndex & 63;
+			old = palette[(int)(data[bitIndex >>> 6] >>> shift & mask)];
+			data[bitIndex >>> 6] = (data[bitIndex >>> 6] & ~(mask << shift)) | ((long)paletteIndex << shift);
+		}
+		if(old == null && b != null) nonAirBlocks++;
+		if(old != null && b == null) nonAirBlocks--;
+		return old;
+	}
+
+	/**
+	 * @return true if the palette contains a block that matches the condition. Air isn't tested.
+	 */
+	public boolean paletteContains(Predicate<Block> condition) {
+		Block[] palette = this.palette;
+		for(int i = 0; i < palette.length; i++) {
+			if(palette[i] != null && condition.test(palette[i])) return true;
+		}
+		return false;
+	}
+
+	public boolean isEmpty() {
+		return nonAirBlocks == 0;
+	}
+
+	/**
+	 * Removes unused palette entries and uses the smallest possible amount of bits per block.
+	 * Should be called after bigger changes like world generation.
+	 */
+	public void compact() {
+		if(data == null) return;
+		int[] newIndex = new int[paletteSize];
+		boolean[] used = new boolean[paletteSize];
+		for(int i = 0; i < SIZE; i++) {
+			used[getPaletteIndex(i)] = true;
+		}
+		int newSize = 0;
+		for(int i = 0; i < paletteSize; i++) {
+			if(used[i]) {
+				newIndex[i] = newSize++;
+			}
+		}
+		Block[] newPalette = new Block[newSize];
+		for(int i = 0; i < paletteSize; i++) {
+			if(used[i]) {
+				newPalette[newIndex[i]] = palette[i];
+			}
+		}
+		long[] newData = null;
+		if(newSize > 1) {
+			int bits = 1;
+			while((1 << bits) < newSize) {
+				bits <<= 1;
+			}
+			newData = new long[bits << 6];
+			for(int i = 0; i < SIZE; i++) {
+				int bitIndex = i*bits;
+				newData[bitIndex >>> 6] |= (long)newIndex[getPaletteIndex(i)] << (bitIndex & 63);
+			}
+		}
+		// Publish the palette first. Readers handle out of range indices, but not missing palette entries.
+		palette = newPalette;
+		paletteSize = newSize;
+		data = newData;
+	}
+
+	private int capacity() {
+		if(data == null) return 1;
+		int bits = data.length >>> 6;
+		return bits >= 16 ? 65536 : 1 << bits;
+	}
+
+	private int paletteIndexOf(Block b) {
+		for(int i = 0; i < paletteSize; i++) {
+			if(palette[i] == b) return i;
+		}
+		return -1;
+	}
+
+	private int getPaletteIndex(int index) {
+		if(data == null) return 0;
+		int bits = data.length >>> 6;
+		int bitIndex = index*bits;
+		return (int)(data[bitIndex >>> 6] >>> (bitIndex & 63)) & ((1 << bits) - 1);
+	}
+
+	private void resize(int bits) {
+		long[] newData = new long[bits << 6];
+		for(int i = 0; i < SIZE; i++) {
+			int bitIndex = i*bits;
+			newData[bitIndex >>> 6] |= (long)getPaletteIndex(i) << (bitIndex & 63);
+		}
+		data = newData;
+	}
+}
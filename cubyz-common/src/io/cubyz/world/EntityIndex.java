@@ -0,0 +1,160 @@
+package io.cubyz.world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import io.cubyz.entity.Entity;
+import io.cubyz.math.CubyzMath;
+import io.cubyz.math.Vector3fi;
+
+/**
+ * Stores the entities of a surface in buckets of the chunk they are in, so range and nearest queries only look at the entities around the position.<br>
+ * The array returned by {@link #getSnapshot()} is only replaced when entities get added or removed, so it can be used every frame by the renderer.
+ */
+
+public class EntityIndex {
+	private static final Entity[] EMPTY = new Entity[0];
+
+	private final int worldAnd;
+	private final ArrayList<Entity> entities = new ArrayList<>();
+	private final HashMap<Long, ArrayList<Entity>> buckets = new HashMap<>();
+	private final HashMap<Entity, Long> keys = new HashMap<>(); // The bucket each entity is currently in.
+	private volatile Entity[] snapshot = EMPTY;
+
+	public EntityIndex(int worldAnd) {
+		this.worldAnd = worldAnd;
+	}
+
+	private long getKey(int cx, int cz) {
+		cx &= worldAnd >>> 4;
+		cz &= worldAnd >>> 4;
+		return (long)cx << 32 | cz;
+	}
+
+	private long getKey(Entity ent) {
+		Vector3fi pos = ent.getPosition();
+		return getKey((pos.x + (int)Math.floor(pos.relX)) >> 4, (pos.z + (int)Math.floor(pos.relZ)) >> 4);
+	}
+
+	public synchronized void add(Entity ent) {
+		if (keys.containsKey(ent)) return;
+		long key = getKey(ent);
+		keys.put(ent, key);
+		buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(ent);
+		entities.add(ent);
+		snapshot = entities.toArray(new Entity[entities.size()]);
+	}
+
+	public synchronized void remove(Entity ent) {
+		Long key = keys.remove(ent);
+		if (key == null) return;
+		removeFromBucket(ent, key);
+		entities.remove(ent);
+		snapshot = entities.toArray(new Entity[entities.size()]);
+	}
+
+	public synchronized void clear() {
+		entities.clear();
+		buckets.clear();
+		keys.clear();
+		snapshot = EMPTY;
+	}
+
+	private void removeFromBucket(Entity ent, long key) {
+		ArrayList<Entity> bucket = buckets.get(key);
+		bucket.remove(ent);
+		if (bucket.isEmpty())
+			buckets.remove(key);
+	}
+
+	/**
+	 * Needs to be called after the entity moved, so it gets into the bucket of its new chunk.
+	 */
+	public synchronized void update(Entity ent) {
+		Long oldKey = keys.get(ent);
+		if (oldKey == null) return;
+		long key = getKey(ent);
+		if (key == oldKey) return;
+		removeFromBucket(ent, oldKey);
+		keys.put(ent, key);
+		buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(ent);
+	}
+
+	/**
+	 * @return all entities. The array must not be changed.
+	 */
+	public Entity[] getSnapshot() {
+		return snapshot;
+	}
+
+	public int size() {
+		return snapshot.length;
+	}
+
+	private float distanceSquared(Entity ent, Vector3fi pos) {
+		Vector3fi other = ent.getPosition();
+		float dx = CubyzMath.matchSign((other.x - pos.x) & worldAnd, worldAnd) + other.relX - pos.relX;
+		float dy = other.y - pos.y;
+		float dz = CubyzMath.matchSign((other.z - pos.z) & worldAnd, worldAnd) + other.relZ - pos.relZ;
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	/**
+	 * Adds all entities within the given distance to the list.
+	 * @return the list
+	 */
+	public synchronized List<Entity> getInRange(Vector3fi pos, float range, List<Entity> result) {
+		int chunkRange = Math.min((int)Math.ceil(range) + 15 >> 4, worldAnd >>> 5); // Don't look at a chunk twice, if the range is bigger than the world.
+		int cx = pos.x + (int)Math.floor(pos.relX) >> 4;
+		int cz = pos.z + (int)Math.floor(pos.relZ) >> 4;
+		float rangeSquared = range*range;
+		for (int x = cx - chunkRange; x <= cx + chunkRange; x++) {
+			for (int z = cz - chunkRange; z <= cz + chunkRange; z++) {
+				ArrayList<Entity> bucket = buckets.get(getKey(x, z));
+				if (bucket == null) continue;
+				for (int i = 0; i < bucket.size(); i++) {
+					Entity ent = bucket.get(i);
+					if (distanceSquared(ent, pos) <= rangeSquared) {
+						result.add(ent);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param type only entities of this class(or subclasses) are considered. Can be Entity.class for all entities.
+	 * @return the nearest entity within the range or null if there is none.
+	 */
+	public synchronized <T extends Entity> T getNearest(Vector3fi pos, float range, Class<T> type) {
+		int chunkRange = Math.min((int)Math.ceil(range) + 15 >> 4, worldAnd >>> 5);
+		int cx = pos.x + (int)Math.floor(pos.relX) >> 4;
+		int cz = pos.z + (int)Math.floor(pos.relZ) >> 4;
+		T nearest = null;
+		float best = range*range;
+		// Goes through the chunks in rings around the center, so it can stop as soon as no closer entity is possible.
+		for (int ring = 0; ring <= chunkRange; ring++) {
+			int minDistance = (ring - 1)*16; // Lower bound for the horizontal distance of entities in this ring.
+			if (nearest != null && minDistance > 0 && minDistance*minDistance > best) break;
+			for (int x = cx - ring; x <= cx + ring; x++) {
+				for (int z = cz - ring; z <= cz + ring; z++) {
+					if (Math.abs(x - cx) != ring && Math.abs(z - cz) != ring) continue; // Inner chunks were already checked.
+					ArrayList<Entity> bucket = buckets.get(getKey(x, z));
+					if (bucket == null) continue;
+					for (int i = 0; i < bucket.size(); i++) {
+						Entity ent = bucket.get(i);
+						if (!type.isInstance(ent)) continue;
+						float dist = distanceSquared(ent, pos);
+						if (dist <= best) {
+							best = dist;
+							nearest = type.cast(ent);
+						}
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+}
@@ -0,0 +1,141 @@
+package io.cubyz.world;
+
+import java.util.Arrays;
+
+import io.cubyz.blocks.Block;
+
+/**
+ * The blocks of a chunk during generation, stored as block IDs in one flat array. Air is 0, every other block is stored as its ID + 1.<br>
+ * Each generation thread reuses its own buffer. The blocks are ordered section by section in the same order as in ChunkSection, so they can be packed into the chunk without creating an object per block.
+ * x and y are the horizontal coordinates, just like in the generators, h is the height.
+ * Different threads may change different columns at the same time.
+ */
+
+public class GenerationBuffer {
+	public static final int SIZE = 16*16*World.WORLD_HEIGHT;
+	private static final ThreadLocal<GenerationBuffer> buffers = ThreadLocal.withInitial(GenerationBuffer::new);
+
+	private final short[] ids = new short[SIZE];
+	private Block[] blocks = new Block[256]; // The blocks that were placed so far, by ID.
+	private Block[][][] array; // Only needed for the old generator interfaces.
+	// Used when packing the sections:
+	private int[] paletteIndices = new int[257];
+	private final int[] indices = new int[ChunkSection.SIZE];
+
+	/**
+	 * @return the buffer of the current thread, filled with air.
+	 */
+	public static GenerationBuffer get() {
+		GenerationBuffer buffer = buffers.get();
+		Arrays.fill(buffer.ids, (short)0);
+		return buffer;
+	}
+
+	private static int getIndex(int x, int y, int h) {
+		return h << 8 | x << 4 | y;
+	}
+
+	public Block getBlock(int x, int y, int h) {
+		int id = ids[getIndex(x, y, h)];
+		return id == 0 ? null : blocks[id - 1];
+	}
+
+	/**
+	 * @param b can be null for air.
+	 * @return true if the block at the position is b.
+	 */
+	public boolean is(int x, int y, int h, Block b) {
+		return ids[getIndex(x, y, h)] == (b == null ? 0 : b.ID + 1);
+	}
+
+	public void setBlock(int x, int y, int h, Block b) {
+		if(b == null) {
+			ids[getIndex(x, y, h)] = 0;
+			return;
+		}
+		Block[] blocks = this.blocks;
+		if(b.ID >= blocks.length || blocks[b.ID] != b) {
+			addBlock(b);
+		}
+		ids[getIndex(x, y, h)] = (short)(b.ID + 1);
+	}
+
+	// Synchronized, because column-parallel generators might add blocks at the same time.
+	private synchronized void addBlock(Block b) {
+		if(b.ID >= blocks.length) {
+			blocks = Arrays.copyOf(blocks, Math.max(b.ID + 1, blocks.length*2));
+		}
+		blocks[b.ID] = b;
+	}
+
+	/**
+	 * Packs one 16×16×16 section of the buffer.
+	 * @param sy height of the section >> 4
+	 * @return null if the section only contains air.
+	 */
+	ChunkSection createSection(int sy) {
+		int start = sy << 12;
+		if(paletteIndices.length < blocks.length + 1) {
+			paletteIndices = new int[blocks.length + 1];
+		}
+		// paletteIndices stores the palette index + 1 of every ID in this section.
+		Block[] palette = new Block[16];
+		int paletteSize = 0;
+		boolean onlyAir = true;
+		for(int i = 0; i < ChunkSection.SIZE; i++) {
+			int id = ids[start + i];
+			onlyAir &= id == 0;
+			int index = paletteIndices[id] - 1;
+			if(index < 0) {
+				if(paletteSize == palette.length) {
+					palette = Arrays.copyOf(palette, paletteSize*2);
+				}
+				index = paletteSize++;
+				palette[index] = id == 0 ? null : blocks[id - 1];
+				paletteIndices[id] = index + 1;
+			}
+			indices[i] = index;
+		}
+		for(int i = 0; i < paletteSize; i++) {
+			Block b = palette[i];
+			paletteIndices[b == null ? 0 : b.ID + 1] = 0;
+		}
+		if(onlyAir) return null;
+		return new ChunkSection(Arrays.copyOf(palette, paletteSize), indices);
+	}
+
+	/**
+	 * Adapter for generators that still use a Block[][][].
+	 * @return an array with the same blocks, reused for every chunk on this thread.
+	 */
+	public Block[][][] toArray() {
+		if(array == null) {
+			array = new Block[16][16][World.WORLD_HEIGHT];
+		}
+		copyTo(array);
+		return array;
+	}
+
+	public void copyTo(Block[][][] array) {
+		for(int x = 0; x < 16; x++) {
+			for(int y = 0; y < 16; y++) {
+				for(int h = 0; h < World.WORLD_HEIGHT; h++) {
+					array[x][y][h] = getBlock(x, y, h);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the blocks back, for example after a generator changed the array returned by toArray.
+	 */
+	public void fromArray(Block[][][] array) {
+		for(int x = 0; x < 16; x++) {
+			for(int y = 0; y < 16; y++) {
+				for(int h = 0; h < World.WORLD_HEIGHT; h++) {
+					setBlock(x, y, h, array[x][y][h]);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package io.cubyz.world;
+
+/**
+ * Ring buffer of light nodes that still need to be updated.<br>
+ * Nodes are packed into one int relative to the chunk that started the update, so lighting doesn't allocate anything per node.
+ * Each thread uses its own queue, which grows if needed and is reused afterwards.
+ */
+
+class LightQueue {
+	// x and z use 10 bits each with sign, y uses 8 bits.
+	static final int MAX_DISTANCE = 511;
+
+	private int[] nodes = new int[4096];
+	private int mask = nodes.length - 1;
+	private int head, tail; // Entries are in [head, tail).
+	// Scratch space for Chunk.localLightUpdate:
+	final int[] absorption = new int[8];
+	final boolean[] solid = new boolean[8];
+
+	void add(int x, int y, int z) {
+		if(y < 0 || y >= World.WORLD_HEIGHT) return;
+		if(tail - head == nodes.length) {
+			int[] newNodes = new int[nodes.length << 1];
+			for(int i = head; i != tail; i++) {
+				newNodes[i - head] = nodes[i & mask];
+			}
+			tail -= head;
+			head = 0;
+			nodes = newNodes;
+			mask = nodes.length - 1;
+		}
+		nodes[tail++ & mask] = x << 22 | (z & 1023) << 12 | y;
+	}
+
+	boolean isEmpty() {
+		return head == tail;
+	}
+
+	int poll() {
+		return nodes[head++ & mask];
+	}
+
+	static int getX(int node) {
+		return node >> 22; // Arithmetic shift restores the sign.
+	}
+
+	static int getY(int node) {
+		return node & 255;
+	}
+
+	static int getZ(int node) {
+		return (node << 10) >> 22;
+	}
+}
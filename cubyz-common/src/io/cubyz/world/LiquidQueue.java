@@ -0,0 +1,73 @@
+package io.cubyz.world;
+
+/**
+ * Positions of the liquids in one chunk that should flow at the next liquid update.<br>
+ * Positions are packed into one int like the indices of the chunk sections, but with the full height, so scheduling doesn't allocate anything per liquid.
+ * Each position is only stored once, no matter how often it got scheduled.
+ */
+
+class LiquidQueue {
+	private int[] queue = new int[16];
+	private int[] processing = new int[16]; // The positions of the current update, so new positions can already be scheduled while they are processed.
+	private int size;
+	private long[] scheduled; // One bit for each block in the chunk. Only allocated when something gets scheduled.
+
+	static int pack(int x, int y, int z) {
+		return y << 8 | x << 4 | z;
+	}
+
+	static int getX(int index) {
+		return index >> 4 & 15;
+	}
+
+	static int getY(int index) {
+		return index >>> 8;
+	}
+
+	static int getZ(int index) {
+		return index & 15;
+	}
+
+	/**
+	 * @return false if the position was already scheduled.
+	 */
+	boolean add(int index) {
+		if(scheduled == null) {
+			scheduled = new long[16*World.WORLD_HEIGHT*16 >> 6];
+		}
+		long bit = 1L << index;
+		if((scheduled[index >> 6] & bit) != 0) return false;
+		scheduled[index >> 6] |= bit;
+		if(size == queue.length) {
+			int[] newQueue = new int[queue.length << 1];
+			System.arraycopy(queue, 0, newQueue, 0, size);
+			queue = newQueue;
+		}
+		queue[size++] = index;
+		return true;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Moves all scheduled positions to the processing array, where they can be read with {@link #get(int)}.
+	 * @return the number of positions.
+	 */
+	int swap() {
+		int[] temp = processing;
+		processing = queue;
+		queue = temp;
+		int n = size;
+		size = 0;
+		for(int i = 0; i < n; i++) {
+			scheduled[processing[i] >> 6] &= ~(1L << processing[i]);
+		}
+		return n;
+	}
+
+	int get(int i) {
+		return processing[i];
+	}
+}
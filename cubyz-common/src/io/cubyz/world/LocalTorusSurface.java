@@ -4,8 +4,6 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
 
 import org.joml.Vector4f;
 
@@ -15,7 +13,6 @@ import io.cubyz.base.init.MaterialInit;
 import io.cubyz.blocks.Block;
 import io.cubyz.blocks.BlockInstance;
 import io.cubyz.blocks.CustomOre;
-import io.cubyz.blocks.IUpdateable;
 import io.cubyz.blocks.Ore;
 import io.cubyz.blocks.BlockEntity;
 import io.cubyz.entity.Entity;
@@ -24,7 +21,10 @@ import io.cubyz.handler.PlaceBlockHandler;
 import io.cubyz.handler.RemoveBlockHandler;
 import io.cubyz.math.Bits;
 import io.cubyz.math.CubyzMath;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.metrics.Timer;
 import io.cubyz.save.BlockChange;
+import io.cubyz.save.SaveService;
 import io.cubyz.save.TorusIO;
 import io.cubyz.world.cubyzgenerators.biomes.Biome;
 import io.cubyz.world.generator.LifelandGenerator;
@@ -34,26 +34,20 @@ public class LocalTorusSurface extends TorusSurface {
 	
 	private static Random rnd = new Random();
 	
-	private List<Chunk> chunks;
-	private List<MetaChunk> maps;
+	private ChunkMap<Chunk> chunks;
+	private MetaChunkCache metaChunks;
 	private Chunk [] visibleChunks;
 	private int lastX = Integer.MAX_VALUE, lastZ = Integer.MAX_VALUE; // Chunk coordinates of the last chunk update.
 	private int doubleRD; // Corresponds to the doubled value of the last used render distance.
-	private int lastChunk = -1;
 	private int worldAnd = 65535; // worldSize-1. Used for bitwise and to better work with coordinates.
-	private ArrayList<Entity> entities = new ArrayList<>();
+	private final EntityIndex entities = new EntityIndex(worldAnd);
 	
 	private Block[] torusBlocks;
 	
-	// Stores a reference to the lists of WorldIO.
-	public ArrayList<byte[]> blockData;	
-	public ArrayList<int[]> chunkData;
-	
-	private static int MAX_QUEUE_SIZE = 40;
-	
 	private StellarTorusGenerator generator;
 	
 	private TorusIO wio;
+	private SaveService saveService;
 	
 	private List<ChunkGenerationThread> threads = new ArrayList<>();
 	private boolean generated;
@@ -63,28 +57,8 @@ public class LocalTorusSurface extends TorusSurface {
 	
 	long localSeed; // Each torus has a different seed for world generation. All those seeds are generated using the main world seed.
 	
-	private void queue(Chunk ch) {
-		if (!isQueued(ch)) {
-			try {
-				loadList.put(ch);
-			} catch (InterruptedException e) {
-				System.err.println("Interrupted while queuing chunk. This is unexpected.");
-			}
-		}
-	}
-	
-	private boolean isQueued(Chunk ch) {
-		Chunk[] list = loadList.toArray(new Chunk[0]);
-		for (Chunk ch2 : list) {
-			if (ch2 == ch) {
-				return true;
-			}
-		}
-		return false;
-	}
-	
-	// synchronized common list for chunk generation
-	private volatile BlockingDeque<Chunk> loadList = new LinkedBlockingDeque<>(MAX_QUEUE_SIZE);
+	// Chunks waiting for the generation threads:
+	private final ChunkGenerationQueue loadList = new ChunkGenerationQueue(worldAnd >>> 4);
 	private class ChunkGenerationThread extends Thread {
 		
 		public void run() {
@@ -109,8 +83,7 @@ public class LocalTorusSurface extends TorusSurface {
 		this.torus = torus;
 		MaterialInit.resetCustom();
 		ItemInit.resetCustom();
-		chunks = new ArrayList<>();
-		maps = new ArrayList<>();
+		chunks = new ChunkMap<>(1024);
 		visibleChunks = new Chunk[0];
 		
 		for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
@@ -130,7 +103,8 @@ public class LocalTorusSurface extends TorusSurface {
 		} else {
 			wio.saveTorusData(this);
 		}
-		//setChunkQueueSize(torus.world.getRenderDistance() << 2);
+		saveService = new SaveService(wio, this, SaveService.DEFAULT_INTERVAL);
+		metaChunks = new MetaChunkCache(this, wio, localSeed);
 	}
 	
 	public long getSeed() {
@@ -138,28 +112,23 @@ public class LocalTorusSurface extends TorusSurface {
 	}
 	
 	public void link() {
-		wio.link(this);
 		wio.loadTorusData(this); // load data here in order for entities to also be loaded.
 	}
 	
-	public void setChunkQueueSize(int size) {
-		synchronized (loadList) {
-			loadList.clear();
-			MAX_QUEUE_SIZE = size;
-			loadList = new LinkedBlockingDeque<>(size);
-		}
-		System.out.println("max queue size is now " + size);
-	}
-
-	
 	public void forceSave() {
-		wio.saveTorusData(this);
+		saveService.markTorusDirty();
+		saveService.flush();
 		((LocalWorld) ((LocalStellarTorus) torus).getWorld()).forceSave();
 	}
 
 	@Override
 	public List<Chunk> getChunks() {
-		return chunks;
+		return chunks.values();
+	}
+	
+	@Override
+	public int getChunkCount() {
+		return chunks.size();
 	}
 
 	@Override
@@ -174,15 +143,25 @@ public class LocalTorusSurface extends TorusSurface {
 	
 	@Override
 	public Entity[] getEntities() {
-		return entities.toArray(new Entity[entities.size()]);
+		return entities.getSnapshot();
+	}
+	
+	@Override
+	public EntityIndex getEntityIndex() {
+		return entities;
 	}
 	
 	public void addEntity(Entity ent) {
 		entities.add(ent);
 	}
 	
+	@Override
+	public void removeEntity(Entity ent) {
+		entities.remove(ent);
+	}
+	
 	public void setEntities(Entity[] arr) {
-		entities = new ArrayList<Entity>();
+		entities.clear();
 		for (Entity e : arr) {
 			entities.add(e);
 		}
@@ -197,9 +176,20 @@ public class LocalTorusSurface extends TorusSurface {
 		}
 	}
 	
+	public SaveService getSaveService() {
+		return saveService;
+	}
+	
+	public TorusIO getTorusIO() {
+		return wio;
+	}
+	
+	public StellarTorusGenerator getGenerator() {
+		return generator;
+	}
+	
 	public void synchronousGenerate(Chunk ch) {
 		ch.generateFrom(generator);
-		wio.saveChunk(ch);
 	}
 	
 	@Override
@@ -215,9 +205,8 @@ public class LocalTorusSurface extends TorusSurface {
 		if(c != null) return c;
 		c = new Chunk(x, z, this, transformData(getChunkData(x, z)));
 		// not generated
-		chunks.add(c);
-		lastChunk = chunks.size()-1;
-		return c;
+		// Another thread might have created the same chunk in the meantime. In that case use the other one.
+		return chunks.putIfAbsent(x, z, c);
 	}
 	@Override
 	public Chunk _getNoGenerateChunk(int x, int z) {
@@ -234,68 +223,29 @@ public class LocalTorusSurface extends TorusSurface {
 					return ret;
 			}
 		}
-		try {
-			if(lastChunk >= 0 && lastChunk < chunks.size() && chunks.get(lastChunk).getX() == x && chunks.get(lastChunk).getZ() == z) {
-				return chunks.get(lastChunk);
-			}
-			for (int i = 0; i < chunks.size(); i++) {
-				if (chunks.get(i).getX() == x && chunks.get(i).getZ() == z) {
-					lastChunk = i;
-					return chunks.get(i);
-				}
-			}
-		} catch(NullPointerException e) {
-			System.out.println("Catched NullPointerException");
-			//e.printStackTrace();
-			chunks.remove(null); // Remove the corruption.
-			return _getNoGenerateChunk(x, z); // Just try it again…
-		} // Wherever the NullPointerException comes from, it doesn't seem to be a big deal. If another error occurs elsewhere, this might be the source.
-		return null;
+		return chunks.get(x, z);
+	}
+	@Override
+	public BlockEntityTicker getBlockEntityTicker() {
+		return blockEntityTicker;
+	}
+	@Override
+	public void scheduleLiquidUpdate(Chunk ch) {
+		synchronized(liquidChunks) {
+			liquidChunks.add(ch);
+		}
 	}
 	
 	public MetaChunk getMetaChunk(int wx, int wy) {
-		for(MetaChunk ch : maps.toArray(new MetaChunk[0])) {
-			if(ch == null) {
-				maps.remove(null);
-				continue;
-			}
-			if(ch.x == wx && ch.y == wy) {
-				return ch;
-			}
-		}
-		synchronized(maps) {
-			// Now that the thread got access to this part the list might already contain the searched MetaChunk:
-			for(MetaChunk ch : maps) {
-				if(ch.x == wx && ch.y == wy) {
-					return ch;
-				}
-			}
-			// Every time a new MetaChunk is created, go through the list and if the length is at the limit(determined by the renderdistance) remove those that are farthest from the player:
-			while(maps.size() > (doubleRD/16 + 4)*(doubleRD/16 + 4)) {
-				int max = 0;
-				int index = 0;
-				for(int i = 0; i < maps.size(); i++) {
-					Player player = torus.world.getLocalPlayer();
-					int dist = CubyzMath.matchSign(maps.get(i).x-player.getPosition().x, worldAnd)*CubyzMath.matchSign(maps.get(i).x-player.getPosition().x, worldAnd) + CubyzMath.matchSign(maps.get(i).y-player.getPosition().z, worldAnd)*CubyzMath.matchSign(maps.get(i).y-player.getPosition().z, worldAnd);
-					if(dist > max) {
-						max = dist;
-						index = i;
-					}
-				}
-				maps.remove(index);
-			}
-			MetaChunk ch = new MetaChunk(wx, wy, localSeed, this);
-			maps.add(ch);
-			return ch;
-		}
+		return metaChunks.get(wx, wy);
 	}
+	
 	public MetaChunk getNoGenerateMetaChunk(int wx, int wy) {
-		for(MetaChunk ch : maps) {
-			if(ch.x == wx && ch.y == wy) {
-				return ch;
-			}
-		}
-		return null;
+		return metaChunks.getNoGenerate(wx, wy);
+	}
+	
+	public MetaChunkCache getMetaChunkCache() {
+		return metaChunks;
 	}
 	
 	public float[][] getHeightMapData(int x, int y, int width, int height) {
@@ -362,22 +312,17 @@ public class LocalTorusSurface extends TorusSurface {
 	}
 	
 	public byte[] getChunkData(int x, int z) { // Gets the data of a Chunk.
-		int index = -1;
-		for(int i = 0; i < chunkData.size(); i++) {
-			int [] arr = chunkData.get(i);
-			if(arr[0] == x && arr[1] == z) {
-				index = i;
-				break;
-			}
-		}
-		if(index == -1) {
+		// Chunks that were unloaded recently might not be on the disk yet:
+		Chunk pending = saveService.getPending(x, z);
+		byte[] data = pending != null ? pending.save() : wio.loadChunkData(x, z);
+		if(data == null) {
 			byte[] dummy = new byte[12];
 			Bits.putInt(dummy, 0, x);
 			Bits.putInt(dummy, 4, z);
 			Bits.putInt(dummy, 8, 0);
 			return dummy;
 		}
-		return blockData.get(index);
+		return data;
 	}
 	
 	public ArrayList<BlockChange> transformData(byte[] data) {
@@ -390,15 +335,20 @@ public class LocalTorusSurface extends TorusSurface {
 	}
 	
 	public Block getBlock(int x, int y, int z) {
-		BlockInstance bi = getBlockInstance(x, y, z);
-		if (bi == null)
+		if (y >= World.WORLD_HEIGHT || y < 0)
+			return null;
+
+		Chunk ch = _getNoGenerateChunk(x >> 4, z >> 4);
+		if (ch != null && ch.isGenerated()) {
+			return ch.getBlockAt(x & 15, y, z & 15);
+		} else {
 			return null;
-		return bi.getBlock();
+		}
 	}
 	
 	@Override
 	public BlockInstance getBlockInstance(int x, int y, int z) {
-		if (y > World.WORLD_HEIGHT || y < 0)
+		if (y >= World.WORLD_HEIGHT || y < 0)
 			return null;
 
 		Chunk ch = _getNoGenerateChunk(x >> 4, z >> 4);
@@ -414,10 +364,9 @@ public class LocalTorusSurface extends TorusSurface {
 	public void removeBlock(int x, int y, int z) {
 		Chunk ch = getChunk(x, z);
 		if (ch != null) {
-			Block b = ch.getBlockInstanceAt(x & 15, y, z & 15).getBlock();
+			Block b = ch.getBlockAt(x & 15, y, z & 15);
 			ch.removeBlockAt(x & 15, y, z & 15, true);
-			wio.saveChunk(ch);
-			wio.saveTorusData(this);
+			saveService.markDirty(ch);
 			for (RemoveBlockHandler hand : removeBlockHandlers) {
 				hand.onBlockRemoved(b, x, y, z);
 			}
@@ -429,20 +378,23 @@ public class LocalTorusSurface extends TorusSurface {
 		Chunk ch = getChunk(x, z);
 		if (ch != null) {
 			ch.addBlockAt(x & 15, y, z & 15, b, true);
-			wio.saveChunk(ch);
-			wio.saveTorusData(this);
+			saveService.markDirty(ch);
 			for (PlaceBlockHandler hand : placeBlockHandlers) {
 				hand.onBlockPlaced(b, x, y, z);
 			}
 		}
 	}
 	
-	boolean lqdUpdate;
 	boolean loggedUpdSkip;
 	final static boolean DO_LATE_UPDATES = false;
 	
-	BlockEntity[] blockEntities = new BlockEntity[0];
-	BlockInstance[] liquids = new BlockInstance[0];
+	private final BlockEntityTicker blockEntityTicker = new BlockEntityTicker();
+	private static final int LIQUID_DELAY = 3; // Number of ticks between two liquid updates.
+	private final ArrayList<Chunk> liquidChunks = new ArrayList<>(); // Chunks that have scheduled liquids. Each chunk is only added once until it gets updated.
+	private Chunk[] liquidChunkArray = new Chunk[0];
+	private static final Timer entityTimer = Metrics.timer("tick.entities");
+	private static final Timer blockEntityTimer = Metrics.timer("tick.blockEntities");
+	private static final Timer liquidTimer = Metrics.timer("tick.liquids");
 	
 	public void update() {
 		long gameTime = torus.world.getGameTime();
@@ -484,72 +436,33 @@ public class LocalTorusSurface extends TorusSurface {
 			}
 		}
 		// Entities
-		for (Entity en : entities) {
+		long t = System.nanoTime();
+		for (Entity en : entities.getSnapshot()) {
 			en.update();
+			entities.update(en);
 		}
+		t = entityTimer.stop(t);
 		// Block Entities
-		for (Chunk ch : visibleChunks) {
-			if (ch.isLoaded() && ch.blockEntities().size() > 0) {
-				blockEntities = ch.blockEntities().values().toArray(blockEntities);
-				for (BlockEntity be : blockEntities) {
-					if (be == null) continue;
-					if (be instanceof IUpdateable) {
-						IUpdateable tk = (IUpdateable) be;
-						tk.update(false);
-						if (tk.randomUpdates()) {
-							if (rnd.nextInt(5) <= 1) { // 1/5 chance
-								tk.update(true);
-							}
-						}
-					}
-				}
-			}
-		}
+		blockEntityTicker.tick(gameTime, rnd);
+		t = blockEntityTimer.stop(t);
 		
 		// Liquids
-		if (gameTime % 3 == 0 && lqdUpdate) {
-			lqdUpdate = false;
-			//Profiler.startProfiling();
-			for (Chunk ch : visibleChunks) {
-				if (ch.isLoaded() && ch.liquids().size() > 0) {
-					liquids = ch.updatingLiquids().toArray(liquids);
-					ch.updatingLiquids().clear();
-					for (BlockInstance bi : liquids) {
-						if (bi == null) break;
-						BlockInstance[] neighbors = bi.getNeighbors(ch);
-						for (int i = 0; i < 5; i++) {
-							BlockInstance b = neighbors[i];
-							if (b == null) {
-								int dx = 0, dy = 0, dz = 0;
-								switch (i) {
-									case 0:
-										dx = -1;
-									break;
-									case 1:
-										dx = 1;
-										break;
-									case 2:
-										dz = 1;
-										break;
-									case 3:
-										dz = -1;
-										break;
-									case 4:
-										dy = -1;
-										break;
-									default:
-										System.err.println("(LocalWorld/Liquids) More than 6 nullable neighbors!");
-										break;
-								}
-								if(dy == -1 || (neighbors[4] != null && neighbors[4].getBlock().getBlockClass() != Block.BlockClass.FLUID)) {
-									ch.addBlock(bi.getBlock(), (bi.getX()+dx) & worldAnd, bi.getY()+dy, (bi.getZ()+dz) & worldAnd);
-								}
-							}
-						}
-					}
+		if (gameTime % LIQUID_DELAY == 0) {
+			int n;
+			synchronized(liquidChunks) {
+				n = liquidChunks.size();
+				liquidChunkArray = liquidChunks.toArray(liquidChunkArray);
+				liquidChunks.clear();
+			}
+			for (int i = 0; i < n; i++) {
+				Chunk ch = liquidChunkArray[i];
+				liquidChunkArray[i] = null;
+				// Chunks that got removed in the meantime are skipped.
+				if (_getNoGenerateChunk(ch.getX(), ch.getZ()) == ch) {
+					ch.updateLiquids();
 				}
 			}
-			//Profiler.printProfileTime("liquid-update");
+			liquidTimer.stop(t);
 		}
 	}
 
@@ -580,25 +493,43 @@ public class LocalTorusSurface extends TorusSurface {
 
 	@Override
 	public void queueChunk(Chunk ch) {
-		queue(ch);
+		loadList.offer(ch);
+	}
+
+	/**
+	 * Queues a chunk that is needed outside of the render distance of the local player, for example by another player on the server.
+	 * @param priority squared distance in blocks to whoever needs it. Chunks with lower values get generated first.
+	 */
+	public void queueChunk(Chunk ch, float priority) {
+		loadList.offer(ch, priority);
+	}
+	
+	/**
+	 * The chunks around a player go from getSeekEnd-2*renderDistance to getSeekEnd-1, in both directions.
+	 * @param coord block coordinate of the player
+	 * @return chunk coordinate after the last chunk in range
+	 */
+	public static int getSeekEnd(int coord, int renderDistance) {
+		int end = (coord >> 4) + renderDistance;
+		if((coord & 15) > 7)
+			end++;
+		return end;
 	}
 	
 	@Override
 	public void seek(int x, int z) {
+		int playerX = x, playerZ = z;
 		int renderDistance = torus.world.getRenderDistance();
-		int local = x & 15;
-		x >>= 4;
-		x += renderDistance;
-		if(local > 7)
-			x++;
-		local = z & 15;
-		z >>= 4;
-		z += renderDistance;
-		if(local > 7)
-			z++;
+		x = getSeekEnd(x, renderDistance);
+		z = getSeekEnd(z, renderDistance);
+		int doubleRD = renderDistance << 1;
+		// Update the generation order and drop chunks that are out of range before queuing new ones:
+		Player player = torus.world.getLocalPlayer();
+		float yaw = player == null ? Float.NaN : player.getRotation().y;
+		loadList.update(playerX, playerZ, yaw, x - doubleRD, z - doubleRD, x, z);
 		if(x == lastX && z == lastZ)
 			return;
-		int doubleRD = renderDistance << 1;
+		metaChunks.update(playerX, playerZ, renderDistance);
 		Chunk [] newVisibles = new Chunk[doubleRD*doubleRD];
 		int index = 0;
 		int minK = 0;
@@ -630,33 +561,22 @@ public class LocalTorusSurface extends TorusSurface {
 		}
 		for(int k = minK; k < visibleChunks.length; k++) {
 			visibleChunks[k].setLoaded(false);
-			chunks.remove(visibleChunks[k]);
-			wio.saveChunk(visibleChunks[k]);
+			chunks.remove(visibleChunks[k].getX(), visibleChunks[k].getZ(), visibleChunks[k]);
+			saveService.markDirty(visibleChunks[k]);
 		}
 		visibleChunks = newVisibles;
 		lastX = x;
 		lastZ = z;
 		this.doubleRD = doubleRD;
 		if (minK != visibleChunks.length) { // if at least one chunk got unloaded
-			wio.saveTorusData(this);
+			saveService.markTorusDirty();
 		}
 		
 		// Check if one of the never loaded chunks is outside of players range.
 		// Those chunks were never loaded and therefore don't need to get saved.
-		x -= renderDistance;
-		z -= renderDistance;
-		for(int i = 0; i < chunks.size(); i++) {
-			Chunk ch = chunks.get(i);
-			int delta = Math.abs(ch.getX()-x);
-			if(delta >= renderDistance+2) {
-				chunks.remove(ch);
-				continue;
-			}
-			delta = Math.abs(ch.getZ()-z);
-			if(delta >= renderDistance+2) {
-				chunks.remove(ch);
-			}
-		}
+		final int cx = x - renderDistance;
+		final int cz = z - renderDistance;
+		chunks.removeIf(ch -> Math.abs(ch.getX()-cx) >= renderDistance+2 || Math.abs(ch.getZ()-cz) >= renderDistance+2);
 		
 	}
 	
@@ -687,8 +607,9 @@ public class LocalTorusSurface extends TorusSurface {
 			
 			chunks = null;
 			visibleChunks = null;
-			chunkData = null;
-			blockData = null;
+			saveService.stop();
+			metaChunks.stop();
+			wio.close();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
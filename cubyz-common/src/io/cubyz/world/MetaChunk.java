@@ -1,6 +1,7 @@
 package io.cubyz.world;
 
 import io.cubyz.world.cubyzgenerators.biomes.Biome;
+import io.cubyz.world.cubyzgenerators.biomes.BiomeTable;
 
 // A metaChunk stores map data for a much bigger area of the world.
 
@@ -9,24 +10,50 @@ public class MetaChunk {
 	public Biome[][] biomeMap;
 	TorusSurface world;
 	public int x, y;
+	volatile int lastUsed; // Used by the MetaChunkCache to find the least recently used MetaChunk.
 	
 	public MetaChunk(int x, int y, long seed, TorusSurface world) {
+		this(x, y, generateHeightMap(x, y, seed, world), generateHeatMap(x, y, seed, world), world);
+	}
+	
+	/**
+	 * Uses already generated noise maps. The heightMap gets changed by the biomes.
+	 */
+	public MetaChunk(int x, int y, float[][] heightMap, float[][] heatMap, TorusSurface world) {
 		this.x = x;
 		this.y = y;
 		this.world = world;
-		heightMap = Noise.generateFractalTerrain(x, y, 256, 256, 512, seed, world.getAnd());
-		heatMap = Noise.generateFractalTerrain(x, y, 256, 256, 512, seed ^ 123456789, world.getAnd()); // Somehow only a scale of 256 works. Other scales leave visible edges in the world. Not a huge issue, but I would rather use 512.
+		this.heightMap = heightMap;
+		this.heatMap = heatMap;
 		biomeMap = new Biome[256][256];
+		BiomeTable biomes = BiomeTable.getInstance();
 		for(int i = 0; i < 256; i++) {
 			for(int j = 0; j < 256; j++) {
-				biomeMap[i][j] = Biome.getBiome(heightMap[i][j], heatMap[i][j]);
+				biomeMap[i][j] = biomes.getBiome(heightMap[i][j], heatMap[i][j]);
 			}
 		}
 		// Do internal heightMap updates based on biome. Interpolate between the four direct neighbors(if inside this metachunk):
 		for(int i = 0; i < 256; i++) {
 			for(int j = 0; j < 256; j++) {
-				heightMap[i][j] = Biome.evaluatePolynomial(heightMap[i][j], heatMap[i][j], heightMap[i][j]);
+				heightMap[i][j] = biomes.evaluatePolynomial(heightMap[i][j], heatMap[i][j], heightMap[i][j]);
 			}
 		}
 	}
-}
\ No newline at end of file
+	
+	public static float[][] generateHeightMap(int x, int y, long seed, TorusSurface world) {
+		return generateMap(x, y, new Noise(seed, world.getAnd()));
+	}
+	
+	public static float[][] generateHeatMap(int x, int y, long seed, TorusSurface world) {
+		return generateMap(x, y, new Noise(seed ^ 123456789, world.getAnd()));
+	}
+	
+	/**
+	 * Generates the height or heat map of a MetaChunk. The heat map uses the seed of the height map ^ 123456789.
+	 */
+	public static float[][] generateMap(int x, int y, Noise noise) {
+		float[] map = new float[256*256];
+		noise.generateFractalTerrain(x, y, 256, 256, 512, map); // Somehow only a scale of 256 works. Other scales leave visible edges in the world. Not a huge issue, but I would rather use 512.
+		return Noise.toArray(map, 256, 256);
+	}
+}
@@ -0,0 +1,222 @@
+package io.cubyz.world;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import io.cubyz.entity.Player;
+import io.cubyz.math.CubyzMath;
+import io.cubyz.save.TorusIO;
+
+/**
+ * Keeps the MetaChunks around the player.<br>
+ * Lookups of recently used MetaChunks don't take any locks, each thread remembers the last MetaChunks it used.
+ * Every MetaChunk is only generated once, other threads asking for it in the meantime wait for the result.
+ * A background thread prefetches the MetaChunks in the direction the player moves and stores the noise maps on disk, so they can be loaded instead of generated the next time.
+ * When the cache is full, the least recently used MetaChunk that is far away from the player gets removed.
+ */
+
+public class MetaChunkCache {
+	public static boolean useDiskCache = true;
+
+	private final ChunkMap<MetaChunk> maps = new ChunkMap<>();
+	private final ChunkMap<CompletableFuture<MetaChunk>> inProgress = new ChunkMap<>();
+	// A 2×2 area of MetaChunks per thread, that's enough for all generators.
+	private final ThreadLocal<MetaChunk[]> recent = ThreadLocal.withInitial(() -> new MetaChunk[4]);
+	private final LinkedBlockingDeque<Runnable> tasks = new LinkedBlockingDeque<>();
+	private final Thread thread;
+
+	private final LocalTorusSurface surface;
+	private final TorusIO io;
+	private final Noise heightNoise, heatNoise;
+	private final int worldAnd;
+
+	private volatile int time; // Increased every time a MetaChunk gets added. Used to find the least recently used one.
+	private volatile int capacity = 16;
+	private volatile int keepDistance = 512; // MetaChunks closer to the player than this are only removed if nothing else is left.
+	private int lastX, lastZ;
+	private boolean hasLastPosition;
+
+	// Prefetch tasks get dropped when the player changes direction.
+	private class Prefetch implements Runnable {
+		final int x, y;
+		Prefetch(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+		@Override
+		public void run() {
+			if(maps.get(x, y) == null)
+				get(x, y);
+		}
+	}
+
+	/**
+	 * @param io used to store the noise maps. Can be null.
+	 */
+	public MetaChunkCache(LocalTorusSurface surface, TorusIO io, long seed) {
+		this.surface = surface;
+		this.io = io;
+		worldAnd = surface.getAnd();
+		heightNoise = new Noise(seed, worldAnd);
+		heatNoise = new Noise(seed ^ 123456789, worldAnd);
+		thread = new Thread(() -> {
+			while(true) {
+				try {
+					tasks.take().run();
+				} catch(InterruptedException e) {
+					break;
+				} catch(Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		thread.setName("MetaChunk-Thread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the MetaChunk and generates or loads it if needed.
+	 * @param wx world coordinate, multiple of 256.
+	 * @param wy world coordinate, multiple of 256.
+	 */
+	public MetaChunk get(int wx, int wy) {
+		MetaChunk[] recent = this.recent.get();
+		int slot = (wx >> 8 & 1) | (wy >> 8 & 1) << 1;
+		MetaChunk ch = recent[slot];
+		if(ch == null || ch.x != wx || ch.y != wy) {
+			ch = maps.get(wx, wy);
+			if(ch == null)
+				ch = load(wx, wy);
+			recent[slot] = ch;
+		}
+		ch.lastUsed = time;
+		return ch;
+	}
+
+	/**
+	 * @return the MetaChunk or null if it isn't in the cache.
+	 */
+	public MetaChunk getNoGenerate(int wx, int wy) {
+		return maps.get(wx, wy);
+	}
+
+	public int size() {
+		return maps.size();
+	}
+
+	/**
+	 * Updates the cache size and prefetches MetaChunks in the direction the player is moving.
+	 * Should be called whenever the player enters a new chunk.
+	 * @param x player position in blocks
+	 * @param z player position in blocks
+	 */
+	public void update(int x, int z, int renderDistance) {
+		capacity = (renderDistance/8 + 4)*(renderDistance/8 + 4);
+		int range = renderDistance*16 + 16; // Area that is read by the generators around the player.
+		keepDistance = 2*range + 256;
+		tasks.removeIf(task -> task instanceof Prefetch);
+		int dx = CubyzMath.matchSign((x - lastX) & worldAnd, worldAnd);
+		int dz = CubyzMath.matchSign((z - lastZ) & worldAnd, worldAnd);
+		boolean moved = hasLastPosition && (dx != 0 || dz != 0) && Math.abs(dx) < 256 && Math.abs(dz) < 256; // Ignore teleports.
+		lastX = x;
+		lastZ = z;
+		hasLastPosition = true;
+		if(!moved) return;
+		// Prefetch everything that is needed after moving another render distance in the same direction:
+		double length = Math.sqrt(dx*dx + dz*dz);
+		int aheadX = x + (int)(dx/length*range);
+		int aheadZ = z + (int)(dz/length*range);
+		for(int wx = (aheadX - range) & ~255; wx < aheadX + range; wx += 256) {
+			for(int wy = (aheadZ - range) & ~255; wy < aheadZ + range; wy += 256) {
+				if(maps.get(wx & worldAnd, wy & worldAnd) == null)
+					tasks.addLast(new Prefetch(wx & worldAnd, wy & worldAnd));
+			}
+		}
+	}
+
+	public void stop() {
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			e.printStackTrace();
+		}
+		// Maps that are still waiting to be stored shouldn't get lost. Prefetching isn't needed anymore.
+		Runnable task;
+		while((task = tasks.poll()) != null) {
+			if(!(task instanceof Prefetch))
+				task.run();
+		}
+	}
+
+	private MetaChunk load(int wx, int wy) {
+		CompletableFuture<MetaChunk> future = new CompletableFuture<>();
+		CompletableFuture<MetaChunk> other = inProgress.putIfAbsent(wx, wy, future);
+		if(other != future) // Another thread is already working on it.
+			return other.join();
+		try {
+			MetaChunk ch = maps.get(wx, wy); // It might have been finished in the meantime.
+			if(ch == null) {
+				ch = create(wx, wy);
+				add(ch);
+			}
+			future.complete(ch);
+			return ch;
+		} catch(RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inProgress.remove(wx, wy, future);
+		}
+	}
+
+	private MetaChunk create(int wx, int wy) {
+		boolean disk = useDiskCache && io != null;
+		if(disk) {
+			float[][][] stored = io.loadMapData(wx, wy);
+			if(stored != null)
+				return new MetaChunk(wx, wy, stored[0], stored[1], surface);
+		}
+		float[][] heightMap = MetaChunk.generateMap(wx, wy, heightNoise);
+		float[][] heatMap = MetaChunk.generateMap(wx, wy, heatNoise);
+		if(disk) {
+			// The MetaChunk changes the heightMap, so the unchanged one needs to be copied.
+			float[][] heightCopy = new float[heightMap.length][];
+			for(int i = 0; i < heightMap.length; i++) {
+				heightCopy[i] = heightMap[i].clone();
+			}
+			tasks.addFirst(() -> io.saveMapData(wx, wy, heightCopy, heatMap));
+		}
+		return new MetaChunk(wx, wy, heightMap, heatMap, surface);
+	}
+
+	private void add(MetaChunk ch) {
+		synchronized(maps) {
+			ch.lastUsed = ++time;
+			maps.put(ch.x, ch.y, ch);
+			if(maps.size() <= capacity) return;
+			Player player = surface.torus.world.getLocalPlayer();
+			while(maps.size() > capacity) {
+				// Remove the least recently used one, preferably outside of the area around the player:
+				MetaChunk worst = null;
+				boolean worstFar = false;
+				for(MetaChunk map : maps.values()) {
+					if(map == ch) continue;
+					boolean far = true;
+					if(player != null) {
+						int dx = CubyzMath.matchSign((map.x + 128 - player.getPosition().x) & worldAnd, worldAnd);
+						int dz = CubyzMath.matchSign((map.y + 128 - player.getPosition().z) & worldAnd, worldAnd);
+						far = Math.abs(dx) > keepDistance || Math.abs(dz) > keepDistance;
+					}
+					if(worst == null || (far && !worstFar) || (far == worstFar && map.lastUsed - worst.lastUsed < 0)) {
+						worst = map;
+						worstFar = far;
+					}
+				}
+				if(worst == null) break;
+				maps.remove(worst.x, worst.y);
+			}
+		}
+	}
+}
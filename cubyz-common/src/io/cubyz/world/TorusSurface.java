@@ -21,17 +21,33 @@ public abstract class TorusSurface {
 	protected ArrayList<RemoveBlockHandler> removeBlockHandlers = new ArrayList<>();
 	public ArrayList<BlockVisibilityChangeHandler> visibHandlers = new ArrayList<>();
 	
+	/**
+	 * Handlers that implement multiple handler interfaces get added for each of them.
+	 */
 	public void addHandler(Handler handler) {
+		boolean accepted = false;
 		if (handler instanceof PlaceBlockHandler) {
 			placeBlockHandlers.add((PlaceBlockHandler) handler);
-		} else if (handler instanceof RemoveBlockHandler) {
+			accepted = true;
+		}
+		if (handler instanceof RemoveBlockHandler) {
 			removeBlockHandlers.add((RemoveBlockHandler) handler);
-		} else if (handler instanceof BlockVisibilityChangeHandler) {
+			accepted = true;
+		}
+		if (handler instanceof BlockVisibilityChangeHandler) {
 			visibHandlers.add((BlockVisibilityChangeHandler) handler);
-		} else {
+			accepted = true;
+		}
+		if (!accepted) {
 			throw new IllegalArgumentException("Handler isn't accepted by surface");
 		}
 	}
+	
+	public void removeHandler(Handler handler) {
+		placeBlockHandlers.remove(handler);
+		removeBlockHandlers.remove(handler);
+		visibHandlers.remove(handler);
+	}
 
 	public BlockInstance getHighestBlock(int x, int z) {
 		for (int y = World.WORLD_HEIGHT-1; y > 0; y--) {
@@ -66,13 +82,18 @@ public abstract class TorusSurface {
 	public abstract Chunk getChunk(int x, int z);	// Works with world coordinates
 	public abstract Chunk _getChunk(int x, int z);	// Works with chunk coordinates
 	public abstract Chunk _getNoGenerateChunk(int x, int z);
+	public abstract void scheduleLiquidUpdate(Chunk ch); // Called when a chunk without scheduled liquids gets some.
+	public abstract BlockEntityTicker getBlockEntityTicker();
 	public abstract Block getBlock(int x, int y, int z);
 	
-	public abstract List<Chunk> getChunks();
+	public abstract List<Chunk> getChunks(); // Returns a snapshot, use getChunkCount() if only the size is needed.
+	public abstract int getChunkCount();
 	public abstract Chunk [] getVisibleChunks();
 	public abstract Block [] getPlanetBlocks();
 	public abstract Entity[] getEntities();
 	public abstract void addEntity(Entity en);
+	public abstract void removeEntity(Entity en);
+	public abstract EntityIndex getEntityIndex();
 	
 	public abstract void synchronousSeek(int x, int z);
 	public abstract void seek(int x, int z);
@@ -0,0 +1,15 @@
+package io.cubyz.world.cubyzgenerators;
+
+import io.cubyz.blocks.Block;
+import io.cubyz.world.GenerationBuffer;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.cubyzgenerators.biomes.Biome;
+
+// A generator that works directly on the flat GenerationBuffer. It gets everything the other generator types get.
+// Generators that use the Block[][][] of the other interfaces still work, but the blocks need to be copied for them.
+
+public interface BufferGenerator extends Generator {
+	abstract int getPriority(); // Used to prioritize certain generators(like map generation) over others(like vegetation generation).
+	abstract void generate(long seed, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap, LocalTorusSurface surface);
+	default void generate(long seed, int cx, int cy, Block[][][] chunk, boolean[][] vegetationIgnoreMap) {}
+}
@@ -5,9 +5,11 @@ import java.util.Random;
 import io.cubyz.api.CubyzRegistries;
 import io.cubyz.api.Resource;
 import io.cubyz.blocks.Block;
+import io.cubyz.world.GenerationBuffer;
+import io.cubyz.world.LocalTorusSurface;
 import io.cubyz.world.cubyzgenerators.biomes.Biome;
 
-public class CaveGenerator implements FancyGenerator {
+public class CaveGenerator implements ColumnGenerator {
 	
 	@Override
 	public Resource getRegistryID() {
@@ -20,29 +22,27 @@ public class CaveGenerator implements FancyGenerator {
 	}
 	
 	private static final int range = 8;
-	private static Random rand = new Random();
 	private static Block water = CubyzRegistries.BLOCK_REGISTRY.getByID("cubyz:water");
 	private static Block ice = CubyzRegistries.BLOCK_REGISTRY.getByID("cubyz:ice");
 	
 	@Override
-	public void generate(long seed, int cx, int cy, Block[][][] chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap) {
-		synchronized(rand) {
-			rand.setSeed(seed);
-			long rand1 = rand.nextLong();
-			long rand2 = rand.nextLong();
-			// Generate caves from all nearby chunks:
-			for(int x = cx - range; x <= cx + range; ++x) {
-				for(int y = cy - range; y <= cy + range; ++y) {
-					long randX = (long)x*rand1;
-					long randY = (long)y*rand2;
-					rand.setSeed(randX ^ randY ^ seed);
-					considerCoordinates(x, y, cx, cy, chunk, vegetationIgnoreMap, heightMap);
-				}
+	public void generate(long seed, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap, LocalTorusSurface surface, int columnMin, int columnMax) {
+		// Each call uses its own Random, so multiple chunks can be generated at the same time.
+		Random rand = new Random(seed);
+		long rand1 = rand.nextLong();
+		long rand2 = rand.nextLong();
+		// Generate caves from all nearby chunks:
+		for(int x = cx - range; x <= cx + range; ++x) {
+			for(int y = cy - range; y <= cy + range; ++y) {
+				long randX = (long)x*rand1;
+				long randY = (long)y*rand2;
+				rand.setSeed(randX ^ randY ^ seed);
+				considerCoordinates(rand, x, y, cx, cy, chunk, vegetationIgnoreMap, heightMap, columnMin, columnMax);
 			}
 		}
 	}
 
-	private void createJunctionRoom(long localSeed, int cx, int cy, Block[][][] chunk, double worldX, double worldH, double worldY, boolean[][] vegetationIgnoreMap, int[][] heightMap) {
+	private void createJunctionRoom(Random rand, long localSeed, int cx, int cy, GenerationBuffer chunk, double worldX, double worldH, double worldY, boolean[][] vegetationIgnoreMap, int[][] heightMap, int columnMin, int columnMax) {
 		// The junction room is just one single room roughly twice as wide as high.
 		float size = 1 + rand.nextFloat()*6;
 		double cwx = cx*16 + 8;
@@ -88,8 +88,9 @@ public class CaveGenerator implements FancyGenerator {
 							double distToCenter = distToCenterX*distToCenterX + distToCenterH*distToCenterH + distToCenterY*distToCenterY;
 							if(distToCenter < 1.0) {
 								// Add a small roughness parameter to make walls look a bit rough by filling only 5/6 of the blocks at the walls with air:
-								if((distToCenter <= 0.9 || localRand.nextInt(6) != 0) && !water.equals(chunk[curX][curY][curHeightIndex]) && !ice.equals(chunk[curX][curY][curHeightIndex])) {
-									chunk[curX][curY][curHeightIndex] = null;
+								// The random numbers are used for all columns, so the other columns get the same ones no matter which columns are generated.
+								if((distToCenter <= 0.9 || localRand.nextInt(6) != 0) && curX >= columnMin && curX < columnMax && !chunk.is(curX, curY, curHeightIndex, water) && !chunk.is(curX, curY, curHeightIndex, ice)) {
+									chunk.setBlock(curX, curY, curHeightIndex, null);
 									if(heightMap[curX][curY] == curHeightIndex)
 										vegetationIgnoreMap[curX][curY] = true;
 								}
@@ -101,7 +102,7 @@ public class CaveGenerator implements FancyGenerator {
 			}
 		}
 	}
-	private void generateCave(long random, int cx, int cy, Block[][][] chunk, double worldX, double worldH, double worldY, float size, float direction, float slope, int curStep, int caveLength, double caveHeightModifier, boolean[][] vegetationIgnoreMap, int[][] heightMap) {
+	private void generateCave(long random, int cx, int cy, GenerationBuffer chunk, double worldX, double worldH, double worldY, float size, float direction, float slope, int curStep, int caveLength, double caveHeightModifier, boolean[][] vegetationIgnoreMap, int[][] heightMap, int columnMin, int columnMax) {
 		double cwx = (double) (cx*16 + 8);
 		double cwy = (double) (cy*16 + 8);
 		float directionModifier = 0.0F;
@@ -140,8 +141,8 @@ public class CaveGenerator implements FancyGenerator {
 			
 			// Add a small junction at a random point in the cave:
 			if(curStep == smallJunctionPos && size > 1 && caveLength > 0) {
-				this.generateCave(localRand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, localRand.nextFloat()*0.5F + 0.5F, direction - ((float)Math.PI/2), slope/3.0F, curStep, caveLength, 1, vegetationIgnoreMap, heightMap);
-				this.generateCave(localRand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, localRand.nextFloat()*0.5F + 0.5F, direction + ((float)Math.PI/2), slope/3.0F, curStep, caveLength, 1, vegetationIgnoreMap, heightMap);
+				this.generateCave(localRand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, localRand.nextFloat()*0.5F + 0.5F, direction - ((float)Math.PI/2), slope/3.0F, curStep, caveLength, 1, vegetationIgnoreMap, heightMap, columnMin, columnMax);
+				this.generateCave(localRand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, localRand.nextFloat()*0.5F + 0.5F, direction + ((float)Math.PI/2), slope/3.0F, curStep, caveLength, 1, vegetationIgnoreMap, heightMap, columnMin, columnMax);
 				return;
 			}
 
@@ -165,10 +166,10 @@ public class CaveGenerator implements FancyGenerator {
 					int hmax = (int)(worldH + hscale) + 1;
 					int ymin = (int)(worldY - xyscale) - cy*16 - 1;
 					int ymax = (int)(worldY + xyscale) - cy*16 + 1;
-					if (xmin < 0)
-						xmin = 0;
-					if (xmax > 16)
-						xmax = 16;
+					if (xmin < columnMin)
+						xmin = columnMin;
+					if (xmax > columnMax)
+						xmax = columnMax;
 					if (hmin < 1)
 						hmin = 1; // Don't make caves expand to the bedrock layer.
 					if (hmax > 248)
@@ -189,8 +190,8 @@ public class CaveGenerator implements FancyGenerator {
 							if(distToCenterX * distToCenterX + distToCenterY * distToCenterY < 1.0) {
 								for(int curH = hmax - 1; curH >= hmin; --curH) {
 									double distToCenterH = ((double) curH + 0.5 - worldH) / hscale;
-									if(distToCenterX*distToCenterX + distToCenterH*distToCenterH + distToCenterY*distToCenterY < 1.0 && !water.equals(chunk[curX][curY][curHeightIndex]) && !ice.equals(chunk[curX][curY][curHeightIndex])) {
-										chunk[curX][curY][curHeightIndex] = null;
+									if(distToCenterX*distToCenterX + distToCenterH*distToCenterH + distToCenterY*distToCenterY < 1.0 && !chunk.is(curX, curY, curHeightIndex, water) && !chunk.is(curX, curY, curHeightIndex, ice)) {
+										chunk.setBlock(curX, curY, curHeightIndex, null);
 										if(heightMap[curX][curY] == curHeightIndex)
 											vegetationIgnoreMap[curX][curY] = true;
 									}
@@ -204,7 +205,7 @@ public class CaveGenerator implements FancyGenerator {
 		}
 	}
 
-	private void considerCoordinates(int x, int y, int cx, int cy, Block[][][] chunk, boolean[][] vegetationIgnoreMap, int[][] heightMap) {
+	private void considerCoordinates(Random rand, int x, int y, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, int[][] heightMap, int columnMin, int columnMax) {
 		// Determine how many caves start in this chunk. Make sure the number is usually close to one, but can also rarely reach higher values.
 		int caveSpawns = rand.nextInt(rand.nextInt(rand.nextInt(12) + 1) + 1);
 
@@ -221,7 +222,7 @@ public class CaveGenerator implements FancyGenerator {
 			// Randomly pick how many caves origin from this location and add a junction room if there are more than 2:
 			int starters = 1+rand.nextInt(4);
 			if(starters > 1) {
-				createJunctionRoom(rand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, vegetationIgnoreMap, heightMap);
+				createJunctionRoom(rand, rand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, vegetationIgnoreMap, heightMap, columnMin, columnMax);
 			}
 
 			for(int i = 0; i < starters; ++i) {
@@ -237,7 +238,7 @@ public class CaveGenerator implements FancyGenerator {
 					size *= rand.nextFloat()*rand.nextFloat()*3.0F + 1.0F;
 				}
 
-				generateCave(rand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, size, direction, slope, 0, 0, 1, vegetationIgnoreMap, heightMap);
+				generateCave(rand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, size, direction, slope, 0, 0, 1, vegetationIgnoreMap, heightMap, columnMin, columnMax);
 			}
 		}
 	}
@@ -0,0 +1,15 @@
+package io.cubyz.world.cubyzgenerators;
+
+import io.cubyz.world.GenerationBuffer;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.cubyzgenerators.biomes.Biome;
+
+// A generator that can work on a range of x columns of the chunk independently. It may only change blocks and vegetationIgnoreMap entries in columns with xMin <= x < xMax.
+// The result needs to be exactly the same no matter how the chunk gets split, so the parts can be generated in parallel.
+
+public interface ColumnGenerator extends BufferGenerator {
+	abstract void generate(long seed, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap, LocalTorusSurface surface, int xMin, int xMax);
+	default void generate(long seed, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap, LocalTorusSurface surface) {
+		generate(seed, cx, cy, chunk, vegetationIgnoreMap, heatMap, heightMap, biomeMap, surface, 0, 16);
+	}
+}
@@ -6,8 +6,11 @@ import io.cubyz.api.CubyzRegistries;
 import io.cubyz.api.Resource;
 import io.cubyz.blocks.Block;
 import io.cubyz.blocks.Ore;
+import io.cubyz.world.GenerationBuffer;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.cubyzgenerators.biomes.Biome;
 
-public class OreGenerator implements Generator {
+public class OreGenerator implements ColumnGenerator {
 	
 	@Override
 	public Resource getRegistryID() {
@@ -27,7 +30,7 @@ public class OreGenerator implements Generator {
 
 	// Works basically similar to cave generation, but considers a lot less chunks and has a few other differences.
 	@Override
-	public void generate(long seed, int cx, int cy, Block[][][] chunk, boolean[][] vegetationIgnoreMap) {
+	public void generate(long seed, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap, LocalTorusSurface surface, int columnMin, int columnMax) {
 		Random rand = new Random(seed);
 		long rand1 = rand.nextLong();
 		long rand2 = rand.nextLong();
@@ -36,11 +39,12 @@ public class OreGenerator implements Generator {
 			for(int y = cy - 1; y <= cy + 1; ++y) {
 				long randX = (long)x*rand1;
 				long randY = (long)y*rand2;
-				considerCoordinates(x, y, cx, cy, chunk, randX ^ randY ^ seed);
+				considerCoordinates(x, y, cx, cy, chunk, randX ^ randY ^ seed, columnMin, columnMax);
 			}
 		}
 	}
-	private void considerCoordinates(int x, int y, int cx, int cy, Block[][][] chunk, long seed) {
+	private void considerCoordinates(int x, int y, int cx, int cy, GenerationBuffer chunk, long seed, int columnMin, int columnMax) {
+		Ore[] ores = OreGenerator.ores; // Read it once, in case it gets replaced while generating.
 		Random rand = new Random();
 		for(int i = 0; i < ores.length; i++) {
 			// Compose the seeds from some random stats of the ore. They generally shouldn't be the same for two different ores.
@@ -59,11 +63,11 @@ public class OreGenerator implements Generator {
 				if(length == 0)
 					continue;
 				size = size*length/ores[i].getMaxLength(); // Scale it so that shorter veins don't end up being balls.
-				generateVein(rand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, size, direction, slope, length, ores[i]);
+				generateVein(rand.nextLong(), cx, cy, chunk, worldX, worldH, worldY, size, direction, slope, length, ores[i], columnMin, columnMax);
 			}
 		}
 	}
-	private void generateVein(long random, int cx, int cy, Block[][][] chunk, double worldX, double worldH, double worldY, float size, float direction, float slope, int veinLength, Block ore) {
+	private void generateVein(long random, int cx, int cy, GenerationBuffer chunk, double worldX, double worldH, double worldY, float size, float direction, float slope, int veinLength, Block ore, int columnMin, int columnMax) {
 		double cwx = (double) (cx*16 + 8);
 		double cwy = (double) (cy*16 + 8);
 		float directionModifier = 0.0F;
@@ -104,10 +108,10 @@ public class OreGenerator implements Generator {
 					int hmax = (int)(worldH + scale) + 1;
 					int ymin = (int)(worldY - scale) - cy*16 - 1;
 					int ymax = (int)(worldY + scale) - cy*16 + 1;
-					if (xmin < 0)
-						xmin = 0;
-					if (xmax > 16)
-						xmax = 16;
+					if (xmin < columnMin)
+						xmin = columnMin;
+					if (xmax > columnMax)
+						xmax = columnMax;
 					if (hmin < 1)
 						hmin = 1; // Don't make veins expand to the bedrock layer.
 					if (hmax > 248)
@@ -129,8 +133,8 @@ public class OreGenerator implements Generator {
 								for(int curH = hmax - 1; curH >= hmin; --curH) {
 									double distToCenterH = ((double) curH + 0.5 - worldH) / scale;
 									// The first ore that gets into a position will be placed:
-									if(chunk[curX][curY][curHeightIndex] == stone && distToCenterX*distToCenterX + distToCenterH*distToCenterH + distToCenterY*distToCenterY < 1.0) {
-										chunk[curX][curY][curHeightIndex] = ore;
+									if(chunk.is(curX, curY, curHeightIndex, stone) && distToCenterX*distToCenterX + distToCenterH*distToCenterH + distToCenterY*distToCenterY < 1.0) {
+										chunk.setBlock(curX, curY, curHeightIndex, ore);
 									}
 									--curHeightIndex;
 								}
@@ -5,11 +5,13 @@ import java.util.Random;
 import io.cubyz.api.CubyzRegistries;
 import io.cubyz.api.Resource;
 import io.cubyz.blocks.Block;
+import io.cubyz.world.GenerationBuffer;
 import io.cubyz.world.LocalTorusSurface;
 import io.cubyz.world.MetaChunk;
 import io.cubyz.world.World;
+import io.cubyz.world.cubyzgenerators.biomes.Biome;
 
-public class RiverGenerator implements BigGenerator {
+public class RiverGenerator implements BufferGenerator {
 	
 	@Override
 	public int getPriority() {
@@ -23,7 +25,9 @@ public class RiverGenerator implements BigGenerator {
 	private static Block water = CubyzRegistries.BLOCK_REGISTRY.getByID("cubyz:water");
 
 	@Override
-	public void generate(long seed, int wx, int wy, Block[][][] chunk, boolean[][] vegetationIgnoreMap, LocalTorusSurface surface) {
+	public void generate(long seed, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap, LocalTorusSurface surface) {
+		int wx = cx << 4;
+		int wy = cy << 4;
 		// Gets the four surrounding MetaChunks and switch to a relative coordinate system.
 		int lx, ly;
 		MetaChunk nn, np, pn, pp;
@@ -65,7 +69,7 @@ public class RiverGenerator implements BigGenerator {
 		considerMetaChunk(pp, lx, ly, chunk, nn, np, pn, pp, seed, vegetationIgnoreMap);
 	}
 	
-	private void considerMetaChunk(MetaChunk m, int lx, int ly, Block[][][] chunk, MetaChunk nn, MetaChunk np, MetaChunk pn, MetaChunk pp, long seed, boolean[][] vegetationIgnoreMap) {
+	private void considerMetaChunk(MetaChunk m, int lx, int ly, GenerationBuffer chunk, MetaChunk nn, MetaChunk np, MetaChunk pn, MetaChunk pp, long seed, boolean[][] vegetationIgnoreMap) {
 		Random rand = new Random(seed^((long)m.x*Float.floatToRawIntBits(m.heightMap[255][0]))^((long)m.y*Float.floatToRawIntBits(m.heightMap[0][255])));
 		int num = 2 + rand.nextInt(4);
 		for(int i = 0; i < num; i++) {
@@ -116,7 +120,7 @@ public class RiverGenerator implements BigGenerator {
 		return res;
 	}
 	
-	private void makeRiver(float x, float y, int lx, int ly, Block[][][] chunk, MetaChunk nn, MetaChunk np, MetaChunk pn, MetaChunk pp, float width, int x00, int y00, float[] oldDir, float curHeight, boolean[][] vegetationIgnoreMap, int maxLength) {
+	private void makeRiver(float x, float y, int lx, int ly, GenerationBuffer chunk, MetaChunk nn, MetaChunk np, MetaChunk pn, MetaChunk pp, float width, int x00, int y00, float[] oldDir, float curHeight, boolean[][] vegetationIgnoreMap, int maxLength) {
 		float dist = (float)Math.sqrt((x-x00)*(x-x00) + (y-y00)*(y-y00));
 		if(128-dist-2*width <= 0 || maxLength == 0) return;
 		// Get the gradient of the surrounding positions in the heightMap:
@@ -168,11 +172,11 @@ public class RiverGenerator implements BigGenerator {
 							if(height1-height2 < 1) height2 = height1-2;
 							if(maxLength > 5) {
 								for(int h = height1; h <= height0; h++) {
-									chunk[ix][iy][h] = null;
+									chunk.setBlock(ix, iy, h, null);
 								}
 							}
 							for(int h = height2; h < height1; h++) {
-								chunk[ix][iy][h] = water;
+								chunk.setBlock(ix, iy, h, water);
 							}
 						}
 						// Add to the vegetationIgnoreMap if on a river:
@@ -3,10 +3,12 @@ package io.cubyz.world.cubyzgenerators;
 import io.cubyz.api.CubyzRegistries;
 import io.cubyz.api.Resource;
 import io.cubyz.blocks.Block;
+import io.cubyz.world.GenerationBuffer;
+import io.cubyz.world.LocalTorusSurface;
 import io.cubyz.world.World;
 import io.cubyz.world.cubyzgenerators.biomes.Biome;
 
-public class TerrainGenerator implements FancyGenerator {
+public class TerrainGenerator implements ColumnGenerator {
 	
 	@Override
 	public int getPriority() {
@@ -29,8 +31,8 @@ public class TerrainGenerator implements FancyGenerator {
 	private static Block water = CubyzRegistries.BLOCK_REGISTRY.getByID("cubyz:water");
 
 	@Override
-	public void generate(long seed, int cx, int cy, Block[][][] chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap) {
-		for(int px = 0; px < 16; px++) {
+	public void generate(long seed, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap, LocalTorusSurface surface, int xMin, int xMax) {
+		for(int px = xMin; px < xMax; px++) {
 			for(int py = 0; py < 16; py++) {
 				int y = heightMap[px+8][py+8];
 				float temperature = heatMap[px+8][py+8];
@@ -56,7 +58,7 @@ public class TerrainGenerator implements FancyGenerator {
 							}
 						}
 					}
-					chunk[px][py][j] = b;
+					chunk.setBlock(px, py, j, b);
 				}
 			}
 		}
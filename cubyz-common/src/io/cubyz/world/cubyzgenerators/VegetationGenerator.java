@@ -2,11 +2,15 @@ package io.cubyz.world.cubyzgenerators;
 
 import io.cubyz.api.Resource;
 import io.cubyz.blocks.Block;
+import io.cubyz.world.GenerationBuffer;
+import io.cubyz.world.LocalTorusSurface;
 import io.cubyz.world.Noise;
 import io.cubyz.world.cubyzgenerators.biomes.Biome;
 import io.cubyz.world.cubyzgenerators.biomes.VegetationModel;
 
-public class VegetationGenerator implements FancyGenerator {
+public class VegetationGenerator implements BufferGenerator {
+	private static final ThreadLocal<float[]> vegetationMaps = ThreadLocal.withInitial(() -> new float[32*32]);
+	private volatile Noise noise; // Only replaced when the seed changes.
 	
 	@Override
 	public Resource getRegistryID() {
@@ -19,21 +23,28 @@ public class VegetationGenerator implements FancyGenerator {
 	}
 
 	@Override
-	public void generate(long seed, int cx, int cy, Block[][][] chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap) {
+	public void generate(long seed, int cx, int cy, GenerationBuffer chunk, boolean[][] vegetationIgnoreMap, float[][] heatMap, int[][] heightMap, Biome[][] biomeMap, LocalTorusSurface surface) {
 		int wx = cx << 4;
 		int wy = cy << 4;
 		
-		float[][] vegetationMap = Noise.generateRandomMap(wx-8, wy-8, 32, 32, seed + 3*(seed + 1 & Integer.MAX_VALUE));
+		long vegetationSeed = seed + 3*(seed + 1 & Integer.MAX_VALUE);
+		Noise noise = this.noise;
+		if(noise == null || noise.getSeed() != vegetationSeed) {
+			noise = new Noise(vegetationSeed, -1);
+			this.noise = noise;
+		}
+		float[] vegetationMap = vegetationMaps.get();
+		noise.generateRandomMap(wx-8, wy-8, 32, 32, vegetationMap);
 		// Go through all positions in this and ±½ chunks to determine if there is a tree and if yes generate it.
 		for(int px = 0; px < 32; px++) {
 			for(int py = 0; py < 32; py++) {
 				if(!vegetationIgnoreMap[px][py]) {
 					for(VegetationModel model : biomeMap[px][py].vegetationModels()) {
-						if(model.getChance() > vegetationMap[px][py]) {
-							model.generate(px-8, py-8, heightMap[px][py]+1, chunk, vegetationMap[px][py]);
+						if(model.getChance() > vegetationMap[px*32 + py]) {
+							model.generate(px-8, py-8, heightMap[px][py]+1, chunk, vegetationMap[px*32 + py]);
 							break;
 						} else {
-							vegetationMap[px][py] = (vegetationMap[px][py] - model.getChance())/(1 - model.getChance()); // Make sure that after the first one was considered all others get the correct chances.
+							vegetationMap[px*32 + py] = (vegetationMap[px*32 + py] - model.getChance())/(1 - model.getChance()); // Make sure that after the first one was considered all others get the correct chances.
 						}
 					}
 				}
@@ -1,6 +1,5 @@
 package io.cubyz.world.cubyzgenerators.biomes;
 
-import io.cubyz.api.CubyzRegistries;
 import io.cubyz.api.IRegistryElement;
 import io.cubyz.api.Resource;
 
@@ -47,41 +46,11 @@ public class Biome implements IRegistryElement {
 
 	
 	public static Biome getBiome(float height, float heat) {
-		// Just take the closest one. TODO: Better system.
-		float closest = Float.MAX_VALUE;
-		Biome c = null;
-		for(IRegistryElement o : CubyzRegistries.BIOME_REGISTRY.registered()) {
-			Biome b = (Biome) o;
-			if(b.minHeight <= height && b.maxHeight >= height) {
-				// Heat is more important than height and therefor scaled by 2:
-				float heightFactor;
-				if(height >= b.height) {
-					heightFactor = (height-b.height)/(b.maxHeight-b.height);
-				} else {
-					heightFactor = (height-b.height)/(b.minHeight-b.height);
-				}
-				float dist = 2*(b.heat-heat)*(b.heat-heat) + heightFactor*heightFactor;
-				if(dist < closest) {
-					c = b;
-					closest = dist;
-				}
-			}
-		}
-		return c;
+		return BiomeTable.getInstance().getBiome(height, heat);
 	}
 	
 	public static float evaluatePolynomial(double height, double heat, double x) {
-		// Creates a much smoother terrain by interpolating between the biomes based on their distance in the height-heat space.
-		double res = 0;
-		double weight = 0;
-		for(IRegistryElement o : CubyzRegistries.BIOME_REGISTRY.registered()) {
-			Biome b = (Biome)o;
-			double dist = 2*(b.heat-heat)*(b.heat-heat) + (b.height-height)*(b.height-height);
-			dist = Math.pow(dist, -8);
-			res += b.evaluatePolynomial(x)*dist;
-			weight += dist;
-		}
-		return (float)(res/weight);
+		return BiomeTable.getInstance().evaluatePolynomial(height, heat, x);
 	}
 	
 	@Override
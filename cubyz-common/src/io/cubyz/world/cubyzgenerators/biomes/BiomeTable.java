@@ -0,0 +1,134 @@
+package io.cubyz.world.cubyzgenerators.biomes;
+
+import io.cubyz.api.CubyzRegistries;
+import io.cubyz.api.IRegistryElement;
+
+/**
+ * An immutable snapshot of the registered biomes, stored in flat arrays.<br>
+ * Used for the biome lookups of the MetaChunks, which happen 65536 times per MetaChunk, so the registry doesn't need to be copied for every lookup.
+ * Gives the same results as the old lookup through the registry.
+ */
+
+public class BiomeTable {
+	private static volatile BiomeTable instance;
+
+	private final Biome[] biomes;
+	private final float[] heat, height, minHeight, maxHeight;
+	// The coefficients of all polynomials after another. Biome i uses the coefficients from polynomialStart[i] to polynomialStart[i+1].
+	private final float[] coefficients;
+	private final int[] polynomialStart;
+
+	public BiomeTable(Biome[] biomes) {
+		this.biomes = biomes.clone();
+		int n = biomes.length;
+		heat = new float[n];
+		height = new float[n];
+		minHeight = new float[n];
+		maxHeight = new float[n];
+		polynomialStart = new int[n + 1];
+		for(int i = 0; i < n; i++) {
+			Biome b = biomes[i];
+			heat[i] = b.heat;
+			height[i] = b.height;
+			minHeight[i] = b.minHeight;
+			maxHeight[i] = b.maxHeight;
+			polynomialStart[i + 1] = polynomialStart[i] + b.terrainPolynomial.length;
+		}
+		coefficients = new float[polynomialStart[n]];
+		for(int i = 0; i < n; i++) {
+			System.arraycopy(biomes[i].terrainPolynomial, 0, coefficients, polynomialStart[i], biomes[i].terrainPolynomial.length);
+		}
+	}
+
+	/**
+	 * Returns the table of the currently registered biomes. It is only rebuilt when the number of registered biomes changes.
+	 */
+	public static BiomeTable getInstance() {
+		BiomeTable table = instance;
+		if(table == null || table.biomes.length != CubyzRegistries.BIOME_REGISTRY.size()) {
+			IRegistryElement[] registered = CubyzRegistries.BIOME_REGISTRY.registered();
+			Biome[] biomes = new Biome[registered.length];
+			for(int i = 0; i < biomes.length; i++) {
+				biomes[i] = (Biome)registered[i];
+			}
+			table = new BiomeTable(biomes);
+			instance = table;
+		}
+		return table;
+	}
+
+	public int size() {
+		return biomes.length;
+	}
+
+	public Biome get(int i) {
+		return biomes[i];
+	}
+
+	public float getHeat(int i) {
+		return heat[i];
+	}
+
+	public float getHeight(int i) {
+		return height[i];
+	}
+
+	public float getMinHeight(int i) {
+		return minHeight[i];
+	}
+
+	public float getMaxHeight(int i) {
+		return maxHeight[i];
+	}
+
+	public Biome getBiome(float height, float heat) {
+		// Just take the closest one. TODO: Better system.
+		float closest = Float.MAX_VALUE;
+		Biome c = null;
+		for(int i = 0; i < biomes.length; i++) {
+			float bHeight = this.height[i];
+			if(minHeight[i] <= height && maxHeight[i] >= height) {
+				// Heat is more important than height and therefor scaled by 2:
+				float heightFactor;
+				if(height >= bHeight) {
+					heightFactor = (height-bHeight)/(maxHeight[i]-bHeight);
+				} else {
+					heightFactor = (height-bHeight)/(minHeight[i]-bHeight);
+				}
+				float dHeat = this.heat[i]-heat;
+				float dist = 2*dHeat*dHeat + heightFactor*heightFactor;
+				if(dist < closest) {
+					c = biomes[i];
+					closest = dist;
+				}
+			}
+		}
+		return c;
+	}
+
+	public float evaluatePolynomial(double height, double heat, double x) {
+		// Creates a much smoother terrain by interpolating between the biomes based on their distance in the height-heat space.
+		double res = 0;
+		double weight = 0;
+		for(int i = 0; i < biomes.length; i++) {
+			double dHeat = this.heat[i]-heat;
+			double dHeight = this.height[i]-height;
+			double dist = 2*dHeat*dHeat + dHeight*dHeight;
+			// dist^-8 with three multiplications instead of Math.pow:
+			dist *= dist;
+			dist *= dist;
+			dist = 1/(dist*dist);
+			// Horner's method is a bit faster, but would change the rounding.
+			int start = polynomialStart[i], end = polynomialStart[i + 1];
+			double value = coefficients[start];
+			double xPow = 1;
+			for(int j = start + 1; j < end; j++) {
+				xPow *= x;
+				value += xPow*coefficients[j];
+			}
+			res += value*dist;
+			weight += dist;
+		}
+		return (float)(res/weight);
+	}
+}
@@ -3,6 +3,7 @@ package io.cubyz.world.cubyzgenerators.biomes;
 import java.util.Random;
 
 import io.cubyz.blocks.Block;
+import io.cubyz.world.GenerationBuffer;
 import io.cubyz.world.World;
 
 public class SimpleTreeModel extends VegetationModel {
@@ -19,7 +20,7 @@ public class SimpleTreeModel extends VegetationModel {
 	}
 
 	@Override
-	public void generate(int x, int y, int h, Block[][][] chunk, float random) {
+	public void generate(int x, int y, int h, GenerationBuffer chunk, float random) {
 		if(h > 0) {
 			int height = height0 + new Random(Float.floatToRawIntBits(random)).nextInt(deltaHeight);
 			if(h+height+1 >= World.WORLD_HEIGHT) // the max array index is 255 but world height is 256 (for array **length**)
@@ -27,10 +28,11 @@ public class SimpleTreeModel extends VegetationModel {
 			
 			if(x >= 0 && x < 16 && y >= 0 && y < 16) {
 				for (int i = 0; i < height; i++) {
-					if(chunk[x][y][h+i] != null && (!chunk[x][y][h+i].isDegradable() || wood.isDegradable())) {
+					Block old = chunk.getBlock(x, y, h+i);
+					if(old != null && (!old.isDegradable() || wood.isDegradable())) {
 						continue;
 					}
-					chunk[x][y][h+i] = (i == height-1) ? topWood : wood;
+					chunk.setBlock(x, y, h+i, (i == height-1) ? topWood : wood);
 				}
 			}
 			
@@ -41,10 +43,11 @@ public class SimpleTreeModel extends VegetationModel {
 				for (int k = 1 - j; k < j; k++) {
 					for (int l = 1 - j; l < j; l++) {
 						if (x+k >= 0 && x+k < 16 && y+l >= 0 && y+l < 16) {
-							if(chunk[x+k][y+l][h+i] != null && (!chunk[x+k][y+l][h+i].isDegradable() || leaves.isDegradable())) {
+							Block old = chunk.getBlock(x+k, y+l, h+i);
+							if(old != null && (!old.isDegradable() || leaves.isDegradable())) {
 								continue;
 							}
-							chunk[x+k][y+l][h+i] = leaves;
+							chunk.setBlock(x+k, y+l, h+i, leaves);
 						}
 					}
 				}
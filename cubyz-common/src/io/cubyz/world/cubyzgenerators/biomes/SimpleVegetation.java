@@ -3,6 +3,7 @@ package io.cubyz.world.cubyzgenerators.biomes;
 import java.util.Random;
 
 import io.cubyz.blocks.Block;
+import io.cubyz.world.GenerationBuffer;
 import io.cubyz.world.World;
 
 // One position vegetation, like grass or cactus.
@@ -17,14 +18,14 @@ public class SimpleVegetation extends VegetationModel {
 		deltaHeight = dh;
 	}
 	@Override
-	public void generate(int x, int y, int h, Block[][][] chunk, float random) {
+	public void generate(int x, int y, int h, GenerationBuffer chunk, float random) {
 		if(h > 0 && x >= 0 && x < 16 && y >= 0 && y < 16) {
 			int height = height0;
 			if(h+height < World.WORLD_HEIGHT) {
 				if(deltaHeight != 0)
 					height += + new Random((long)(x*random*549264290 + y*(1-random)*57285843)).nextInt(deltaHeight);
 				for(int dh = 0; dh < height; dh++)
-					chunk[x][y][h+dh] = block;
+					chunk.setBlock(x, y, h+dh, block);
 			}
 		}
 	}
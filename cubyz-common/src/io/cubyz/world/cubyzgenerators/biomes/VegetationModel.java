@@ -1,16 +1,29 @@
 package io.cubyz.world.cubyzgenerators.biomes;
 
 import io.cubyz.blocks.Block;
+import io.cubyz.world.GenerationBuffer;
 
 // A simple model that describes how vegetation should be generated.
+// Subclasses need to override one of the generate functions. The other one copies the blocks and calls it.
 
 public abstract class VegetationModel {
 	float chance;
 	public VegetationModel(float chance) {
 		this.chance = chance;
 	}
-	public abstract void generate(int x, int y, int h, Block[][][] chunk, float random);
+	public void generate(int x, int y, int h, Block[][][] chunk, float random) {
+		// The buffer of this thread might be in use by the generator that called this.
+		GenerationBuffer buffer = new GenerationBuffer();
+		buffer.fromArray(chunk);
+		generate(x, y, h, buffer, random);
+		buffer.copyTo(chunk);
+	}
+	public void generate(int x, int y, int h, GenerationBuffer chunk, float random) {
+		Block[][][] array = chunk.toArray();
+		generate(x, y, h, array, random);
+		chunk.fromArray(array);
+	}
 	public float getChance() {
 		return chance;
 	}
-}
\ No newline at end of file
+}
@@ -4,16 +4,15 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Random;
 
-import org.joml.Vector3i;
-
 import io.cubyz.api.IRegistryElement;
 import io.cubyz.api.Registry;
 import io.cubyz.api.Resource;
 import io.cubyz.blocks.Block;
-import io.cubyz.blocks.Block.BlockClass;
-import io.cubyz.blocks.BlockInstance;
 import io.cubyz.blocks.Ore;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.metrics.Timer;
 import io.cubyz.world.Chunk;
+import io.cubyz.world.GenerationBuffer;
 import io.cubyz.world.LocalTorusSurface;
 import io.cubyz.world.TorusSurface;
 import io.cubyz.world.World;
@@ -33,6 +32,9 @@ public class LifelandGenerator extends StellarTorusGenerator {
 	
 	public static final Registry<Generator> GENERATORS = new Registry<>();
 	ArrayList<Generator> sortedGenerators = new ArrayList<>();
+	Timer[] timers = new Timer[0]; // The timer of each generator in sortedGenerators.
+	private static final Timer mapTimer = Metrics.timer("generator.maps");
+	private static final Timer blockTimer = Metrics.timer("generator.blocks"); // Moving the blocks into the chunk.
 	
 	public void sortGenerators() {
 		sortedGenerators.clear();
@@ -52,6 +54,10 @@ public class LifelandGenerator extends StellarTorusGenerator {
 				}
 			}
 		});
+		timers = new Timer[sortedGenerators.size()];
+		for (int i = 0; i < timers.length; i++) {
+			timers[i] = Metrics.timer("generator." + sortedGenerators.get(i).getRegistryID());
+		}
 	}
 	
 	@Override
@@ -61,6 +67,7 @@ public class LifelandGenerator extends StellarTorusGenerator {
 		int wx = ox << 4;
 		int wy = oy << 4;
 		long seed = surface.getStellarTorus().getLocalSeed();
+		long t = System.nanoTime();
 		// Generate some maps:
 		float[][] heightMap = ((LocalTorusSurface)surface).getHeightMapData(wx-8, wy-8, 32, 32);
 		float[][] heatMap = ((LocalTorusSurface)surface).getHeatMapData(wx-8, wy-8, 32, 32);
@@ -79,39 +86,37 @@ public class LifelandGenerator extends StellarTorusGenerator {
 		}
 		
 		Random r = new Random(seed);
-		Block[][][] chunk = new Block[16][16][World.WORLD_HEIGHT];
+		GenerationBuffer chunk = GenerationBuffer.get();
 		
-		for (Generator g : sortedGenerators) {
-			if (g instanceof FancyGenerator) {
-				((FancyGenerator) g).generate(r.nextLong(), ox, oy, chunk, vegetationIgnoreMap, heatMap, realHeight, biomeMap);
-			} else if (g instanceof BigGenerator) {
-				((BigGenerator) g).generate(r.nextLong(), ox*16, oy*16, chunk, vegetationIgnoreMap, (LocalTorusSurface)surface);
+		boolean split = StageExecutor.shouldSplit(((LocalTorusSurface)surface).getChunkQueueSize());
+		t = mapTimer.stop(t);
+		
+		for (int i = 0; i < sortedGenerators.size(); i++) {
+			Generator g = sortedGenerators.get(i);
+			if (split && g instanceof ColumnGenerator) {
+				ColumnGenerator cg = (ColumnGenerator) g;
+				long genSeed = r.nextLong();
+				StageExecutor.runColumns((xMin, xMax) -> cg.generate(genSeed, ox, oy, chunk, vegetationIgnoreMap, heatMap, realHeight, biomeMap, (LocalTorusSurface)surface, xMin, xMax));
+			} else if (g instanceof BufferGenerator) {
+				((BufferGenerator) g).generate(r.nextLong(), ox, oy, chunk, vegetationIgnoreMap, heatMap, realHeight, biomeMap, (LocalTorusSurface)surface);
 			} else {
-				g.generate(r.nextLong(), ox, oy, chunk, vegetationIgnoreMap);
-			}
-		}
-
-		// Place the blocks in the chunk:
-		for(int px = 0; px < 16; px++) {
-			for(int py = 0; py < 16; py++) {
-				for(int h = 0; h < World.WORLD_HEIGHT; h++) {
-					Block b = chunk[px][py][h];
-					if(b != null) {
-						BlockInstance bi = new BlockInstance(b);
-						bi.setPosition(new Vector3i(wx + px, h, wy + py));
-						ch.rawAddBlock(px, h, py, bi);
-						if(bi.getBlock() != null) {
-							if (bi.getBlock().hasBlockEntity())
-								ch.blockEntities().put(bi, bi.getBlock().createBlockEntity(bi.getPosition()));
-							if (bi.getBlock().getBlockClass() == BlockClass.FLUID)
-								ch.updatingLiquids().add(bi);
-						}
-					}
+				// Generators of mods that still use a Block[][][]:
+				Block[][][] array = chunk.toArray();
+				if (g instanceof FancyGenerator) {
+					((FancyGenerator) g).generate(r.nextLong(), ox, oy, array, vegetationIgnoreMap, heatMap, realHeight, biomeMap);
+				} else if (g instanceof BigGenerator) {
+					((BigGenerator) g).generate(r.nextLong(), ox*16, oy*16, array, vegetationIgnoreMap, (LocalTorusSurface)surface);
+				} else {
+					g.generate(r.nextLong(), ox, oy, array, vegetationIgnoreMap);
 				}
+				chunk.fromArray(array);
 			}
+			t = timers[i].stop(t);
 		}
 
+		ch.setBlocks(chunk);
 		ch.applyBlockChanges();
+		blockTimer.stop(t);
 	}
 
 	@Override
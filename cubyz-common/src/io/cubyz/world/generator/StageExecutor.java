@@ -0,0 +1,69 @@
+package io.cubyz.world.generator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the column-parallel generator stages of a chunk into parts, that are generated in parallel on a ForkJoinPool.<br>
+ * That's only worth it when there are idle cores: When a lot of chunks are waiting, every generation thread already has its own chunk to work on.
+ */
+
+public class StageExecutor {
+	public enum Split {
+		AUTO, // Split when fewer chunks are waiting than there are cores.
+		ALWAYS, // Split into the smallest parts, even on a single core. Useful to test that the result stays the same.
+		NEVER,
+	}
+
+	public static volatile Split split = Split.AUTO;
+
+	private static final int MIN_COLUMNS = 2; // Smaller parts aren't worth the overhead.
+	private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	public interface ColumnTask {
+		void run(int xMin, int xMax);
+	}
+
+	private static class ColumnAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final ColumnTask task;
+		final int xMin, xMax, maxColumns;
+		ColumnAction(ColumnTask task, int xMin, int xMax, int maxColumns) {
+			this.task = task;
+			this.xMin = xMin;
+			this.xMax = xMax;
+			this.maxColumns = maxColumns;
+		}
+		@Override
+		protected void compute() {
+			if(xMax - xMin <= maxColumns) {
+				task.run(xMin, xMax);
+				return;
+			}
+			int middle = (xMin + xMax) >>> 1;
+			invokeAll(new ColumnAction(task, xMin, middle, maxColumns), new ColumnAction(task, middle, xMax, maxColumns));
+		}
+	}
+
+	/**
+	 * @param queuedChunks the number of chunks that are waiting for generation.
+	 */
+	public static boolean shouldSplit(int queuedChunks) {
+		switch(split) {
+			case ALWAYS:
+				return true;
+			case NEVER:
+				return false;
+			default:
+				return pool.getParallelism() > 1 && queuedChunks < pool.getParallelism();
+		}
+	}
+
+	/**
+	 * Runs the task for all 16 columns, split into parts of at least MIN_COLUMNS columns. Returns when all parts are done.
+	 */
+	public static void runColumns(ColumnTask task) {
+		int maxColumns = split == Split.ALWAYS ? MIN_COLUMNS : Math.max(MIN_COLUMNS, 16/pool.getParallelism());
+		pool.invoke(new ColumnAction(task, 0, 16, maxColumns));
+	}
+}
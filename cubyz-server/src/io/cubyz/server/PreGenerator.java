@@ -0,0 +1,114 @@
+package io.cubyz.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cubyz.CubyzLogger;
+import io.cubyz.metrics.Metric;
+import io.cubyz.metrics.Metrics;
+import io.cubyz.metrics.Timer;
+import io.cubyz.save.SaveService;
+import io.cubyz.world.Chunk;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.LocalWorld;
+import io.cubyz.world.generator.LifelandGenerator;
+import io.cubyz.world.generator.StellarTorusGenerator;
+
+/**
+ * Generates a square of chunks around a point without starting the client and saves them.<br>
+ * Can be used to generate the spawn region of a server ahead of time and as a repeatable benchmark of the world generation.
+ * Usage: pregen &lt;world&gt; &lt;seed&gt; &lt;x&gt; &lt;z&gt; &lt;radius in chunks&gt; [threads]
+ * Reports the chunks per second, the time of each generator, the highest heap usage and the bytes written.
+ */
+
+public class PreGenerator {
+
+	public static void run(String[] args) {
+		if (args.length < 5) {
+			System.out.println("Usage: pregen <world> <seed> <x> <z> <radius in chunks> [threads]");
+			return;
+		}
+		String worldName = args[0];
+		long seed = Long.parseLong(args[1]);
+		int centerX = Integer.parseInt(args[2]) >> 4;
+		int centerZ = Integer.parseInt(args[3]) >> 4;
+		int radius = Integer.parseInt(args[4]);
+		int threadCount = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+		Server.loadGame();
+		LifelandGenerator.init(); // Usually done by the client after loading.
+		LocalWorld world = new LocalWorld(worldName);
+		world.setCurrentTorusID(seed);
+		world.generate();
+		LocalTorusSurface surface = world.getCurrentTorus();
+		// The chunks are kept until the next save, so save more often than usual:
+		surface.getSaveService().setInterval(SaveService.DEFAULT_INTERVAL/10);
+
+		int size = 2*radius + 1;
+		int total = size*size;
+		CubyzLogger.instance.info("Generating " + total + " chunks around " + (centerX << 4) + " " + (centerZ << 4) + " with " + threadCount + " threads..");
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		Metrics.resetAll();
+
+		StellarTorusGenerator generator = surface.getGenerator();
+		int and = surface.getAnd() >>> 4;
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		Thread[] threads = new Thread[threadCount];
+		long start = System.nanoTime();
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread(() -> {
+				int index;
+				while ((index = next.getAndIncrement()) < total) {
+					int cx = (centerX - radius + index/size) & and;
+					int cz = (centerZ - radius + index%size) & and;
+					// The chunks aren't added to the surface, so they can be freed after saving.
+					Chunk ch = new Chunk(cx, cz, surface, surface.transformData(surface.getChunkData(cx, cz)));
+					ch.generateFrom(generator);
+					surface.getSaveService().markDirty(ch);
+					done.incrementAndGet();
+				}
+			});
+			threads[i].setName("Pregen-Thread-" + i);
+			threads[i].start();
+		}
+		long lastReport = start;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join(1000);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				if (System.nanoTime() - lastReport > 10_000_000_000L) {
+					lastReport = System.nanoTime();
+					CubyzLogger.instance.info(done.get() + "/" + total + " chunks");
+				}
+			}
+		}
+		long time = System.nanoTime() - start;
+		surface.cleanup(); // Saves everything that is left.
+
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				peakHeap += pool.getPeakUsage().getUsed();
+		}
+		System.out.printf("%d chunks in %.2f s: %.1f chunks/s%n", total, time/1e9, total/(time/1e9));
+		// Summed over all threads, so with multiple threads this adds up to more than the time above.
+		ArrayList<Map.Entry<String, Metric>> generators = new ArrayList<>(Metrics.getAll("generator.").entrySet());
+		generators.sort((a, b) -> Long.compare(((Timer) b.getValue()).getSum(), ((Timer) a.getValue()).getSum()));
+		for (Map.Entry<String, Metric> entry : generators) {
+			long sum = ((Timer) entry.getValue()).getSum();
+			System.out.printf("  %-38s %8.1f ms total, %6.3f ms/chunk%n", entry.getKey(), sum/1e6, sum/1e6/total);
+		}
+		System.out.printf("heap high-water mark: %.1f MiB%n", peakHeap/1048576.0);
+		System.out.printf("bytes written: %d%n", surface.getTorusIO().getBytesWritten());
+	}
+}
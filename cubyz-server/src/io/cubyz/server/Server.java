@@ -9,6 +9,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
@@ -21,14 +22,21 @@ import io.cubyz.api.Mod;
 import io.cubyz.api.Side;
 import io.cubyz.command.CommandExecutor;
 import io.cubyz.command.ICommandSource;
+import io.cubyz.metrics.Metrics;
 import io.cubyz.modding.ModLoader;
 import io.cubyz.multiplayer.server.CubyzServer;
+import io.cubyz.world.LocalTorusSurface;
+import io.cubyz.world.LocalWorld;
 import io.cubyz.world.World;
+import io.cubyz.world.generator.LifelandGenerator;
 
 public class Server {
 
+	static final int UPDATE_TIME = 50; // ms
 	static Properties serverProperties = new Properties();
 	static CubyzServer server;
+	static LocalWorld world;
+	static Thread updateThread;
 	
 	public static void propertyDefault(String key, Object def) {
 		serverProperties.setProperty(key, serverProperties.getOrDefault(key, def).toString());
@@ -47,6 +55,7 @@ public class Server {
 		propertyDefault("max-ping-time", 5000);
 		propertyDefault("port", 58961);
 		propertyDefault("online-mode", false);
+		propertyDefault("world", "world");
 		
 		FileWriter writer = new FileWriter(f);
 		serverProperties.store(writer, null);
@@ -116,6 +125,10 @@ public class Server {
 	}
 	
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("pregen")) {
+			PreGenerator.run(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		CubyzLogger.instance.info("Loading configuration..");
 		try {
 			loadProperties();
@@ -126,13 +139,38 @@ public class Server {
 		
 		loadGame();
 		
+		CubyzLogger.instance.info("Loading world " + serverProperties.getProperty("world") + "..");
+		LifelandGenerator.init(); // Usually done by the client after loading.
+		world = new LocalWorld(serverProperties.getProperty("world"));
+		world.generate();
+		LocalTorusSurface surface = world.getCurrentTorus();
+		updateThread = new Thread(() -> {
+			long next = System.currentTimeMillis();
+			while (true) {
+				world.update();
+				next += UPDATE_TIME;
+				long wait = next - System.currentTimeMillis();
+				if (wait < 0) { // Too slow, don't try to catch up.
+					next -= wait;
+					wait = 0;
+				}
+				try {
+					Thread.sleep(wait);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		});
+		updateThread.setName("Server-Update-Thread");
+		updateThread.start();
+		
 		CubyzLogger.instance.info("Running server on port " + serverProperties.getProperty("port"));
 		
 		server = new CubyzServer(Integer.parseInt(serverProperties.getProperty("port")));
 		
 		Thread th = new Thread(() -> {
 			try {
-				server.start(false);
+				server.start(false, surface);
 			} catch (Exception e) {
 				CubyzLogger.instance.severe("Error while starting the server");
 				e.printStackTrace();
@@ -152,7 +190,7 @@ public class Server {
 
 			@Override
 			public World getWorld() {
-				return null;//ServerHandler.world; TODO!
+				return world;
 			}
 			
 		};
@@ -165,12 +203,25 @@ public class Server {
 				try {
 					CubyzLogger.instance.info("Server stopping..");
 					server.stop();
+					updateThread.interrupt();
+					updateThread.join();
+					surface.cleanup(); // Saves the world.
 				} catch (Exception e) {
 					CubyzLogger.instance.severe("Error while stopping the server");
 					e.printStackTrace();
 				}
 				break;
 			}
+			else if (parts[0].equals("metrics")) {
+				File file = new File(parts.length > 1 ? parts[1] : "metrics.txt");
+				try {
+					Metrics.dump(file);
+					CubyzLogger.instance.info("Metrics written to " + file.getAbsolutePath());
+				} catch (IOException e) {
+					CubyzLogger.instance.severe("Error while writing the metrics");
+					e.printStackTrace();
+				}
+			}
 			else {
 				CommandExecutor.execute(line, console);
 			}